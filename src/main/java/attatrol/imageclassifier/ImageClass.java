@@ -10,7 +10,9 @@ import java.util.Arrays;
 import javax.imageio.ImageIO;
 
 import attatrol.imageclassifier.i18n.ImageClassifierI18nProvider;
+import attatrol.imageclassifier.imagehash.FeatureCache;
 import attatrol.imageclassifier.imagehash.ImageHashFunction;
+import attatrol.imageclassifier.imagehash.IngestionPipeline;
 import javafx.event.EventHandler;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
@@ -206,11 +208,18 @@ public class ImageClass implements Comparable<ImageClass>, Serializable {
      * @throws ImageClassifierException
      */
     public double[][] getInputVectors() throws ImageClassifierException {
-        double[][] result = new double[imageFiles.length][];
-        for (int i = 0; i < imageFiles.length; i++) {
-            result[i] = hashFunction.hash(imageFiles[i]);
-        }
-        return result;
+        return getInputVectors(null);
+    }
+
+    /**
+     * Takes input vectors from the feature cache, images missing in the cache are read, decoded
+     * and hashed in parallel by {@link IngestionPipeline}.
+     * @param cache feature cache of the hash function of the class, null to hash all images
+     * @return input vectors
+     * @throws ImageClassifierException if some image can not be hashed
+     */
+    public double[][] getInputVectors(FeatureCache cache) throws ImageClassifierException {
+        return new IngestionPipeline(hashFunction).hash(imageFiles, cache);
     }
 
     public ImageGallery getImageGallery() throws FileNotFoundException {
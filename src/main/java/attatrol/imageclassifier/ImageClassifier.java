@@ -8,6 +8,7 @@ import java.util.NavigableSet;
 import java.util.TreeSet;
 
 import attatrol.imageclassifier.i18n.ImageClassifierI18nProvider;
+import attatrol.imageclassifier.imagehash.FeatureCache;
 
 public class ImageClassifier implements Serializable {
 
@@ -76,6 +77,16 @@ public class ImageClassifier implements Serializable {
     }
 
     public List<LearningPair> getLearningPairs() throws ImageClassifierException {
+        return getLearningPairs(null);
+    }
+
+    /**
+     * Produces learning pairs of all classes, input vectors are taken from the feature cache.
+     * @param cache feature cache of the hash function of classes, null to hash all images
+     * @return learning pairs
+     * @throws ImageClassifierException if some image can not be hashed
+     */
+    public List<LearningPair> getLearningPairs(FeatureCache cache) throws ImageClassifierException {
             final int classCount = classes.size();
             double[][] reference = new double[classCount][classCount];
             int counter = 0;
@@ -84,7 +95,7 @@ public class ImageClassifier implements Serializable {
             while (iter.hasNext()) {
                 reference[counter][counter] = 1.;
                 ImageClass iClass = iter.next();
-                double[][] inputs = iClass.getInputVectors();
+                double[][] inputs = iClass.getInputVectors(cache);
                 for (double[] input : inputs) {
                     pairs.add(new LearningPair(input, reference[counter]));
                 }
@@ -0,0 +1,374 @@
+package attatrol.imageclassifier.imagehash;
+
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.DirectColorModel;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Sums blue, green and red of pixels over cells of a grid in a single pass over the backing buffer
+ * of the image raster. Interleaved byte and 16-bit images and images packed into ints or shorts
+ * are read directly, other images row by row with {@link BufferedImage#getRGB}.
+ * Each row is split into runs of pixels of the same cell once, so there is no per pixel cell index math.
+ * @author attatrol
+ *
+ */
+final class CellAccumulator {
+
+    /**
+     * Utility class ctor.
+     */
+    private CellAccumulator() {
+    }
+
+    /**
+     * Cell c of a grid of cells over pixels holds pixels from borders[c] to borders[c + 1],
+     * that is pixels p with p * cells / pixels == c.
+     * @param cells number of cells
+     * @param pixels number of pixels
+     * @return first pixel of each cell and number of pixels as the last element
+     */
+    static int[] getBorders(int cells, int pixels) {
+        final int[] borders = new int[cells + 1];
+        for (int c = 0; c <= cells; c++) {
+            borders[c] = (int) (((long) c * pixels + cells - 1) / cells);
+        }
+        return borders;
+    }
+
+    /**
+     * @param image image
+     * @param columnBorders borders of cell columns, see {@link #getBorders(int, int)}
+     * @param rowBorders borders of cell rows
+     * @return sums of blue, green and red of each cell, cells are in row-major order,
+     * components are 8-bit
+     */
+    static long[] sum(BufferedImage image, int[] columnBorders, int[] rowBorders) {
+        final int width = columnBorders.length - 1;
+        final int height = rowBorders.length - 1;
+        final long[] sums = new long[3 * width * height];
+        final RowSummer summer = getRowSummer(image);
+        for (int cy = 0; cy < height; cy++) {
+            for (int y = rowBorders[cy]; y < rowBorders[cy + 1]; y++) {
+                summer.sumRow(y, columnBorders, sums, 3 * width * cy);
+            }
+        }
+        return sums;
+    }
+
+    private static RowSummer getRowSummer(BufferedImage image) {
+        final WritableRaster raster = image.getRaster();
+        final DataBuffer buffer = raster.getDataBuffer();
+        final SampleModel model = raster.getSampleModel();
+        final ColorModel colorModel = image.getColorModel();
+        if (buffer.getNumBanks() != 1) {
+            return new GenericRowSummer(image);
+        }
+        if (model instanceof ComponentSampleModel && colorModel instanceof ComponentColorModel) {
+            final int colorSpace = colorModel.getColorSpace().getType();
+            final int components = colorModel.getNumColorComponents();
+            final boolean isGray = colorSpace == ColorSpace.TYPE_GRAY && components == 1;
+            if (isGray || colorSpace == ColorSpace.TYPE_RGB && components == 3) {
+                final ComponentSampleModel componentModel = (ComponentSampleModel) model;
+                if (buffer instanceof DataBufferByte && model.getSampleSize(0) == 8) {
+                    return new ByteRowSummer(raster, componentModel, isGray);
+                }
+                if (buffer instanceof DataBufferUShort && model.getSampleSize(0) == 16) {
+                    return new UShortRowSummer(raster, componentModel, isGray);
+                }
+            }
+        }
+        if (model instanceof SinglePixelPackedSampleModel && colorModel instanceof DirectColorModel
+                && model.getNumBands() >= 3) {
+            final SinglePixelPackedSampleModel packedModel = (SinglePixelPackedSampleModel) model;
+            if (buffer instanceof DataBufferInt && model.getSampleSize(0) == 8 && model.getSampleSize(1) == 8
+                    && model.getSampleSize(2) == 8) {
+                return new IntRowSummer(raster, packedModel);
+            }
+            if (buffer instanceof DataBufferUShort) {
+                return new PackedUShortRowSummer(raster, packedModel);
+            }
+        }
+        return new GenericRowSummer(image);
+    }
+
+    /**
+     * Adds up components of a row of pixels.
+     */
+    private abstract static class RowSummer {
+
+        /**
+         * @param y row
+         * @param columnBorders borders of cell columns
+         * @param sums sums of cells
+         * @param offset index of the sum of the first cell of the row
+         */
+        abstract void sumRow(int y, int[] columnBorders, long[] sums, int offset);
+    }
+
+    /**
+     * Interleaved 8-bit components.
+     */
+    private static final class ByteRowSummer extends RowSummer {
+
+        private final byte[] data;
+
+        private final int base;
+
+        private final int pixelStride;
+
+        private final int scanlineStride;
+
+        private final int redOffset;
+
+        private final int greenOffset;
+
+        private final int blueOffset;
+
+        private final boolean isGray;
+
+        ByteRowSummer(WritableRaster raster, ComponentSampleModel model, boolean isGray) {
+            final DataBufferByte buffer = (DataBufferByte) raster.getDataBuffer();
+            data = buffer.getData();
+            pixelStride = model.getPixelStride();
+            scanlineStride = model.getScanlineStride();
+            base = buffer.getOffset() - raster.getSampleModelTranslateY() * scanlineStride
+                    - raster.getSampleModelTranslateX() * pixelStride;
+            final int[] bandOffsets = model.getBandOffsets();
+            redOffset = bandOffsets[0];
+            greenOffset = isGray ? redOffset : bandOffsets[1];
+            blueOffset = isGray ? redOffset : bandOffsets[2];
+            this.isGray = isGray;
+        }
+
+        @Override
+        void sumRow(int y, int[] columnBorders, long[] sums, int offset) {
+            int index = base + y * scanlineStride + columnBorders[0] * pixelStride;
+            for (int cx = 0; cx < columnBorders.length - 1; cx++, offset += 3) {
+                int blue = 0;
+                int green = 0;
+                int red = 0;
+                if (isGray) {
+                    for (int x = columnBorders[cx]; x < columnBorders[cx + 1]; x++, index += pixelStride) {
+                        red += data[index + redOffset] & 0xff;
+                    }
+                    blue = red;
+                    green = red;
+                }
+                else {
+                    for (int x = columnBorders[cx]; x < columnBorders[cx + 1]; x++, index += pixelStride) {
+                        blue += data[index + blueOffset] & 0xff;
+                        green += data[index + greenOffset] & 0xff;
+                        red += data[index + redOffset] & 0xff;
+                    }
+                }
+                sums[offset] += blue;
+                sums[offset + 1] += green;
+                sums[offset + 2] += red;
+            }
+        }
+    }
+
+    /**
+     * Interleaved 16-bit components, only their high bytes are summed.
+     */
+    private static final class UShortRowSummer extends RowSummer {
+
+        private final short[] data;
+
+        private final int base;
+
+        private final int pixelStride;
+
+        private final int scanlineStride;
+
+        private final int redOffset;
+
+        private final int greenOffset;
+
+        private final int blueOffset;
+
+        UShortRowSummer(WritableRaster raster, ComponentSampleModel model, boolean isGray) {
+            final DataBufferUShort buffer = (DataBufferUShort) raster.getDataBuffer();
+            data = buffer.getData();
+            pixelStride = model.getPixelStride();
+            scanlineStride = model.getScanlineStride();
+            base = buffer.getOffset() - raster.getSampleModelTranslateY() * scanlineStride
+                    - raster.getSampleModelTranslateX() * pixelStride;
+            final int[] bandOffsets = model.getBandOffsets();
+            redOffset = bandOffsets[0];
+            greenOffset = isGray ? redOffset : bandOffsets[1];
+            blueOffset = isGray ? redOffset : bandOffsets[2];
+        }
+
+        @Override
+        void sumRow(int y, int[] columnBorders, long[] sums, int offset) {
+            int index = base + y * scanlineStride + columnBorders[0] * pixelStride;
+            for (int cx = 0; cx < columnBorders.length - 1; cx++, offset += 3) {
+                int blue = 0;
+                int green = 0;
+                int red = 0;
+                for (int x = columnBorders[cx]; x < columnBorders[cx + 1]; x++, index += pixelStride) {
+                    blue += (data[index + blueOffset] & 0xffff) >>> 8;
+                    green += (data[index + greenOffset] & 0xffff) >>> 8;
+                    red += (data[index + redOffset] & 0xffff) >>> 8;
+                }
+                sums[offset] += blue;
+                sums[offset + 1] += green;
+                sums[offset + 2] += red;
+            }
+        }
+    }
+
+    /**
+     * 8-bit components packed into ints, such as RGB, ARGB and BGR.
+     */
+    private static final class IntRowSummer extends RowSummer {
+
+        private final int[] data;
+
+        private final int base;
+
+        private final int scanlineStride;
+
+        private final int redShift;
+
+        private final int greenShift;
+
+        private final int blueShift;
+
+        IntRowSummer(WritableRaster raster, SinglePixelPackedSampleModel model) {
+            final DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+            data = buffer.getData();
+            scanlineStride = model.getScanlineStride();
+            base = buffer.getOffset() - raster.getSampleModelTranslateY() * scanlineStride
+                    - raster.getSampleModelTranslateX();
+            final int[] bitOffsets = model.getBitOffsets();
+            redShift = bitOffsets[0];
+            greenShift = bitOffsets[1];
+            blueShift = bitOffsets[2];
+        }
+
+        @Override
+        void sumRow(int y, int[] columnBorders, long[] sums, int offset) {
+            int index = base + y * scanlineStride + columnBorders[0];
+            for (int cx = 0; cx < columnBorders.length - 1; cx++, offset += 3) {
+                int blue = 0;
+                int green = 0;
+                int red = 0;
+                for (int x = columnBorders[cx]; x < columnBorders[cx + 1]; x++, index++) {
+                    final int pixel = data[index];
+                    blue += (pixel >>> blueShift) & 0xff;
+                    green += (pixel >>> greenShift) & 0xff;
+                    red += (pixel >>> redShift) & 0xff;
+                }
+                sums[offset] += blue;
+                sums[offset + 1] += green;
+                sums[offset + 2] += red;
+            }
+        }
+    }
+
+    /**
+     * Components packed into shorts, such as 565 and 555 RGB, they are scaled to 8 bits by tables.
+     */
+    private static final class PackedUShortRowSummer extends RowSummer {
+
+        private final short[] data;
+
+        private final int base;
+
+        private final int scanlineStride;
+
+        private final int[] masks;
+
+        private final int[] shifts;
+
+        /**
+         * 8-bit value of each value of red, green and blue
+         */
+        private final int[][] tables = new int[3][];
+
+        PackedUShortRowSummer(WritableRaster raster, SinglePixelPackedSampleModel model) {
+            final DataBufferUShort buffer = (DataBufferUShort) raster.getDataBuffer();
+            data = buffer.getData();
+            scanlineStride = model.getScanlineStride();
+            base = buffer.getOffset() - raster.getSampleModelTranslateY() * scanlineStride
+                    - raster.getSampleModelTranslateX();
+            masks = model.getBitMasks();
+            shifts = model.getBitOffsets();
+            for (int band = 0; band < 3; band++) {
+                final int maximum = (1 << model.getSampleSize(band)) - 1;
+                tables[band] = new int[maximum + 1];
+                for (int value = 0; value <= maximum; value++) {
+                    tables[band][value] = (value * 255 + maximum / 2) / maximum;
+                }
+            }
+        }
+
+        @Override
+        void sumRow(int y, int[] columnBorders, long[] sums, int offset) {
+            final int[] redTable = tables[0];
+            final int[] greenTable = tables[1];
+            final int[] blueTable = tables[2];
+            int index = base + y * scanlineStride + columnBorders[0];
+            for (int cx = 0; cx < columnBorders.length - 1; cx++, offset += 3) {
+                int blue = 0;
+                int green = 0;
+                int red = 0;
+                for (int x = columnBorders[cx]; x < columnBorders[cx + 1]; x++, index++) {
+                    final int pixel = data[index] & 0xffff;
+                    blue += blueTable[(pixel & masks[2]) >>> shifts[2]];
+                    green += greenTable[(pixel & masks[1]) >>> shifts[1]];
+                    red += redTable[(pixel & masks[0]) >>> shifts[0]];
+                }
+                sums[offset] += blue;
+                sums[offset + 1] += green;
+                sums[offset + 2] += red;
+            }
+        }
+    }
+
+    /**
+     * Any other image, such as indexed or binary one, is converted to ARGB row by row.
+     */
+    private static final class GenericRowSummer extends RowSummer {
+
+        private final BufferedImage image;
+
+        private final int[] row;
+
+        GenericRowSummer(BufferedImage image) {
+            this.image = image;
+            row = new int[image.getWidth()];
+        }
+
+        @Override
+        void sumRow(int y, int[] columnBorders, long[] sums, int offset) {
+            image.getRGB(0, y, row.length, 1, row, 0, row.length);
+            for (int cx = 0; cx < columnBorders.length - 1; cx++, offset += 3) {
+                int blue = 0;
+                int green = 0;
+                int red = 0;
+                for (int x = columnBorders[cx]; x < columnBorders[cx + 1]; x++) {
+                    final int pixel = row[x];
+                    blue += pixel & 0xff;
+                    green += (pixel >>> 8) & 0xff;
+                    red += (pixel >>> 16) & 0xff;
+                }
+                sums[offset] += blue;
+                sums[offset + 1] += green;
+                sums[offset + 2] += red;
+            }
+        }
+    }
+}
@@ -0,0 +1,540 @@
+package attatrol.imageclassifier.imagehash;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import attatrol.imageclassifier.ImageClassifierException;
+
+/**
+ * Persistent store of input vectors produced by a hash function from image files,
+ * so only new or changed images are decoded again.
+ * <p>
+ * Vector of an image is valid while path, size and modification time of the file and
+ * signature of the hash function are the same. Vectors are kept as float32 in fixed size slots
+ * of a data file which is memory mapped in chunks, index of slots is a separate small file
+ * loaded on open and rewritten on {@link #flush()}. A changed image gets a new slot,
+ * its old slot is dead. When dead slots outnumber live ones, flush copies live slots densely
+ * into the next generation of the data file and the rewritten index switches to it,
+ * so the data file stays within twice the size of live vectors. Files of a cache are named
+ * after the signature of its hash function, so caches of different hash functions share a directory.
+ * <p>
+ * Lookups and stores are thread safe, hashing of missing images runs outside the lock.
+ * @author attatrol
+ *
+ */
+public final class FeatureCache implements Closeable {
+
+    private static final int MAGIC = 0x46454154;
+
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * Upper bound of a mapped chunk of the data file
+     */
+    private static final int CHUNK_SIZE = 1 << 28;
+
+    /**
+     * Minimal number of slots mapped at once
+     */
+    private static final int MINIMAL_MAPPED_SLOTS = 256;
+
+    private final ImageHashFunction hashFunction;
+
+    private final File directory;
+
+    /**
+     * Common part of names of files of the cache
+     */
+    private final String baseName;
+
+    private final File indexFile;
+
+    /**
+     * Generation of the data file, it is incremented by each compaction
+     */
+    private int generation;
+
+    private RandomAccessFile dataFile;
+
+    private FileChannel channel;
+
+    private final int vectorSize;
+
+    private final int slotSize;
+
+    private final int chunkSlots;
+
+    /**
+     * Mapped chunks of the data file, the last one may be shorter than {@link #chunkSlots}
+     */
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+
+    /**
+     * Entry of each cached image by its canonical path
+     */
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /**
+     * Number of allocated slots
+     */
+    private int slotNumber;
+
+    /**
+     * True if entries are changed since the last flush
+     */
+    private boolean isChanged;
+
+    private long hitNumber;
+
+    private long missNumber;
+
+    /**
+     * Hidden ctor, use {@link #open(File, ImageHashFunction)}.
+     */
+    private FeatureCache(File directory, ImageHashFunction hashFunction) throws IOException {
+        this.hashFunction = hashFunction;
+        this.directory = directory;
+        vectorSize = hashFunction.getResultSize();
+        slotSize = vectorSize * Float.BYTES;
+        chunkSlots = Math.max(1, CHUNK_SIZE / slotSize);
+        final String signature = hashFunction.getSignature();
+        baseName = "features-" + Integer.toHexString(signature.hashCode());
+        indexFile = new File(directory, baseName + ".idx");
+        final boolean isLoaded = indexFile.isFile() && loadIndex(signature);
+        if (!isLoaded) {
+            generation = 0;
+        }
+        dataFile = new RandomAccessFile(getDataFile(generation), "rw");
+        channel = dataFile.getChannel();
+        try {
+            if (!isLoaded || channel.size() < (long) slotNumber * slotSize) {
+                entries.clear();
+                slotNumber = 0;
+                channel.truncate(0);
+            }
+            else if (slotNumber > 0) {
+                mapSlot(slotNumber - 1);
+            }
+        }
+        catch (IOException ex) {
+            dataFile.close();
+            throw ex;
+        }
+        removeStaleDataFiles();
+    }
+
+    /**
+     * Removes data files of other generations left by an interrupted compaction
+     * or by a compaction that could not delete a still mapped file.
+     */
+    private void removeStaleDataFiles() {
+        final Pattern pattern = Pattern.compile(Pattern.quote(baseName) + "-\\d+\\.dat");
+        final String current = getDataFile(generation).getName();
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            final String name = file.getName();
+            if (!name.equals(current) && pattern.matcher(name).matches()) {
+                try {
+                    Files.deleteIfExists(file.toPath());
+                }
+                catch (IOException ex) {
+                    // file is removed on the next opening
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens cache of the hash function in the directory, creates it if there is none.
+     * @param directory directory of cache files, it is created if missing
+     * @param hashFunction hash function of cached vectors
+     * @return feature cache
+     * @throws IOException if files of the cache can not be opened
+     */
+    public static FeatureCache open(File directory, ImageHashFunction hashFunction) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can not create feature cache directory " + directory);
+        }
+        return new FeatureCache(directory, hashFunction);
+    }
+
+    /**
+     * @return default directory of feature caches in the home directory of the user
+     */
+    public static File getDefaultDirectory() {
+        return new File(System.getProperty("user.home"), ".imageclassifier" + File.separator + "features");
+    }
+
+    public ImageHashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    /**
+     * @return number of slots of the data file, including dead ones
+     */
+    public synchronized int getSlotNumber() {
+        return slotNumber;
+    }
+
+    /**
+     * @return number of cached vectors
+     */
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * @return number of vectors found in the cache
+     */
+    public synchronized long getHitNumber() {
+        return hitNumber;
+    }
+
+    /**
+     * @return number of vectors produced by the hash function
+     */
+    public synchronized long getMissNumber() {
+        return missNumber;
+    }
+
+    /**
+     * Returns cached vector of the image, hashes and caches the image if there is no valid vector.
+     * @param image image file
+     * @return input vector
+     * @throws ImageClassifierException if image can not be hashed
+     */
+    public double[] getVector(File image) throws ImageClassifierException {
+        final long length = image.length();
+        final long modified = image.lastModified();
+        double[] vector = get(image, length, modified);
+        if (vector == null) {
+            vector = hashFunction.hash(image);
+            put(image, length, modified, vector);
+        }
+        return vector;
+    }
+
+    /**
+     * @param image image file
+     * @return cached vector of the image, null if there is no valid vector
+     */
+    public double[] get(File image) {
+        return get(image, image.length(), image.lastModified());
+    }
+
+    /**
+     * @param image image file
+     * @param length length of the image file
+     * @param modified modification time of the image file
+     * @return cached vector of the image, null if there is no valid vector for this file state
+     */
+    public double[] get(File image, long length, long modified) {
+        final String path = getPath(image);
+        synchronized (this) {
+            final Entry entry = entries.get(path);
+            if (entry == null || entry.length != length || entry.modified != modified) {
+                missNumber++;
+                return null;
+            }
+            final double[] vector = new double[vectorSize];
+            final MappedByteBuffer chunk;
+            try {
+                chunk = mapSlot(entry.slot);
+            }
+            catch (IOException ex) {
+                missNumber++;
+                return null;
+            }
+            hitNumber++;
+            final int offset = entry.slot % chunkSlots * slotSize;
+            for (int i = 0; i < vectorSize; i++) {
+                vector[i] = chunk.getFloat(offset + i * Float.BYTES);
+            }
+            return vector;
+        }
+    }
+
+    /**
+     * Caches vector of the image, it is persisted on the next {@link #flush()}.
+     * @param image image file
+     * @param vector input vector produced by the hash function of the cache
+     */
+    public void put(File image, double[] vector) {
+        put(image, image.length(), image.lastModified(), vector);
+    }
+
+    /**
+     * Caches vector of the image, it is persisted on the next {@link #flush()}.
+     * File state should be taken before the image is read, so a file changed
+     * while it is hashed is not taken for the hashed one.
+     * @param image image file
+     * @param length length of the image file before it was read
+     * @param modified modification time of the image file before it was read
+     * @param vector input vector produced by the hash function of the cache
+     */
+    public void put(File image, long length, long modified, double[] vector) {
+        if (vector.length != vectorSize) {
+            throw new IllegalArgumentException(String.format(
+                    "Vector has %d coordinates, cache holds vectors of %d", vector.length, vectorSize));
+        }
+        final String path = getPath(image);
+        synchronized (this) {
+            final Entry entry = new Entry(length, modified, slotNumber);
+            final MappedByteBuffer chunk;
+            try {
+                chunk = mapSlot(entry.slot);
+            }
+            catch (IOException ex) {
+                // vector is just not cached
+                return;
+            }
+            slotNumber++;
+            final int offset = entry.slot % chunkSlots * slotSize;
+            for (int i = 0; i < vectorSize; i++) {
+                chunk.putFloat(offset + i * Float.BYTES, (float) vector[i]);
+            }
+            entries.put(path, entry);
+            isChanged = true;
+        }
+    }
+
+    /**
+     * Writes cached vectors to disk, then rewrites the index.
+     * Compacts the data file if dead slots outnumber live ones.
+     * @throws IOException on failure of writing
+     */
+    public synchronized void flush() throws IOException {
+        if (!isChanged) {
+            return;
+        }
+        if (slotNumber - entries.size() > entries.size()) {
+            compact();
+        }
+        else {
+            for (MappedByteBuffer chunk : chunks) {
+                chunk.force();
+            }
+            writeIndex(generation, slotNumber, entries);
+        }
+        isChanged = false;
+    }
+
+    /**
+     * Copies live slots densely into the next generation of the data file, switches the index to it
+     * and removes the previous data file. Index refers to a complete data file at any moment.
+     * @throws IOException on failure of writing, the cache is left as it was;
+     *         or on failure of mapping the new data file, chunks are then mapped on demand
+     */
+    private void compact() throws IOException {
+        final int nextGeneration = generation + 1;
+        final File nextFile = getDataFile(nextGeneration);
+        final Map<String, Entry> nextEntries = new HashMap<>();
+        final RandomAccessFile nextDataFile = new RandomAccessFile(nextFile, "rw");
+        try {
+            final FileChannel nextChannel = nextDataFile.getChannel();
+            nextChannel.truncate(0);
+            int nextSlot = 0;
+            for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+                final Entry entry = mapEntry.getValue();
+                final ByteBuffer slot = mapSlot(entry.slot).duplicate();
+                final int offset = entry.slot % chunkSlots * slotSize;
+                slot.limit(offset + slotSize).position(offset);
+                final long position = (long) nextSlot * slotSize;
+                while (slot.hasRemaining()) {
+                    nextChannel.write(slot, position + slot.position() - offset);
+                }
+                nextEntries.put(mapEntry.getKey(), new Entry(entry.length, entry.modified, nextSlot));
+                nextSlot++;
+            }
+            nextChannel.force(false);
+            writeIndex(nextGeneration, nextSlot, nextEntries);
+        }
+        catch (IOException ex) {
+            nextDataFile.close();
+            Files.deleteIfExists(nextFile.toPath());
+            throw ex;
+        }
+        final RandomAccessFile previousDataFile = dataFile;
+        final File previousFile = getDataFile(generation);
+        chunks.clear();
+        generation = nextGeneration;
+        dataFile = nextDataFile;
+        channel = nextDataFile.getChannel();
+        entries.clear();
+        entries.putAll(nextEntries);
+        slotNumber = entries.size();
+        try {
+            previousDataFile.close();
+            Files.deleteIfExists(previousFile.toPath());
+        }
+        catch (IOException ex) {
+            // file may stay mapped until the buffers are collected, it is removed on the next opening
+        }
+        if (slotNumber > 0) {
+            mapSlot(slotNumber - 1);
+        }
+    }
+
+    /**
+     * Rewrites the index atomically.
+     * @param indexGeneration generation of the data file
+     * @param indexSlotNumber number of slots of the data file
+     * @param indexEntries entries of cached images
+     * @throws IOException on failure of writing
+     */
+    private void writeIndex(int indexGeneration, int indexSlotNumber, Map<String, Entry> indexEntries)
+            throws IOException {
+        final File temporaryFile = new File(indexFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(hashFunction.getSignature());
+            out.writeInt(vectorSize);
+            out.writeInt(indexGeneration);
+            out.writeInt(indexSlotNumber);
+            out.writeInt(indexEntries.size());
+            for (Map.Entry<String, Entry> mapEntry : indexEntries.entrySet()) {
+                final Entry entry = mapEntry.getValue();
+                out.writeUTF(mapEntry.getKey());
+                out.writeLong(entry.length);
+                out.writeLong(entry.modified);
+                out.writeInt(entry.slot);
+            }
+        }
+        Files.move(temporaryFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Flushes and closes the cache.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        }
+        finally {
+            chunks.clear();
+            dataFile.close();
+        }
+    }
+
+    /**
+     * Loads index, leaves the cache empty if the index belongs to another hash function or format.
+     * @param signature signature of the hash function
+     * @return true if index is loaded
+     */
+    private boolean loadIndex(String signature) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !signature.equals(in.readUTF())
+                    || in.readInt() != vectorSize) {
+                return false;
+            }
+            generation = in.readInt();
+            slotNumber = in.readInt();
+            final int entryNumber = in.readInt();
+            for (int e = 0; e < entryNumber; e++) {
+                final String path = in.readUTF();
+                entries.put(path, new Entry(in.readLong(), in.readLong(), in.readInt()));
+            }
+        }
+        catch (IOException ex) {
+            // damaged index, cache starts anew
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Maps chunks of the data file up to the slot, extends the data file if it is shorter.
+     * @param slot index of a slot
+     * @return chunk of the slot
+     * @throws IOException on failure of mapping
+     */
+    private MappedByteBuffer mapSlot(int slot) throws IOException {
+        final int chunkIndex = slot / chunkSlots;
+        final int required = slot % chunkSlots + 1;
+        if (chunkIndex < chunks.size() && chunks.get(chunkIndex).capacity() >= required * slotSize) {
+            return chunks.get(chunkIndex);
+        }
+        for (int c = chunks.size(); c < chunkIndex; c++) {
+            chunks.add(null);
+        }
+        for (int c = 0; c < chunkIndex; c++) {
+            if (chunks.get(c) == null || chunks.get(c).capacity() < chunkSlots * slotSize) {
+                chunks.set(c, map(c, chunkSlots));
+            }
+        }
+        final int mapped = chunkIndex < chunks.size() ? chunks.get(chunkIndex).capacity() / slotSize : 0;
+        final int slots = Math.min(chunkSlots, Math.max(required, Math.max(2 * mapped, MINIMAL_MAPPED_SLOTS)));
+        final MappedByteBuffer chunk = map(chunkIndex, slots);
+        if (chunkIndex < chunks.size()) {
+            chunks.set(chunkIndex, chunk);
+        }
+        else {
+            chunks.add(chunk);
+        }
+        return chunk;
+    }
+
+    /**
+     * @param dataGeneration generation of the data file
+     * @return data file of the generation
+     */
+    private File getDataFile(int dataGeneration) {
+        return new File(directory, baseName + "-" + dataGeneration + ".dat");
+    }
+
+    private MappedByteBuffer map(int chunkIndex, int slots) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_WRITE, (long) chunkIndex * chunkSlots * slotSize,
+                (long) slots * slotSize);
+    }
+
+    private static String getPath(File image) {
+        try {
+            return image.getCanonicalPath();
+        }
+        catch (IOException ex) {
+            return image.getAbsolutePath();
+        }
+    }
+
+    /**
+     * Slot of a cached image and the file state it was hashed from.
+     */
+    private static final class Entry {
+
+        private final long length;
+
+        private final long modified;
+
+        private final int slot;
+
+        Entry(long length, long modified, int slot) {
+            this.length = length;
+            this.modified = modified;
+            this.slot = slot;
+        }
+    }
+}
@@ -1,14 +1,63 @@
 package attatrol.imageclassifier.imagehash;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
 
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
 import attatrol.imageclassifier.ImageClassifierException;
 
 public interface ImageHashFunction extends Serializable {
 
     double[] hash(File image) throws ImageClassifierException;
 
+    /**
+     * Decodes an image for this hash function, implementations may decode
+     * only as much resolution as they need.
+     * @param stream image stream, it may be closed after reading
+     * @return decoded image or null if format of the stream is unknown
+     * @throws IOException on failure of decoding
+     */
+    default BufferedImage readImage(ImageInputStream stream) throws IOException {
+        return ImageIO.read(stream);
+    }
+
+    /**
+     * Decodes an image file already read into memory, see {@link IngestionPipeline}.
+     * Implementations may decode the array without copying it into a stream.
+     * @param data image file
+     * @param length length of the file in the array
+     * @return decoded image or null if format of the file is unknown
+     * @throws IOException on failure of decoding
+     */
+    default BufferedImage readImage(byte[] data, int length) throws IOException {
+        try (ImageInputStream stream = new MemoryCacheImageInputStream(new ByteArrayInputStream(data, 0, length))) {
+            return readImage(stream);
+        }
+    }
+
+    /**
+     * Hashes an already decoded image, see {@link IngestionPipeline}.
+     * @param image decoded image
+     * @return input vector
+     * @throws ImageClassifierException if the image can not be hashed
+     */
+    double[] hash(BufferedImage image) throws ImageClassifierException;
+
     int getResultSize();
 
+    /**
+     * Identifies the hash function together with its parameters,
+     * vectors cached by {@link FeatureCache} are valid only for the same signature.
+     * @return signature of the hash function
+     */
+    default String getSignature() {
+        return getClass().getName() + ':' + getResultSize();
+    }
+
 }
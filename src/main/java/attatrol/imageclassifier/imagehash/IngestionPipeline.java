@@ -0,0 +1,413 @@
+package attatrol.imageclassifier.imagehash;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+import attatrol.imageclassifier.ImageClassifierException;
+import attatrol.imageclassifier.i18n.ImageClassifierI18nProvider;
+
+/**
+ * Produces input vectors of many images in three stages running in parallel:
+ * reader threads read files into pooled buffers, decoder threads decode buffers with
+ * {@link ImageHashFunction#readImage(byte[], int)}, which bypasses the ImageIO disk cache,
+ * hasher threads hash decoded images. Stages are connected with bounded queues and readers wait
+ * for a free buffer of the pool, so a slow stage holds back the previous ones
+ * and only a bounded number of files and images is kept in memory at once.
+ * <p>
+ * Vectors are returned in the order of files. Images found in a {@link FeatureCache}
+ * are not read at all, hashed images are added to the cache.
+ * Threads live only during {@link #hash(File[], FeatureCache)}, a pipeline may be shared.
+ * @author attatrol
+ *
+ */
+public final class IngestionPipeline {
+
+    /**
+     * Initial size of a pooled buffer, it grows with files read into it.
+     */
+    private static final int INITIAL_BUFFER_SIZE = 1 << 16;
+
+    private final ImageHashFunction hashFunction;
+
+    private final int readerNumber;
+
+    private final int decoderNumber;
+
+    private final int hasherNumber;
+
+    /**
+     * Capacity of each queue and number of pooled buffers
+     */
+    private final int queueCapacity;
+
+    /**
+     * Default ctor.
+     * @param hashFunction hash function
+     * @param readerNumber number of reader threads
+     * @param decoderNumber number of decoder threads
+     * @param hasherNumber number of hasher threads
+     * @param queueCapacity capacity of each queue between stages, also number of pooled buffers
+     */
+    public IngestionPipeline(ImageHashFunction hashFunction, int readerNumber, int decoderNumber,
+            int hasherNumber, int queueCapacity) {
+        if (readerNumber < 1 || decoderNumber < 1 || hasherNumber < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Number of threads of each stage and queue capacity must be positive");
+        }
+        this.hashFunction = hashFunction;
+        this.readerNumber = readerNumber;
+        this.decoderNumber = decoderNumber;
+        this.hasherNumber = hasherNumber;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Simple ctor. Uses 2 reader threads, a decoder thread per available processor,
+     * half as many hasher threads and queues twice longer than the number of decoders.
+     * @param hashFunction hash function
+     */
+    public IngestionPipeline(ImageHashFunction hashFunction) {
+        this(hashFunction, 2, Runtime.getRuntime().availableProcessors(),
+                Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+                2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    public ImageHashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    /**
+     * Produces input vectors of images.
+     * @param images image files
+     * @param cache feature cache of the hash function, null if there is none
+     * @return input vector of each image in the order of files
+     * @throws ImageClassifierException if some image can not be read, decoded or hashed
+     */
+    public double[][] hash(File[] images, FeatureCache cache) throws ImageClassifierException {
+        final Run run = new Run(images, cache);
+        final Thread[] threads = new Thread[readerNumber + decoderNumber + hasherNumber];
+        for (int t = 0; t < threads.length; t++) {
+            final Runnable stage;
+            final String name;
+            if (t < readerNumber) {
+                stage = run::read;
+                name = "ingestion-reader-" + t;
+            }
+            else if (t < readerNumber + decoderNumber) {
+                stage = run::decode;
+                name = "ingestion-decoder-" + (t - readerNumber);
+            }
+            else {
+                stage = run::hash;
+                name = "ingestion-hasher-" + (t - readerNumber - decoderNumber);
+            }
+            threads[t] = new Thread(stage, name);
+            threads[t].setDaemon(true);
+            threads[t].start();
+        }
+        boolean isInterrupted = false;
+        for (Thread thread : threads) {
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                }
+                catch (InterruptedException ex) {
+                    isInterrupted = true;
+                }
+            }
+        }
+        if (isInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (run.failure.get() != null) {
+            throw run.failure.get();
+        }
+        return run.vectors;
+    }
+
+    /**
+     * Growable byte buffer of the pool.
+     */
+    private static final class Buffer {
+
+        private byte[] data = new byte[INITIAL_BUFFER_SIZE];
+
+        private int length;
+
+        /**
+         * Reads the whole file into the buffer.
+         * @param fileLength length of the file when reading starts
+         */
+        void read(File file, long fileLength) throws IOException {
+            length = 0;
+            // one spare byte lets the end of the file be seen without growing the buffer
+            if (fileLength >= data.length && fileLength < Integer.MAX_VALUE - 1) {
+                data = new byte[(int) fileLength + 1];
+            }
+            try (InputStream in = new FileInputStream(file)) {
+                int read;
+                while ((read = in.read(data, length, data.length - length)) != -1) {
+                    length += read;
+                    if (length == data.length) {
+                        // file is longer than it was, grow only while data comes
+                        final int next = in.read();
+                        if (next == -1) {
+                            break;
+                        }
+                        data = Arrays.copyOf(data, 2 * data.length);
+                        data[length++] = (byte) next;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Image passed between stages, null buffer and image stand for the end of the stage.
+     */
+    private static final class Item {
+
+        private final int index;
+
+        private final Buffer buffer;
+
+        private final BufferedImage image;
+
+        Item(int index, Buffer buffer, BufferedImage image) {
+            this.index = index;
+            this.buffer = buffer;
+            this.image = image;
+        }
+    }
+
+    /**
+     * State of a single call.
+     */
+    private final class Run {
+
+        private final File[] images;
+
+        private final FeatureCache cache;
+
+        private final double[][] vectors;
+
+        /**
+         * Lengths of image files taken before they are read, cached vectors are bound to them
+         */
+        private final long[] fileLengths;
+
+        /**
+         * Modification times of image files taken before they are read
+         */
+        private final long[] fileModified;
+
+        private final BlockingQueue<Buffer> pool = new ArrayBlockingQueue<>(queueCapacity);
+
+        private final BlockingQueue<Item> decodeQueue = new ArrayBlockingQueue<>(queueCapacity);
+
+        private final BlockingQueue<Item> hashQueue = new ArrayBlockingQueue<>(queueCapacity);
+
+        /**
+         * Index of the next image to be read
+         */
+        private final AtomicInteger nextImage = new AtomicInteger();
+
+        private final AtomicInteger activeReaders = new AtomicInteger(readerNumber);
+
+        private final AtomicInteger activeDecoders = new AtomicInteger(decoderNumber);
+
+        /**
+         * First failure, later stages skip their work after it
+         */
+        private final AtomicReference<ImageClassifierException> failure = new AtomicReference<>();
+
+        Run(File[] images, FeatureCache cache) {
+            this.images = images;
+            this.cache = cache;
+            vectors = new double[images.length][];
+            fileLengths = new long[images.length];
+            fileModified = new long[images.length];
+            for (int b = 0; b < queueCapacity; b++) {
+                pool.add(new Buffer());
+            }
+        }
+
+        void read() {
+            try {
+                int index;
+                while (failure.get() == null && (index = nextImage.getAndIncrement()) < images.length) {
+                    if (!readImage(index)) {
+                        break;
+                    }
+                }
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                if (activeReaders.decrementAndGet() == 0) {
+                    endStage(decodeQueue, decoderNumber);
+                }
+            }
+        }
+
+        /**
+         * Passes file of the image to decoders unless its vector is cached.
+         * @return false on failure
+         */
+        private boolean readImage(int index) throws InterruptedException {
+            Buffer buffer = null;
+            try {
+                fileLengths[index] = images[index].length();
+                fileModified[index] = images[index].lastModified();
+                if (cache != null) {
+                    vectors[index] = cache.get(images[index], fileLengths[index], fileModified[index]);
+                    if (vectors[index] != null) {
+                        return true;
+                    }
+                }
+                buffer = pool.take();
+                buffer.read(images[index], fileLengths[index]);
+                decodeQueue.put(new Item(index, buffer, null));
+                buffer = null;
+                return true;
+            }
+            catch (IOException | RuntimeException | Error ex) {
+                fail(images[index], ex);
+                return false;
+            }
+            finally {
+                if (buffer != null) {
+                    // the buffer was taken from the pool, so there is room for it
+                    pool.offer(buffer);
+                }
+            }
+        }
+
+        void decode() {
+            try {
+                while (true) {
+                    final Item item = decodeQueue.take();
+                    if (item.buffer == null) {
+                        break;
+                    }
+                    BufferedImage image = null;
+                    try {
+                        if (failure.get() == null) {
+                            image = decodeImage(item);
+                        }
+                    }
+                    finally {
+                        pool.offer(item.buffer);
+                    }
+                    if (image != null) {
+                        hashQueue.put(new Item(item.index, null, image));
+                    }
+                }
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                if (activeDecoders.decrementAndGet() == 0) {
+                    endStage(hashQueue, hasherNumber);
+                }
+            }
+        }
+
+        /**
+         * @return decoded image, null on failure
+         */
+        private BufferedImage decodeImage(Item item) {
+            try {
+                final BufferedImage image = hashFunction.readImage(item.buffer.data, item.buffer.length);
+                if (image == null) {
+                    fail(images[item.index], null);
+                }
+                return image;
+            }
+            catch (IOException | RuntimeException | Error ex) {
+                fail(images[item.index], ex);
+                return null;
+            }
+        }
+
+        void hash() {
+            try {
+                while (true) {
+                    final Item item = hashQueue.take();
+                    if (item.image == null) {
+                        break;
+                    }
+                    if (failure.get() == null) {
+                        try {
+                            vectors[item.index] = hashFunction.hash(item.image);
+                            if (cache != null) {
+                                cache.put(images[item.index], fileLengths[item.index], fileModified[item.index],
+                                        vectors[item.index]);
+                            }
+                        }
+                        catch (ImageClassifierException | RuntimeException | Error ex) {
+                            fail(images[item.index], ex);
+                        }
+                    }
+                }
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Queues an end item for each thread of the next stage, waits for room even if interrupted,
+         * so the next stage always ends.
+         */
+        private void endStage(BlockingQueue<Item> queue, int threadNumber) {
+            boolean isInterrupted = false;
+            for (int t = 0; t < threadNumber; t++) {
+                while (true) {
+                    try {
+                        queue.put(new Item(-1, null, null));
+                        break;
+                    }
+                    catch (InterruptedException ex) {
+                        isInterrupted = true;
+                    }
+                }
+            }
+            if (isInterrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Keeps the first failure, it never throws itself.
+         * @param image file of the failed image
+         * @param cause cause of the failure, null if the image is of unknown format
+         */
+        private void fail(File image, Throwable cause) {
+            String prefix;
+            try {
+                prefix = ImageClassifierI18nProvider.getText("message.filecannotbeopened");
+            }
+            catch (RuntimeException ex) {
+                prefix = "";
+            }
+            String message = image.toString();
+            if (cause != null) {
+                message += " " + (cause.getLocalizedMessage() != null ? cause.getLocalizedMessage()
+                        : cause.getClass().getName());
+            }
+            failure.compareAndSet(null, new ImageClassifierException(prefix + message));
+        }
+    }
+}
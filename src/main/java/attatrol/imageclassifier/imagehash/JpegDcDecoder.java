@@ -0,0 +1,582 @@
+package attatrol.imageclassifier.imagehash;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+
+/**
+ * Decodes a thumbnail of a sequential Huffman JPEG image from DC coefficients of its 8x8 blocks.
+ * DC coefficient is 8 times the average of a block, so each pixel of the thumbnail is the average
+ * of a block of the image. AC coefficients are only skipped in the entropy coded data,
+ * there is neither inverse DCT, nor upsampling, nor conversion of each pixel.
+ * <p>
+ * Only 8-bit baseline and extended sequential Huffman images with 1 (gray) or 3 (YCbCr or Adobe RGB)
+ * components are supported, other images are left to the regular decoder.
+ * @author attatrol
+ *
+ */
+final class JpegDcDecoder {
+
+    /**
+     * Number of bits decoded by a single lookup of a Huffman table
+     */
+    private static final int LOOKUP_BITS = 9;
+
+    private final byte[] data;
+
+    private final int length;
+
+    /**
+     * Position of the next byte
+     */
+    private int position;
+
+    /**
+     * DC value of the first coefficient of each quantization table
+     */
+    private final int[] dcQuantization = new int[4];
+
+    private final HuffmanTable[] dcTables = new HuffmanTable[4];
+
+    private final HuffmanTable[] acTables = new HuffmanTable[4];
+
+    private int restartInterval;
+
+    /**
+     * Transform flag of Adobe segment, -1 if there is none
+     */
+    private int adobeTransform = -1;
+
+    private int width;
+
+    private int height;
+
+    private Component[] components;
+
+    private int maxH;
+
+    private int maxV;
+
+    private int mcusX;
+
+    private int mcusY;
+
+    private long bitBuffer;
+
+    private int bitCount;
+
+    /**
+     * Hidden ctor, use {@link #decode(byte[], int, int, int)}.
+     */
+    private JpegDcDecoder(byte[] data, int length) {
+        this.data = data;
+        this.length = length;
+    }
+
+    /**
+     * @param data JPEG file
+     * @param length length of the file in the array
+     * @param minimalWidth minimal width of the thumbnail
+     * @param minimalHeight minimal height of the thumbnail
+     * @return thumbnail with a pixel per whole 8x8 block of the image, null if the image is not supported
+     * or the thumbnail would be smaller than required
+     * @throws IOException on broken JPEG structure
+     */
+    static BufferedImage decode(byte[] data, int length, int minimalWidth, int minimalHeight) throws IOException {
+        return new JpegDcDecoder(data, length).decode(minimalWidth, minimalHeight);
+    }
+
+    /**
+     * @param data beginning of a file
+     * @param length length of the beginning in the array
+     * @return true if it is a beginning of a JPEG file
+     */
+    static boolean isJpeg(byte[] data, int length) {
+        return length >= 2 && (data[0] & 0xff) == 0xFF && (data[1] & 0xff) == 0xD8;
+    }
+
+    private BufferedImage decode(int minimalWidth, int minimalHeight) throws IOException {
+        if (!isJpeg(data, length)) {
+            return null;
+        }
+        position = 2;
+        while (true) {
+            final int marker = nextMarker();
+            if (marker == 0xD9) {
+                break;
+            }
+            if (marker == 0xD8 || marker >= 0xD0 && marker <= 0xD7 || marker == 0x01) {
+                continue;
+            }
+            final int segmentEnd = position + readShort();
+            if (segmentEnd > length) {
+                throw new IOException("JPEG segment is truncated");
+            }
+            switch (marker) {
+                case 0xC0:
+                case 0xC1:
+                    if (!readFrame()) {
+                        return null;
+                    }
+                    if (getThumbnailWidth() < minimalWidth || getThumbnailHeight() < minimalHeight) {
+                        return null;
+                    }
+                    break;
+                case 0xC4:
+                    readHuffmanTables(segmentEnd);
+                    break;
+                case 0xDB:
+                    readQuantizationTables(segmentEnd);
+                    break;
+                case 0xDD:
+                    restartInterval = readShort();
+                    break;
+                case 0xEE:
+                    readAdobe(segmentEnd);
+                    break;
+                case 0xDA:
+                    if (components == null) {
+                        throw new IOException("JPEG scan precedes frame");
+                    }
+                    readScan();
+                    continue;
+                default:
+                    if (marker >= 0xC2 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                        // progressive, lossless or arithmetic coding
+                        return null;
+                    }
+            }
+            position = segmentEnd;
+        }
+        if (components == null) {
+            throw new IOException("JPEG has no frame");
+        }
+        return createThumbnail();
+    }
+
+    /**
+     * Reads frame header.
+     * @return false if the frame is not supported
+     */
+    private boolean readFrame() throws IOException {
+        if (readByte() != 8) {
+            return false;
+        }
+        height = readShort();
+        width = readShort();
+        final int componentNumber = readByte();
+        if (height == 0 || width == 0 || componentNumber != 1 && componentNumber != 3) {
+            return false;
+        }
+        components = new Component[componentNumber];
+        for (int c = 0; c < componentNumber; c++) {
+            final Component component = new Component();
+            component.id = readByte();
+            final int sampling = readByte();
+            component.h = sampling >> 4;
+            component.v = sampling & 15;
+            component.quantizationTable = readByte() & 3;
+            if (component.h < 1 || component.h > 4 || component.v < 1 || component.v > 4) {
+                throw new IOException("Bad JPEG sampling factors");
+            }
+            maxH = Math.max(maxH, component.h);
+            maxV = Math.max(maxV, component.v);
+            components[c] = component;
+        }
+        mcusX = (width + 8 * maxH - 1) / (8 * maxH);
+        mcusY = (height + 8 * maxV - 1) / (8 * maxV);
+        for (Component component : components) {
+            component.blocksPerLine = mcusX * component.h;
+            component.dc = new int[component.blocksPerLine * mcusY * component.v];
+            // blocks of a non-interleaved scan, they do not cover padding of MCUs
+            component.scanBlocksX = ((width * component.h + maxH - 1) / maxH + 7) / 8;
+            component.scanBlocksY = ((height * component.v + maxV - 1) / maxV + 7) / 8;
+        }
+        return true;
+    }
+
+    private void readHuffmanTables(int segmentEnd) throws IOException {
+        while (position < segmentEnd) {
+            final int tableInfo = readByte();
+            final int[] counts = new int[17];
+            int symbolNumber = 0;
+            for (int l = 1; l <= 16; l++) {
+                counts[l] = readByte();
+                symbolNumber += counts[l];
+            }
+            if (position + symbolNumber > segmentEnd) {
+                throw new IOException("Bad JPEG Huffman table");
+            }
+            final int[] symbols = new int[symbolNumber];
+            for (int s = 0; s < symbolNumber; s++) {
+                symbols[s] = readByte();
+            }
+            final HuffmanTable table = new HuffmanTable(counts, symbols);
+            if (tableInfo >> 4 == 0) {
+                dcTables[tableInfo & 3] = table;
+            }
+            else {
+                acTables[tableInfo & 3] = table;
+            }
+        }
+    }
+
+    private void readQuantizationTables(int segmentEnd) throws IOException {
+        while (position < segmentEnd) {
+            final int tableInfo = readByte();
+            if (tableInfo >> 4 == 0) {
+                dcQuantization[tableInfo & 3] = readByte();
+                position += 63;
+            }
+            else {
+                dcQuantization[tableInfo & 3] = readShort();
+                position += 126;
+            }
+        }
+    }
+
+    private void readAdobe(int segmentEnd) {
+        if (segmentEnd - position >= 12 && data[position] == 'A' && data[position + 1] == 'd'
+                && data[position + 2] == 'o' && data[position + 3] == 'b' && data[position + 4] == 'e') {
+            adobeTransform = data[position + 11] & 0xff;
+        }
+    }
+
+    /**
+     * Reads scan header and decodes its entropy coded data, position is left at the next marker.
+     */
+    private void readScan() throws IOException {
+        final int componentNumber = readByte();
+        final Component[] scanComponents = new Component[componentNumber];
+        for (int s = 0; s < componentNumber; s++) {
+            final int id = readByte();
+            final int tables = readByte();
+            for (Component component : components) {
+                if (component.id == id) {
+                    scanComponents[s] = component;
+                }
+            }
+            if (scanComponents[s] == null) {
+                throw new IOException("Unknown JPEG scan component");
+            }
+            scanComponents[s].dcTable = dcTables[tables >> 4 & 3];
+            scanComponents[s].acTable = acTables[tables & 3];
+            if (scanComponents[s].dcTable == null || scanComponents[s].acTable == null) {
+                throw new IOException("Missing JPEG Huffman table");
+            }
+            scanComponents[s].quantization = dcQuantization[scanComponents[s].quantizationTable];
+            scanComponents[s].predictor = 0;
+        }
+        // spectral selection and successive approximation are fixed for sequential images
+        position += 3;
+        bitBuffer = 0L;
+        bitCount = 0;
+        if (componentNumber == 1) {
+            final Component component = scanComponents[0];
+            final int blockNumber = component.scanBlocksX * component.scanBlocksY;
+            for (int b = 0; b < blockNumber; b++) {
+                if (restartInterval > 0 && b > 0 && b % restartInterval == 0) {
+                    restart(scanComponents);
+                }
+                decodeBlock(component, b / component.scanBlocksX * component.blocksPerLine
+                        + b % component.scanBlocksX);
+            }
+        }
+        else {
+            final int mcuNumber = mcusX * mcusY;
+            for (int m = 0; m < mcuNumber; m++) {
+                if (restartInterval > 0 && m > 0 && m % restartInterval == 0) {
+                    restart(scanComponents);
+                }
+                final int mcuX = m % mcusX;
+                final int mcuY = m / mcusX;
+                for (Component component : scanComponents) {
+                    for (int by = 0; by < component.v; by++) {
+                        final int lineStart = (mcuY * component.v + by) * component.blocksPerLine
+                                + mcuX * component.h;
+                        for (int bx = 0; bx < component.h; bx++) {
+                            decodeBlock(component, lineStart + bx);
+                        }
+                    }
+                }
+            }
+        }
+        skipToMarker();
+    }
+
+    /**
+     * Decodes a block, keeps its dequantized DC coefficient and skips AC coefficients.
+     */
+    private void decodeBlock(Component component, int block) throws IOException {
+        int size = decodeSymbol(component.dcTable);
+        if (size > 0) {
+            component.predictor += receiveExtend(size);
+        }
+        component.dc[block] = component.predictor * component.quantization;
+        final HuffmanTable acTable = component.acTable;
+        for (int k = 1; k < 64; k++) {
+            final int symbol = decodeSymbol(acTable);
+            size = symbol & 15;
+            if (size == 0) {
+                if (symbol != 0xF0) {
+                    break;
+                }
+                k += 15;
+            }
+            else {
+                k += symbol >> 4;
+                bitCount -= size;
+            }
+        }
+    }
+
+    private int decodeSymbol(HuffmanTable table) throws IOException {
+        if (bitCount < 32) {
+            fill();
+        }
+        final int entry = table.lookup[(int) (bitBuffer >>> (bitCount - LOOKUP_BITS)) & ((1 << LOOKUP_BITS) - 1)];
+        if (entry != 0) {
+            bitCount -= entry >> 8;
+            return entry & 0xff;
+        }
+        for (int l = LOOKUP_BITS + 1; l <= 16; l++) {
+            final int code = (int) (bitBuffer >>> (bitCount - l)) & ((1 << l) - 1);
+            if (code <= table.maxCode[l]) {
+                bitCount -= l;
+                return table.symbols[table.valueOffset[l] + code];
+            }
+        }
+        throw new IOException("Bad JPEG Huffman code");
+    }
+
+    private int receiveExtend(int size) {
+        if (bitCount < size) {
+            fill();
+        }
+        int value = (int) (bitBuffer >>> (bitCount - size)) & ((1 << size) - 1);
+        bitCount -= size;
+        if (value < 1 << (size - 1)) {
+            value += (-1 << size) + 1;
+        }
+        return value;
+    }
+
+    /**
+     * Fills bit buffer with entropy coded bytes, missing bytes after a marker are zeros.
+     */
+    private void fill() {
+        while (bitCount <= 56) {
+            int value = 0;
+            if (position < length) {
+                value = data[position] & 0xff;
+                if (value != 0xFF) {
+                    position++;
+                }
+                else if (position + 1 < length && data[position + 1] == 0) {
+                    position += 2;
+                }
+                else {
+                    value = 0;
+                }
+            }
+            bitBuffer = bitBuffer << 8 | value;
+            bitCount += 8;
+        }
+    }
+
+    private void restart(Component[] scanComponents) throws IOException {
+        bitBuffer = 0L;
+        bitCount = 0;
+        while (position + 1 < length && !((data[position] & 0xff) == 0xFF
+                && (data[position + 1] & 0xff) >= 0xD0 && (data[position + 1] & 0xff) <= 0xD7)) {
+            position++;
+        }
+        if (position + 1 >= length) {
+            throw new IOException("Missing JPEG restart marker");
+        }
+        position += 2;
+        for (Component component : scanComponents) {
+            component.predictor = 0;
+        }
+    }
+
+    /**
+     * Moves position to the first marker after entropy coded data.
+     */
+    private void skipToMarker() {
+        while (position + 1 < length) {
+            final int next = data[position + 1] & 0xff;
+            if ((data[position] & 0xff) == 0xFF && next != 0 && (next < 0xD0 || next > 0xD7)) {
+                return;
+            }
+            position++;
+        }
+        position = length;
+    }
+
+    /**
+     * @return code of the next marker, EOI if there is no more
+     */
+    private int nextMarker() throws IOException {
+        if (position >= length) {
+            return 0xD9;
+        }
+        if ((data[position] & 0xff) != 0xFF) {
+            throw new IOException("JPEG marker is expected");
+        }
+        while (position < length && (data[position] & 0xff) == 0xFF) {
+            position++;
+        }
+        return position < length ? data[position++] & 0xff : 0xD9;
+    }
+
+    private int readByte() throws IOException {
+        if (position >= length) {
+            throw new IOException("JPEG is truncated");
+        }
+        return data[position++] & 0xff;
+    }
+
+    private int readShort() throws IOException {
+        return readByte() << 8 | readByte();
+    }
+
+    /**
+     * Partial blocks at the right and bottom edges are left out, so each pixel of the thumbnail
+     * stands for the same 8x8 pixels of the image.
+     */
+    private int getThumbnailWidth() {
+        return width / 8;
+    }
+
+    private int getThumbnailHeight() {
+        return height / 8;
+    }
+
+    /**
+     * Converts averages of blocks to a BGR or gray thumbnail, chroma blocks cover several pixels
+     * of the thumbnail if chroma is subsampled.
+     */
+    private BufferedImage createThumbnail() {
+        final int thumbnailWidth = getThumbnailWidth();
+        final int thumbnailHeight = getThumbnailHeight();
+        final boolean isGray = components.length == 1;
+        final BufferedImage thumbnail = new BufferedImage(thumbnailWidth, thumbnailHeight,
+                isGray ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_3BYTE_BGR);
+        final byte[] pixels = ((DataBufferByte) thumbnail.getRaster().getDataBuffer()).getData();
+        if (isGray) {
+            final Component gray = components[0];
+            for (int y = 0; y < thumbnailHeight; y++) {
+                for (int x = 0; x < thumbnailWidth; x++) {
+                    pixels[y * thumbnailWidth + x] = (byte) clamp(gray.getAverage(x, y, maxH, maxV));
+                }
+            }
+            return thumbnail;
+        }
+        final boolean isRgb = adobeTransform == 0;
+        int index = 0;
+        for (int y = 0; y < thumbnailHeight; y++) {
+            for (int x = 0; x < thumbnailWidth; x++) {
+                final double first = components[0].getAverage(x, y, maxH, maxV);
+                final double second = components[1].getAverage(x, y, maxH, maxV);
+                final double third = components[2].getAverage(x, y, maxH, maxV);
+                if (isRgb) {
+                    pixels[index++] = (byte) clamp(third);
+                    pixels[index++] = (byte) clamp(second);
+                    pixels[index++] = (byte) clamp(first);
+                }
+                else {
+                    // averages of a linear transform are the transform of averages
+                    final double cb = second - 128.;
+                    final double cr = third - 128.;
+                    pixels[index++] = (byte) clamp(first + 1.772 * cb);
+                    pixels[index++] = (byte) clamp(first - 0.344136 * cb - 0.714136 * cr);
+                    pixels[index++] = (byte) clamp(first + 1.402 * cr);
+                }
+            }
+        }
+        return thumbnail;
+    }
+
+    private static int clamp(double value) {
+        final long rounded = Math.round(value);
+        return rounded < 0 ? 0 : rounded > 255 ? 255 : (int) rounded;
+    }
+
+    /**
+     * Color component of the frame.
+     */
+    private static final class Component {
+
+        private int id;
+
+        private int h;
+
+        private int v;
+
+        private int quantizationTable;
+
+        private int quantization;
+
+        private int blocksPerLine;
+
+        private int scanBlocksX;
+
+        private int scanBlocksY;
+
+        /**
+         * Dequantized DC coefficient of each block
+         */
+        private int[] dc;
+
+        private int predictor;
+
+        private HuffmanTable dcTable;
+
+        private HuffmanTable acTable;
+
+        /**
+         * @return average sample of the block covering a pixel of the thumbnail
+         */
+        double getAverage(int x, int y, int maxH, int maxV) {
+            return dc[y * v / maxV * blocksPerLine + x * h / maxH] / 8. + 128.;
+        }
+    }
+
+    /**
+     * Canonical Huffman table with a lookup of the first {@link #LOOKUP_BITS} bits.
+     */
+    private static final class HuffmanTable {
+
+        /**
+         * Length and symbol of each code of at most {@link #LOOKUP_BITS} bits by its bits,
+         * zero if the code is longer
+         */
+        private final int[] lookup = new int[1 << LOOKUP_BITS];
+
+        private final int[] maxCode = new int[18];
+
+        private final int[] valueOffset = new int[17];
+
+        private final int[] symbols;
+
+        HuffmanTable(int[] counts, int[] symbols) {
+            this.symbols = symbols;
+            int code = 0;
+            int k = 0;
+            for (int l = 1; l <= 16; l++) {
+                valueOffset[l] = k - code;
+                for (int i = 0; i < counts[l]; i++, k++, code++) {
+                    if (l <= LOOKUP_BITS) {
+                        final int shift = LOOKUP_BITS - l;
+                        for (int suffix = 0; suffix < 1 << shift; suffix++) {
+                            lookup[code << shift | suffix] = l << 8 | symbols[k];
+                        }
+                    }
+                }
+                maxCode[l] = counts[l] > 0 ? code - 1 : -1;
+                code <<= 1;
+            }
+        }
+    }
+}
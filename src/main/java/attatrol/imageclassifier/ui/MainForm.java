@@ -10,6 +10,7 @@ import attatrol.imageclassifier.ImageClass;
 import attatrol.imageclassifier.ImageClassifier;
 import attatrol.imageclassifier.ImageClassifierException;
 import attatrol.imageclassifier.i18n.ImageClassifierI18nProvider;
+import attatrol.imageclassifier.imagehash.FeatureCache;
 import attatrol.imageclassifier.imagehash.ImageHashFunction;
 import attatrol.imageclassifier.serialization.ImageClassifierSerializationBean;
 import attatrol.imageclassifier.ui.imagehash.DefaultImageHashFunctionFactory;
@@ -114,6 +115,11 @@ public class MainForm extends Scene {
 
     private NeuralNetwork neuralNetwork;
 
+    /**
+     * Feature cache of the current hash function, null if it can not be opened
+     */
+    private FeatureCache featureCache;
+
     /**
      * Populates scene with all of GUI elements.
      * @return complete scene ready to be shown
@@ -160,6 +166,26 @@ public class MainForm extends Scene {
 
     }
 
+    /**
+     * Opens feature cache of the current hash function, closes cache of the previous one.
+     * @return feature cache or null if it can not be opened
+     */
+    private FeatureCache getFeatureCache() {
+        if (featureCache != null && featureCache.getHashFunction() == hashFunction) {
+            return featureCache;
+        }
+        try {
+            if (featureCache != null) {
+                featureCache.close();
+            }
+            featureCache = FeatureCache.open(FeatureCache.getDefaultDirectory(), hashFunction);
+        }
+        catch (IOException ex) {
+            featureCache = null;
+        }
+        return featureCache;
+    }
+
     private void setState(InternalState newState) {
         state = newState;
         statusLabel.setText(newState.getStatusString());
@@ -260,8 +286,17 @@ public class MainForm extends Scene {
                     try {
                         classifier.validate();
                         try {
+                            final FeatureCache cache = getFeatureCache();
                             teachForm = new NeuralNetworkLearningDialog(neuralNetwork,
-                                    classifier.getLearningPairs());
+                                    classifier.getLearningPairs(cache));
+                            if (cache != null) {
+                                try {
+                                    cache.flush();
+                                }
+                                catch (IOException ex) {
+                                    // vectors are hashed again next time
+                                }
+                            }
                             final Optional<Boolean> teachingStatus = teachForm.showAndWait();
                             if (teachingStatus.isPresent()) {
                                 if (teachingStatus.get()) {
@@ -240,23 +240,30 @@ public class NeuralNetworkLearningDialog extends GenericValueReturnDialog<Boolea
             final int halfOfSetSize = learningPairs.size() / 2;
             while(counter < limit && isLearningProcessAlive) {
                 Collections.shuffle(learningPairs);
-                int itemCounter = halfOfSetSize;
                 double maxDistance = 0;
                 double averageDistance = 0;
                 try {
-                    for (LearningPair item : learningPairs) {
-                        if (itemCounter > 0) {
-                            neuralNetwork.learn(item.getInput(), item.getReference());
-                            itemCounter--;
-                        }
-                        else {
-                            double[] result = neuralNetwork.map(item.getInput());
-                            double difference =
-                                    Utils.measureManhattanDistanceBetweenVectors(result, item.getReference());
-                            averageDistance += difference;
-                            if (difference > maxDistance) {
-                                maxDistance = difference;
-                            }
+                    final List<LearningPair> learnPairs = learningPairs.subList(0, halfOfSetSize);
+                    final double[][] learnInputs = new double[learnPairs.size()][];
+                    final double[][] learnReferences = new double[learnPairs.size()][];
+                    for (int i = 0; i < learnInputs.length; i++) {
+                        learnInputs[i] = learnPairs.get(i).getInput();
+                        learnReferences[i] = learnPairs.get(i).getReference();
+                    }
+                    neuralNetwork.learnEpoch(learnInputs, learnReferences);
+                    final List<LearningPair> testPairs =
+                            learningPairs.subList(halfOfSetSize, learningPairs.size());
+                    final double[][] inputs = new double[testPairs.size()][];
+                    for (int i = 0; i < inputs.length; i++) {
+                        inputs[i] = testPairs.get(i).getInput();
+                    }
+                    final double[][] results = neuralNetwork.mapBatch(inputs);
+                    for (int i = 0; i < results.length; i++) {
+                        double difference = Utils.measureManhattanDistanceBetweenVectors(results[i],
+                                testPairs.get(i).getReference());
+                        averageDistance += difference;
+                        if (difference > maxDistance) {
+                            maxDistance = difference;
                         }
                     }
                 }
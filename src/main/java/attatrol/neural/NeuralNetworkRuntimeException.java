@@ -16,4 +16,8 @@ public class NeuralNetworkRuntimeException extends Exception {
         super(message);
     }
 
+    public NeuralNetworkRuntimeException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
 }
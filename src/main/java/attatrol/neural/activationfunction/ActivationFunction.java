@@ -7,18 +7,20 @@ import attatrol.neural.NeuralNetworkGenerationException;
 /**
  * This is an interface for some activation function.
  * Its domain is a set of real numbers.
- * Its codomain MUST be [0, 1] and it is your resulting vector codomain.
+ * Its codomain should be [0, 1] if it is applied to the surface layer with references in [0, 1]
+ * or used by a stochastic analyzer, piecewise linear functions (like {@link ReluFunction})
+ * are unbounded and suit other cases.
  * It should be a monotonic (increasing) function.
- * It should tend to 0 (or 1) when argument tends to -inf,
+ * Bounded function should tend to 0 (or 1) when argument tends to -inf,
  * and it should tend to 1 (or 0) when argument tends to +inf,
- * it should be a differentiable function for consistency with backpropagation algorithm.
+ * it should be differentiable (maybe except few points) for consistency with backpropagation algorithm.
  * @author attatrol
  *
  */
 public interface ActivationFunction extends Serializable {
 
     /**
-     * Calculates function value. Must be in [0, 1].
+     * Calculates function value.
      * @param arg argument
      * @return value
      */
@@ -32,6 +34,36 @@ public interface ActivationFunction extends Serializable {
      */
     abstract double getDerivative(double arg, double funcValue);
 
+    /**
+     * Calculates function values of a range at once: out[i] = f(in[i]), from <= i < to.
+     * Implementations override it with a loop over their own values,
+     * so each layer is processed by a monomorphic loop instead of a call per neuron.
+     * @param in arguments
+     * @param out array for values, may be the same as arguments
+     * @param from first index
+     * @param to index after the last one
+     */
+    default void apply(double[] in, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = getValue(in[i]);
+        }
+    }
+
+    /**
+     * Calculates first derivatives of a range at once: out[i] = f'(in[i]), from <= i < to.
+     * Implementations override it as {@link #apply(double[], double[], int, int)}.
+     * @param in arguments
+     * @param values calculated values of the function
+     * @param out array for derivatives
+     * @param from first index
+     * @param to index after the last one
+     */
+    default void applyDerivative(double[] in, double[] values, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = getDerivative(in[i], values[i]);
+        }
+    }
+
     /**
      * Checks if function has proper internal state.
      * Should be performed once before it will be used.
@@ -0,0 +1,99 @@
+package attatrol.neural.activationfunction;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+
+/**
+ * Hard sigmoid f(x) = max(0, min(1, a * x / 4 + 1 / 2)), a > 0, piecewise linear approximation
+ * of the sigmoid function with the same flatness ratio (see {@link SigmoidFunction}):
+ * both have the same value and derivative at 0.
+ * @author attatrol
+ *
+ */
+public class HardSigmoidFunction implements ActivationFunction {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = 3409411532993096571L;
+
+    /**
+     * Flatness ratio a.
+     */
+    private final float a;
+
+    /**
+     * Slope of the linear part, a / 4.
+     */
+    private final double slope;
+
+    /**
+     * Constructor with flatness ratio 1.
+     */
+    public HardSigmoidFunction() {
+        this(1.f);
+    }
+
+    /**
+     * General constructor.
+     * @param a flatness ratio, must be a positive number
+     */
+    public HardSigmoidFunction(float a) {
+        this.a = a;
+        slope = a / 4.;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getValue(double arg) {
+        final double value = slope * arg + 0.5;
+        return value < 0. ? 0. : value > 1. ? 1. : value;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Derivative is 0 where the function is saturated.
+     */
+    @Override
+    public double getDerivative(double arg, double funcValue) {
+        return funcValue > 0. && funcValue < 1. ? slope : 0.;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void apply(double[] in, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            final double value = slope * in[i] + 0.5;
+            out[i] = value < 0. ? 0. : value > 1. ? 1. : value;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void applyDerivative(double[] in, double[] values, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = values[i] > 0. && values[i] < 1. ? slope : 0.;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Throws exception if flatness ratio is not a positive number.
+     */
+    @Override
+    public void checkValidity() throws NeuralNetworkGenerationException {
+        if (a <= 0.f) {
+            throw new NeuralNetworkGenerationException("Flatness ratio of hard sigmoid function must be a positive number");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HardSigmoidFunction [flatness ratio=" + a + "]";
+    }
+}
@@ -0,0 +1,100 @@
+package attatrol.neural.activationfunction;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+
+/**
+ * Leaky rectified linear unit f(x) = x if x > 0, otherwise s * x, 0 < s < 1.
+ * Unlike {@link ReluFunction} it keeps a small gradient for negative arguments,
+ * so neurons do not die. Its codomain is the set of real numbers.
+ * @author attatrol
+ *
+ */
+public class LeakyReluFunction implements ActivationFunction {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = -7433766306005452135L;
+
+    /**
+     * Default slope of the negative part.
+     */
+    public static final float DEFAULT_SLOPE = 0.01f;
+
+    /**
+     * Slope of the negative part s.
+     */
+    private final float slope;
+
+    /**
+     * Constructor with the default slope.
+     */
+    public LeakyReluFunction() {
+        this(DEFAULT_SLOPE);
+    }
+
+    /**
+     * General constructor.
+     * @param slope slope of the negative part, must be in (0, 1)
+     */
+    public LeakyReluFunction(float slope) {
+        this.slope = slope;
+    }
+
+    public float getSlope() {
+        return slope;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getValue(double arg) {
+        return arg > 0. ? arg : slope * arg;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getDerivative(double arg, double funcValue) {
+        return arg > 0. ? 1. : slope;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void apply(double[] in, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            final double x = in[i];
+            out[i] = x > 0. ? x : slope * x;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void applyDerivative(double[] in, double[] values, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = in[i] > 0. ? 1. : slope;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Throws exception if slope is out of (0, 1).
+     */
+    @Override
+    public void checkValidity() throws NeuralNetworkGenerationException {
+        if (!(slope > 0.f && slope < 1.f)) {
+            throw new NeuralNetworkGenerationException("Slope of leaky ReLU must be in (0, 1)");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LeakyReluFunction [slope=" + slope + "]";
+    }
+}
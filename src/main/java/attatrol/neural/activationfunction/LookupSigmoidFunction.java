@@ -0,0 +1,186 @@
+package attatrol.neural.activationfunction;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+
+/**
+ * Sigmoid function f(x) = 1 / (1 + exp(- a * x)), a > 0, taken from a lookup table
+ * with linear interpolation. Table is built once for the maximal absolute error e:
+ * it covers a * x in [-ln(1 / e), ln(1 / e)], beyond that f is 0 or 1,
+ * step h of the table satisfies h^2 / 8 * max|f''| <= e.
+ * @author attatrol
+ *
+ */
+public class LookupSigmoidFunction implements ActivationFunction {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = -1969185584227839807L;
+
+    /**
+     * Default maximal absolute error.
+     */
+    public static final double DEFAULT_MAX_ERROR = 1e-4;
+
+    /**
+     * Minimal allowed value of maximal error, table has about 150 thousand entries for it.
+     */
+    public static final double MIN_MAX_ERROR = 1e-9;
+
+    /**
+     * Maximal allowed value of maximal error.
+     */
+    public static final double MAX_MAX_ERROR = 0.1;
+
+    /**
+     * max|f''| of the logistic function, 1 / (6 * sqrt(3))
+     */
+    private static final double MAX_SECOND_DERIVATIVE = 1. / (6. * Math.sqrt(3.));
+
+    /**
+     * Flatness ratio, see {@link SigmoidFunction}.
+     */
+    private final float a;
+
+    /**
+     * Maximal absolute error of values.
+     */
+    private final double maxError;
+
+    /**
+     * Values of the logistic function at -bound + k * step.
+     */
+    private transient double[] table;
+
+    /**
+     * Edge of the table, a * x beyond it gives 0 or 1.
+     */
+    private transient double bound;
+
+    /**
+     * 1 / step of the table
+     */
+    private transient double inverseStep;
+
+    /**
+     * Constructor for the logistic function with default maximal error.
+     */
+    public LookupSigmoidFunction() {
+        this(1.f, DEFAULT_MAX_ERROR);
+    }
+
+    /**
+     * General constructor.
+     * @param a flatness ratio, must be a positive number
+     * @param maxError maximal absolute error of values, in [{@link #MIN_MAX_ERROR}, {@link #MAX_MAX_ERROR}]
+     */
+    public LookupSigmoidFunction(float a, double maxError) {
+        this.a = a;
+        this.maxError = maxError;
+        buildTable();
+    }
+
+    public double getMaxError() {
+        return maxError;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Interpolates the table.
+     */
+    @Override
+    public double getValue(double arg) {
+        final double x = (a * arg + bound) * inverseStep;
+        if (!(x > 0.)) {
+            // NaN falls here as well
+            return x != x ? x : 0.;
+        }
+        if (x >= table.length - 1) {
+            return 1.;
+        }
+        final int k = (int) x;
+        final double left = table[k];
+        return left + (x - k) * (table[k + 1] - left);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Found from the interpolated value.
+     */
+    @Override
+    public double getDerivative(double arg, double funcValue) {
+        return a * funcValue * (1 - funcValue);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void apply(double[] in, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = getValue(in[i]);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void applyDerivative(double[] in, double[] values, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = a * values[i] * (1 - values[i]);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Throws exception if flatness ratio is not a positive number or maximal error is out of range.
+     */
+    @Override
+    public void checkValidity() throws NeuralNetworkGenerationException {
+        if (a <= 0.f) {
+            throw new NeuralNetworkGenerationException("Flatness ratio of sigmoid function must be a positive number");
+        }
+        if (!isValidMaxError()) {
+            throw new NeuralNetworkGenerationException("Maximal error of sigmoid function must be in ["
+                    + MIN_MAX_ERROR + ", " + MAX_MAX_ERROR + "]");
+        }
+    }
+
+    private boolean isValidMaxError() {
+        return maxError >= MIN_MAX_ERROR && maxError <= MAX_MAX_ERROR;
+    }
+
+    private void buildTable() {
+        if (!isValidMaxError()) {
+            // checkValidity rejects it
+            table = new double[] {0., 1.};
+            bound = 0.;
+            inverseStep = 1.;
+            return;
+        }
+        bound = Math.log(1. / maxError);
+        final double maxStep = Math.sqrt(8. * maxError / MAX_SECOND_DERIVATIVE);
+        final int intervals = (int) Math.ceil(2. * bound / maxStep);
+        final double step = 2. * bound / intervals;
+        inverseStep = 1. / step;
+        table = new double[intervals + 1];
+        for (int k = 0; k <= intervals; k++) {
+            table[k] = 1. / (1. + Math.exp(bound - k * step));
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        buildTable();
+    }
+
+    @Override
+    public String toString() {
+        return "LookupSigmoidFunction [flatness ratio=" + a + ", maxError=" + maxError
+                + ", tableSize=" + table.length + "]";
+    }
+}
@@ -0,0 +1,181 @@
+package attatrol.neural.activationfunction;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+
+/**
+ * Sigmoid function f(x) = 1 / (1 + exp(- a * x)), a > 0, with exponent approximated by a polynomial.
+ * exp(y) = 2^k * exp(r), where k = round(y / ln2) is put straight into exponent bits
+ * and |r| <= ln2 / 2, exp(r) is found by Taylor polynomial of the least degree
+ * which keeps absolute error of f within the given maximal error.
+ * @author attatrol
+ *
+ */
+public class PolynomialSigmoidFunction implements ActivationFunction {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = -3504651213785233047L;
+
+    /**
+     * Default maximal absolute error.
+     */
+    public static final double DEFAULT_MAX_ERROR = 1e-4;
+
+    /**
+     * Minimal maximal error, it is reached with the maximal degree.
+     */
+    public static final double MIN_MAX_ERROR = 1e-12;
+
+    /**
+     * Maximal allowed value of maximal error.
+     */
+    public static final double MAX_MAX_ERROR = 0.1;
+
+    private static final int MAX_DEGREE = 12;
+
+    private static final double LN2 = Math.log(2.);
+
+    private static final double INVERSE_LN2 = 1. / LN2;
+
+    /**
+     * 1 / i! for i up to the maximal degree
+     */
+    private static final double[] INVERSE_FACTORIAL = new double[MAX_DEGREE + 1];
+    static {
+        INVERSE_FACTORIAL[0] = 1.;
+        for (int i = 1; i <= MAX_DEGREE; i++) {
+            INVERSE_FACTORIAL[i] = INVERSE_FACTORIAL[i - 1] / i;
+        }
+    }
+
+
+    /**
+     * Beyond this |a * x| f is 0 or 1 within double precision.
+     */
+    private static final double SATURATION = 40.;
+
+    /**
+     * Flatness ratio, see {@link SigmoidFunction}.
+     */
+    private final float a;
+
+    /**
+     * Maximal absolute error of values.
+     */
+    private final double maxError;
+
+    /**
+     * Degree of the polynomial.
+     */
+    private final int degree;
+
+    /**
+     * Constructor for the logistic function with default maximal error.
+     */
+    public PolynomialSigmoidFunction() {
+        this(1.f, DEFAULT_MAX_ERROR);
+    }
+
+    /**
+     * General constructor.
+     * @param a flatness ratio, must be a positive number
+     * @param maxError maximal absolute error of values, in [{@link #MIN_MAX_ERROR}, {@link #MAX_MAX_ERROR}]
+     */
+    public PolynomialSigmoidFunction(float a, double maxError) {
+        this.a = a;
+        this.maxError = maxError;
+        // relative error d of the exponent shifts f by at most d / 4,
+        // relative error of the Taylor polynomial of degree n is at most e^|r| * |r|^(n + 1) / (n + 1)!
+        final double r = LN2 / 2.;
+        final double remainderFactor = Math.exp(r);
+        double term = r;
+        int n = 1;
+        while (n < MAX_DEGREE && remainderFactor * term * r / (n + 1) / 4. > maxError) {
+            term *= r / (n + 1);
+            n++;
+        }
+        degree = n;
+    }
+
+    public double getMaxError() {
+        return maxError;
+    }
+
+    public int getDegree() {
+        return degree;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getValue(double arg) {
+        final double y = -a * arg;
+        if (y > SATURATION) {
+            return 0.;
+        }
+        if (y < -SATURATION) {
+            return 1.;
+        }
+        final double k = Math.rint(y * INVERSE_LN2);
+        final double r = y - k * LN2;
+        // Horner scheme of SUM(r^i / i!)
+        double p = INVERSE_FACTORIAL[degree];
+        for (int i = degree - 1; i >= 0; i--) {
+            p = p * r + INVERSE_FACTORIAL[i];
+        }
+        final double exp = p * Double.longBitsToDouble(((long) k + 1023L) << 52);
+        return 1. / (1. + exp);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Found from the approximated value.
+     */
+    @Override
+    public double getDerivative(double arg, double funcValue) {
+        return a * funcValue * (1 - funcValue);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void apply(double[] in, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = getValue(in[i]);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void applyDerivative(double[] in, double[] values, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = a * values[i] * (1 - values[i]);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Throws exception if flatness ratio is not a positive number or maximal error is out of range.
+     */
+    @Override
+    public void checkValidity() throws NeuralNetworkGenerationException {
+        if (a <= 0.f) {
+            throw new NeuralNetworkGenerationException("Flatness ratio of sigmoid function must be a positive number");
+        }
+        if (!(maxError >= MIN_MAX_ERROR && maxError <= MAX_MAX_ERROR)) {
+            throw new NeuralNetworkGenerationException("Maximal error of sigmoid function must be in ["
+                    + MIN_MAX_ERROR + ", " + MAX_MAX_ERROR + "]");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PolynomialSigmoidFunction [flatness ratio=" + a + ", maxError=" + maxError
+                + ", degree=" + degree + "]";
+    }
+}
@@ -0,0 +1,68 @@
+package attatrol.neural.activationfunction;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+
+/**
+ * Rectified linear unit f(x) = max(0, x).
+ * Its codomain is [0, +inf), so it suits hidden neurons and surface neurons
+ * whose reference values are non-negative, but not stochastic analyzers.
+ * @author attatrol
+ *
+ */
+public class ReluFunction implements ActivationFunction {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = 6110238245011574412L;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getValue(double arg) {
+        return arg > 0. ? arg : 0.;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Derivative at 0 is taken as 0.
+     */
+    @Override
+    public double getDerivative(double arg, double funcValue) {
+        return arg > 0. ? 1. : 0.;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void apply(double[] in, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = Math.max(in[i], 0.);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void applyDerivative(double[] in, double[] values, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = in[i] > 0. ? 1. : 0.;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void checkValidity() throws NeuralNetworkGenerationException {
+        // nothing to do: no internal state
+    }
+
+    @Override
+    public String toString() {
+        return "ReluFunction";
+    }
+}
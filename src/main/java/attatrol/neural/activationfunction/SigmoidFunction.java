@@ -53,6 +53,27 @@ public class SigmoidFunction implements ActivationFunction {
         return a * funcValue * (1 - funcValue);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void apply(double[] in, double[] out, int from, int to) {
+        final double b = -1. * a;
+        for (int i = from; i < to; i++) {
+            out[i] = 1. / (1. + Math.exp(b * in[i]));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void applyDerivative(double[] in, double[] values, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = a * values[i] * (1 - values[i]);
+        }
+    }
+
     /**
      * {@inheritDoc}
      * Throws exception if flatness ratio is not a positive number.
@@ -1,9 +1,14 @@
 package attatrol.neural.analysis;
 
+import java.util.Arrays;
+
 import attatrol.neural.NeuralNetworkGenerationException;
 import attatrol.neural.activationfunction.ActivationFunction;
 import attatrol.neural.learning.LearningProcessor;
+import attatrol.neural.network.ExecutionPlan;
 import attatrol.neural.network.NeuralNetworkState;
+import attatrol.neural.utils.MatrixUtils;
+import attatrol.neural.utils.ParallelUtils;
 
 /**
  * Uses some activation function on linear combination for each neuron.
@@ -18,9 +23,29 @@ public class ActivationFunctionAnalyzer implements AnalyticalProcessor{
     private static final long serialVersionUID = 2001012601941768515L;
     /**
      * Activation function, maps linear combination in [0, 1].
+     * Segments of the execution plan may have their own functions, see {@link #getActivationFunction(ExecutionPlan, int)}.
      */
     protected ActivationFunction activationFunction;
 
+    /**
+     * Minimal number of weights processed by a single fork/join task.
+     * Levels of the execution plan with less weights are processed sequentially.
+     * Non-positive value stands for {@link ParallelUtils#DEFAULT_PARALLELISM_THRESHOLD}.
+     */
+    private int parallelismThreshold;
+
+    /**
+     * If true, results of the surface layer are replaced with softmax of their linear combinations,
+     * so the result vector is a probability distribution.
+     */
+    private boolean isSoftmaxSurface;
+
+    /**
+     * If true, linear combinations of dense segments are calculated in float32 mode:
+     * float weights are multiplied by float copies of results with float accumulators.
+     */
+    private boolean isFloat32;
+
     /**
      * Default ctor.
      * @param activationFunction activation function
@@ -30,6 +55,45 @@ public class ActivationFunctionAnalyzer implements AnalyticalProcessor{
         this.activationFunction = activationFunction;
     }
 
+    /**
+     * Ctor with explicit parallelism threshold.
+     * @param activationFunction activation function
+     * @param parallelismThreshold minimal number of weights processed by a single fork/join task,
+     * use {@link Integer#MAX_VALUE} to process all neurons sequentially
+     */
+    public ActivationFunctionAnalyzer(ActivationFunction activationFunction, int parallelismThreshold) {
+        super();
+        this.activationFunction = activationFunction;
+        this.parallelismThreshold = parallelismThreshold;
+    }
+
+    /**
+     * Ctor with explicit parallelism threshold and type of the surface layer.
+     * @param activationFunction activation function of hidden neurons
+     * @param parallelismThreshold minimal number of weights processed by a single fork/join task,
+     * non-positive value stands for the default threshold
+     * @param isSoftmaxSurface if true, surface layer yields softmax of its linear combinations
+     */
+    public ActivationFunctionAnalyzer(ActivationFunction activationFunction, int parallelismThreshold,
+            boolean isSoftmaxSurface) {
+        this(activationFunction, parallelismThreshold);
+        this.isSoftmaxSurface = isSoftmaxSurface;
+    }
+
+    /**
+     * Ctor with explicit parallelism threshold, type of the surface layer and precision.
+     * @param activationFunction activation function of hidden neurons
+     * @param parallelismThreshold minimal number of weights processed by a single fork/join task,
+     * non-positive value stands for the default threshold
+     * @param isSoftmaxSurface if true, surface layer yields softmax of its linear combinations
+     * @param isFloat32 if true, dense segments are processed in float32 mode
+     */
+    public ActivationFunctionAnalyzer(ActivationFunction activationFunction, int parallelismThreshold,
+            boolean isSoftmaxSurface, boolean isFloat32) {
+        this(activationFunction, parallelismThreshold, isSoftmaxSurface);
+        this.isFloat32 = isFloat32;
+    }
+
     /**
      * @return activation function of this analyzer
      */
@@ -37,30 +101,340 @@ public class ActivationFunctionAnalyzer implements AnalyticalProcessor{
         return activationFunction;
     }
 
+    /**
+     * @param plan execution plan
+     * @param segment index of the segment
+     * @return activation function of the segment of the plan,
+     * that is function of its layer or the function of this analyzer
+     */
+    public ActivationFunction getActivationFunction(ExecutionPlan plan, int segment) {
+        final ActivationFunction function = plan.getSegmentActivation(segment);
+        return function != null ? function : activationFunction;
+    }
+
+    /**
+     * Surface of softmax type has df(S[i])/dS[i] = 1 for the backward pass,
+     * learners apply the softmax Jacobian to dE/dR of the surface themselves.
+     * @return true if surface layer yields softmax of its linear combinations
+     */
+    public boolean isSoftmaxSurface() {
+        return isSoftmaxSurface;
+    }
+
+    /**
+     * Float32 mode halves the width of operands in matrix kernels, so SIMD registers hold twice as many of them,
+     * see {@link MatrixUtils#isVectorized()}. Linear combinations lose precision to float rounding,
+     * activation functions are still applied in double precision. Gradient learners propagate errors
+     * through dense segments in float32 mode too. Without the Vector API scalar float32 kernels
+     * are not faster than double ones.
+     * @return true if dense segments are processed in float32 mode
+     */
+    public boolean isFloat32() {
+        return isFloat32;
+    }
+
+    /**
+     * @return minimal number of weights processed by a single fork/join task
+     */
+    public int getParallelismThreshold() {
+        return parallelismThreshold > 0 ? parallelismThreshold : ParallelUtils.DEFAULT_PARALLELISM_THRESHOLD;
+    }
+
     /**
      * {@inheritDoc}
-     * Traverses over neurons, calculates linear combination,
-     * then applies activation function to it.
+     * Traverses over levels of the execution plan, calculates linear combination,
+     * then applies activation function to it. Neurons of a large level are split
+     * between threads of the common fork/join pool. Linear combinations of dense
+     * segments are calculated with matrix-vector product. Activation function of a segment
+     * is applied to its consecutive neurons at once.
      */
     @Override
     public void process(NeuralNetworkState state, LearningProcessor learner) {
-        int[] traverseOrder = state.getTraverseOrder();
-        float[][] weight = state.getWeight();
+        ExecutionPlan plan = state.getPlan();
+        int[] levelOffset = plan.getLevelOffset();
+        int[] rowOffset = plan.getRowOffset();
+        final int threshold = getParallelismThreshold();
+        if (isFloat32) {
+            toFloat(state.getResult(), state.getFloatResult(plan.getSourceNumber()), 0, state.getInputVectorSize());
+        }
+        for (int l = 0; l < plan.getLevelNumber(); l++) {
+            if (ParallelUtils.isWorthParallel(rowOffset, levelOffset[l], levelOffset[l + 1], threshold)) {
+                ParallelUtils.processRows(rowOffset, levelOffset[l], levelOffset[l + 1], threshold,
+                        (rowFrom, rowTo) -> processRows(state, rowFrom, rowTo));
+            }
+            else {
+                processRows(state, levelOffset[l], levelOffset[l + 1]);
+            }
+        }
+        if (isSoftmaxSurface) {
+            final double[] result = state.getResult();
+            applySoftmax(state.getLinearCombination(), result, result.length - state.getResultVectorSize(),
+                    state.getResultVectorSize(), 1);
+        }
+    }
+
+    /**
+     * Processes rows of the same level, they may belong to different segments.
+     * @param state network state
+     * @param rowFrom first row to process
+     * @param rowTo row after the last one to process
+     */
+    protected void processRows(NeuralNetworkState state, int rowFrom, int rowTo) {
+        ExecutionPlan plan = state.getPlan();
+        int[] segmentOffset = plan.getSegmentOffset();
+        int segment = plan.getSegmentOfRow(rowFrom);
+        int row = rowFrom;
+        while (row < rowTo) {
+            final int segmentRowTo = Math.min(rowTo, segmentOffset[segment + 1]);
+            if (plan.isDense(segment)) {
+                processDenseRows(state, segment, row, segmentRowTo);
+            }
+            else {
+                processSparseRows(state, segment, row, segmentRowTo);
+            }
+            row = segmentRowTo;
+            segment++;
+        }
+    }
+
+    /**
+     * Processes rows of a dense segment, rows may be a part of the segment.
+     * @param state network state
+     * @param segment index of the dense segment
+     * @param rowFrom first row to process
+     * @param rowTo row after the last one to process
+     */
+    protected void processDenseRows(NeuralNetworkState state, int segment, int rowFrom, int rowTo) {
+        ExecutionPlan plan = state.getPlan();
         float[] bias = state.getBias();
-        int[][] parents = state.getParents();
         double[] linearCombination = state.getLinearCombination();
         double[] result = state.getResult();
-        for (int i = 0; i < traverseOrder.length; i++) {
-            final int currentNeuronIndex = traverseOrder[i];
+        final int neuronFrom = plan.getNeuronOrder()[rowFrom];
+        final int neuronTo = neuronFrom + rowTo - rowFrom;
+        if (isFloat32) {
+            final float[] floatResult = state.getFloatResult(plan.getSourceNumber());
+            final float[] product = state.getFloatProduct(plan.getSourceNumber());
+            for (int i = neuronFrom; i < neuronTo; i++) {
+                product[i] = bias[i];
+            }
+            MatrixUtils.multiplyAdd(state.getWeight(), plan.getRowOffset()[rowFrom], rowTo - rowFrom,
+                    plan.getSegmentParentNumber(segment), floatResult, plan.getSegmentParentFrom(segment),
+                    product, neuronFrom);
+            for (int i = neuronFrom; i < neuronTo; i++) {
+                linearCombination[i] = product[i];
+            }
+            applyActivation(getActivationFunction(plan, segment), linearCombination, result, neuronFrom, neuronTo);
+            toFloat(result, floatResult, neuronFrom, neuronTo);
+            return;
+        }
+        for (int i = neuronFrom; i < neuronTo; i++) {
+            linearCombination[i] = bias[i];
+        }
+        MatrixUtils.multiplyAdd(state.getWeight(), plan.getRowOffset()[rowFrom], rowTo - rowFrom,
+                plan.getSegmentParentNumber(segment), result, plan.getSegmentParentFrom(segment),
+                linearCombination, neuronFrom);
+        applyActivation(getActivationFunction(plan, segment), linearCombination, result, neuronFrom, neuronTo);
+    }
+
+    /**
+     * Processes rows of a sparse segment, rows may be a part of the segment.
+     * @param state network state
+     * @param segment index of the sparse segment
+     * @param rowFrom first row to process
+     * @param rowTo row after the last one to process
+     */
+    protected void processSparseRows(NeuralNetworkState state, int segment, int rowFrom, int rowTo) {
+        ExecutionPlan plan = state.getPlan();
+        int[] neuronOrder = plan.getNeuronOrder();
+        int[] rowOffset = plan.getRowOffset();
+        int[] parentIndex = plan.getParentIndex();
+        float[] weight = state.getWeight();
+        float[] bias = state.getBias();
+        double[] linearCombination = state.getLinearCombination();
+        double[] result = state.getResult();
+        final ActivationFunction function = getActivationFunction(plan, segment);
+        final boolean isConsecutive = plan.getSegmentNeuronFrom(segment) >= 0;
+        for (int r = rowFrom; r < rowTo; r++) {
+            final int currentNeuronIndex = neuronOrder[r];
             double linearCombo = bias[currentNeuronIndex];
-            for (int j = 0; j < parents[currentNeuronIndex].length; j++) {
-                linearCombo += weight[currentNeuronIndex][j]
-                        * result[parents[currentNeuronIndex][j]];
+            final int rowEnd = rowOffset[r + 1];
+            for (int e = rowOffset[r]; e < rowEnd; e++) {
+                linearCombo += weight[e] * result[parentIndex[e]];
             }
             linearCombination[currentNeuronIndex] = linearCombo;
-            result[currentNeuronIndex] = getResult(linearCombo);
+            if (!isConsecutive) {
+                // rows of the same level never feed each other
+                applyActivation(function, linearCombination, result, currentNeuronIndex, currentNeuronIndex + 1);
+            }
+        }
+        if (isConsecutive && rowFrom < rowTo) {
+            applyActivation(function, linearCombination, result, neuronOrder[rowFrom],
+                    neuronOrder[rowFrom] + rowTo - rowFrom);
+        }
+        if (isFloat32) {
+            // dense segments of the next levels read float copies
+            final float[] floatResult = state.getFloatResult(plan.getSourceNumber());
+            for (int r = rowFrom; r < rowTo; r++) {
+                floatResult[neuronOrder[r]] = (float) result[neuronOrder[r]];
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Every loaded weight is applied to the whole batch.
+     */
+    @Override
+    public void processBatch(NeuralNetworkState state, double[] batchLinearCombination,
+            double[] batchResult, int batchSize, LearningProcessor learner) {
+        ExecutionPlan plan = state.getPlan();
+        int[] segmentOffset = plan.getSegmentOffset();
+        if (isFloat32) {
+            toFloat(batchResult, state.getFloatResult(plan.getSourceNumber() * batchSize), 0,
+                    state.getInputVectorSize() * batchSize);
+        }
+        for (int s = 0; s < plan.getSegmentNumber(); s++) {
+            if (plan.isDense(s)) {
+                processDenseBatch(state, s, segmentOffset[s], segmentOffset[s + 1],
+                        batchLinearCombination, batchResult, batchSize);
+            }
+            else {
+                processSparseBatch(state, s, segmentOffset[s], segmentOffset[s + 1],
+                        batchLinearCombination, batchResult, batchSize);
+            }
+        }
+        if (isSoftmaxSurface) {
+            final int surfaceFrom = (plan.getSourceNumber() - state.getResultVectorSize()) * batchSize;
+            for (int b = 0; b < batchSize; b++) {
+                applySoftmax(batchLinearCombination, batchResult, surfaceFrom + b,
+                        state.getResultVectorSize(), batchSize);
+            }
+        }
+    }
+
+    /**
+     * Replaces results of the surface layer with softmax of linear combinations:
+     * R[i] = exp(S[i] - max(S)) / SUM(exp(S[j] - max(S))), subtraction of the maximum keeps exponents finite.
+     * @param linearCombination linear combinations
+     * @param result results
+     * @param from index of the first surface neuron
+     * @param length number of surface neurons
+     * @param stride distance between indexes of successive surface neurons
+     */
+    public static void applySoftmax(double[] linearCombination, double[] result, int from, int length,
+            int stride) {
+        final int to = from + length * stride;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int k = from; k < to; k += stride) {
+            max = Math.max(max, linearCombination[k]);
+        }
+        double sum = 0.;
+        for (int k = from; k < to; k += stride) {
+            final double exponent = Math.exp(linearCombination[k] - max);
+            result[k] = exponent;
+            sum += exponent;
+        }
+        final double norm = 1. / sum;
+        for (int k = from; k < to; k += stride) {
+            result[k] *= norm;
+        }
+    }
+
+    /**
+     * Copies a range of values into the float array.
+     * @param values values
+     * @param floatValues float array
+     * @param from first index of the range
+     * @param to index after the last one
+     */
+    protected static void toFloat(double[] values, float[] floatValues, int from, int to) {
+        for (int k = from; k < to; k++) {
+            floatValues[k] = (float) values[k];
+        }
+    }
+
+    /**
+     * Processes rows of a dense segment for a batch of samples.
+     * @param state network state
+     * @param segment index of the dense segment
+     * @param rowFrom first row to process
+     * @param rowTo row after the last one to process
+     * @param batchLinearCombination linear combinations of sources for each sample
+     * @param batchResult result values of sources for each sample
+     * @param batchSize number of samples
+     */
+    protected void processDenseBatch(NeuralNetworkState state, int segment, int rowFrom, int rowTo,
+            double[] batchLinearCombination, double[] batchResult, int batchSize) {
+        ExecutionPlan plan = state.getPlan();
+        float[] bias = state.getBias();
+        final int neuronFrom = plan.getNeuronOrder()[rowFrom];
+        final int neuronTo = neuronFrom + rowTo - rowFrom;
+        if (isFloat32) {
+            final float[] floatResult = state.getFloatResult(plan.getSourceNumber() * batchSize);
+            final float[] product = state.getFloatProduct(plan.getSourceNumber() * batchSize);
+            for (int i = neuronFrom; i < neuronTo; i++) {
+                Arrays.fill(product, i * batchSize, (i + 1) * batchSize, bias[i]);
+            }
+            MatrixUtils.multiplyAddBatch(state.getWeight(), plan.getRowOffset()[rowFrom], rowTo - rowFrom,
+                    plan.getSegmentParentNumber(segment), floatResult, plan.getSegmentParentFrom(segment),
+                    batchSize, product, neuronFrom);
+            for (int k = neuronFrom * batchSize; k < neuronTo * batchSize; k++) {
+                batchLinearCombination[k] = product[k];
+            }
+            applyActivation(getActivationFunction(plan, segment), batchLinearCombination, batchResult,
+                    neuronFrom * batchSize, neuronTo * batchSize);
+            toFloat(batchResult, floatResult, neuronFrom * batchSize, neuronTo * batchSize);
+            return;
+        }
+        for (int i = neuronFrom; i < neuronTo; i++) {
+            Arrays.fill(batchLinearCombination, i * batchSize, (i + 1) * batchSize, bias[i]);
+        }
+        MatrixUtils.multiplyAddBatch(state.getWeight(), plan.getRowOffset()[rowFrom], rowTo - rowFrom,
+                plan.getSegmentParentNumber(segment), batchResult, plan.getSegmentParentFrom(segment),
+                batchSize, batchLinearCombination, neuronFrom);
+        applyActivation(getActivationFunction(plan, segment), batchLinearCombination, batchResult,
+                neuronFrom * batchSize, neuronTo * batchSize);
+    }
+
+    /**
+     * Processes rows of a sparse segment for a batch of samples.
+     * @param state network state
+     * @param segment index of the sparse segment
+     * @param rowFrom first row to process
+     * @param rowTo row after the last one to process
+     * @param batchLinearCombination linear combinations of sources for each sample
+     * @param batchResult result values of sources for each sample
+     * @param batchSize number of samples
+     */
+    protected void processSparseBatch(NeuralNetworkState state, int segment, int rowFrom, int rowTo,
+            double[] batchLinearCombination, double[] batchResult, int batchSize) {
+        ExecutionPlan plan = state.getPlan();
+        final ActivationFunction function = getActivationFunction(plan, segment);
+        int[] neuronOrder = plan.getNeuronOrder();
+        int[] rowOffset = plan.getRowOffset();
+        int[] parentIndex = plan.getParentIndex();
+        float[] weight = state.getWeight();
+        float[] bias = state.getBias();
+        for (int r = rowFrom; r < rowTo; r++) {
+            final int neuronStart = neuronOrder[r] * batchSize;
+            final int neuronEnd = neuronStart + batchSize;
+            Arrays.fill(batchLinearCombination, neuronStart, neuronEnd, bias[neuronOrder[r]]);
+            final int rowEnd = rowOffset[r + 1];
+            for (int e = rowOffset[r]; e < rowEnd; e++) {
+                final double w = weight[e];
+                final int parentStart = parentIndex[e] * batchSize;
+                for (int b = 0; b < batchSize; b++) {
+                    batchLinearCombination[neuronStart + b] += w * batchResult[parentStart + b];
+                }
+            }
+            applyActivation(function, batchLinearCombination, batchResult, neuronStart, neuronEnd);
+        }
+        if (isFloat32) {
+            final float[] floatResult = state.getFloatResult(plan.getSourceNumber() * batchSize);
+            for (int r = rowFrom; r < rowTo; r++) {
+                toFloat(batchResult, floatResult, neuronOrder[r] * batchSize, (neuronOrder[r] + 1) * batchSize);
+            }
         }
-        
     }
 
     /**
@@ -79,15 +453,21 @@ public class ActivationFunctionAnalyzer implements AnalyticalProcessor{
      * A hook for a {@link StochasticActivationFunctionAnalyzer}.
      * Very possible that this hook will be used to produce other kinds of analyzers,
      * possibly recurrent ones.
-     * @param linearCombo
-     * @return
+     * @param function activation function of the range
+     * @param linearCombination linear combinations
+     * @param result array for results
+     * @param from first index of the range
+     * @param to index after the last one
      */
-    protected double getResult(double linearCombo) {
-        return activationFunction.getValue(linearCombo);
+    protected void applyActivation(ActivationFunction function, double[] linearCombination, double[] result,
+            int from, int to) {
+        function.apply(linearCombination, result, from, to);
     }
 
     @Override
     public String toString() {
-        return "ActivationFunctionAnalyzer [activationFunction=" + activationFunction + "]";
+        return "ActivationFunctionAnalyzer [activationFunction=" + activationFunction
+                + ", parallelismThreshold=" + getParallelismThreshold()
+                + ", isSoftmaxSurface=" + isSoftmaxSurface + ", isFloat32=" + isFloat32 + "]";
     }
 }
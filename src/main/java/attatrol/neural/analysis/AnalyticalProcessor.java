@@ -9,6 +9,10 @@ import attatrol.neural.network.NeuralNetworkState;
 /**
  * Analythical processor calculates result values for all neurons.
  * Ensure that there is only one client neural network for each mutable processor.
+ * <p>
+ * Processor is called concurrently by threads which map vectors with the same network,
+ * each call gets its own state with own linear combinations and results.
+ * So processor must not keep intermediate values of a call in its fields.
  * @author attatrol
  *
  */
@@ -22,6 +26,35 @@ public interface AnalyticalProcessor extends Serializable {
      */
     void process(NeuralNetworkState state, LearningProcessor learner);
 
+    /**
+     * Calculates linear combinations and result values for all neurons for a batch of input vectors.
+     * Batch arrays are laid out by sources: value of the source i for the sample b
+     * has index i * batchSize + b.
+     * Incoming vectors must be mapped into batch result array before processing.
+     * <p>
+     * Default implementation processes samples one by one with {@link #process}.
+     * @param state state of some neural network, its linear combinations and results are overwritten
+     * @param batchLinearCombination linear combinations of sources for each sample
+     * @param batchResult result values of sources for each sample
+     * @param batchSize number of samples
+     * @param learner theoretically learner and analyzer may depend on each other internal state
+     */
+    default void processBatch(NeuralNetworkState state, double[] batchLinearCombination,
+            double[] batchResult, int batchSize, LearningProcessor learner) {
+        double[] linearCombination = state.getLinearCombination();
+        double[] result = state.getResult();
+        for (int b = 0; b < batchSize; b++) {
+            for (int i = 0; i < result.length; i++) {
+                result[i] = batchResult[i * batchSize + b];
+            }
+            process(state, learner);
+            for (int i = 0; i < result.length; i++) {
+                batchLinearCombination[i * batchSize + b] = linearCombination[i];
+                batchResult[i * batchSize + b] = result[i];
+            }
+        }
+    }
+
     /**
      * Use this before usage to check if internal state of processor is valid
      * @throws NeuralNetworkGenerationException on invalidity of processor
@@ -0,0 +1,335 @@
+package attatrol.neural.analysis;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import attatrol.neural.NeuralNetworkRuntimeException;
+import attatrol.neural.activationfunction.ActivationFunction;
+import attatrol.neural.network.ExecutionPlan;
+import attatrol.neural.network.NeuralNetworkState;
+import attatrol.neural.utils.MatrixUtils;
+
+/**
+ * Inference engine of networks with {@link StochasticActivationFunctionAnalyzer}.
+ * Neurons of such networks yield only 0 or 1, so their results are packed into bits of a long array,
+ * 64 results per word instead of a double per result. Linear combination of a neuron is the sum of
+ * weights of its firing parents, coordinates of the incoming vector are still multiplied by weights.
+ * Neurons of a dense segment share parents, so firing parents are listed once per segment
+ * and each row just adds up its weights at the listed positions.
+ * <p>
+ * Engine refers to parameters of the network state and takes activation functions from the analyzer.
+ * Each thread uses its own scratch and the random generator of the analyzer for the thread,
+ * so any number of threads may draw samples at once.
+ * @author attatrol
+ *
+ */
+public final class BinaryStochasticEngine {
+
+    /**
+     * Maximal number of samples drawn by a single fork/join task.
+     */
+    private static final int SAMPLE_BLOCK_SIZE = 64;
+
+    private final NeuralNetworkState state;
+
+    private final StochasticActivationFunctionAnalyzer analyzer;
+
+    private final ExecutionPlan plan;
+
+    private final int inputVectorSize;
+
+    private final int resultVectorSize;
+
+    /**
+     * Activation function of each segment
+     */
+    private final ActivationFunction[] segmentActivation;
+
+    /**
+     * Scratch of each thread
+     */
+    private final ThreadLocal<Scratch> scratch;
+
+    /**
+     * Default ctor.
+     * @param state network state, engine uses its parameters
+     * @param analyzer stochastic analyzer of the network
+     */
+    public BinaryStochasticEngine(NeuralNetworkState state, StochasticActivationFunctionAnalyzer analyzer) {
+        this.state = state;
+        this.analyzer = analyzer;
+        plan = state.getPlan();
+        inputVectorSize = state.getInputVectorSize();
+        resultVectorSize = state.getResultVectorSize();
+        segmentActivation = new ActivationFunction[plan.getSegmentNumber()];
+        for (int s = 0; s < segmentActivation.length; s++) {
+            segmentActivation[s] = analyzer.getActivationFunction(plan, s);
+        }
+        final int sourceNumber = plan.getSourceNumber();
+        scratch = ThreadLocal.withInitial(() -> new Scratch(sourceNumber));
+    }
+
+    public int getResultVectorSize() {
+        return resultVectorSize;
+    }
+
+    /**
+     * Draws a single sample of the result vector.
+     * @param inputVector input vector
+     * @return result vector of zeros and ones
+     * @throws NeuralNetworkRuntimeException on bad format of input vector
+     */
+    public double[] map(double[] inputVector) throws NeuralNetworkRuntimeException {
+        checkInputVector(inputVector);
+        final Scratch s = scratch.get();
+        forward(inputVector, s);
+        final double[] resultVector = new double[resultVectorSize];
+        final int surfaceFrom = plan.getSourceNumber() - resultVectorSize;
+        for (int i = 0; i < resultVectorSize; i++) {
+            resultVector[i] = isFiring(s.bits, surfaceFrom + i) ? 1. : 0.;
+        }
+        return resultVector;
+    }
+
+    /**
+     * Draws a number of samples of the result vector and finds how often each surface neuron fires.
+     * Samples are drawn in parallel on the common fork/join pool.
+     * @param inputVector input vector
+     * @param sampleNumber number of samples
+     * @return share of samples where each surface neuron fires
+     * @throws NeuralNetworkRuntimeException on bad format of input vector
+     */
+    public double[] estimate(double[] inputVector, int sampleNumber) throws NeuralNetworkRuntimeException {
+        checkInputVector(inputVector);
+        if (sampleNumber < 1) {
+            throw new NeuralNetworkRuntimeException("Number of samples must be positive");
+        }
+        final SampleTask task = new SampleTask(inputVector, 0, sampleNumber);
+        final int[] counts = sampleNumber > SAMPLE_BLOCK_SIZE ? ForkJoinPool.commonPool().invoke(task)
+                : task.compute();
+        final double[] frequency = new double[resultVectorSize];
+        for (int i = 0; i < resultVectorSize; i++) {
+            frequency[i] = (double) counts[i] / sampleNumber;
+        }
+        return frequency;
+    }
+
+    /**
+     * Forward pass of a single sample, results of neurons are left in bits of the scratch.
+     * @param inputVector input vector
+     * @param s scratch of the calling thread
+     */
+    private void forward(double[] inputVector, Scratch s) {
+        final int[] segmentOffset = plan.getSegmentOffset();
+        final SplittableRandom random = analyzer.getRandom();
+        for (int segment = 0; segment < plan.getSegmentNumber(); segment++) {
+            final int rowFrom = segmentOffset[segment];
+            final int rowTo = segmentOffset[segment + 1];
+            if (plan.isDense(segment)) {
+                final int neuronFrom = plan.getNeuronOrder()[rowFrom];
+                final int neuronTo = neuronFrom + rowTo - rowFrom;
+                final int parentFrom = plan.getSegmentParentFrom(segment);
+                final int parentTo = parentFrom + plan.getSegmentParentNumber(segment);
+                if (parentTo <= inputVectorSize) {
+                    combineInputs(inputVector, segment, rowFrom, rowTo, s);
+                }
+                else if (parentFrom >= inputVectorSize) {
+                    combineBits(segment, rowFrom, rowTo, s);
+                }
+                else {
+                    for (int r = rowFrom; r < rowTo; r++) {
+                        s.linearCombination[neuronFrom + r - rowFrom] = combineRow(inputVector, r, s.bits);
+                    }
+                }
+                segmentActivation[segment].apply(s.linearCombination, s.probability, neuronFrom, neuronTo);
+                for (int i = neuronFrom; i < neuronTo; i++) {
+                    setBit(s.bits, i, s.probability[i] > random.nextDouble());
+                }
+            }
+            else {
+                // rows of a sparse segment may feed each other
+                final ActivationFunction function = segmentActivation[segment];
+                final int[] neuronOrder = plan.getNeuronOrder();
+                for (int r = rowFrom; r < rowTo; r++) {
+                    final int i = neuronOrder[r];
+                    s.linearCombination[i] = combineRow(inputVector, r, s.bits);
+                    function.apply(s.linearCombination, s.probability, i, i + 1);
+                    setBit(s.bits, i, s.probability[i] > random.nextDouble());
+                }
+            }
+        }
+    }
+
+    /**
+     * Linear combinations of a dense segment connected to the incoming vector.
+     */
+    private void combineInputs(double[] inputVector, int segment, int rowFrom, int rowTo, Scratch s) {
+        final float[] bias = state.getBias();
+        final int neuronFrom = plan.getNeuronOrder()[rowFrom];
+        final int neuronTo = neuronFrom + rowTo - rowFrom;
+        for (int i = neuronFrom; i < neuronTo; i++) {
+            s.linearCombination[i] = bias[i];
+        }
+        MatrixUtils.multiplyAdd(state.getWeight(), plan.getRowOffset()[rowFrom], rowTo - rowFrom,
+                plan.getSegmentParentNumber(segment), inputVector, plan.getSegmentParentFrom(segment),
+                s.linearCombination, neuronFrom);
+    }
+
+    /**
+     * Linear combinations of a dense segment connected to neurons:
+     * firing parents are listed once, then weights at their positions are summed for each row.
+     */
+    private void combineBits(int segment, int rowFrom, int rowTo, Scratch s) {
+        final float[] weight = state.getWeight();
+        final float[] bias = state.getBias();
+        final int[] rowOffset = plan.getRowOffset();
+        final int parentFrom = plan.getSegmentParentFrom(segment);
+        final int parentTo = parentFrom + plan.getSegmentParentNumber(segment);
+        final int[] firing = s.firingParents;
+        int firingNumber = 0;
+        final long[] bits = s.bits;
+        final int lastWord = (parentTo - 1) >>> 6;
+        for (int word = parentFrom >>> 6; word <= lastWord; word++) {
+            long value = bits[word];
+            if (word == parentFrom >>> 6) {
+                value &= -1L << parentFrom;
+            }
+            if (word == lastWord) {
+                value &= -1L >>> (63 - ((parentTo - 1) & 63));
+            }
+            while (value != 0L) {
+                firing[firingNumber++] = (word << 6) + Long.numberOfTrailingZeros(value) - parentFrom;
+                value &= value - 1;
+            }
+        }
+        final int neuronFrom = plan.getNeuronOrder()[rowFrom];
+        for (int r = rowFrom; r < rowTo; r++) {
+            final int m = rowOffset[r];
+            double sum = 0.;
+            for (int k = 0; k < firingNumber; k++) {
+                sum += weight[m + firing[k]];
+            }
+            final int i = neuronFrom + r - rowFrom;
+            s.linearCombination[i] = bias[i] + sum;
+        }
+    }
+
+    /**
+     * Linear combination of an arbitrary row.
+     */
+    private double combineRow(double[] inputVector, int row, long[] bits) {
+        final float[] weight = state.getWeight();
+        final int[] rowOffset = plan.getRowOffset();
+        final int[] parentIndex = plan.getParentIndex();
+        double sum = state.getBias()[plan.getNeuronOrder()[row]];
+        for (int e = rowOffset[row]; e < rowOffset[row + 1]; e++) {
+            final int parent = parentIndex[e];
+            if (parent < inputVectorSize) {
+                sum += weight[e] * inputVector[parent];
+            }
+            else if (isFiring(bits, parent)) {
+                sum += weight[e];
+            }
+        }
+        return sum;
+    }
+
+    private static boolean isFiring(long[] bits, int source) {
+        return (bits[source >>> 6] & 1L << source) != 0L;
+    }
+
+    private static void setBit(long[] bits, int source, boolean isFiring) {
+        if (isFiring) {
+            bits[source >>> 6] |= 1L << source;
+        }
+        else {
+            bits[source >>> 6] &= ~(1L << source);
+        }
+    }
+
+    private void checkInputVector(double[] inputVector) throws NeuralNetworkRuntimeException {
+        if (inputVector.length != inputVectorSize) {
+            throw new NeuralNetworkRuntimeException(String.format(
+                    "Incoming vector has cardinality of %d, network accepts only %d",
+                    inputVector.length, inputVectorSize));
+        }
+    }
+
+    /**
+     * Scratch of a thread.
+     */
+    private static final class Scratch {
+
+        /**
+         * Result of each source, a bit per source
+         */
+        private final long[] bits;
+
+        private final double[] linearCombination;
+
+        /**
+         * Value of the activation function, that is probability of firing
+         */
+        private final double[] probability;
+
+        /**
+         * Offsets of firing parents within the parent range of a dense segment
+         */
+        private final int[] firingParents;
+
+        Scratch(int sourceNumber) {
+            bits = new long[(sourceNumber + 63) >>> 6];
+            linearCombination = new double[sourceNumber];
+            probability = new double[sourceNumber];
+            firingParents = new int[sourceNumber];
+        }
+    }
+
+    /**
+     * Draws a range of samples and counts firing of surface neurons.
+     */
+    private final class SampleTask extends RecursiveTask<int[]> {
+
+        private static final long serialVersionUID = 2779460519934183254L;
+
+        private final double[] inputVector;
+
+        private final int from;
+
+        private final int to;
+
+        SampleTask(double[] inputVector, int from, int to) {
+            this.inputVector = inputVector;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (to - from > SAMPLE_BLOCK_SIZE) {
+                final int middle = (from + to) >>> 1;
+                final SampleTask right = new SampleTask(inputVector, middle, to);
+                right.fork();
+                final int[] counts = new SampleTask(inputVector, from, middle).compute();
+                final int[] rightCounts = right.join();
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] += rightCounts[i];
+                }
+                return counts;
+            }
+            final int[] counts = new int[resultVectorSize];
+            final Scratch s = scratch.get();
+            final int surfaceFrom = plan.getSourceNumber() - resultVectorSize;
+            for (int sample = from; sample < to; sample++) {
+                forward(inputVector, s);
+                for (int i = 0; i < resultVectorSize; i++) {
+                    if (isFiring(s.bits, surfaceFrom + i)) {
+                        counts[i]++;
+                    }
+                }
+            }
+            return counts;
+        }
+    }
+}
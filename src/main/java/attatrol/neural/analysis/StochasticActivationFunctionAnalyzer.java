@@ -1,12 +1,17 @@
 package attatrol.neural.analysis;
 
-import java.util.Random;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.SplittableRandom;
 
 import attatrol.neural.activationfunction.ActivationFunction;
 
 /**
  * Stochastic analyzer is a modification of a classic activation function analyzer
  * that uses stochastic transfer functions based on original activation function.<p/>
+ * Each thread draws random numbers from its own {@link SplittableRandom} split from the root generator,
+ * so threads of a level and concurrent mappings never contend for a generator.
+ * Use {@link BinaryStochasticEngine} for sampling-heavy inference.
  * @author attatrol
  *
  */
@@ -16,10 +21,16 @@ public class StochasticActivationFunctionAnalyzer extends ActivationFunctionAnal
      * 
      */
     private static final long serialVersionUID = -6232414021242235505L;
+
     /**
-     * Source of random numbers.
+     * Root generator, generators of threads are split from it.
      */
-    private Random random = new Random();
+    private transient SplittableRandom root;
+
+    /**
+     * Generator of each thread.
+     */
+    private transient ThreadLocal<SplittableRandom> random;
 
     /**
      * Default ctor.
@@ -27,6 +38,25 @@ public class StochasticActivationFunctionAnalyzer extends ActivationFunctionAnal
      */
     public StochasticActivationFunctionAnalyzer(ActivationFunction activationFunction) {
         super(activationFunction);
+        initRandom(new SplittableRandom());
+    }
+
+    /**
+     * Ctor with a seed. Sequences drawn by threads depend on the order in which threads
+     * use the analyzer for the first time, so only a single-threaded use is reproducible.
+     * @param activationFunction activation function
+     * @param seed seed of the root generator
+     */
+    public StochasticActivationFunctionAnalyzer(ActivationFunction activationFunction, long seed) {
+        super(activationFunction);
+        initRandom(new SplittableRandom(seed));
+    }
+
+    /**
+     * @return generator of the calling thread
+     */
+    SplittableRandom getRandom() {
+        return random.get();
     }
 
     /**
@@ -34,9 +64,27 @@ public class StochasticActivationFunctionAnalyzer extends ActivationFunctionAnal
      * Activation function is wrapped with stochastic transfer function.
      */
     @Override
-    protected double getResult(double linearCombo) {
-        final double actiationFunctionValue = activationFunction.getValue(linearCombo);
-        return actiationFunctionValue > random.nextDouble() ? 1. : 0.;
+    protected void applyActivation(ActivationFunction function, double[] linearCombination, double[] result,
+            int from, int to) {
+        function.apply(linearCombination, result, from, to);
+        final SplittableRandom generator = random.get();
+        for (int i = from; i < to; i++) {
+            result[i] = result[i] > generator.nextDouble() ? 1. : 0.;
+        }
+    }
+
+    private void initRandom(SplittableRandom rootGenerator) {
+        root = rootGenerator;
+        random = ThreadLocal.withInitial(() -> {
+            synchronized (root) {
+                return root.split();
+            }
+        });
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        initRandom(new SplittableRandom());
     }
 
     @Override
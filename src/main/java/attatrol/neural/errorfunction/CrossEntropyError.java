@@ -0,0 +1,77 @@
+package attatrol.neural.errorfunction;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+
+/**
+ * Cross-entropy error E = -SUM(y[i] * ln(p[i])), where p is the result vector and y is the reference.
+ * It suits result vectors which are probability distributions, that is softmax surface layer
+ * (see {@link attatrol.neural.analysis.ActivationFunctionAnalyzer#isSoftmaxSurface()}).
+ * For such a layer dE/dS[i] = p[i] * SUM(y) - y[i], learners use it instead of
+ * multiplying the derivatives by the softmax Jacobian.
+ * @author attatrol
+ *
+ */
+public class CrossEntropyError implements ErrorFunction {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = -4617407453592863094L;
+
+    /**
+     * Lower bound of probabilities, it keeps logarithms and derivatives finite.
+     */
+    private static final double MIN_PROBABILITY = 1e-15;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getValue(double[] result, double[] reference) {
+        double accumulator = 0;
+        for (int i = 0; i < result.length; i++) {
+            if (reference[i] != 0) {
+                accumulator -= reference[i] * Math.log(Math.max(result[i], MIN_PROBABILITY));
+            }
+        }
+        return accumulator;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getDerivative(double[] result, double[] reference, int indexOfResult) {
+        return -reference[indexOfResult] / Math.max(result[indexOfResult], MIN_PROBABILITY);
+    }
+
+    /**
+     * Calculates derivatives with respect to linear combinations of a softmax surface layer at once:
+     * dE/dS[i] = p[i] * SUM(y) - y[i], which is p[i] - y[i] for a one-hot reference.
+     * @param probabilities result vector of the softmax layer
+     * @param reference reference result vector
+     * @param gradient array of size of the result vector, filled with derivatives
+     */
+    public void getSoftmaxGradient(double[] probabilities, double[] reference, double[] gradient) {
+        double referenceSum = 0;
+        for (int i = 0; i < reference.length; i++) {
+            referenceSum += reference[i];
+        }
+        for (int i = 0; i < probabilities.length; i++) {
+            gradient[i] = probabilities[i] * referenceSum - reference[i];
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void checkValidity() throws NeuralNetworkGenerationException {
+        // nothing to do: no internal state
+    }
+
+    @Override
+    public String toString() {
+        return "CrossEntropyError";
+    }
+}
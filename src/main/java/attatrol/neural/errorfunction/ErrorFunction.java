@@ -34,6 +34,20 @@ public interface ErrorFunction extends Serializable {
      */
     double getDerivative(double[] result, double[] reference, int indexOfResult);
 
+    /**
+     * Calculates all first partial derivatives with respect to result at once.
+     * Default implementation calls {@link #getDerivative(double[], double[], int)}
+     * for each coordinate, override it if derivatives share some calculations.
+     * @param result result vector of neural network
+     * @param reference reference result vector
+     * @param gradient array of size of the result vector, filled with derivatives
+     */
+    default void getGradient(double[] result, double[] reference, double[] gradient) {
+        for (int i = 0; i < result.length; i++) {
+            gradient[i] = getDerivative(result, reference, i);
+        }
+    }
+
     /**
      * Checks if function has proper internal state.
      * Should be performed once before it will be used.
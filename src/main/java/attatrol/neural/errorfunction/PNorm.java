@@ -5,7 +5,8 @@ import attatrol.neural.NeuralNetworkGenerationException;
 /**
  * Generalization of euclid norm (which is in base of
  * quadratic error function) is a p-norm.<p/>
- * Note it is much slower than quadratic error.
+ * Note it is much slower than quadratic error,
+ * use {@link #getGradient(double[], double[], double[])} when all derivatives are needed.
  * @author attatrol
  *
  */
@@ -60,6 +61,28 @@ public class PNorm implements ErrorFunction {
         return result[indexOfResult] > reference[indexOfResult] ? accumulator : - accumulator;
     }
 
+    /**
+     * {@inheritDoc}
+     * Sum of powers is shared by all derivatives, so it is found once,
+     * and power of each coordinate is found once too.
+     */
+    @Override
+    public void getGradient(double[] result, double[] reference, double[] gradient) {
+        double accumulator = 0.;
+        for (int i = 0; i < result.length; i++) {
+            final double temp = Math.abs(result[i] - reference[i]);
+            // |r - t|^(p - 1), it is zero for zero difference
+            gradient[i] = temp != 0. ? Math.pow(temp, p - 1) : 0.;
+            accumulator += gradient[i] * temp;
+        }
+        if (accumulator != 0.) {
+            accumulator = Math.pow(accumulator, oneOverP - 1);
+        }
+        for (int i = 0; i < result.length; i++) {
+            gradient[i] *= result[i] > reference[i] ? accumulator : - accumulator;
+        }
+    }
+
     @Override
     public void checkValidity() throws NeuralNetworkGenerationException {
         if ( p < 1.) {
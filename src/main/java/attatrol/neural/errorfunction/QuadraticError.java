@@ -36,6 +36,16 @@ public class QuadraticError implements ErrorFunction {
         return result[indexOfResult] - reference[indexOfResult];
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void getGradient(double[] result, double[] reference, double[] gradient) {
+        for (int i = 0; i < result.length; i++) {
+            gradient[i] = result[i] - reference[i];
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,35 @@
+package attatrol.neural.learning;
+
+import attatrol.neural.NeuralNetworkRuntimeException;
+import attatrol.neural.analysis.AnalyticalProcessor;
+import attatrol.neural.network.NeuralNetworkState;
+
+/**
+ * Learning processor which changes the network once per batch of samples.
+ * Unlike {@link LearningProcessor#process(NeuralNetworkState, double[], AnalyticalProcessor)},
+ * it maps incoming vectors itself, so samples of a batch may be processed in parallel.
+ * @author attatrol
+ *
+ */
+public interface BatchLearningProcessor extends LearningProcessor {
+
+    /**
+     * @return maximal number of samples processed by a single call of
+     * {@link #processBatch(NeuralNetworkState, double[][], double[][], int, int, AnalyticalProcessor)}
+     */
+    int getBatchSize();
+
+    /**
+     * Maps incoming vectors of the batch and modifies weights and biases of the network state once.
+     * Linear combinations and results of the state are left intact.
+     * @param state state of some neural network
+     * @param inputVectors incoming vectors
+     * @param references reference result vectors, null if learning is not supervised
+     * @param from index of the first sample of the batch
+     * @param to index after the last sample of the batch
+     * @param analyzer analytical processor of the network
+     * @throws NeuralNetworkRuntimeException on some error during learning
+     */
+    void processBatch(NeuralNetworkState state, double[][] inputVectors, double[][] references,
+            int from, int to, AnalyticalProcessor analyzer) throws NeuralNetworkRuntimeException;
+}
@@ -0,0 +1,27 @@
+package attatrol.neural.learning;
+
+import attatrol.neural.NeuralNetworkRuntimeException;
+import attatrol.neural.analysis.AnalyticalProcessor;
+import attatrol.neural.network.NeuralNetworkState;
+
+/**
+ * Learning processor which changes the network once per epoch, that is
+ * once per pass over the whole learning set. Full-batch methods need this hook since
+ * they may evaluate the error over the whole set several times before they change weights.
+ * @author attatrol
+ *
+ */
+public interface EpochLearningProcessor extends LearningProcessor {
+
+    /**
+     * Maps incoming vectors of the whole learning set and modifies weights and biases of the network state.
+     * Linear combinations and results of the state are left intact.
+     * @param state state of some neural network
+     * @param inputVectors incoming vectors of the learning set
+     * @param references reference result vectors, null if learning is not supervised
+     * @param analyzer analytical processor of the network
+     * @throws NeuralNetworkRuntimeException on some error during learning
+     */
+    void processEpoch(NeuralNetworkState state, double[][] inputVectors, double[][] references,
+            AnalyticalProcessor analyzer) throws NeuralNetworkRuntimeException;
+}
@@ -0,0 +1,147 @@
+package attatrol.neural.learning;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.NeuralNetworkRuntimeException;
+import attatrol.neural.network.NeuralNetwork;
+
+/**
+ * Asynchronous lock-free trainer (Hogwild approach).
+ * A set of samples is split into disjoint shards, a thread per shard learns its samples
+ * with {@link NeuralNetwork#learnConcurrently(double[], double[], double[])},
+ * so all threads change the same weights without locks.
+ * <p>
+ * Learning processor of the network must be concurrent, see {@link LearningProcessor#isConcurrent()}.
+ * Speedup is close to linear when the network is sparse and threads rarely change the same weight.
+ * @author attatrol
+ *
+ */
+public final class HogwildTrainer {
+
+    /**
+     * Trained network
+     */
+    private final NeuralNetwork network;
+
+    /**
+     * Number of threads
+     */
+    private final int threadNumber;
+
+    /**
+     * Default ctor.
+     * @param network trained network
+     * @param threadNumber number of threads
+     * @throws NeuralNetworkGenerationException on invalid number of threads
+     * or if learning processor of the network is not concurrent
+     */
+    public HogwildTrainer(NeuralNetwork network, int threadNumber) throws NeuralNetworkGenerationException {
+        if (threadNumber < 1) {
+            throw new NeuralNetworkGenerationException("Number of threads must be positive");
+        }
+        if (!network.getLearningProcessor().isConcurrent()) {
+            throw new NeuralNetworkGenerationException("Learning processor "
+                    + network.getLearningProcessor() + " does not support concurrent learning");
+        }
+        this.network = network;
+        this.threadNumber = threadNumber;
+    }
+
+    public NeuralNetwork getNetwork() {
+        return network;
+    }
+
+    public int getThreadNumber() {
+        return threadNumber;
+    }
+
+    /**
+     * Learns each sample once. Samples of a shard are learnt in their order,
+     * shard is a continuous range of samples, so shuffle samples between calls.
+     * Returns when all threads are done, so changes of all threads are visible afterwards.
+     * @param inputVectors input vectors
+     * @param references reference result vectors, null if learning is unsupervised
+     * @throws NeuralNetworkRuntimeException on failure of some thread, unchecked exceptions are wrapped
+     */
+    public void train(double[][] inputVectors, double[][] references) throws NeuralNetworkRuntimeException {
+        if (references != null && references.length != inputVectors.length) {
+            throw new NeuralNetworkRuntimeException(String.format(
+                    "There are %d input vectors and %d reference vectors", inputVectors.length, references.length));
+        }
+        final int shardNumber = Math.min(threadNumber, inputVectors.length);
+        final Shard[] shards = new Shard[shardNumber];
+        final Thread[] threads = new Thread[shardNumber];
+        for (int t = 0; t < shardNumber; t++) {
+            shards[t] = new Shard(inputVectors, references, inputVectors.length * t / shardNumber,
+                    inputVectors.length * (t + 1) / shardNumber);
+            threads[t] = new Thread(shards[t], "hogwild-" + t);
+            threads[t].start();
+        }
+        boolean isInterrupted = false;
+        for (Thread thread : threads) {
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                }
+                catch (InterruptedException ex) {
+                    isInterrupted = true;
+                }
+            }
+        }
+        if (isInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+        for (Shard shard : shards) {
+            if (shard.failure instanceof NeuralNetworkRuntimeException) {
+                throw (NeuralNetworkRuntimeException) shard.failure;
+            }
+            if (shard.failure instanceof Error) {
+                throw (Error) shard.failure;
+            }
+            if (shard.failure != null) {
+                throw new NeuralNetworkRuntimeException("Concurrent learning failed: " + shard.failure,
+                        shard.failure);
+            }
+        }
+    }
+
+    /**
+     * Continuous range of samples learnt by a single thread.
+     */
+    private final class Shard implements Runnable {
+
+        private final double[][] inputVectors;
+
+        private final double[][] references;
+
+        private final int from;
+
+        private final int to;
+
+        /**
+         * Exception which stopped the thread, null if all samples are learnt
+         */
+        private Throwable failure;
+
+        Shard(double[][] inputVectors, double[][] references, int from, int to) {
+            this.inputVectors = inputVectors;
+            this.references = references;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public void run() {
+            final double[] resultVector = new double[network.getResultVectorSize()];
+            try {
+                for (int s = from; s < to; s++) {
+                    network.learnConcurrently(inputVectors[s], references == null ? null : references[s],
+                            resultVector);
+                }
+            }
+            catch (NeuralNetworkRuntimeException | RuntimeException | Error ex) {
+                failure = ex;
+            }
+        }
+    }
+}
@@ -22,7 +22,8 @@ public interface LearningProcessor extends Serializable {
     /**
      * Modifies internal state of neural network after analytical processor.
      * Incoming vector must be mapped into result array before processing.
-     * traverseOrder, weight, bias, parents, children parameters may be modified.
+     * Weight and bias parameters may be modified, graph of the network is described
+     * by the immutable execution plan and must stay intact.
 
      * @param state state of some neural network
      * @param reference reference result vector, null if learning is not supervised
@@ -32,6 +33,16 @@ public interface LearningProcessor extends Serializable {
     void process(NeuralNetworkState state, double[] reference, AnalyticalProcessor analyzer)
             throws NeuralNetworkRuntimeException;
 
+    /**
+     * Concurrent processor may be called by several threads at once over the same
+     * weights and biases, each thread passes its own scratch state. Such processor keeps no
+     * intermediate values of a call in its fields and tolerates weights changed by other threads.
+     * @return true if processor may be used for lock-free asynchronous learning
+     */
+    default boolean isConcurrent() {
+        return false;
+    }
+
     /**
      * Checks if function has proper internal state.
      * Should be performed once before it will be used.
@@ -0,0 +1,166 @@
+package attatrol.neural.learning.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.Socket;
+
+import attatrol.neural.NeuralNetworkRuntimeException;
+import attatrol.neural.analysis.AnalyticalProcessor;
+import attatrol.neural.learning.LearningProcessor;
+import attatrol.neural.network.NeuralNetwork;
+import attatrol.neural.network.NeuralNetworkState;
+
+/**
+ * Worker of distributed learning, it may run in its own process.
+ * On connection it receives the network state and processors from {@link ParameterServer}
+ * and builds a local network. Each call of {@link #train(double[][], double[][])} learns
+ * samples locally, pushes changes of weights and biases to the server and
+ * replaces local parameters with fresh ones received back.
+ * <p>
+ * Worker is not thread safe, use a worker per thread or process.
+ * @author attatrol
+ *
+ */
+public class DistributedWorker implements Closeable {
+
+    private final Socket socket;
+
+    private final ObjectOutputStream out;
+
+    private final ObjectInputStream in;
+
+    /**
+     * Local network, its parameters are those of {@link #state}
+     */
+    private final NeuralNetwork network;
+
+    /**
+     * Local state of the network
+     */
+    private final NeuralNetworkState state;
+
+    /**
+     * Weights received from the server last time
+     */
+    private final float[] weightBase;
+
+    /**
+     * Biases received from the server last time
+     */
+    private final float[] biasBase;
+
+    /**
+     * Version of parameters received from the server last time
+     */
+    private long version;
+
+    /**
+     * Connects to the parameter server and builds the local network.
+     * @param host host of the server
+     * @param port port of the server
+     * @throws IOException on failure of connection
+     */
+    public DistributedWorker(String host, int port) throws IOException {
+        socket = new Socket(host, port);
+        try {
+            out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.flush();
+            in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+            state = (NeuralNetworkState) in.readObject();
+            version = in.readLong();
+            final AnalyticalProcessor analyzer = (AnalyticalProcessor) in.readObject();
+            final LearningProcessor learner = (LearningProcessor) in.readObject();
+            network = new NeuralNetwork(state, analyzer, learner);
+        }
+        catch (IOException | ClassNotFoundException | ClassCastException ex) {
+            socket.close();
+            throw new IOException("Failed to receive network from parameter server", ex);
+        }
+        weightBase = state.getWeight().clone();
+        biasBase = state.getBias().clone();
+    }
+
+    /**
+     * Local network is synchronized with the server on each call of
+     * {@link #train(double[][], double[][])} and {@link #pull()}. Map vectors with it
+     * as with any other network, but do not learn it directly.
+     * @return local network
+     */
+    public NeuralNetwork getNetwork() {
+        return network;
+    }
+
+    /**
+     * @return version of parameters received from the server last time
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Learns samples with the local network, then pushes changes of parameters to the server
+     * and receives fresh parameters.
+     * @param inputVectors input vectors
+     * @param references reference result vectors, null if learning is unsupervised
+     * @return true if the server has accepted changes, false if they are rejected as stale
+     * @throws IOException on failure of connection
+     * @throws NeuralNetworkRuntimeException on failure of local learning
+     */
+    public boolean train(double[][] inputVectors, double[][] references)
+            throws IOException, NeuralNetworkRuntimeException {
+        network.learnBatch(inputVectors, references);
+        final float[] weight = state.getWeight();
+        final float[] bias = state.getBias();
+        // local parameters are free since now, so they hold deltas
+        for (int k = 0; k < weight.length; k++) {
+            weight[k] -= weightBase[k];
+        }
+        for (int i = 0; i < bias.length; i++) {
+            bias[i] -= biasBase[i];
+        }
+        out.writeByte(ParameterProtocol.PUSH);
+        out.writeLong(version);
+        ParameterProtocol.writeFloats(out, weight);
+        ParameterProtocol.writeFloats(out, bias);
+        out.flush();
+        final boolean isAccepted = in.readByte() == ParameterProtocol.ACCEPTED;
+        readParameters();
+        return isAccepted;
+    }
+
+    /**
+     * Replaces local parameters with fresh ones from the server.
+     * @throws IOException on failure of connection
+     */
+    public void pull() throws IOException {
+        out.writeByte(ParameterProtocol.PULL);
+        out.flush();
+        readParameters();
+    }
+
+    /**
+     * Closes connection, local network stays usable.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            out.writeByte(ParameterProtocol.CLOSE);
+            out.flush();
+        }
+        finally {
+            socket.close();
+        }
+    }
+
+    private void readParameters() throws IOException {
+        version = in.readLong();
+        ParameterProtocol.readFloats(in, weightBase);
+        ParameterProtocol.readFloats(in, biasBase);
+        System.arraycopy(weightBase, 0, state.getWeight(), 0, weightBase.length);
+        System.arraycopy(biasBase, 0, state.getBias(), 0, biasBase.length);
+    }
+}
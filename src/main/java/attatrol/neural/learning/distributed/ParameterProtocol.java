@@ -0,0 +1,60 @@
+package attatrol.neural.learning.distributed;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Wire format shared by {@link ParameterServer} and {@link DistributedWorker}.
+ * <p>
+ * On connection server sends the network state, the version of its parameters,
+ * analytical and learning processors. Then worker sends commands:
+ * <ul>
+ * <li>{@link #PULL}: server replies with parameters;</li>
+ * <li>{@link #PUSH} with base version, weight and bias deltas: server replies with
+ * {@link #ACCEPTED} or {@link #REJECTED} and parameters;</li>
+ * <li>{@link #CLOSE}: server closes the connection.</li>
+ * </ul>
+ * Parameters are the version, flat weight array and bias array.
+ * @author attatrol
+ *
+ */
+final class ParameterProtocol {
+
+    static final byte PULL = 1;
+
+    static final byte PUSH = 2;
+
+    static final byte CLOSE = 3;
+
+    static final byte REJECTED = 0;
+
+    static final byte ACCEPTED = 1;
+
+    private ParameterProtocol() { }
+
+    /**
+     * Writes floats as a single block of bytes.
+     * @param out output
+     * @param values array of floats
+     * @throws IOException on failure of output
+     */
+    static void writeFloats(DataOutput out, float[] values) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(values.length * Float.BYTES);
+        buffer.asFloatBuffer().put(values);
+        out.write(buffer.array());
+    }
+
+    /**
+     * Reads floats written by {@link #writeFloats(DataOutput, float[])}.
+     * @param in input
+     * @param values array of floats to be filled
+     * @throws IOException on failure of input
+     */
+    static void readFloats(DataInput in, float[] values) throws IOException {
+        final byte[] bytes = new byte[values.length * Float.BYTES];
+        in.readFully(bytes);
+        ByteBuffer.wrap(bytes).asFloatBuffer().get(values);
+    }
+}
@@ -0,0 +1,284 @@
+package attatrol.neural.learning.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import attatrol.neural.analysis.AnalyticalProcessor;
+import attatrol.neural.learning.LearningProcessor;
+import attatrol.neural.network.NeuralNetworkState;
+import attatrol.neural.utils.Utils;
+
+/**
+ * Parameter server of distributed learning. It owns weights and biases of a network,
+ * {@link DistributedWorker}s connect to it over TCP, learn their shards of samples locally
+ * and push changes of parameters. Server adds pushed changes and replies with fresh parameters.
+ * <p>
+ * Each accepted push increments version of parameters. Push is based on the version
+ * its worker has received last time, if more than the staleness bound of other pushes
+ * were accepted since then, the push is rejected and the worker just receives fresh parameters.
+ * @author attatrol
+ *
+ */
+public class ParameterServer implements Closeable {
+
+    /**
+     * Staleness bound which accepts any push.
+     */
+    public static final int UNBOUNDED_STALENESS = Integer.MAX_VALUE;
+
+    /**
+     * Owned state of the network
+     */
+    private final NeuralNetworkState state;
+
+    /**
+     * Analytical processor sent to workers
+     */
+    private final AnalyticalProcessor analyzer;
+
+    /**
+     * Learning processor sent to workers
+     */
+    private final LearningProcessor learner;
+
+    /**
+     * Maximal number of pushes accepted between the base version of a push and the push itself
+     */
+    private final int maxStaleness;
+
+    /**
+     * Version of parameters, number of accepted pushes
+     */
+    private long version;
+
+    /**
+     * Number of rejected pushes
+     */
+    private long rejectedNumber;
+
+    /**
+     * Open sockets of workers
+     */
+    private final List<Socket> sockets = new ArrayList<>();
+
+    private ServerSocket serverSocket;
+
+    /**
+     * Default ctor.
+     * @param state state of the network, server owns it since then
+     * @param analyzer analytical processor of the network
+     * @param learner learning processor used by workers
+     * @param maxStaleness maximal number of pushes accepted between the base version of a push
+     * and the push itself, use {@link #UNBOUNDED_STALENESS} to accept all pushes
+     */
+    public ParameterServer(NeuralNetworkState state, AnalyticalProcessor analyzer, LearningProcessor learner,
+            int maxStaleness) {
+        this.state = state;
+        this.analyzer = analyzer;
+        this.learner = learner;
+        this.maxStaleness = maxStaleness;
+    }
+
+    /**
+     * Starts to accept workers.
+     * @param port port to listen, 0 to pick any free port
+     * @param bindAddress local address to listen, null for all addresses
+     * @throws IOException if the port can not be listened
+     */
+    public synchronized void start(int port, InetAddress bindAddress) throws IOException {
+        if (serverSocket != null) {
+            throw new IllegalStateException("Server is already started");
+        }
+        serverSocket = new ServerSocket(port, 0, bindAddress);
+        final ServerSocket acceptingSocket = serverSocket;
+        final Thread acceptThread = new Thread(() -> accept(acceptingSocket), "parameter-server");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    /**
+     * @return port the server listens
+     */
+    public synchronized int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return version of parameters, that is number of accepted pushes
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return number of pushes rejected by staleness bound
+     */
+    public synchronized long getRejectedNumber() {
+        return rejectedNumber;
+    }
+
+    /**
+     * @return deep copy of the current state of the network
+     */
+    public synchronized NeuralNetworkState getNetworkStateCopy() {
+        return new NeuralNetworkState(false, state.getInputVectorAmplitude(), state.getInputVectorSize(),
+                state.getResultVectorSize(), Utils.getCopy(state.getWeight()), Utils.getCopy(state.getBias()),
+                Utils.getCopy(state.getLinearCombination()), Utils.getCopy(state.getResult()),
+                Utils.getDeepCopy(state.getChildren()), Utils.getDeepCopy(state.getParents()),
+                Utils.getCopy(state.getTraverseOrder()), state.getPlan());
+    }
+
+    /**
+     * Stops to accept workers and closes connections of all workers.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        sockets.clear();
+    }
+
+    /**
+     * Accepts workers until server socket is closed.
+     * @param acceptingSocket server socket
+     */
+    private void accept(ServerSocket acceptingSocket) {
+        while (!acceptingSocket.isClosed()) {
+            try {
+                final Socket socket = acceptingSocket.accept();
+                synchronized (this) {
+                    sockets.add(socket);
+                }
+                final Thread thread = new Thread(() -> serve(socket), "parameter-server-worker");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            catch (IOException ex) {
+                // socket is closed
+            }
+        }
+    }
+
+    /**
+     * Serves a worker until it closes connection.
+     * @param socket socket of the worker
+     */
+    private void serve(Socket socket) {
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            out.flush();
+            final ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+            final NeuralNetworkState copy;
+            final long copyVersion;
+            synchronized (this) {
+                copy = getNetworkStateCopy();
+                copyVersion = version;
+            }
+            out.writeObject(copy);
+            out.writeLong(copyVersion);
+            out.writeObject(analyzer);
+            out.writeObject(learner);
+            out.flush();
+
+            final float[] weight = copy.getWeight();
+            final float[] bias = copy.getBias();
+            final float[] weightDelta = new float[weight.length];
+            final float[] biasDelta = new float[bias.length];
+            while (true) {
+                final byte command = in.readByte();
+                if (command == ParameterProtocol.PUSH) {
+                    final long baseVersion = in.readLong();
+                    ParameterProtocol.readFloats(in, weightDelta);
+                    ParameterProtocol.readFloats(in, biasDelta);
+                    final boolean isAccepted;
+                    final long currentVersion;
+                    synchronized (this) {
+                        isAccepted = version - baseVersion <= maxStaleness;
+                        if (isAccepted) {
+                            apply(weightDelta, biasDelta);
+                            version++;
+                        }
+                        else {
+                            rejectedNumber++;
+                        }
+                        currentVersion = snapshot(weight, bias);
+                    }
+                    out.writeByte(isAccepted ? ParameterProtocol.ACCEPTED : ParameterProtocol.REJECTED);
+                    writeParameters(out, currentVersion, weight, bias);
+                }
+                else if (command == ParameterProtocol.PULL) {
+                    final long currentVersion;
+                    synchronized (this) {
+                        currentVersion = snapshot(weight, bias);
+                    }
+                    writeParameters(out, currentVersion, weight, bias);
+                }
+                else {
+                    break;
+                }
+            }
+        }
+        catch (IOException ex) {
+            // connection is lost, worker may reconnect
+        }
+        finally {
+            synchronized (this) {
+                sockets.remove(socket);
+            }
+            try {
+                socket.close();
+            }
+            catch (IOException ex) {
+                // socket is already closed
+            }
+        }
+    }
+
+    /**
+     * Adds changes of parameters pushed by a worker.
+     * @param weightDelta change of each weight
+     * @param biasDelta change of each bias
+     */
+    private void apply(float[] weightDelta, float[] biasDelta) {
+        final float[] weight = state.getWeight();
+        for (int k = 0; k < weight.length; k++) {
+            weight[k] += weightDelta[k];
+        }
+        final float[] bias = state.getBias();
+        for (int i = 0; i < bias.length; i++) {
+            bias[i] += biasDelta[i];
+        }
+    }
+
+    /**
+     * Copies current parameters, must be called under the lock of the server.
+     * @param weight array for weights
+     * @param bias array for biases
+     * @return version of copied parameters
+     */
+    private long snapshot(float[] weight, float[] bias) {
+        System.arraycopy(state.getWeight(), 0, weight, 0, weight.length);
+        System.arraycopy(state.getBias(), 0, bias, 0, bias.length);
+        return version;
+    }
+
+    private static void writeParameters(ObjectOutputStream out, long version, float[] weight, float[] bias)
+            throws IOException {
+        out.writeLong(version);
+        ParameterProtocol.writeFloats(out, weight);
+        ParameterProtocol.writeFloats(out, bias);
+        out.flush();
+    }
+}
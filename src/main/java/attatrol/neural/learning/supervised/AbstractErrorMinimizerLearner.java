@@ -70,9 +70,10 @@ public abstract class AbstractErrorMinimizerLearner implements LearningProcessor
     /**
      * Check if reference vector is valid.
      * @param reference reference vector
+     * @param resultVectorSize size of the result vector of the network
      * @throws NeuralNetworkRuntimeException on invalid reference vector
      */
-    private void checkReferenceVector(double[] reference, int resultVectorSize) throws NeuralNetworkRuntimeException {
+    protected void checkReferenceVector(double[] reference, int resultVectorSize) throws NeuralNetworkRuntimeException {
         if (reference.length != resultVectorSize) {
             throw new NeuralNetworkRuntimeException(
                     String.format("Reference vector has cardinality of %d, network accepts only %d",
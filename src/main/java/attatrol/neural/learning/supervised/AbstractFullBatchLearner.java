@@ -0,0 +1,43 @@
+package attatrol.neural.learning.supervised;
+
+import attatrol.neural.NeuralNetworkRuntimeException;
+import attatrol.neural.analysis.AnalyticalProcessor;
+import attatrol.neural.errorfunction.ErrorFunction;
+import attatrol.neural.learning.EpochLearningProcessor;
+import attatrol.neural.network.NeuralNetworkState;
+
+/**
+ * Generic class for full-batch learners, they change weights by the gradient
+ * summed over the whole learning set, see {@link attatrol.neural.network.NeuralNetwork#learnEpoch}.
+ * Samples are mapped in parallel as in {@link AbstractGradientLearner}.
+ * <p>
+ * Batch of {@link #processBatch} is treated as the whole learning set,
+ * single sample of {@link #process} is treated as a learning set of one sample.
+ * @author attatrol
+ *
+ */
+public abstract class AbstractFullBatchLearner extends AbstractGradientLearner implements EpochLearningProcessor {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = -3378504317716316158L;
+
+    /**
+     * Default ctor.
+     * @param errorFunction error function
+     * @param threadNumber number of worker threads
+     */
+    protected AbstractFullBatchLearner(ErrorFunction errorFunction, int threadNumber) {
+        super(errorFunction, Integer.MAX_VALUE, threadNumber);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void processEpoch(NeuralNetworkState state, double[][] inputVectors, double[][] references,
+            AnalyticalProcessor analyzer) throws NeuralNetworkRuntimeException {
+        processBatch(state, inputVectors, references, 0, inputVectors.length, analyzer);
+    }
+}
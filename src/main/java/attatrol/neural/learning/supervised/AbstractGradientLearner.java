@@ -0,0 +1,295 @@
+package attatrol.neural.learning.supervised;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.NeuralNetworkRuntimeException;
+import attatrol.neural.analysis.ActivationFunctionAnalyzer;
+import attatrol.neural.analysis.AnalyticalProcessor;
+import attatrol.neural.errorfunction.ErrorFunction;
+import attatrol.neural.learning.BatchLearningProcessor;
+import attatrol.neural.network.ExecutionPlan;
+import attatrol.neural.network.InferenceContext;
+import attatrol.neural.network.NeuralNetworkState;
+
+/**
+ * Generic class for learners which change weights once per batch of samples
+ * by the gradient of the error function summed over the batch.
+ * Subclasses define how the gradient changes weights.
+ * <p>
+ * Batch is split between workers running as tasks of the common fork/join pool, each worker maps its samples
+ * within its own inference context and sums their gradients in its own buffer.
+ * Buffers are added pairwise in a tree, then weights are changed once.
+ * Learning a single sample with {@link #process} is the same as learning a batch of one sample.
+ * @author attatrol
+ *
+ */
+public abstract class AbstractGradientLearner extends AbstractErrorMinimizerLearner
+        implements BatchLearningProcessor {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = 5409519512957394313L;
+
+    /**
+     * Maximal number of samples in a batch.
+     */
+    private final int batchSize;
+
+    /**
+     * Number of workers, the batch is split between at most so many tasks.
+     */
+    private final int threadNumber;
+
+    /**
+     * Scratch of workers, created on the first batch.
+     */
+    private transient Worker[] workers;
+
+    /**
+     * Default ctor.
+     * @param errorFunction error function
+     * @param batchSize maximal number of samples in a batch
+     * @param threadNumber number of worker threads
+     */
+    protected AbstractGradientLearner(ErrorFunction errorFunction, int batchSize, int threadNumber) {
+        super(errorFunction);
+        this.batchSize = batchSize;
+        this.threadNumber = threadNumber;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getThreadNumber() {
+        return threadNumber;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Empty batch leaves weights intact.
+     */
+    @Override
+    public final void processBatch(NeuralNetworkState state, double[][] inputVectors, double[][] references,
+            int from, int to, AnalyticalProcessor analyzer) throws NeuralNetworkRuntimeException {
+        if (from < to) {
+            internalProcessBatch(state, inputVectors, references, from, to, analyzer);
+        }
+    }
+
+    /**
+     * Changes weights once by the gradient of a batch of at least one sample.
+     * @param state state of the network
+     * @param inputVectors incoming vectors
+     * @param references reference result vectors
+     * @param from index of the first sample
+     * @param to index after the last sample, greater than from
+     * @param analyzer analytical processor of the network
+     * @throws NeuralNetworkRuntimeException on some error during learning
+     */
+    protected void internalProcessBatch(NeuralNetworkState state, double[][] inputVectors, double[][] references,
+            int from, int to, AnalyticalProcessor analyzer) throws NeuralNetworkRuntimeException {
+        changeWeights(state, computeGradient(state, inputVectors, references, from, to, analyzer));
+    }
+
+    /**
+     * Maps samples of the range with current weights and sums their gradients, weights are not changed.
+     * @param state state of the network
+     * @param inputVectors incoming vectors
+     * @param references reference result vectors
+     * @param from index of the first sample
+     * @param to index after the last sample
+     * @param analyzer analytical processor of the network
+     * @return gradient summed over the range, it is valid until the next call
+     * @throws NeuralNetworkRuntimeException on some error during mapping
+     */
+    protected ErrorGradient computeGradient(NeuralNetworkState state, double[][] inputVectors,
+            double[][] references, int from, int to, AnalyticalProcessor analyzer)
+                    throws NeuralNetworkRuntimeException {
+        final ActivationFunctionAnalyzer afa = getActivationFunctionAnalyzer(analyzer);
+        for (int s = from; s < to; s++) {
+            checkReferenceVector(references[s], state.getResultVectorSize());
+        }
+        ensureWorkers(state.getPlan());
+        final int workerNumber = Math.max(1, Math.min(threadNumber, to - from));
+        final BatchTask task = new BatchTask(state, inputVectors, references, from, to, 0, workerNumber,
+                workerNumber, analyzer, afa);
+        if (workerNumber > 1) {
+            ForkJoinPool.commonPool().invoke(task);
+        }
+        else {
+            task.compute();
+        }
+        return workers[0].gradient;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void internalProcess(NeuralNetworkState state, double[] reference, AnalyticalProcessor analyzer)
+            throws NeuralNetworkRuntimeException {
+        final ActivationFunctionAnalyzer afa = getActivationFunctionAnalyzer(analyzer);
+        ensureWorkers(state.getPlan());
+        final ErrorGradient gradient = workers[0].gradient;
+        gradient.clear();
+        gradient.accumulate(state, reference, errorFunction, afa);
+        changeWeights(state, gradient);
+    }
+
+    /**
+     * Checks common parameters of gradient learners.
+     * @param changeFactor weight shift speed modifier
+     * @param batchSize maximal number of samples in a batch
+     * @param threadNumber number of worker threads
+     * @throws NeuralNetworkGenerationException on invalid parameters
+     */
+    protected static void checkParameters(float changeFactor, int batchSize, int threadNumber)
+            throws NeuralNetworkGenerationException {
+        if (changeFactor <= 0 || changeFactor > 1) {
+            throw new NeuralNetworkGenerationException("Change factor must be in (0, 1]");
+        }
+        if (batchSize < 1) {
+            throw new NeuralNetworkGenerationException("Batch size must be positive");
+        }
+        checkThreadNumber(threadNumber);
+    }
+
+    /**
+     * @param threadNumber number of worker threads
+     * @throws NeuralNetworkGenerationException if number of threads is not positive
+     */
+    protected static void checkThreadNumber(int threadNumber) throws NeuralNetworkGenerationException {
+        if (threadNumber < 1) {
+            throw new NeuralNetworkGenerationException("Number of threads must be positive");
+        }
+    }
+
+    /**
+     * Changes weights and biases of the network by the gradient of a batch.
+     * @param state network state
+     * @param gradient gradient summed over the batch
+     */
+    protected abstract void changeWeights(NeuralNetworkState state, ErrorGradient gradient);
+
+    /**
+     * Creates scratch of workers if there is none or the network is changed.
+     * @param plan execution plan of the network
+     */
+    private void ensureWorkers(ExecutionPlan plan) {
+        if (workers == null || workers[0].plan != plan) {
+            workers = new Worker[threadNumber];
+            for (int w = 0; w < threadNumber; w++) {
+                workers[w] = new Worker(plan);
+            }
+        }
+    }
+
+    /**
+     * @param analyzer analytical processor of the network
+     * @return the analyzer as an activation function analyzer
+     * @throws NeuralNetworkRuntimeException if the analyzer has no differentiable activation function
+     */
+    protected static ActivationFunctionAnalyzer getActivationFunctionAnalyzer(AnalyticalProcessor analyzer)
+            throws NeuralNetworkRuntimeException {
+        if (!(analyzer instanceof ActivationFunctionAnalyzer)) {
+            throw new NeuralNetworkRuntimeException("Gradient learner works only with analyzers"
+                    + "which use differentiable activation function (belonging to ActivationFunctionAnalylizer class)");
+        }
+        return (ActivationFunctionAnalyzer) analyzer;
+    }
+
+    /**
+     * Scratch of a worker thread.
+     */
+    private static final class Worker {
+
+        private final ExecutionPlan plan;
+
+        private final InferenceContext context;
+
+        private final ErrorGradient gradient;
+
+        Worker(ExecutionPlan plan) {
+            this.plan = plan;
+            context = new InferenceContext(plan.getSourceNumber());
+            gradient = new ErrorGradient(plan);
+        }
+    }
+
+    /**
+     * Task which processes samples of a range of workers and adds up their gradients,
+     * sum of the range is left in the gradient of its first worker.
+     */
+    private final class BatchTask extends RecursiveAction {
+
+        private static final long serialVersionUID = -5935322010839735212L;
+
+        private final NeuralNetworkState state;
+
+        private final double[][] inputVectors;
+
+        private final double[][] references;
+
+        private final int from;
+
+        private final int to;
+
+        private final int workerFrom;
+
+        private final int workerTo;
+
+        private final int workerNumber;
+
+        private final AnalyticalProcessor analyzer;
+
+        private final ActivationFunctionAnalyzer afa;
+
+        BatchTask(NeuralNetworkState state, double[][] inputVectors, double[][] references, int from, int to,
+                int workerFrom, int workerTo, int workerNumber, AnalyticalProcessor analyzer,
+                ActivationFunctionAnalyzer afa) {
+            this.state = state;
+            this.inputVectors = inputVectors;
+            this.references = references;
+            this.from = from;
+            this.to = to;
+            this.workerFrom = workerFrom;
+            this.workerTo = workerTo;
+            this.workerNumber = workerNumber;
+            this.analyzer = analyzer;
+            this.afa = afa;
+        }
+
+        @Override
+        protected void compute() {
+            if (workerTo - workerFrom > 1) {
+                final int middle = (workerFrom + workerTo) >>> 1;
+                invokeAll(new BatchTask(state, inputVectors, references, from, to, workerFrom, middle,
+                                workerNumber, analyzer, afa),
+                        new BatchTask(state, inputVectors, references, from, to, middle, workerTo,
+                                workerNumber, analyzer, afa));
+                workers[workerFrom].gradient.add(workers[middle].gradient);
+            }
+            else {
+                final Worker worker = workers[workerFrom];
+                final NeuralNetworkState workerState = worker.context.attach(state);
+                final double[] result = workerState.getResult();
+                final int sampleFrom = from + (to - from) * workerFrom / workerNumber;
+                final int sampleTo = from + (to - from) * (workerFrom + 1) / workerNumber;
+                worker.gradient.clear();
+                for (int s = sampleFrom; s < sampleTo; s++) {
+                    System.arraycopy(inputVectors[s], 0, result, 0, state.getInputVectorSize());
+                    analyzer.process(workerState, AbstractGradientLearner.this);
+                    worker.gradient.accumulate(workerState, references[s], errorFunction, afa);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package attatrol.neural.learning.supervised;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.errorfunction.ErrorFunction;
+import attatrol.neural.network.NeuralNetworkState;
+
+/**
+ * Adam learner: each parameter has its own step, found from running averages
+ * of its gradient g and of its squared gradient.<br/>
+ * m[k] = b1 * m[k] + (1 - b1) * g[k], v[k] = b2 * v[k] + (1 - b2) * g[k]^2<br/>
+ * w[k] -= n * sqrt(1 - b2^t) / (1 - b1^t) * m[k] / (sqrt(v[k]) + e), where t is number of batches.<br/>
+ * Averages are kept in flat arrays parallel to weight and bias arrays,
+ * they are serialized with the learner.
+ * @author attatrol
+ *
+ */
+public class AdamLearner extends AbstractGradientLearner {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = -6207426937812431962L;
+
+    /**
+     * Default decay rate of averages of gradients.
+     */
+    public static final float DEFAULT_BETA1 = 0.9f;
+
+    /**
+     * Default decay rate of averages of squared gradients.
+     */
+    public static final float DEFAULT_BETA2 = 0.999f;
+
+    /**
+     * Default addend which keeps denominator away from zero.
+     */
+    public static final float DEFAULT_EPSILON = 1e-8f;
+
+    /**
+     * Weight shift speed modifier n.
+     */
+    private final float changeFactor;
+
+    /**
+     * Decay rate of averages of gradients b1.
+     */
+    private final float beta1;
+
+    /**
+     * Decay rate of averages of squared gradients b2.
+     */
+    private final float beta2;
+
+    /**
+     * Addend e which keeps denominator away from zero.
+     */
+    private final float epsilon;
+
+    /**
+     * Average gradient of each weight
+     */
+    private float[] weightMoment;
+
+    /**
+     * Average squared gradient of each weight
+     */
+    private float[] weightSquareMoment;
+
+    /**
+     * Average gradient of each bias
+     */
+    private float[] biasMoment;
+
+    /**
+     * Average squared gradient of each bias
+     */
+    private float[] biasSquareMoment;
+
+    /**
+     * Number of processed batches t.
+     */
+    private long step;
+
+    /**
+     * Default ctor.
+     * @param errorFunction error function
+     * @param changeFactor weight shift speed modifier
+     * @param beta1 decay rate of averages of gradients
+     * @param beta2 decay rate of averages of squared gradients
+     * @param epsilon addend which keeps denominator away from zero
+     * @param batchSize maximal number of samples in a batch
+     * @param threadNumber number of worker threads
+     */
+    private AdamLearner(ErrorFunction errorFunction, float changeFactor, float beta1, float beta2,
+            float epsilon, int batchSize, int threadNumber) {
+        super(errorFunction, batchSize, threadNumber);
+        this.changeFactor = changeFactor;
+        this.beta1 = beta1;
+        this.beta2 = beta2;
+        this.epsilon = epsilon;
+    }
+
+    /**
+     * Factory method for Adam learner.
+     * @param errorFunction error function
+     * @param changeFactor weight shift speed modifier, between 0 to 1, usually about 0.001
+     * @param beta1 decay rate of averages of gradients, in [0, 1)
+     * @param beta2 decay rate of averages of squared gradients, in [0, 1)
+     * @param epsilon addend which keeps denominator away from zero, positive
+     * @param batchSize maximal number of samples in a batch
+     * @param threadNumber number of worker threads
+     * @return Adam learner instance
+     * @throws NeuralNetworkGenerationException on invalid parameters
+     */
+    public static AdamLearner getAdamLearner(ErrorFunction errorFunction, float changeFactor, float beta1,
+            float beta2, float epsilon, int batchSize, int threadNumber) throws NeuralNetworkGenerationException {
+        checkParameters(changeFactor, batchSize, threadNumber);
+        if (beta1 < 0 || beta1 >= 1 || beta2 < 0 || beta2 >= 1) {
+            throw new NeuralNetworkGenerationException("Decay rates must be in [0, 1)");
+        }
+        if (epsilon <= 0) {
+            throw new NeuralNetworkGenerationException("Epsilon must be positive");
+        }
+        return new AdamLearner(errorFunction, changeFactor, beta1, beta2, epsilon, batchSize, threadNumber);
+    }
+
+    /**
+     * Factory method for Adam learner with default decay rates and epsilon.
+     * @param errorFunction error function
+     * @param changeFactor weight shift speed modifier, between 0 to 1, usually about 0.001
+     * @param batchSize maximal number of samples in a batch
+     * @param threadNumber number of worker threads
+     * @return Adam learner instance
+     * @throws NeuralNetworkGenerationException on invalid parameters
+     */
+    public static AdamLearner getAdamLearner(ErrorFunction errorFunction, float changeFactor, int batchSize,
+            int threadNumber) throws NeuralNetworkGenerationException {
+        return getAdamLearner(errorFunction, changeFactor, DEFAULT_BETA1, DEFAULT_BETA2, DEFAULT_EPSILON,
+                batchSize, threadNumber);
+    }
+
+    public float getChangeFactor() {
+        return changeFactor;
+    }
+
+    public float getBeta1() {
+        return beta1;
+    }
+
+    public float getBeta2() {
+        return beta2;
+    }
+
+    public float getEpsilon() {
+        return epsilon;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void changeWeights(NeuralNetworkState state, ErrorGradient gradient) {
+        final float[] weight = state.getWeight();
+        final float[] bias = state.getBias();
+        if (weightMoment == null || weightMoment.length != weight.length || biasMoment.length != bias.length) {
+            weightMoment = new float[weight.length];
+            weightSquareMoment = new float[weight.length];
+            biasMoment = new float[bias.length];
+            biasSquareMoment = new float[bias.length];
+            step = 0;
+        }
+        step++;
+        // bias correction of both averages is folded into the step size
+        final double stepSize = changeFactor * Math.sqrt(1. - Math.pow(beta2, step))
+                / (1. - Math.pow(beta1, step));
+        final double averaging = 1. / gradient.getSampleNumber();
+        final double[] weightGradient = gradient.getWeightGradient();
+        for (int k = 0; k < weight.length; k++) {
+            weight[k] -= getShift(weightMoment, weightSquareMoment, k, averaging * weightGradient[k], stepSize);
+        }
+        final double[] biasGradient = gradient.getBiasGradient();
+        for (int i : state.getPlan().getNeuronOrder()) {
+            bias[i] -= getShift(biasMoment, biasSquareMoment, i, averaging * biasGradient[i], stepSize);
+        }
+    }
+
+    /**
+     * Updates averages of a parameter.
+     * @param moment averages of gradients
+     * @param squareMoment averages of squared gradients
+     * @param index index of the parameter
+     * @param g gradient of the parameter
+     * @param stepSize corrected step size
+     * @return amount to subtract from the parameter
+     */
+    private double getShift(float[] moment, float[] squareMoment, int index, double g, double stepSize) {
+        final float m = (float) (beta1 * moment[index] + (1. - beta1) * g);
+        final float v = (float) (beta2 * squareMoment[index] + (1. - beta2) * g * g);
+        moment[index] = m;
+        squareMoment[index] = v;
+        return stepSize * m / (Math.sqrt(v) + epsilon);
+    }
+
+    @Override
+    public String toString() {
+        return "AdamLearner [changeFactor=" + changeFactor + ", beta1=" + beta1 + ", beta2=" + beta2
+                + ", epsilon=" + epsilon + ", batchSize=" + getBatchSize()
+                + ", threadNumber=" + getThreadNumber() + ", errorFunction=" + errorFunction + "]";
+    }
+}
@@ -1,14 +1,13 @@
 package attatrol.neural.learning.supervised;
 
-import java.util.Arrays;
-
 import attatrol.neural.NeuralNetworkGenerationException;
 import attatrol.neural.NeuralNetworkRuntimeException;
-import attatrol.neural.activationfunction.ActivationFunction;
 import attatrol.neural.analysis.ActivationFunctionAnalyzer;
 import attatrol.neural.analysis.AnalyticalProcessor;
 import attatrol.neural.errorfunction.ErrorFunction;
+import attatrol.neural.network.ExecutionPlan;
 import attatrol.neural.network.NeuralNetworkState;
+import attatrol.neural.utils.ParallelUtils;
 
 public class BackpropagationLearner extends AbstractErrorMinimizerLearner {
 
@@ -69,66 +68,168 @@ public class BackpropagationLearner extends AbstractErrorMinimizerLearner {
      * E -error function<br/>
      * S[i] - linear combination of neuron i<br/>
      * R[i] - result of neuron i (R[i] = f(S[i]), where f is an activation function)<br/>
-     * w[i][j] - weight of neuron i which factors with result of vector j</br>
+     * w[i][j] - weight of neuron i which factors with result of vector j,
+     * it is stored in the flat weight array of the execution plan</br>
      * b[i] - bias of neuron i</br>
      * n - change factor, some small factor between 0 and 1 which affects speed of weight change
+     * <p>
+     * Derivatives of the activation function are found once per neuron before the pass,
+     * so the inner loops only multiply and add. Small networks are processed sequentially,
+     * each neuron scatters its dE/dS to its parents. Large networks are processed level by level
+     * on the common fork/join pool with the threshold of the analyzer: each neuron gathers its dE/dS
+     * from its children through the transposed index of the execution plan,
+     * then all weights are changed at once.
      */
     @Override
     protected void internalProcess(NeuralNetworkState state, double[] reference, AnalyticalProcessor analyzer)
             throws NeuralNetworkRuntimeException {
-        int[] traverseOrder = state.getTraverseOrder();
-        float[][] weight = state.getWeight();
-        float[] bias = state.getBias();
-        int[][]parents = state.getParents();
-        double[] result = state.getResult();
-        double[] linearCombination = state.getLinearCombination();
+        ExecutionPlan plan = state.getPlan();
         if (!(analyzer instanceof ActivationFunctionAnalyzer)) {
             throw new NeuralNetworkRuntimeException("Backpropagation learner works only with analyzers"
                     + "which use differentiable activation function (belonging to ActivationFunctionAnalylizer class)");
         }
         final ActivationFunctionAnalyzer afa = (ActivationFunctionAnalyzer) analyzer;
-        final ActivationFunction f = afa.getActivationFunction();
-
-        // array of dE/dS[i]
-        double[] errorFunctionDerivative = new double[result.length];
 
-        int surfaceLayerFirstNeuronIndex = result.length - reference.length;
-        // neural network result vector (results of the surface layer)
-        double[] resultVector = Arrays.copyOfRange(result, surfaceLayerFirstNeuronIndex, result.length);
-
-        // first let us find all dE/dS for surface layer, it is easy:
-        // dE/dS[i] = dE/dR[i] * dR[i]/dS[i] = dE/dR[i] * df(S[i])/dS[i]
-        for (int i = 0; i < reference.length; i++) {
-            errorFunctionDerivative[i + surfaceLayerFirstNeuronIndex] = 
-                    errorFunction.getDerivative(resultVector, reference, i)
-                    * f.getDerivative(linearCombination[i + surfaceLayerFirstNeuronIndex], resultVector[i]);
+        // first let us find all df(S[i])/dS[i] and dE/dR for surface layer, it is easy
+        ErrorGradient.prepareErrorDerivatives(state, reference, errorFunction, afa);
+        final int threshold = afa.getParallelismThreshold();
+        if (ParallelUtils.isWorthParallel(plan.getRowOffset(), 0, plan.getRowNumber(), threshold)) {
+            backpropagateByLevels(state, threshold);
+        }
+        else {
+            backpropagate(state);
         }
+    }
+
+    /**
+     * Sequential backward pass, neurons are processed in backwards order
+     * and each of them scatters its dE/dS to its parents.
+     * @param state network state with surface dE/dR and activation derivatives set
+     */
+    private void backpropagate(NeuralNetworkState state) {
+        ExecutionPlan plan = state.getPlan();
+        int[] neuronOrder = plan.getNeuronOrder();
+        int[] rowOffset = plan.getRowOffset();
+        int[] parentIndex = plan.getParentIndex();
+        float[] weight = state.getWeight();
+        float[] bias = state.getBias();
+        double[] result = state.getResult();
+        double[] activationDerivative = state.getActivationDerivative();
+        double[] errorFunctionDerivative = state.getErrorDerivative();
         // now let us process neurons in backwards order
-        for (int j = traverseOrder.length - 1; j >= 0; j--) {
-            // for this neuron we already have dE/dS[i]
-            double efd = errorFunctionDerivative[traverseOrder[j]];
+        for (int r = neuronOrder.length - 1; r >= 0; r--) {
             // i - current neuron index
-            final int i = traverseOrder[j];
-            for (int k = 0; k < weight[i].length; k++) {
-                // j = parents[i][k] - index of parent connected to weight w[i][j]
-                final int parentIndex = parents[i][k];
-                // for any non-surface neuron m dE/dS[m] = SUM (dE/dS[i] * dS[i]/dS[m]),
-                // where i runs through all indexes of children of neuron m
-                // here m = parentIndex
-                // we have to add to errorFunctionDerivative[parentIndex]
-                // summand dE/dS[i] * dS[i]/dS[m] = edf * dS[i]/dR[m] * dR[m]/dS[m] =
-                // = edf * w[i][m] * df(S[m])/dS[m]
-                errorFunctionDerivative[parentIndex] += efd * weight[i][k]
-                        * f.getDerivative(linearCombination[parentIndex], result[parentIndex]);
+            final int i = neuronOrder[r];
+            // all children are processed, so we have dE/dR[i] and
+            // dE/dS[i] = dE/dR[i] * df(S[i])/dS[i]
+            final double efd = errorFunctionDerivative[i] * activationDerivative[i];
+            errorFunctionDerivative[i] = efd;
+            final double weightChange = changeFactor * efd;
+            for (int k = rowOffset[r]; k < rowOffset[r + 1]; k++) {
+                // j = parentIndex[k] - index of parent connected to weight w[i][j] = weight[k]
+                final int j = parentIndex[k];
+                // for any non-surface neuron m dE/dR[m] = SUM (dE/dS[i] * dS[i]/dR[m]) =
+                // = SUM (dE/dS[i] * w[i][m]), where i runs through all indexes of children of m
+                // here m = j
+                errorFunctionDerivative[j] += efd * weight[k];
                 // Now actial weight change
                 // w[i][j] -= n * dE/dw[i][j],
                 // dE/dw[i][j] = dE/dS[i] * dS[i]/dw[i][j] = dE/dS[i] * R[j]
-                weight[i][k] -= changeFactor * efd * result[parentIndex];
+                weight[k] -= weightChange * result[j];
             }
             // b[i]  -= n * dE/db[i]
             // dE/db[i] = dE/dS[i] * dS[i]/db[i] = dE/dS[i] * 1 = dE/dS[i]
-            bias[i] -= changeFactor * efd;
+            bias[i] -= weightChange;
+        }
+    }
+
+    /**
+     * Parallel backward pass. Children of a neuron belong to upper levels,
+     * so levels are processed in backwards order and neurons of a level are independent.
+     * Weights are changed only after all dE/dS are found, since gathering reads them.
+     * @param state network state with surface dE/dR and activation derivatives set
+     * @param threshold minimal number of weights processed by a single fork/join task
+     */
+    private void backpropagateByLevels(NeuralNetworkState state, int threshold) {
+        final ExecutionPlan plan = state.getPlan();
+        final int[] levelOffset = plan.getLevelOffset();
+        final int[] childRowOffset = plan.getChildRowOffset();
+        for (int l = plan.getLevelNumber() - 1; l >= 0; l--) {
+            final int rowFrom = levelOffset[l];
+            final int rowTo = levelOffset[l + 1];
+            if (ParallelUtils.isWorthParallel(childRowOffset, rowFrom, rowTo, threshold)) {
+                ParallelUtils.processRows(childRowOffset, rowFrom, rowTo, threshold,
+                        (from, to) -> gatherErrorDerivatives(state, from, to));
+            }
+            else {
+                gatherErrorDerivatives(state, rowFrom, rowTo);
+            }
         }
+        ParallelUtils.processRows(plan.getRowOffset(), 0, plan.getRowNumber(), threshold,
+                (from, to) -> changeWeights(state, from, to));
+    }
+
+    /**
+     * Gathers dE/dS of neurons from their children:
+     * dE/dS[m] = df(S[m])/dS[m] * (dE/dR[m] + SUM (dE/dS[i] * w[i][m])),
+     * i runs through children of m, dE/dR[m] is non-zero only for surface neurons.
+     * @param state network state
+     * @param rowFrom first row to process
+     * @param rowTo row after the last one to process
+     */
+    private void gatherErrorDerivatives(NeuralNetworkState state, int rowFrom, int rowTo) {
+        ExecutionPlan plan = state.getPlan();
+        int[] neuronOrder = plan.getNeuronOrder();
+        int[] childRowOffset = plan.getChildRowOffset();
+        int[] childEdge = plan.getChildEdge();
+        int[] childNeuron = plan.getChildNeuron();
+        float[] weight = state.getWeight();
+        double[] activationDerivative = state.getActivationDerivative();
+        double[] errorFunctionDerivative = state.getErrorDerivative();
+        for (int r = rowFrom; r < rowTo; r++) {
+            final int m = neuronOrder[r];
+            double sum = errorFunctionDerivative[m];
+            for (int c = childRowOffset[r]; c < childRowOffset[r + 1]; c++) {
+                sum += errorFunctionDerivative[childNeuron[c]] * weight[childEdge[c]];
+            }
+            errorFunctionDerivative[m] = sum * activationDerivative[m];
+        }
+    }
+
+    /**
+     * Changes weights and biases of neurons with known dE/dS.
+     * @param state network state
+     * @param rowFrom first row to process
+     * @param rowTo row after the last one to process
+     */
+    private void changeWeights(NeuralNetworkState state, int rowFrom, int rowTo) {
+        ExecutionPlan plan = state.getPlan();
+        int[] neuronOrder = plan.getNeuronOrder();
+        int[] rowOffset = plan.getRowOffset();
+        int[] parentIndex = plan.getParentIndex();
+        float[] weight = state.getWeight();
+        float[] bias = state.getBias();
+        double[] result = state.getResult();
+        double[] errorFunctionDerivative = state.getErrorDerivative();
+        for (int r = rowFrom; r < rowTo; r++) {
+            final int i = neuronOrder[r];
+            final double weightChange = changeFactor * errorFunctionDerivative[i];
+            // dE/dw[i][j] = dE/dS[i] * R[j]
+            for (int k = rowOffset[r]; k < rowOffset[r + 1]; k++) {
+                weight[k] -= weightChange * result[parentIndex[k]];
+            }
+            // dE/db[i] = dE/dS[i]
+            bias[i] -= weightChange;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Backward pass keeps its intermediate values in scratch of the passed state.
+     */
+    @Override
+    public boolean isConcurrent() {
+        return true;
     }
 
     @Override
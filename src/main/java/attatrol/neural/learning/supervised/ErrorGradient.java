@@ -0,0 +1,277 @@
+package attatrol.neural.learning.supervised;
+
+import java.util.Arrays;
+
+import attatrol.neural.activationfunction.ActivationFunction;
+import attatrol.neural.analysis.ActivationFunctionAnalyzer;
+import attatrol.neural.errorfunction.CrossEntropyError;
+import attatrol.neural.errorfunction.ErrorFunction;
+import attatrol.neural.network.ExecutionPlan;
+import attatrol.neural.network.NeuralNetworkState;
+import attatrol.neural.utils.MatrixUtils;
+
+/**
+ * Gradient of the error function by weights and biases, summed over some samples.
+ * Weight gradient is laid out as the flat weight array of the execution plan,
+ * bias gradient is indexed by sources. Gradients of different sample sets
+ * may be found by different threads and then added.
+ * @author attatrol
+ *
+ */
+public final class ErrorGradient {
+
+    /**
+     * dE/dw for each weight
+     */
+    private final double[] weightGradient;
+
+    /**
+     * dE/db for each source
+     */
+    private final double[] biasGradient;
+
+    /**
+     * Sum of error function values
+     */
+    private double error;
+
+    /**
+     * Number of accumulated samples
+     */
+    private int sampleNumber;
+
+    /**
+     * Default ctor.
+     * @param plan execution plan of the network
+     */
+    public ErrorGradient(ExecutionPlan plan) {
+        weightGradient = new double[plan.getEdgeNumber()];
+        biasGradient = new double[plan.getSourceNumber()];
+    }
+
+    /**
+     * Sets gradient to zero.
+     */
+    public void clear() {
+        Arrays.fill(weightGradient, 0.);
+        Arrays.fill(biasGradient, 0.);
+        error = 0.;
+        sampleNumber = 0;
+    }
+
+    /**
+     * Adds gradient of a single sample. Weights are not changed.
+     * @param state network state after the forward pass of the sample
+     * @param reference reference vector of the sample
+     * @param errorFunction error function
+     * @param analyzer analyzer of the network
+     */
+    public void accumulate(NeuralNetworkState state, double[] reference, ErrorFunction errorFunction,
+            ActivationFunctionAnalyzer analyzer) {
+        prepareErrorDerivatives(state, reference, errorFunction, analyzer);
+        ExecutionPlan plan = state.getPlan();
+        if (analyzer.isFloat32()) {
+            int[] segmentOffset = plan.getSegmentOffset();
+            for (int s = plan.getSegmentNumber() - 1; s >= 0; s--) {
+                if (plan.isDense(s)) {
+                    accumulateDenseFloat(state, s);
+                }
+                else {
+                    accumulateRows(state, segmentOffset[s], segmentOffset[s + 1]);
+                }
+            }
+        }
+        else {
+            accumulateRows(state, 0, plan.getRowNumber());
+        }
+        error += errorFunction.getValue(state.getSurfaceResult(), reference);
+        sampleNumber++;
+    }
+
+    /**
+     * Backward pass over a range of rows, rows are processed from the last to the first.
+     * @param state network state with prepared error derivatives
+     * @param rowFrom first row
+     * @param rowTo row after the last one
+     */
+    private void accumulateRows(NeuralNetworkState state, int rowFrom, int rowTo) {
+        ExecutionPlan plan = state.getPlan();
+        int[] neuronOrder = plan.getNeuronOrder();
+        int[] rowOffset = plan.getRowOffset();
+        int[] parentIndex = plan.getParentIndex();
+        float[] weight = state.getWeight();
+        double[] result = state.getResult();
+        double[] activationDerivative = state.getActivationDerivative();
+        double[] errorFunctionDerivative = state.getErrorDerivative();
+        for (int r = rowTo - 1; r >= rowFrom; r--) {
+            final int i = neuronOrder[r];
+            // dE/dS[i] = dE/dR[i] * df(S[i])/dS[i]
+            final double efd = errorFunctionDerivative[i] * activationDerivative[i];
+            errorFunctionDerivative[i] = efd;
+            for (int k = rowOffset[r]; k < rowOffset[r + 1]; k++) {
+                final int j = parentIndex[k];
+                // dE/dR[j] += dE/dS[i] * w[i][j]
+                errorFunctionDerivative[j] += efd * weight[k];
+                // dE/dw[i][j] = dE/dS[i] * R[j]
+                weightGradient[k] += efd * result[j];
+            }
+            // dE/db[i] = dE/dS[i]
+            biasGradient[i] += efd;
+        }
+    }
+
+    /**
+     * Backward pass over a dense segment in float32 mode. dE/dR of parents is the product
+     * of the transposed weight matrix and dE/dS of the segment, it is found with float kernels.
+     * Gradients are accumulated in double precision, as they are summed over many samples.
+     * @param state network state with prepared error derivatives
+     * @param segment index of the dense segment
+     */
+    private void accumulateDenseFloat(NeuralNetworkState state, int segment) {
+        ExecutionPlan plan = state.getPlan();
+        final int rowFrom = plan.getSegmentOffset()[segment];
+        final int rows = plan.getSegmentOffset()[segment + 1] - rowFrom;
+        final int neuronFrom = plan.getNeuronOrder()[rowFrom];
+        final int parentFrom = plan.getSegmentParentFrom(segment);
+        final int columns = plan.getSegmentParentNumber(segment);
+        final int edgeFrom = plan.getRowOffset()[rowFrom];
+        double[] result = state.getResult();
+        double[] activationDerivative = state.getActivationDerivative();
+        double[] errorFunctionDerivative = state.getErrorDerivative();
+        // neurons of the segment and their parents never overlap, so they share the scratch
+        final float[] scratch = state.getFloatProduct(plan.getSourceNumber());
+        for (int r = 0; r < rows; r++) {
+            final int i = neuronFrom + r;
+            final double efd = errorFunctionDerivative[i] * activationDerivative[i];
+            errorFunctionDerivative[i] = efd;
+            scratch[i] = (float) efd;
+            final int m = edgeFrom + r * columns;
+            for (int c = 0; c < columns; c++) {
+                weightGradient[m + c] += efd * result[parentFrom + c];
+            }
+            biasGradient[i] += efd;
+        }
+        Arrays.fill(scratch, parentFrom, parentFrom + columns, 0f);
+        MatrixUtils.multiplyTransposedAdd(state.getWeight(), edgeFrom, rows, columns, scratch, neuronFrom,
+                scratch, parentFrom);
+        for (int j = parentFrom; j < parentFrom + columns; j++) {
+            errorFunctionDerivative[j] += scratch[j];
+        }
+    }
+
+    /**
+     * Adds other gradient to this one.
+     * @param other gradient of the same network
+     */
+    public void add(ErrorGradient other) {
+        for (int k = 0; k < weightGradient.length; k++) {
+            weightGradient[k] += other.weightGradient[k];
+        }
+        for (int i = 0; i < biasGradient.length; i++) {
+            biasGradient[i] += other.biasGradient[i];
+        }
+        error += other.error;
+        sampleNumber += other.sampleNumber;
+    }
+
+    /**
+     * @return dE/dw for each weight of the flat weight array
+     */
+    public double[] getWeightGradient() {
+        return weightGradient;
+    }
+
+    /**
+     * @return dE/db for each source
+     */
+    public double[] getBiasGradient() {
+        return biasGradient;
+    }
+
+    /**
+     * @return sum of error function values of accumulated samples
+     */
+    public double getError() {
+        return error;
+    }
+
+    /**
+     * @return number of accumulated samples
+     */
+    public int getSampleNumber() {
+        return sampleNumber;
+    }
+
+    /**
+     * Prepares scratch of the state for the backward pass: finds df(S[i])/dS[i] of all neurons
+     * and dE/dR[i] of surface neurons, other error derivatives are set to zero.
+     * Softmax surface gets df(S[i])/dS[i] = 1 and dE/dS[i] instead of dE/dR[i],
+     * it is fused into p[i] - y[i] for cross-entropy error.
+     * Results of surface neurons are copied into the surface result scratch.
+     * @param state network state after the forward pass
+     * @param reference reference vector
+     * @param errorFunction error function
+     * @param analyzer analyzer of the network
+     */
+    static void prepareErrorDerivatives(NeuralNetworkState state, double[] reference,
+            ErrorFunction errorFunction, ActivationFunctionAnalyzer analyzer) {
+        final ExecutionPlan plan = state.getPlan();
+        int[] neuronOrder = plan.getNeuronOrder();
+        int[] segmentOffset = plan.getSegmentOffset();
+        double[] result = state.getResult();
+        double[] linearCombination = state.getLinearCombination();
+        int surfaceLayerFirstNeuronIndex = result.length - reference.length;
+
+        // array of df(S[i])/dS[i], incoming vector has no activation
+        double[] activationDerivative = state.getActivationDerivative();
+        for (int s = 0; s < plan.getSegmentNumber(); s++) {
+            final ActivationFunction f = analyzer.getActivationFunction(plan, s);
+            final int neuronFrom = plan.getSegmentNeuronFrom(s);
+            if (neuronFrom >= 0) {
+                f.applyDerivative(linearCombination, result, activationDerivative, neuronFrom,
+                        neuronFrom + segmentOffset[s + 1] - segmentOffset[s]);
+            }
+            else {
+                for (int r = segmentOffset[s]; r < segmentOffset[s + 1]; r++) {
+                    f.applyDerivative(linearCombination, result, activationDerivative, neuronOrder[r],
+                            neuronOrder[r] + 1);
+                }
+            }
+        }
+        final boolean isSoftmaxSurface = analyzer.isSoftmaxSurface();
+        if (isSoftmaxSurface) {
+            Arrays.fill(activationDerivative, surfaceLayerFirstNeuronIndex, result.length, 1.);
+        }
+
+        // array of dE/dR[i] which turns into dE/dS[i] = dE/dR[i] * df(S[i])/dS[i]
+        // as soon as neuron i is processed
+        double[] errorFunctionDerivative = state.getErrorDerivative();
+        Arrays.fill(errorFunctionDerivative, 0.);
+
+        // neural network result vector (results of the surface layer)
+        double[] resultVector = state.getSurfaceResult();
+        System.arraycopy(result, surfaceLayerFirstNeuronIndex, resultVector, 0, reference.length);
+
+        // dE/dR for surface layer, dE/dS for softmax surface layer
+        double[] surfaceGradient = state.getSurfaceGradient();
+        if (!isSoftmaxSurface) {
+            errorFunction.getGradient(resultVector, reference, surfaceGradient);
+        }
+        else if (errorFunction instanceof CrossEntropyError) {
+            ((CrossEntropyError) errorFunction).getSoftmaxGradient(resultVector, reference, surfaceGradient);
+        }
+        else {
+            // dE/dS[i] = SUM(dE/dR[j] * dR[j]/dS[i]) = p[i] * (dE/dR[i] - SUM(p[j] * dE/dR[j]))
+            errorFunction.getGradient(resultVector, reference, surfaceGradient);
+            double average = 0.;
+            for (int j = 0; j < reference.length; j++) {
+                average += resultVector[j] * surfaceGradient[j];
+            }
+            for (int j = 0; j < reference.length; j++) {
+                surfaceGradient[j] = resultVector[j] * (surfaceGradient[j] - average);
+            }
+        }
+        System.arraycopy(surfaceGradient, 0, errorFunctionDerivative, surfaceLayerFirstNeuronIndex,
+                reference.length);
+    }
+}
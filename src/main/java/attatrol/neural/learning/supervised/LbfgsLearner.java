@@ -0,0 +1,404 @@
+package attatrol.neural.learning.supervised;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.NeuralNetworkRuntimeException;
+import attatrol.neural.analysis.AnalyticalProcessor;
+import attatrol.neural.errorfunction.ErrorFunction;
+import attatrol.neural.network.NeuralNetworkState;
+
+/**
+ * Full-batch limited-memory BFGS learner. Weights and biases form a single vector x,
+ * E(x) is the error averaged over the learning set.
+ * Each epoch moves x along the direction d = -H * dE/dx, where H approximates the inverse Hessian
+ * by the last m pairs of changes of x and of dE/dx (two-loop recursion).
+ * Step along d is found by backtracking line search with Armijo condition,
+ * each trial step costs a pass over the learning set.
+ * Gradient at the point where the line search stops is the start gradient of the next epoch,
+ * it is found again only if the weights are changed between epochs or other arrays of samples are passed,
+ * so samples must not be modified in place between epochs.
+ * <p>
+ * History of changes is kept in flat arrays and serialized with the learner,
+ * it is cleared if the line search fails.
+ * @author attatrol
+ *
+ */
+public class LbfgsLearner extends AbstractFullBatchLearner {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = -1524716935722925398L;
+
+    /**
+     * Default number of kept pairs of changes.
+     */
+    public static final int DEFAULT_HISTORY_SIZE = 7;
+
+    /**
+     * Sufficient decrease constant of Armijo condition.
+     */
+    private static final double ARMIJO_CONSTANT = 1e-4;
+
+    /**
+     * Maximal number of halvings of the step.
+     */
+    private static final int MAX_LINE_SEARCH_STEPS = 20;
+
+    /**
+     * Pairs of changes with smaller product are skipped, they break positive definiteness of H.
+     */
+    private static final double MIN_CURVATURE = 1e-10;
+
+    /**
+     * Number of kept pairs of changes m.
+     */
+    private final int historySize;
+
+    /**
+     * Changes of x, s[t] = x[t + 1] - x[t], a ring of arrays.
+     */
+    private double[][] parameterChange;
+
+    /**
+     * Changes of dE/dx, y[t] = g[t + 1] - g[t], a ring of arrays.
+     */
+    private double[][] gradientChange;
+
+    /**
+     * 1 / (y[t] * s[t]) for each pair.
+     */
+    private double[] curvature;
+
+    /**
+     * Number of kept pairs.
+     */
+    private int historyLength;
+
+    /**
+     * Index of the newest pair in the ring.
+     */
+    private int newest;
+
+    /**
+     * Scratch: x and dE/dx before the line search, search direction,
+     * coefficients of the two-loop recursion.
+     */
+    private transient double[] startPoint;
+    private transient double[] startGradient;
+    private transient double[] direction;
+    private transient double[] alpha;
+
+    /**
+     * Point where the last line search stopped, dE/dx and E there,
+     * the learning set and the analyzer they were found with.
+     */
+    private transient double[] endPoint;
+    private transient double[] endGradient;
+    private transient double endError;
+    private transient boolean isEndKnown;
+    private transient double[][] endInputVectors;
+    private transient double[][] endReferences;
+    private transient int endFrom;
+    private transient int endTo;
+    private transient AnalyticalProcessor endAnalyzer;
+
+    /**
+     * Default ctor.
+     * @param errorFunction error function
+     * @param historySize number of kept pairs of changes
+     * @param threadNumber number of worker threads
+     */
+    private LbfgsLearner(ErrorFunction errorFunction, int historySize, int threadNumber) {
+        super(errorFunction, threadNumber);
+        this.historySize = historySize;
+    }
+
+    /**
+     * Factory method for L-BFGS learner.
+     * @param errorFunction error function
+     * @param historySize number of kept pairs of changes, positive, usually 3 to 20
+     * @param threadNumber number of worker threads
+     * @return L-BFGS learner instance
+     * @throws NeuralNetworkGenerationException on invalid parameters
+     */
+    public static LbfgsLearner getLbfgsLearner(ErrorFunction errorFunction, int historySize, int threadNumber)
+            throws NeuralNetworkGenerationException {
+        checkThreadNumber(threadNumber);
+        if (historySize < 1) {
+            throw new NeuralNetworkGenerationException("History size must be positive");
+        }
+        return new LbfgsLearner(errorFunction, historySize, threadNumber);
+    }
+
+    public int getHistorySize() {
+        return historySize;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Makes an epoch over the range of samples, that is finds the direction and performs line search.
+     */
+    @Override
+    protected void internalProcessBatch(NeuralNetworkState state, double[][] inputVectors, double[][] references,
+            int from, int to, AnalyticalProcessor analyzer) throws NeuralNetworkRuntimeException {
+        final double startError;
+        if (isEndOfLastSearch(state, inputVectors, references, from, to, analyzer)) {
+            // the last accepted point is the start, its gradient is already known
+            final double[] gradient = startGradient;
+            startGradient = endGradient;
+            endGradient = gradient;
+            startError = endError;
+            moveToFullStep(state);
+        }
+        else {
+            final ErrorGradient gradient = computeGradient(state, inputVectors, references, from, to, analyzer);
+            changeWeights(state, gradient);
+            startError = gradient.getError() / gradient.getSampleNumber();
+        }
+        isEndKnown = false;
+        final int size = startPoint.length;
+        double slope = 0.;
+        for (int p = 0; p < size; p++) {
+            slope += direction[p] * startGradient[p];
+        }
+        double step = 1.;
+        for (int t = 0; t < MAX_LINE_SEARCH_STEPS; t++) {
+            final ErrorGradient trial = computeGradient(state, inputVectors, references, from, to, analyzer);
+            final double trialError = trial.getError() / trial.getSampleNumber();
+            if (trialError <= startError + ARMIJO_CONSTANT * step * slope) {
+                readPoint(state, endPoint);
+                readGradient(trial, endGradient);
+                addHistory();
+                rememberEnd(trialError, inputVectors, references, from, to, analyzer);
+                return;
+            }
+            step *= 0.5;
+            setPoint(state, step);
+        }
+        // no decrease along the direction, the history is misleading
+        setPoint(state, 0.);
+        historyLength = 0;
+        System.arraycopy(startPoint, 0, endPoint, 0, size);
+        System.arraycopy(startGradient, 0, endGradient, 0, size);
+        rememberEnd(startError, inputVectors, references, from, to, analyzer);
+    }
+
+    /**
+     * Single sample is learnt as a learning set of one sample.
+     */
+    @Override
+    protected void internalProcess(NeuralNetworkState state, double[] reference, AnalyticalProcessor analyzer)
+            throws NeuralNetworkRuntimeException {
+        final double[] inputVector = new double[state.getInputVectorSize()];
+        System.arraycopy(state.getResult(), 0, inputVector, 0, inputVector.length);
+        processBatch(state, new double[][] {inputVector}, new double[][] {reference}, 0, 1, analyzer);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Remembers the start point and its gradient, finds the search direction
+     * and moves to the full step along it.
+     */
+    @Override
+    protected void changeWeights(NeuralNetworkState state, ErrorGradient gradient) {
+        ensureScratch(state.getWeight().length + state.getBias().length);
+        readGradient(gradient, startGradient);
+        moveToFullStep(state);
+    }
+
+    /**
+     * Remembers the start point, finds the search direction from the start gradient
+     * and moves to the full step along it.
+     * @param state network state at the start point
+     */
+    private void moveToFullStep(NeuralNetworkState state) {
+        readPoint(state, startPoint);
+        findDirection();
+        setPoint(state, 1.);
+    }
+
+    /**
+     * Creates history and scratch arrays if there are none or the network is changed.
+     * @param size number of weights and biases
+     */
+    private void ensureScratch(int size) {
+        if (parameterChange == null || parameterChange[0].length != size) {
+            parameterChange = new double[historySize][size];
+            gradientChange = new double[historySize][size];
+            curvature = new double[historySize];
+            historyLength = 0;
+        }
+        if (startPoint == null || startPoint.length != size) {
+            startPoint = new double[size];
+            startGradient = new double[size];
+            direction = new double[size];
+            alpha = new double[historySize];
+            endPoint = new double[size];
+            endGradient = new double[size];
+            isEndKnown = false;
+        }
+    }
+
+    /**
+     * Remembers the learning set and the analyzer of the point where the line search stopped.
+     * @param error average error at the point
+     */
+    private void rememberEnd(double error, double[][] inputVectors, double[][] references, int from, int to,
+            AnalyticalProcessor analyzer) {
+        endError = error;
+        endInputVectors = inputVectors;
+        endReferences = references;
+        endFrom = from;
+        endTo = to;
+        endAnalyzer = analyzer;
+        isEndKnown = true;
+    }
+
+    /**
+     * @return true if the state is still at the point where the last line search stopped
+     * and the learning set and the analyzer are the same, so its gradient is valid
+     */
+    private boolean isEndOfLastSearch(NeuralNetworkState state, double[][] inputVectors, double[][] references,
+            int from, int to, AnalyticalProcessor analyzer) {
+        if (!isEndKnown || inputVectors != endInputVectors || references != endReferences || from != endFrom
+                || to != endTo || analyzer != endAnalyzer) {
+            return false;
+        }
+        final float[] weight = state.getWeight();
+        final float[] bias = state.getBias();
+        if (weight.length + bias.length != endPoint.length) {
+            return false;
+        }
+        for (int k = 0; k < weight.length; k++) {
+            if (weight[k] != endPoint[k]) {
+                return false;
+            }
+        }
+        for (int i = 0; i < bias.length; i++) {
+            if (bias[i] != endPoint[weight.length + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds d = -H * g by two-loop recursion.
+     */
+    private void findDirection() {
+        final int size = direction.length;
+        System.arraycopy(startGradient, 0, direction, 0, size);
+        for (int h = 0; h < historyLength; h++) {
+            final int t = (newest - h + historySize) % historySize;
+            alpha[t] = curvature[t] * dot(parameterChange[t], direction);
+            axpy(-alpha[t], gradientChange[t], direction);
+        }
+        final double scale;
+        if (historyLength > 0) {
+            // initial H is s * y / (y * y) times identity
+            scale = 1. / (curvature[newest] * dot(gradientChange[newest], gradientChange[newest]));
+        }
+        else {
+            // first step is not longer than 1
+            scale = 1. / Math.max(1., Math.sqrt(dot(startGradient, startGradient)));
+        }
+        for (int p = 0; p < size; p++) {
+            direction[p] *= scale;
+        }
+        for (int h = historyLength - 1; h >= 0; h--) {
+            final int t = (newest - h + historySize) % historySize;
+            final double beta = curvature[t] * dot(gradientChange[t], direction);
+            axpy(alpha[t] - beta, parameterChange[t], direction);
+        }
+        for (int p = 0; p < size; p++) {
+            direction[p] = -direction[p];
+        }
+    }
+
+    /**
+     * Adds the pair of changes made by the accepted step from the start point to the end point.
+     */
+    private void addHistory() {
+        final int t = (newest + 1) % historySize;
+        final double[] s = parameterChange[t];
+        final double[] y = gradientChange[t];
+        for (int p = 0; p < s.length; p++) {
+            s[p] = endPoint[p] - startPoint[p];
+            y[p] = endGradient[p] - startGradient[p];
+        }
+        final double product = dot(s, y);
+        if (product > MIN_CURVATURE) {
+            curvature[t] = 1. / product;
+            newest = t;
+            historyLength = Math.min(historyLength + 1, historySize);
+        }
+    }
+
+    /**
+     * Sets x = start point + step * d.
+     * @param state network state
+     * @param step step along the direction
+     */
+    private void setPoint(NeuralNetworkState state, double step) {
+        final float[] weight = state.getWeight();
+        final float[] bias = state.getBias();
+        for (int k = 0; k < weight.length; k++) {
+            weight[k] = (float) (startPoint[k] + step * direction[k]);
+        }
+        for (int i = 0; i < bias.length; i++) {
+            final int p = weight.length + i;
+            bias[i] = (float) (startPoint[p] + step * direction[p]);
+        }
+    }
+
+    private static void readPoint(NeuralNetworkState state, double[] point) {
+        final float[] weight = state.getWeight();
+        final float[] bias = state.getBias();
+        for (int k = 0; k < weight.length; k++) {
+            point[k] = weight[k];
+        }
+        for (int i = 0; i < bias.length; i++) {
+            point[weight.length + i] = bias[i];
+        }
+    }
+
+    /**
+     * Reads the gradient averaged over samples, biases of input neurons have zero gradient.
+     * @param gradient summed gradient
+     * @param vector array for dE/dx
+     */
+    private static void readGradient(ErrorGradient gradient, double[] vector) {
+        final double[] weightGradient = gradient.getWeightGradient();
+        final double[] biasGradient = gradient.getBiasGradient();
+        final double averaging = 1. / gradient.getSampleNumber();
+        for (int k = 0; k < weightGradient.length; k++) {
+            vector[k] = averaging * weightGradient[k];
+        }
+        for (int i = 0; i < biasGradient.length; i++) {
+            vector[weightGradient.length + i] = averaging * biasGradient[i];
+        }
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double sum = 0.;
+        for (int p = 0; p < a.length; p++) {
+            sum += a[p] * b[p];
+        }
+        return sum;
+    }
+
+    /**
+     * y += a * x
+     */
+    private static void axpy(double a, double[] x, double[] y) {
+        for (int p = 0; p < x.length; p++) {
+            y[p] += a * x[p];
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LbfgsLearner [historySize=" + historySize + ", threadNumber=" + getThreadNumber()
+                + ", errorFunction=" + errorFunction + "]";
+    }
+}
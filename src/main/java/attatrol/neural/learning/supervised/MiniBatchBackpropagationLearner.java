@@ -0,0 +1,97 @@
+package attatrol.neural.learning.supervised;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.errorfunction.ErrorFunction;
+import attatrol.neural.network.NeuralNetworkState;
+
+/**
+ * Backpropagation learner which changes weights once per batch of samples
+ * by the average gradient of the batch. Samples of a batch are processed in parallel,
+ * see {@link AbstractGradientLearner}.
+ * @author attatrol
+ *
+ */
+public class MiniBatchBackpropagationLearner extends AbstractGradientLearner {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = -2164624370311722049L;
+
+    /**
+     * Default number of samples in a batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 32;
+
+    /**
+     * Weight shift speed modifier, it is applied to the average gradient of a batch.
+     */
+    private final float changeFactor;
+
+    /**
+     * Default ctor.
+     * @param errorFunction error function
+     * @param changeFactor weight shift speed modifier, between 0 to 1
+     * @param batchSize maximal number of samples in a batch
+     * @param threadNumber number of worker threads
+     */
+    private MiniBatchBackpropagationLearner(ErrorFunction errorFunction, float changeFactor,
+            int batchSize, int threadNumber) {
+        super(errorFunction, batchSize, threadNumber);
+        this.changeFactor = changeFactor;
+    }
+
+    /**
+     * Simple ctor. Sets change factor to 0.05, batch size to {@link #DEFAULT_BATCH_SIZE}
+     * and uses a thread per available processor.
+     * @param errorFunction error function
+     */
+    public MiniBatchBackpropagationLearner(ErrorFunction errorFunction) {
+        this(errorFunction, 0.05f, DEFAULT_BATCH_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Factory method for mini-batch backpropagation learner.
+     * @param errorFunction error function
+     * @param changeFactor change factor
+     * @param batchSize maximal number of samples in a batch
+     * @param threadNumber number of worker threads
+     * @return mini-batch backpropagation learner instance
+     * @throws NeuralNetworkGenerationException on invalid parameters
+     */
+    public static MiniBatchBackpropagationLearner getMiniBatchBackpropagationLearner(
+            ErrorFunction errorFunction, float changeFactor, int batchSize, int threadNumber)
+                    throws NeuralNetworkGenerationException {
+        checkParameters(changeFactor, batchSize, threadNumber);
+        return new MiniBatchBackpropagationLearner(errorFunction, changeFactor, batchSize, threadNumber);
+    }
+
+    public float getChangeFactor() {
+        return changeFactor;
+    }
+
+    /**
+     * {@inheritDoc}
+     * w[i][j] -= n * dE/dw[i][j], b[i] -= n * dE/db[i], gradient is averaged over the batch.
+     */
+    @Override
+    protected void changeWeights(NeuralNetworkState state, ErrorGradient gradient) {
+        final double factor = changeFactor / (double) gradient.getSampleNumber();
+        final float[] weight = state.getWeight();
+        final double[] weightGradient = gradient.getWeightGradient();
+        for (int k = 0; k < weight.length; k++) {
+            weight[k] -= factor * weightGradient[k];
+        }
+        final float[] bias = state.getBias();
+        final double[] biasGradient = gradient.getBiasGradient();
+        for (int i : state.getPlan().getNeuronOrder()) {
+            bias[i] -= factor * biasGradient[i];
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MiniBatchBackpropagationLearner [changeFactor=" + changeFactor + ", batchSize=" + getBatchSize()
+                + ", threadNumber=" + getThreadNumber() + ", errorFunction=" + errorFunction + "]";
+    }
+}
@@ -0,0 +1,143 @@
+package attatrol.neural.learning.supervised;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.errorfunction.ErrorFunction;
+import attatrol.neural.network.NeuralNetworkState;
+
+/**
+ * Gradient descent with momentum: each weight keeps its velocity, which accumulates
+ * gradients of previous batches and damps oscillations.<br/>
+ * v[k] = m * v[k] - n * dE/dw[k], w[k] += v[k]<br/>
+ * Nesterov variant looks ahead by the momentum:<br/>
+ * w[k] += (1 + m) * v[k] - m * v'[k], where v'[k] is the velocity before the batch.<br/>
+ * Velocities are kept in flat arrays parallel to weight and bias arrays,
+ * they are serialized with the learner.
+ * @author attatrol
+ *
+ */
+public class MomentumLearner extends AbstractGradientLearner {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = 4011567367593006452L;
+
+    /**
+     * Weight shift speed modifier n, it is applied to the average gradient of a batch.
+     */
+    private final float changeFactor;
+
+    /**
+     * Momentum m, part of velocity kept between batches.
+     */
+    private final float momentum;
+
+    /**
+     * Use Nesterov momentum
+     */
+    private final boolean isNesterov;
+
+    /**
+     * Velocity of each weight
+     */
+    private float[] weightVelocity;
+
+    /**
+     * Velocity of each bias
+     */
+    private float[] biasVelocity;
+
+    /**
+     * Default ctor.
+     * @param errorFunction error function
+     * @param changeFactor weight shift speed modifier
+     * @param momentum part of velocity kept between batches
+     * @param isNesterov use Nesterov momentum
+     * @param batchSize maximal number of samples in a batch
+     * @param threadNumber number of worker threads
+     */
+    private MomentumLearner(ErrorFunction errorFunction, float changeFactor, float momentum,
+            boolean isNesterov, int batchSize, int threadNumber) {
+        super(errorFunction, batchSize, threadNumber);
+        this.changeFactor = changeFactor;
+        this.momentum = momentum;
+        this.isNesterov = isNesterov;
+    }
+
+    /**
+     * Factory method for momentum learner.
+     * @param errorFunction error function
+     * @param changeFactor weight shift speed modifier, between 0 to 1
+     * @param momentum part of velocity kept between batches, in [0, 1)
+     * @param isNesterov use Nesterov momentum
+     * @param batchSize maximal number of samples in a batch
+     * @param threadNumber number of worker threads
+     * @return momentum learner instance
+     * @throws NeuralNetworkGenerationException on invalid parameters
+     */
+    public static MomentumLearner getMomentumLearner(ErrorFunction errorFunction, float changeFactor,
+            float momentum, boolean isNesterov, int batchSize, int threadNumber)
+                    throws NeuralNetworkGenerationException {
+        checkParameters(changeFactor, batchSize, threadNumber);
+        if (momentum < 0 || momentum >= 1) {
+            throw new NeuralNetworkGenerationException("Momentum must be in [0, 1)");
+        }
+        return new MomentumLearner(errorFunction, changeFactor, momentum, isNesterov, batchSize, threadNumber);
+    }
+
+    public float getChangeFactor() {
+        return changeFactor;
+    }
+
+    public float getMomentum() {
+        return momentum;
+    }
+
+    public boolean isNesterov() {
+        return isNesterov;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void changeWeights(NeuralNetworkState state, ErrorGradient gradient) {
+        final float[] weight = state.getWeight();
+        final float[] bias = state.getBias();
+        if (weightVelocity == null || weightVelocity.length != weight.length
+                || biasVelocity.length != bias.length) {
+            weightVelocity = new float[weight.length];
+            biasVelocity = new float[bias.length];
+        }
+        final double factor = changeFactor / (double) gradient.getSampleNumber();
+        final double[] weightGradient = gradient.getWeightGradient();
+        for (int k = 0; k < weight.length; k++) {
+            weight[k] += getShift(weightVelocity, k, factor * weightGradient[k]);
+        }
+        final double[] biasGradient = gradient.getBiasGradient();
+        for (int i : state.getPlan().getNeuronOrder()) {
+            bias[i] += getShift(biasVelocity, i, factor * biasGradient[i]);
+        }
+    }
+
+    /**
+     * Updates velocity of a parameter.
+     * @param velocity velocities
+     * @param index index of the parameter
+     * @param step n * dE/dw of the parameter
+     * @return shift of the parameter
+     */
+    private float getShift(float[] velocity, int index, double step) {
+        final float previous = velocity[index];
+        final float current = (float) (momentum * previous - step);
+        velocity[index] = current;
+        return isNesterov ? (1 + momentum) * current - momentum * previous : current;
+    }
+
+    @Override
+    public String toString() {
+        return "MomentumLearner [changeFactor=" + changeFactor + ", momentum=" + momentum
+                + ", isNesterov=" + isNesterov + ", batchSize=" + getBatchSize()
+                + ", threadNumber=" + getThreadNumber() + ", errorFunction=" + errorFunction + "]";
+    }
+}
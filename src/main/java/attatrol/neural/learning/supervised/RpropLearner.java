@@ -0,0 +1,188 @@
+package attatrol.neural.learning.supervised;
+
+import java.util.Arrays;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.errorfunction.ErrorFunction;
+import attatrol.neural.network.NeuralNetworkState;
+
+/**
+ * Full-batch resilient backpropagation (iRprop- variant).
+ * Each weight has its own step which depends only on signs of the gradient:
+ * step grows while the sign of dE/dw[k] stays the same and shrinks when it flips,
+ * after a flip the weight is not changed at this epoch.<br/>
+ * w[k] -= sign(dE/dw[k]) * step[k]<br/>
+ * Steps and signs are kept in flat arrays parallel to weight and bias arrays,
+ * they are serialized with the learner.
+ * @author attatrol
+ *
+ */
+public class RpropLearner extends AbstractFullBatchLearner {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = 2313870402405123567L;
+
+    /**
+     * Default step of each parameter before the first epoch.
+     */
+    public static final float DEFAULT_INITIAL_STEP = 0.1f;
+
+    /**
+     * Default upper bound of steps.
+     */
+    public static final float DEFAULT_MAX_STEP = 50f;
+
+    /**
+     * Lower bound of steps.
+     */
+    private static final float MIN_STEP = 1e-6f;
+
+    /**
+     * Step multiplier when the gradient keeps its sign.
+     */
+    private static final float STEP_INCREASE = 1.2f;
+
+    /**
+     * Step multiplier when the gradient flips its sign.
+     */
+    private static final float STEP_DECREASE = 0.5f;
+
+    /**
+     * Step of each parameter before the first epoch.
+     */
+    private final float initialStep;
+
+    /**
+     * Upper bound of steps.
+     */
+    private final float maxStep;
+
+    /**
+     * Step of each weight
+     */
+    private float[] weightStep;
+
+    /**
+     * Step of each bias
+     */
+    private float[] biasStep;
+
+    /**
+     * Sign of the previous gradient of each weight, 0 after a flip
+     */
+    private byte[] weightSign;
+
+    /**
+     * Sign of the previous gradient of each bias, 0 after a flip
+     */
+    private byte[] biasSign;
+
+    /**
+     * Default ctor.
+     * @param errorFunction error function
+     * @param initialStep step of each parameter before the first epoch
+     * @param maxStep upper bound of steps
+     * @param threadNumber number of worker threads
+     */
+    private RpropLearner(ErrorFunction errorFunction, float initialStep, float maxStep, int threadNumber) {
+        super(errorFunction, threadNumber);
+        this.initialStep = initialStep;
+        this.maxStep = maxStep;
+    }
+
+    /**
+     * Factory method for RPROP learner.
+     * @param errorFunction error function
+     * @param initialStep step of each parameter before the first epoch, positive
+     * @param maxStep upper bound of steps, not less than the initial step
+     * @param threadNumber number of worker threads
+     * @return RPROP learner instance
+     * @throws NeuralNetworkGenerationException on invalid parameters
+     */
+    public static RpropLearner getRpropLearner(ErrorFunction errorFunction, float initialStep, float maxStep,
+            int threadNumber) throws NeuralNetworkGenerationException {
+        checkThreadNumber(threadNumber);
+        if (initialStep < MIN_STEP || maxStep < initialStep) {
+            throw new NeuralNetworkGenerationException(String.format(
+                    "Steps must satisfy %s <= initial step <= max step", MIN_STEP));
+        }
+        return new RpropLearner(errorFunction, initialStep, maxStep, threadNumber);
+    }
+
+    /**
+     * Factory method for RPROP learner with default steps.
+     * @param errorFunction error function
+     * @param threadNumber number of worker threads
+     * @return RPROP learner instance
+     * @throws NeuralNetworkGenerationException on invalid parameters
+     */
+    public static RpropLearner getRpropLearner(ErrorFunction errorFunction, int threadNumber)
+            throws NeuralNetworkGenerationException {
+        return getRpropLearner(errorFunction, DEFAULT_INITIAL_STEP, DEFAULT_MAX_STEP, threadNumber);
+    }
+
+    public float getInitialStep() {
+        return initialStep;
+    }
+
+    public float getMaxStep() {
+        return maxStep;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void changeWeights(NeuralNetworkState state, ErrorGradient gradient) {
+        final float[] weight = state.getWeight();
+        final float[] bias = state.getBias();
+        if (weightStep == null || weightStep.length != weight.length || biasStep.length != bias.length) {
+            weightStep = new float[weight.length];
+            biasStep = new float[bias.length];
+            Arrays.fill(weightStep, initialStep);
+            Arrays.fill(biasStep, initialStep);
+            weightSign = new byte[weight.length];
+            biasSign = new byte[bias.length];
+        }
+        // only signs matter, so the gradient is not averaged
+        final double[] weightGradient = gradient.getWeightGradient();
+        for (int k = 0; k < weight.length; k++) {
+            weight[k] -= getShift(weightStep, weightSign, k, weightGradient[k]);
+        }
+        final double[] biasGradient = gradient.getBiasGradient();
+        for (int i : state.getPlan().getNeuronOrder()) {
+            bias[i] -= getShift(biasStep, biasSign, i, biasGradient[i]);
+        }
+    }
+
+    /**
+     * Updates step of a parameter.
+     * @param step steps
+     * @param sign signs of previous gradients
+     * @param index index of the parameter
+     * @param g gradient of the parameter
+     * @return amount to subtract from the parameter
+     */
+    private float getShift(float[] step, byte[] sign, int index, double g) {
+        int currentSign = g > 0 ? 1 : g < 0 ? -1 : 0;
+        final int signProduct = currentSign * sign[index];
+        if (signProduct > 0) {
+            step[index] = Math.min(step[index] * STEP_INCREASE, maxStep);
+        }
+        else if (signProduct < 0) {
+            step[index] = Math.max(step[index] * STEP_DECREASE, MIN_STEP);
+            // minimum is overstepped, wait for the next epoch
+            currentSign = 0;
+        }
+        sign[index] = (byte) currentSign;
+        return currentSign * step[index];
+    }
+
+    @Override
+    public String toString() {
+        return "RpropLearner [initialStep=" + initialStep + ", maxStep=" + maxStep
+                + ", threadNumber=" + getThreadNumber() + ", errorFunction=" + errorFunction + "]";
+    }
+}
@@ -0,0 +1,498 @@
+package attatrol.neural.network;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import attatrol.neural.activationfunction.ActivationFunction;
+import attatrol.neural.topology.LayeredTopology;
+import attatrol.neural.topology.Topology;
+
+/**
+ * Compiled form of the neural network graph, used by processors in their hot loops.
+ * <p>
+ * Incoming weights of all neurons are laid out in a single contiguous array
+ * (compressed sparse rows). Rows follow the order of traverse, sorted by topological levels
+ * (see {@link Topology#getSourceLevel()}): rows of the same level follow each other and
+ * may be processed in any order or in parallel. Weights of the neuron
+ * {@code neuronOrder[r]} occupy indexes from {@code rowOffset[r]} to {@code rowOffset[r + 1] - 1}
+ * of the weight array, and the source connected to the weight with index {@code e}
+ * is {@code parentIndex[e]}.
+ * <p>
+ * Plan also holds the transposed index: outgoing weights of the neuron {@code neuronOrder[r]}
+ * are listed from {@code childRowOffset[r]} to {@code childRowOffset[r + 1] - 1}, the weight
+ * listed at {@code c} is {@code weight[childEdge[c]]} and it belongs to the neuron {@code childNeuron[c]}.
+ * It lets the backward pass gather gradient of a neuron from its children instead of scattering it.
+ * <p>
+ * Rows are also grouped in consecutive segments, a segment never crosses a level bound. A segment is dense if it is a fully connected layer:
+ * its neurons have consecutive indexes and each of them is connected to the same
+ * consecutive range of sources. Weights of a dense segment form a row-major matrix,
+ * so processors may skip parent indirection there. Other segments are sparse.
+ * <p>
+ * A segment may have its own activation function, layers of a layered topology pass theirs to segments.
+ * Activation is applied to a whole segment at once when its neurons have consecutive indexes,
+ * see {@link ActivationFunction#apply(double[], double[], int, int)}.
+ * <p>
+ * Plan is immutable, so it may be freely shared between deep copies of a network state.
+ * @author attatrol
+ *
+ */
+public final class ExecutionPlan implements Serializable {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = 8702534911624187730L;
+
+    /**
+     * Total number of sources (neurons and coordinates of incoming vector)
+     */
+    private final int sourceNumber;
+
+    /**
+     * Neuron processed within each row, this is the order of traverse
+     */
+    private final int[] neuronOrder;
+
+    /**
+     * Index of the first weight of each row, last element is the total number of weights
+     */
+    private final int[] rowOffset;
+
+    /**
+     * Source connected to each weight
+     */
+    private final int[] parentIndex;
+
+    /**
+     * Index of the first row of each level, last element is the total number of rows
+     */
+    private final int[] levelOffset;
+
+    /**
+     * Index of the first row of each segment, last element is the total number of rows
+     */
+    private final int[] segmentOffset;
+
+    /**
+     * First parent of each dense segment, -1 for sparse segments
+     */
+    private final int[] segmentParentFrom;
+
+    /**
+     * Number of parents of each neuron of dense segment, 0 for sparse segments
+     */
+    private final int[] segmentParentNumber;
+
+    /**
+     * Activation function of each segment, null if the segment uses the function of the analytical processor
+     */
+    private final ActivationFunction[] segmentActivation;
+
+    /**
+     * First neuron of each segment if neurons of the segment have consecutive indexes, -1 otherwise.
+     * It is derived from the order of neurons, so it is restored on deserialization.
+     */
+    private final transient int[] segmentNeuronFrom;
+
+    /**
+     * Index of the first outgoing weight of each row in the transposed index,
+     * last element is the number of weights connected to neurons
+     */
+    private final int[] childRowOffset;
+
+    /**
+     * Index of each outgoing weight in the weight array
+     */
+    private final int[] childEdge;
+
+    /**
+     * Neuron which owns each outgoing weight
+     */
+    private final int[] childNeuron;
+
+    /**
+     * Default ctor.
+     * @param sourceNumber total number of sources
+     * @param neuronOrder neuron processed within each row
+     * @param rowOffset index of the first weight of each row
+     * @param parentIndex source connected to each weight
+     * @param levelOffset index of the first row of each level
+     * @param childRowOffset index of the first outgoing weight of each row
+     * @param childEdge index of each outgoing weight in the weight array
+     * @param childNeuron neuron which owns each outgoing weight
+     * @param segmentOffset index of the first row of each segment
+     * @param segmentParentFrom first parent of each dense segment
+     * @param segmentParentNumber number of parents of each neuron of dense segment
+     * @param segmentActivation activation function of each segment
+     */
+    private ExecutionPlan(int sourceNumber, int[] neuronOrder, int[] rowOffset, int[] parentIndex,
+            int[] levelOffset, int[] childRowOffset, int[] childEdge, int[] childNeuron,
+            int[] segmentOffset, int[] segmentParentFrom, int[] segmentParentNumber,
+            ActivationFunction[] segmentActivation) {
+        this.sourceNumber = sourceNumber;
+        this.neuronOrder = neuronOrder;
+        this.rowOffset = rowOffset;
+        this.parentIndex = parentIndex;
+        this.levelOffset = levelOffset;
+        this.childRowOffset = childRowOffset;
+        this.childEdge = childEdge;
+        this.childNeuron = childNeuron;
+        this.segmentOffset = segmentOffset;
+        this.segmentParentFrom = segmentParentFrom;
+        this.segmentParentNumber = segmentParentNumber;
+        this.segmentActivation = segmentActivation;
+        final int segmentNumber = segmentParentFrom.length;
+        segmentNeuronFrom = new int[segmentNumber];
+        for (int s = 0; s < segmentNumber; s++) {
+            final int first = neuronOrder.length == 0 ? -1 : neuronOrder[segmentOffset[s]];
+            segmentNeuronFrom[s] = first;
+            for (int r = segmentOffset[s]; r < segmentOffset[s + 1]; r++) {
+                if (neuronOrder[r] != first + r - segmentOffset[s]) {
+                    segmentNeuronFrom[s] = -1;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Compiles execution plan from the topology.
+     * Fully connected layers of a layered topology are compiled into dense segments.
+     * @param topology topology of the network
+     * @return execution plan
+     * @throws IllegalArgumentException if layers have their own activation functions,
+     * but they can not be compiled into segments
+     */
+    public static ExecutionPlan compile(Topology topology) {
+        final ExecutionPlan plan = compile(topology.getSourceParents(), topology.getSourceChildren(),
+                topology.getForwardTraverseNeuronsOrder(), topology.getSourceLevel());
+        if (topology instanceof LayeredTopology) {
+            return plan.withLayers((LayeredTopology) topology);
+        }
+        return plan;
+    }
+
+    /**
+     * Compiles execution plan from parents and children of sources and order of traverse.
+     * @param parents parents of each source
+     * @param children children of each source
+     * @param traverseOrder order of traverse for neurons
+     * @return execution plan
+     */
+    public static ExecutionPlan compile(int[][] parents, int[][] children, int[] traverseOrder) {
+        return compile(parents, children, traverseOrder,
+                Topology.calculateSourceLevels(parents, traverseOrder));
+    }
+
+    /**
+     * Compiles execution plan with a single sparse segment.
+     * @param parents parents of each source
+     * @param children children of each source
+     * @param traverseOrder order of traverse for neurons
+     * @param sourceLevel topological level of each source
+     * @return execution plan
+     */
+    private static ExecutionPlan compile(int[][] parents, int[][] children, int[] traverseOrder,
+            int[] sourceLevel) {
+        // stable counting sort of neurons by level
+        int maxLevel = 0;
+        for (int neuron : traverseOrder) {
+            maxLevel = Math.max(maxLevel, sourceLevel[neuron]);
+        }
+        final int[] levelOffset = new int[maxLevel + 2];
+        for (int neuron : traverseOrder) {
+            levelOffset[sourceLevel[neuron] + 1]++;
+        }
+        for (int l = 0; l <= maxLevel; l++) {
+            levelOffset[l + 1] += levelOffset[l];
+        }
+        final int[] nextRowOfLevel = Arrays.copyOf(levelOffset, maxLevel + 1);
+        final int[] neuronOrder = new int[traverseOrder.length];
+        for (int neuron : traverseOrder) {
+            neuronOrder[nextRowOfLevel[sourceLevel[neuron]]++] = neuron;
+        }
+
+        final int[] rowOffset = new int[traverseOrder.length + 1];
+        for (int r = 0; r < neuronOrder.length; r++) {
+            rowOffset[r + 1] = rowOffset[r] + parents[neuronOrder[r]].length;
+        }
+        final int[] parentIndex = new int[rowOffset[neuronOrder.length]];
+        for (int r = 0; r < neuronOrder.length; r++) {
+            System.arraycopy(parents[neuronOrder[r]], 0, parentIndex, rowOffset[r],
+                    rowOffset[r + 1] - rowOffset[r]);
+        }
+
+        // transposed index, a weight of a child is found among weights of its row
+        final int[] rowOfNeuron = new int[parents.length];
+        for (int r = 0; r < neuronOrder.length; r++) {
+            rowOfNeuron[neuronOrder[r]] = r;
+        }
+        final int[] childRowOffset = new int[neuronOrder.length + 1];
+        for (int r = 0; r < neuronOrder.length; r++) {
+            childRowOffset[r + 1] = childRowOffset[r] + children[neuronOrder[r]].length;
+        }
+        final int[] childEdge = new int[childRowOffset[neuronOrder.length]];
+        final int[] childNeuron = new int[childEdge.length];
+        for (int r = 0; r < neuronOrder.length; r++) {
+            final int neuron = neuronOrder[r];
+            int c = childRowOffset[r];
+            for (int child : children[neuron]) {
+                childEdge[c] = findEdge(rowOffset, parentIndex, rowOfNeuron[child], neuron);
+                childNeuron[c] = child;
+                c++;
+            }
+        }
+        return new ExecutionPlan(parents.length, neuronOrder, rowOffset, parentIndex, levelOffset,
+                childRowOffset, childEdge, childNeuron,
+                new int[] {0, neuronOrder.length}, new int[] {-1}, new int[] {0}, new ActivationFunction[1]);
+    }
+
+    /**
+     * Finds the weight which connects a row to its parent.
+     * @param rowOffset index of the first weight of each row
+     * @param parentIndex source connected to each weight
+     * @param row row of the child
+     * @param parent parent source
+     * @return index of the weight in the weight array
+     */
+    private static int findEdge(int[] rowOffset, int[] parentIndex, int row, int parent) {
+        // generated topologies keep parents sorted
+        final int position = Arrays.binarySearch(parentIndex, rowOffset[row], rowOffset[row + 1], parent);
+        if (position >= 0) {
+            return position;
+        }
+        for (int k = rowOffset[row]; k < rowOffset[row + 1]; k++) {
+            if (parentIndex[k] == parent) {
+                return k;
+            }
+        }
+        throw new IllegalArgumentException("Source " + parent + " is a child of row " + row
+                + " but it is not its parent");
+    }
+
+    /**
+     * Splits rows of this plan into segments by layers of the topology.
+     * Plan stays unchanged if rows of some layer do not follow each other in order of indexes
+     * or if a layer is not a single level.
+     * @param topology layered topology this plan is compiled from
+     * @return plan with a segment per layer of neurons
+     * @throws IllegalArgumentException if plan can not be split, but layers have their own activation functions
+     */
+    private ExecutionPlan withLayers(LayeredTopology topology) {
+        final ExecutionPlan plan = splitByLayers(topology);
+        if (plan == this && topology.hasLayerActivation()) {
+            throw new IllegalArgumentException("Layers with own activation functions must be"
+                    + " consecutive levels of the network");
+        }
+        return plan;
+    }
+
+    /**
+     * Splits rows of this plan into segments by layers of the topology.
+     * @param topology layered topology this plan is compiled from
+     * @return plan with a segment per layer of neurons, or this plan if it can not be split
+     */
+    private ExecutionPlan splitByLayers(LayeredTopology topology) {
+        final int[] firstIndexOfLayer = topology.getFirstIndexOfLayer();
+        final int layerNumber = firstIndexOfLayer.length - 1;
+        final int[] newSegmentOffset = new int[layerNumber + 1];
+        final int[] newSegmentParentFrom = new int[layerNumber];
+        final int[] newSegmentParentNumber = new int[layerNumber];
+        final ActivationFunction[] newSegmentActivation = new ActivationFunction[layerNumber];
+        for (int l = 1; l <= layerNumber; l++) {
+            newSegmentActivation[l - 1] = topology.getLayerActivation(l);
+            final int layerStart = firstIndexOfLayer[l];
+            final int layerEnd = l < layerNumber ? firstIndexOfLayer[l + 1] : sourceNumber;
+            final int segmentStart = newSegmentOffset[l - 1];
+            for (int r = segmentStart; r < segmentStart + layerEnd - layerStart; r++) {
+                if (neuronOrder[r] != layerStart + r - segmentStart) {
+                    return this;
+                }
+            }
+            newSegmentOffset[l] = segmentStart + layerEnd - layerStart;
+            if (Arrays.binarySearch(levelOffset, segmentStart) < 0
+                    || Arrays.binarySearch(levelOffset, newSegmentOffset[l]) < 0) {
+                return this;
+            }
+            if (topology.isFullyConnected(l)) {
+                newSegmentParentFrom[l - 1] = firstIndexOfLayer[l - 1];
+                newSegmentParentNumber[l - 1] = layerStart - firstIndexOfLayer[l - 1];
+            }
+            else {
+                newSegmentParentFrom[l - 1] = -1;
+            }
+        }
+        return new ExecutionPlan(sourceNumber, neuronOrder, rowOffset, parentIndex, levelOffset,
+                childRowOffset, childEdge, childNeuron, newSegmentOffset, newSegmentParentFrom, newSegmentParentNumber,
+                newSegmentActivation);
+    }
+
+    /**
+     * Restores derived data of the plan after deserialization.
+     * @return plan equal to the deserialized one
+     */
+    private Object readResolve() {
+        return new ExecutionPlan(sourceNumber, neuronOrder, rowOffset, parentIndex, levelOffset,
+                childRowOffset, childEdge, childNeuron, segmentOffset, segmentParentFrom, segmentParentNumber,
+                segmentActivation == null ? new ActivationFunction[segmentParentFrom.length] : segmentActivation);
+    }
+
+    /**
+     * @return total number of sources (neurons and coordinates of incoming vector)
+     */
+    public int getSourceNumber() {
+        return sourceNumber;
+    }
+
+    /**
+     * @return number of rows, that is number of neurons
+     */
+    public int getRowNumber() {
+        return neuronOrder.length;
+    }
+
+    /**
+     * @return total number of weights
+     */
+    public int getEdgeNumber() {
+        return rowOffset[neuronOrder.length];
+    }
+
+    /**
+     * @return size of index arrays of the plan in bytes, including the transposed index
+     */
+    public long getIndexBytes() {
+        final long intNumber = (long) neuronOrder.length + rowOffset.length + parentIndex.length
+                + levelOffset.length + segmentOffset.length + segmentParentFrom.length + segmentParentNumber.length
+                + childRowOffset.length + childEdge.length + childNeuron.length;
+        return Integer.BYTES * intNumber;
+    }
+
+    /**
+     * @return neuron processed within each row. Do not modify.
+     */
+    public int[] getNeuronOrder() {
+        return neuronOrder;
+    }
+
+    /**
+     * @return index of the first weight of each row. Do not modify.
+     */
+    public int[] getRowOffset() {
+        return rowOffset;
+    }
+
+    /**
+     * @return source connected to each weight. Do not modify.
+     */
+    public int[] getParentIndex() {
+        return parentIndex;
+    }
+
+    /**
+     * Level 0 holds sources without parents, usually it is the incoming vector, so it has no rows.
+     * @return number of levels
+     */
+    public int getLevelNumber() {
+        return levelOffset.length - 1;
+    }
+
+    /**
+     * @return index of the first row of each level. Do not modify.
+     */
+    public int[] getLevelOffset() {
+        return levelOffset;
+    }
+
+    /**
+     * @return index of the first outgoing weight of each row in the transposed index. Do not modify.
+     */
+    public int[] getChildRowOffset() {
+        return childRowOffset;
+    }
+
+    /**
+     * @return index of each outgoing weight in the weight array. Do not modify.
+     */
+    public int[] getChildEdge() {
+        return childEdge;
+    }
+
+    /**
+     * @return neuron which owns each outgoing weight. Do not modify.
+     */
+    public int[] getChildNeuron() {
+        return childNeuron;
+    }
+
+    /**
+     * @return number of segments
+     */
+    public int getSegmentNumber() {
+        return segmentParentFrom.length;
+    }
+
+    /**
+     * @return index of the first row of each segment. Do not modify.
+     */
+    public int[] getSegmentOffset() {
+        return segmentOffset;
+    }
+
+    /**
+     * @param row index of a row
+     * @return index of the segment which contains the row
+     */
+    public int getSegmentOfRow(int row) {
+        // segments are never empty, so offsets are unique
+        final int position = Arrays.binarySearch(segmentOffset, row);
+        return position >= 0 ? position : -position - 2;
+    }
+
+    /**
+     * @param segment index of the segment
+     * @return true if the segment is a fully connected layer
+     */
+    public boolean isDense(int segment) {
+        return segmentParentFrom[segment] >= 0;
+    }
+
+    /**
+     * @param segment index of the dense segment
+     * @return first parent of neurons of the segment
+     */
+    public int getSegmentParentFrom(int segment) {
+        return segmentParentFrom[segment];
+    }
+
+    /**
+     * @param segment index of the dense segment
+     * @return number of parents of each neuron of the segment
+     */
+    public int getSegmentParentNumber(int segment) {
+        return segmentParentNumber[segment];
+    }
+
+    /**
+     * @param segment index of the segment
+     * @return activation function of the segment, null if it uses the function of the analytical processor
+     */
+    public ActivationFunction getSegmentActivation(int segment) {
+        return segmentActivation[segment];
+    }
+
+    /**
+     * @param segment index of the segment
+     * @return first neuron of the segment if neurons of the segment have consecutive indexes, -1 otherwise
+     */
+    public int getSegmentNeuronFrom(int segment) {
+        return segmentNeuronFrom[segment];
+    }
+
+    @Override
+    public String toString() {
+        return "ExecutionPlan [sourceNumber=" + sourceNumber + ", rowNumber=" + getRowNumber()
+                + ", edgeNumber=" + getEdgeNumber() + ", levelNumber=" + getLevelNumber()
+                + ", segmentNumber=" + getSegmentNumber() + "]";
+    }
+}
@@ -0,0 +1,77 @@
+package attatrol.neural.network;
+
+/**
+ * Scratch of a single forward pass: linear combinations and results of all sources.
+ * <p>
+ * Parameters of a network (weights, biases, graph) are never copied into the context,
+ * it only refers to them. So any number of contexts may be used over the same parameters
+ * at once, one context per thread. Context itself is not thread safe.
+ * @author attatrol
+ *
+ */
+public final class InferenceContext {
+
+    /**
+     * Shallow state: shared parameters and own linear combinations and results.
+     */
+    private final NeuralNetworkState state;
+
+    /**
+     * Default ctor.
+     * @param sourceNumber total number of sources (neurons and coordinates of incoming vector)
+     */
+    public InferenceContext(int sourceNumber) {
+        state = new NeuralNetworkState(true, 0., 0, 0, null, null,
+                new double[sourceNumber], new double[sourceNumber], null, null, null, null);
+    }
+
+    /**
+     * Points the context to parameters of some network state.
+     * @param parameters state which holds parameters of a network
+     * @return shallow state which shares parameters and owns linear combinations and results
+     */
+    public NeuralNetworkState attach(NeuralNetworkState parameters) {
+        return attach(parameters.getInputVectorAmplitude(), parameters.getInputVectorSize(),
+                parameters.getResultVectorSize(), parameters.getWeight(), parameters.getBias(),
+                parameters.getChildren(), parameters.getParents(), parameters.getTraverseOrder(),
+                parameters.getPlan());
+    }
+
+    /**
+     * Points the context to parameters of a network.
+     * @param network neural network
+     * @return shallow state which shares parameters and owns linear combinations and results
+     */
+    NeuralNetworkState attach(NeuralNetwork network) {
+        return attach(network.inputVectorAmplitude, network.inputVectorSize, network.resultVectorSize,
+                network.weight, network.bias, network.children, network.parents, network.traverseOrder,
+                network.plan);
+    }
+
+    /**
+     * @return shallow state as it was attached last time
+     */
+    public NeuralNetworkState getState() {
+        return state;
+    }
+
+    private NeuralNetworkState attach(double inputVectorAmplitude, int inputVectorSize,
+            int resultVectorSize, float[] weight, float[] bias, int[][] children, int[][] parents,
+            int[] traverseOrder, ExecutionPlan plan) {
+        state.setInputVectorAmplitude(inputVectorAmplitude);
+        state.setInputVectorSize(inputVectorSize);
+        state.setResultVectorSize(resultVectorSize);
+        state.setWeight(weight);
+        state.setBias(bias);
+        state.setChildren(children);
+        state.setParents(parents);
+        state.setTraverseOrder(traverseOrder);
+        state.setPlan(plan);
+        if (state.getResult().length != plan.getSourceNumber()) {
+            state.setLinearCombination(new double[plan.getSourceNumber()]);
+            state.setResult(new double[plan.getSourceNumber()]);
+        }
+        return state;
+    }
+
+}
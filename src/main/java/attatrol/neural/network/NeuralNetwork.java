@@ -4,6 +4,8 @@ import java.util.Arrays;
 
 import attatrol.neural.NeuralNetworkRuntimeException;
 import attatrol.neural.analysis.AnalyticalProcessor;
+import attatrol.neural.learning.BatchLearningProcessor;
+import attatrol.neural.learning.EpochLearningProcessor;
 import attatrol.neural.learning.LearningProcessor;
 import attatrol.neural.topology.Topology;
 import attatrol.neural.utils.RandomUtils;
@@ -16,6 +18,12 @@ import attatrol.neural.utils.Utils;
  * However for additional flexibility analytical and learning processors are also allowed to
  * be mutable, thus one may add additional behavior not directly to this class, but via 
  * enhanced learners and analyzers.
+ * <p>
+ * Network holds only its parameters (weights, biases and graph). Activations of a forward pass
+ * are written into an {@link InferenceContext} of the calling thread, thus {@link #map(double[])}
+ * needs no lock and any number of threads may map vectors with a single network.
+ * Learning is still synchronized, mapping which runs concurrently with learning observes weights
+ * while they are being changed.
  * 
  * @author attatrol
  *
@@ -36,6 +44,12 @@ public class NeuralNetwork {
      */
     public static final float RANDOM_WEIGHT_MAX = 0.5f;
 
+    /**
+     * Maximal number of samples processed together by {@link #mapBatch(double[][])}.
+     * Larger batches are split, so intermediate values of a block stay in cache.
+     */
+    public static final int BATCH_BLOCK_SIZE = 64;
+
     /**
      * Settings used to generate this perceptron
      */
@@ -76,26 +90,15 @@ public class NeuralNetwork {
      */
 
     /**
-     * Weights for each neuron (there are null arrays placed on incoming vector indexes)
+     * Weights of all neurons, laid out as described by {@link #plan}
      */
-    protected float[][] weight;
+    protected float[] weight;
 
     /**
      * Biases for each neuron
      */
     protected float[] bias;
 
-    /**
-     * Linear combination of each neuron
-     */
-    protected double[] linearCombination;
-
-    /**
-     * Outcoming values of each source (sources are neurons and input vector coordinates).
-     * (Actually this is a result of some transmutation of linear combination, e.g. activation function) 
-     */
-    protected double[] result;
-
     /**
      * Children of each source
      */
@@ -111,6 +114,17 @@ public class NeuralNetwork {
      */
     protected int[] traverseOrder;
 
+    /**
+     * Compiled graph of the network, immutable.
+     */
+    protected ExecutionPlan plan;
+
+    /**
+     * Scratch of forward passes, one per thread.
+     */
+    private final ThreadLocal<InferenceContext> contexts =
+            ThreadLocal.withInitial(() -> new InferenceContext(plan.getSourceNumber()));
+
     /**
      * Only constructor for neural network.
      * Intended to be used by {@link NeuralNetworkFactory#provide(NeuralNetworkSettings)} only
@@ -130,19 +144,15 @@ public class NeuralNetwork {
         this.traverseOrder = Utils.getCopy(topology.getForwardTraverseNeuronsOrder());
         this.children = Utils.getDeepCopy(topology.getSourceChildren());
         this.parents = Utils.getDeepCopy(topology.getSourceParents());
+        this.plan = ExecutionPlan.compile(topology);
 
         // generate arrays with neurons states
         final int numberOfSources = parents.length;
         //initial values of biases cover medium zone of input vector domain
         this.bias = RandomUtils.generateRandomFloats(
                 inputVectorAmplitude / 4, inputVectorAmplitude * 3 / 4, numberOfSources);
-        this.linearCombination = new double[numberOfSources];
-        this.result = new double[numberOfSources];
-        this.weight = new float[numberOfSources][];
-        for (int i = 0; i < numberOfSources; i++) {
-            weight[i] = RandomUtils.generateRandomFloats(
-                    RAMDOM_WEIGHT_MIN, RANDOM_WEIGHT_MAX, parents[i].length);
-        }
+        this.weight = RandomUtils.generateRandomFloats(
+                RAMDOM_WEIGHT_MIN, RANDOM_WEIGHT_MAX, plan.getEdgeNumber());
     }
 
     /**
@@ -170,10 +180,25 @@ public class NeuralNetwork {
         return topology;
     }
 
+    /**
+     * @return size of input vector
+     */
+    public int getInputVectorSize() {
+        return inputVectorSize;
+    }
+
+    /**
+     * @return size of result vector
+     */
+    public int getResultVectorSize() {
+        return resultVectorSize;
+    }
+
     /**
      * Please, remember, that analytical processor may have its own internal state and thus
      * may be interrelated with current neural network. Also, one processor should not be used
-     * with several networks as there is not concurrent.
+     * with several networks as there is not concurrent. Analytical processor is called
+     * concurrently by threads which map vectors, each thread passes its own scratch state.
      * @return analytical processor
      */
     public AnalyticalProcessor getAnalythicalProcessor() {
@@ -191,24 +216,75 @@ public class NeuralNetwork {
     }
 
     /**
-     * Neural network maps input vector into some result vector. 
+     * Neural network maps input vector into some result vector.
+     * Activations are written into the inference context of the calling thread, so this method
+     * is not synchronized and may be called by any number of threads at once.
      * @param inputVector argument
      * @return result vector
      * @throws NeuralNetworkRuntimeException on bad format of input vector or on internal failure
      * of analytical engine
      */
-    public synchronized double[] map(double[] inputVector) throws NeuralNetworkRuntimeException {
-        checkInputVector(inputVector);
-        // put input vector values into sources' results
-        for (int i = 0; i < inputVectorSize; i++) {
-            result[i] = inputVector[i];
-        }
-        NeuralNetworkState shallowLiveState = getNetworkStateShallowCopy();
-        analyticalProcessor.process(shallowLiveState, learningProcessor);
-        replaceNetworkState(shallowLiveState);
+    public double[] map(double[] inputVector) throws NeuralNetworkRuntimeException {
+        final double[] result = forward(inputVector).getResult();
         return Arrays.copyOfRange(result, result.length - resultVectorSize, result.length);
     }
 
+    /**
+     * Same as {@link #map(double[])}, but writes result vector into preallocated array.
+     * Allocates nothing once the inference context of the calling thread exists.
+     * @param inputVector argument
+     * @param resultVector array for the result vector
+     * @throws NeuralNetworkRuntimeException on bad format of input vector or result array,
+     * or on internal failure of analytical engine
+     */
+    public void mapInto(double[] inputVector, double[] resultVector) throws NeuralNetworkRuntimeException {
+        checkResultVector(resultVector);
+        final double[] result = forward(inputVector).getResult();
+        System.arraycopy(result, result.length - resultVectorSize, resultVector, 0, resultVectorSize);
+    }
+
+    /**
+     * Neural network maps a batch of input vectors into result vectors.
+     * Samples are pushed through each neuron together, so every weight is loaded once per
+     * block of {@link #BATCH_BLOCK_SIZE} samples.
+     * @param inputVectors arguments
+     * @return result vectors in order of input vectors
+     * @throws NeuralNetworkRuntimeException on bad format of some input vector or on internal failure
+     * of analytical engine
+     */
+    public double[][] mapBatch(double[][] inputVectors) throws NeuralNetworkRuntimeException {
+        for (double[] inputVector : inputVectors) {
+            checkInputVector(inputVector);
+        }
+        final double[][] answer = new double[inputVectors.length][];
+        final NeuralNetworkState liveState = contexts.get().attach(this);
+        final int sourceNumber = liveState.getPlan().getSourceNumber();
+        final int blockSize = Math.min(BATCH_BLOCK_SIZE, inputVectors.length);
+        // scratch of the context of the thread, it is allocated once per context
+        final double[] batchLinearCombination = liveState.getBatchLinearCombination(sourceNumber * blockSize);
+        final double[] batchResult = liveState.getBatchResult(sourceNumber * blockSize);
+        for (int blockStart = 0; blockStart < inputVectors.length; blockStart += blockSize) {
+            final int batchSize = Math.min(blockSize, inputVectors.length - blockStart);
+            for (int b = 0; b < batchSize; b++) {
+                final double[] inputVector = inputVectors[blockStart + b];
+                for (int i = 0; i < inputVectorSize; i++) {
+                    batchResult[i * batchSize + b] = inputVector[i];
+                }
+            }
+            analyticalProcessor.processBatch(liveState, batchLinearCombination, batchResult,
+                    batchSize, learningProcessor);
+            final int surfaceFirstIndex = sourceNumber - resultVectorSize;
+            for (int b = 0; b < batchSize; b++) {
+                final double[] resultVector = new double[resultVectorSize];
+                for (int i = 0; i < resultVectorSize; i++) {
+                    resultVector[i] = batchResult[(surfaceFirstIndex + i) * batchSize + b];
+                }
+                answer[blockStart + b] = resultVector;
+            }
+        }
+        return answer;
+    }
+
     /**
      * Neural network will perform {@link #map(double[])},
      * then it will try to perform single learning iteration.
@@ -220,24 +296,154 @@ public class NeuralNetwork {
      * @throws NeuralNetworkRuntimeException on internal failure
      */
     public synchronized double[] learn(double[] inputVector, double[] reference) throws NeuralNetworkRuntimeException {
-        final double[] answer = map(inputVector);
-        NeuralNetworkState shallowLiveState = getNetworkStateShallowCopy();
-        learningProcessor.process(shallowLiveState, reference, analyticalProcessor);
-        replaceNetworkState(shallowLiveState);
+        final double[] answer = new double[resultVectorSize];
+        learnInto(inputVector, reference, answer);
         return answer;
-        
+    }
+
+    /**
+     * Same as {@link #learn(double[], double[])}, but writes result vector into preallocated array.
+     * Allocates nothing once the inference context of the calling thread exists,
+     * if learning processor does so.
+     * @param inputVector input vector
+     * @param reference reference result vector, not used if learning is unsupervised
+     * @param resultVector array for the result vector, it is calculated before learning iteration
+     * @throws NeuralNetworkRuntimeException on bad format of result array or on internal failure
+     */
+    public synchronized void learnInto(double[] inputVector, double[] reference, double[] resultVector)
+            throws NeuralNetworkRuntimeException {
+        checkResultVector(resultVector);
+        final NeuralNetworkState liveState = forward(inputVector);
+        final double[] result = liveState.getResult();
+        System.arraycopy(result, result.length - resultVectorSize, resultVector, 0, resultVectorSize);
+        learningProcessor.process(liveState, reference, analyticalProcessor);
+        replaceNetworkState(liveState);
+    }
+
+    /**
+     * Same as {@link #learnInto(double[], double[], double[])}, but not synchronized.
+     * Forward and backward passes use the inference context of the calling thread,
+     * weights and biases are changed in place without locks, so several threads
+     * may learn at once (Hogwild approach). Changes of different threads may interfere,
+     * which is tolerable for sparse networks where threads rarely touch the same weight.
+     * Do not call it along with methods which replace network parameters.
+     * @param inputVector input vector
+     * @param reference reference result vector, not used if learning is unsupervised
+     * @param resultVector array for the result vector, it is calculated before learning iteration
+     * @throws NeuralNetworkRuntimeException if learning processor is not concurrent,
+     * on bad format of result array or on internal failure
+     */
+    public void learnConcurrently(double[] inputVector, double[] reference, double[] resultVector)
+            throws NeuralNetworkRuntimeException {
+        if (!learningProcessor.isConcurrent()) {
+            throw new NeuralNetworkRuntimeException("Learning processor " + learningProcessor
+                    + " does not support concurrent learning");
+        }
+        checkResultVector(resultVector);
+        final NeuralNetworkState liveState = forward(inputVector);
+        final double[] result = liveState.getResult();
+        System.arraycopy(result, result.length - resultVectorSize, resultVector, 0, resultVectorSize);
+        learningProcessor.process(liveState, reference, analyticalProcessor);
+    }
+
+    /**
+     * Learns a set of samples in their order.
+     * {@link BatchLearningProcessor} changes the network once per batch of its size,
+     * any other learning processor learns samples one by one as {@link #learn(double[], double[])} does.
+     * @param inputVectors input vectors
+     * @param references reference result vectors, null if learning is unsupervised
+     * @throws NeuralNetworkRuntimeException on bad format of some input vector or on internal failure
+     */
+    public synchronized void learnBatch(double[][] inputVectors, double[][] references)
+            throws NeuralNetworkRuntimeException {
+        checkSamples(inputVectors, references);
+        if (learningProcessor instanceof BatchLearningProcessor) {
+            final BatchLearningProcessor batchLearner = (BatchLearningProcessor) learningProcessor;
+            final int batchSize = Math.max(1, batchLearner.getBatchSize());
+            final NeuralNetworkState liveState = contexts.get().attach(this);
+            for (int from = 0; from < inputVectors.length; from += batchSize) {
+                batchLearner.processBatch(liveState, inputVectors, references, from,
+                        Math.min(inputVectors.length, from + batchSize), analyticalProcessor);
+            }
+            replaceNetworkState(liveState);
+        }
+        else {
+            final double[] resultVector = new double[resultVectorSize];
+            for (int s = 0; s < inputVectors.length; s++) {
+                learnInto(inputVectors[s], references == null ? null : references[s], resultVector);
+            }
+        }
+    }
+
+    /**
+     * Learns the whole learning set once.
+     * {@link EpochLearningProcessor} changes the network once per call,
+     * any other learning processor learns samples as {@link #learnBatch(double[][], double[][])} does.
+     * @param inputVectors input vectors of the learning set
+     * @param references reference result vectors, null if learning is unsupervised
+     * @throws NeuralNetworkRuntimeException on bad format of some input vector or on internal failure
+     */
+    public synchronized void learnEpoch(double[][] inputVectors, double[][] references)
+            throws NeuralNetworkRuntimeException {
+        if (learningProcessor instanceof EpochLearningProcessor) {
+            checkSamples(inputVectors, references);
+            final NeuralNetworkState liveState = contexts.get().attach(this);
+            ((EpochLearningProcessor) learningProcessor).processEpoch(liveState, inputVectors, references,
+                    analyticalProcessor);
+            replaceNetworkState(liveState);
+        }
+        else {
+            learnBatch(inputVectors, references);
+        }
     }
 
     /**
      * Creates deep copy of internal network state.
+     * Linear combinations and results are those of the last forward pass of the calling thread.
      * @return deep copy of network state
      */
     public synchronized NeuralNetworkState getNetworkStateCopy() {
+        final NeuralNetworkState liveState = contexts.get().attach(this);
         return new NeuralNetworkState(false,
                 inputVectorAmplitude, inputVectorSize, resultVectorSize, 
-                Utils.getDeepCopy(weight), 
-                Utils.getCopy(bias), Utils.getCopy(linearCombination), Utils.getCopy(result),
-                Utils.getDeepCopy(children), Utils.getDeepCopy(parents), Utils.getCopy(traverseOrder));
+                Utils.getCopy(weight),
+                Utils.getCopy(bias), Utils.getCopy(liveState.getLinearCombination()),
+                Utils.getCopy(liveState.getResult()),
+                Utils.getDeepCopy(children), Utils.getDeepCopy(parents), Utils.getCopy(traverseOrder), plan);
+    }
+
+    /**
+     * Performs forward pass within the inference context of the calling thread.
+     * @param inputVector input vector
+     * @return shallow state of the context with calculated linear combinations and results
+     * @throws NeuralNetworkRuntimeException on bad format of input vector or on internal failure
+     * of analytical engine
+     */
+    private NeuralNetworkState forward(double[] inputVector) throws NeuralNetworkRuntimeException {
+        checkInputVector(inputVector);
+        final NeuralNetworkState liveState = contexts.get().attach(this);
+        // put input vector values into sources' results
+        System.arraycopy(inputVector, 0, liveState.getResult(), 0, inputVectorSize);
+        analyticalProcessor.process(liveState, learningProcessor);
+        return liveState;
+    }
+
+    /**
+     * Checks a set of samples.
+     * @param inputVectors input vectors
+     * @param references reference result vectors, may be null
+     * @throws NeuralNetworkRuntimeException on bad format of some input vector
+     * or if numbers of input and reference vectors differ
+     */
+    private void checkSamples(double[][] inputVectors, double[][] references)
+            throws NeuralNetworkRuntimeException {
+        if (references != null && references.length != inputVectors.length) {
+            throw new NeuralNetworkRuntimeException(String.format(
+                    "There are %d input vectors and %d reference vectors", inputVectors.length, references.length));
+        }
+        for (double[] inputVector : inputVectors) {
+            checkInputVector(inputVector);
+        }
     }
 
     /**
@@ -261,17 +467,21 @@ public class NeuralNetwork {
     }
 
     /**
-     * Creates shallow copy of this neural network state.
-     * @return
+     * Checks if array for result vector is valid.
+     * @param resultVector array for result vector
+     * @throws NeuralNetworkRuntimeException on array of wrong size
      */
-    private NeuralNetworkState getNetworkStateShallowCopy() {
-        return new NeuralNetworkState(true,
-                inputVectorAmplitude, inputVectorSize, resultVectorSize, 
-                weight, bias, linearCombination, result, children, parents, traverseOrder);
+    private void checkResultVector(double[] resultVector) throws NeuralNetworkRuntimeException {
+        if (resultVector.length != resultVectorSize) {
+            throw new NeuralNetworkRuntimeException(
+                    String.format("Array for result vector has size of %d, network produces %d",
+                            resultVector.length, resultVectorSize));
+        }
     }
 
     /**
-     * Replaces internal state of the network with input state.
+     * Replaces parameters of the network with those of input state.
+     * Linear combinations and results are not parameters, they stay in inference contexts.
      * @param state input state.
      */
     private void replaceNetworkState(NeuralNetworkState state) {
@@ -280,11 +490,10 @@ public class NeuralNetwork {
         this.inputVectorSize = state.getInputVectorSize();
         this.weight = state.getWeight();
         this.bias = state.getBias();
-        this.linearCombination = state.getLinearCombination();
-        this.result = state.getResult();
         this.children = state.getChildren();
         this.parents = state.getParents();
         this.traverseOrder = state.getTraverseOrder();
+        this.plan = state.getPlan();
      }
 
 }
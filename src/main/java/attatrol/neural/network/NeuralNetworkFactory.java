@@ -69,7 +69,12 @@ public final class NeuralNetworkFactory {
         if (settings.getLearningProcessor() == null) {
             throw new NeuralNetworkGenerationException("Null learning processor");
         }
-       return new NeuralNetwork(settings, topology);
+        try {
+            return new NeuralNetwork(settings, topology);
+        }
+        catch (IllegalArgumentException ex) {
+            throw new NeuralNetworkGenerationException("Failed to compile topology: " + ex.getMessage());
+        }
     }
 
 }
@@ -25,7 +25,7 @@ public class NeuralNetworkState implements Serializable {
     /**
      * 
      */
-    private static final long serialVersionUID = 3829019744306394773L;
+    private static final long serialVersionUID = -2537710745839158617L;
 
     private final transient boolean isShallowCopy;
 
@@ -49,9 +49,9 @@ public class NeuralNetworkState implements Serializable {
      */
 
     /**
-     * Weights for each neuron (there are null arrays placed on incoming vector indexes)
+     * Weights of all neurons, laid out as described by {@link #plan}
      */
-    private float[][] weight;
+    private float[] weight;
 
     /**
      * Biases for each neuron
@@ -84,10 +84,68 @@ public class NeuralNetworkState implements Serializable {
      */
     private int[] traverseOrder;
 
+    /**
+     * Compiled graph of the network, immutable.
+     */
+    private ExecutionPlan plan;
+
+    /*
+     * Below are scratch buffers of learning processors. They are not a part of network state,
+     * so they are neither serialized nor copied.
+     */
+
+    /**
+     * Partial derivatives of error function by linear combination of each source
+     */
+    private transient double[] errorDerivative;
+
+    /**
+     * Results of surface neurons
+     */
+    private transient double[] surfaceResult;
+
+    /**
+     * Derivatives of error function by results of surface neurons
+     */
+    private transient double[] surfaceGradient;
+
+    /**
+     * Derivatives of the activation function of each neuron at its linear combination
+     */
+    private transient double[] activationDerivative;
+
+    /*
+     * Scratch buffers of float32 mode of analytical processors.
+     */
+
+    /**
+     * Float copy of results of sources
+     */
+    private transient float[] floatResult;
+
+    /**
+     * Float accumulators of products
+     */
+    private transient float[] floatProduct;
+
+    /*
+     * Scratch buffers of batch mapping, sources of every sample of a block are interleaved.
+     */
+
+    /**
+     * Linear combinations of sources of a block of samples
+     */
+    private transient double[] batchLinearCombination;
+
+    /**
+     * Results of sources of a block of samples
+     */
+    private transient double[] batchResult;
+
     public NeuralNetworkState(boolean isShallowCopy, double inputVectorAmplitude,
-            int inputVectorSize, int resultVectorSize, float[][] weight, float[] bias,
+            int inputVectorSize, int resultVectorSize, float[] weight, float[] bias,
             double[] linearCombination, double[] result, int[][] children, int[][] parents,
-            int[] traverseOrder) {
+            int[] traverseOrder, ExecutionPlan plan) {
         super();
         this.isShallowCopy = isShallowCopy;
         this.inputVectorAmplitude = inputVectorAmplitude;
@@ -100,6 +158,7 @@ public class NeuralNetworkState implements Serializable {
         this.children = children;
         this.parents = parents;
         this.traverseOrder = traverseOrder;
+        this.plan = plan;
     }
 
     public double getInputVectorAmplitude() {
@@ -126,11 +185,11 @@ public class NeuralNetworkState implements Serializable {
         this.resultVectorSize = resultVectorSize;
     }
 
-    public float[][] getWeight() {
+    public float[] getWeight() {
         return weight;
     }
 
-    public void setWeight(float[][] weight) {
+    public void setWeight(float[] weight) {
         this.weight = weight;
     }
 
@@ -182,6 +241,103 @@ public class NeuralNetworkState implements Serializable {
         this.traverseOrder = traverseOrder;
     }
 
+    public ExecutionPlan getPlan() {
+        return plan;
+    }
+
+    public void setPlan(ExecutionPlan plan) {
+        this.plan = plan;
+    }
+
+    /**
+     * @return scratch for partial derivatives of error function by linear combinations,
+     * it has size of the result array, content is arbitrary
+     */
+    public double[] getErrorDerivative() {
+        if (errorDerivative == null || errorDerivative.length != result.length) {
+            errorDerivative = new double[result.length];
+        }
+        return errorDerivative;
+    }
+
+    /**
+     * @return scratch for results of surface neurons, it has size of the result vector,
+     * content is arbitrary
+     */
+    public double[] getSurfaceResult() {
+        if (surfaceResult == null || surfaceResult.length != resultVectorSize) {
+            surfaceResult = new double[resultVectorSize];
+        }
+        return surfaceResult;
+    }
+
+    /**
+     * @return scratch for derivatives of error function by results of surface neurons,
+     * it has size of the result vector, content is arbitrary
+     */
+    public double[] getSurfaceGradient() {
+        if (surfaceGradient == null || surfaceGradient.length != resultVectorSize) {
+            surfaceGradient = new double[resultVectorSize];
+        }
+        return surfaceGradient;
+    }
+
+    /**
+     * @return scratch for derivatives of activation function of neurons,
+     * it has size of the result array, content is arbitrary
+     */
+    public double[] getActivationDerivative() {
+        if (activationDerivative == null || activationDerivative.length != result.length) {
+            activationDerivative = new double[result.length];
+        }
+        return activationDerivative;
+    }
+
+    /**
+     * @param length minimal size of the scratch
+     * @return scratch for float copies of results, it has at least the given size, content is arbitrary
+     */
+    public float[] getFloatResult(int length) {
+        if (floatResult == null || floatResult.length < length) {
+            floatResult = new float[length];
+        }
+        return floatResult;
+    }
+
+    /**
+     * @param length minimal size of the scratch
+     * @return scratch for float accumulators of products, it has at least the given size, content is arbitrary
+     */
+    public float[] getFloatProduct(int length) {
+        if (floatProduct == null || floatProduct.length < length) {
+            floatProduct = new float[length];
+        }
+        return floatProduct;
+    }
+
+    /**
+     * @param length minimal size of the scratch
+     * @return scratch for linear combinations of a block of samples, it has at least the given size,
+     * content is arbitrary
+     */
+    public double[] getBatchLinearCombination(int length) {
+        if (batchLinearCombination == null || batchLinearCombination.length < length) {
+            batchLinearCombination = new double[length];
+        }
+        return batchLinearCombination;
+    }
+
+    /**
+     * @param length minimal size of the scratch
+     * @return scratch for results of a block of samples, it has at least the given size, content is arbitrary
+     */
+    public double[] getBatchResult(int length) {
+        if (batchResult == null || batchResult.length < length) {
+            batchResult = new double[length];
+        }
+        return batchResult;
+    }
+
     public boolean isShallowCopy() {
         return isShallowCopy;
     }
@@ -0,0 +1,201 @@
+package attatrol.neural.quantization;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.NeuralNetworkRuntimeException;
+import attatrol.neural.activationfunction.ActivationFunction;
+import attatrol.neural.analysis.ActivationFunctionAnalyzer;
+import attatrol.neural.analysis.AnalyticalProcessor;
+import attatrol.neural.analysis.StochasticActivationFunctionAnalyzer;
+import attatrol.neural.network.ExecutionPlan;
+import attatrol.neural.network.InferenceContext;
+import attatrol.neural.network.NeuralNetwork;
+import attatrol.neural.network.NeuralNetworkState;
+
+/**
+ * Utility class, contains methods of post-training quantization of networks
+ * into {@link QuantizedNetwork} and of its evaluation against the original network.
+ * <p>
+ * Weights are quantized per neuron, scale of a neuron maps its largest absolute weight to 127.
+ * Incoming vector is quantized into 256 levels of [0, amplitude], that loses nothing
+ * for image hashes built from 8-bit channels. Scales of results of neurons are calibrated:
+ * calibration vectors are mapped by the original network and the largest result of each group is found.
+ * @author attatrol
+ *
+ */
+public final class NetworkQuantizer {
+
+    private NetworkQuantizer() {
+    }
+
+    /**
+     * Quantizes a network.
+     * @param network trained network, it has an activation function analyzer
+     * @param calibrationInputs input vectors used to find ranges of results, some of learning samples are fine
+     * @return quantized network
+     * @throws NeuralNetworkGenerationException if analyzer of the network is not supported
+     * or there are no calibration vectors
+     * @throws NeuralNetworkRuntimeException on bad format of calibration vectors
+     */
+    public static QuantizedNetwork quantize(NeuralNetwork network, double[][] calibrationInputs)
+            throws NeuralNetworkGenerationException, NeuralNetworkRuntimeException {
+        return quantize(network.getNetworkStateCopy(), network.getAnalythicalProcessor(), calibrationInputs);
+    }
+
+    /**
+     * Quantizes a network state.
+     * @param state state of a trained network
+     * @param analyzer analytical processor of the network, activation function analyzer
+     * @param calibrationInputs input vectors used to find ranges of results
+     * @return quantized network
+     * @throws NeuralNetworkGenerationException if the analyzer is not supported or there are no calibration vectors
+     * @throws NeuralNetworkRuntimeException on bad format of calibration vectors
+     */
+    public static QuantizedNetwork quantize(NeuralNetworkState state, AnalyticalProcessor analyzer,
+            double[][] calibrationInputs) throws NeuralNetworkGenerationException, NeuralNetworkRuntimeException {
+        if (!(analyzer instanceof ActivationFunctionAnalyzer)
+                || analyzer instanceof StochasticActivationFunctionAnalyzer) {
+            throw new NeuralNetworkGenerationException("Only networks with deterministic activation function"
+                    + " analyzer may be quantized, analyzer is " + analyzer);
+        }
+        if (calibrationInputs.length == 0) {
+            throw new NeuralNetworkGenerationException("There are no calibration vectors");
+        }
+        final ActivationFunctionAnalyzer afa = (ActivationFunctionAnalyzer) analyzer;
+        final ExecutionPlan plan = state.getPlan();
+        final int segmentNumber = plan.getSegmentNumber();
+
+        // group 0 is the incoming vector, group s + 1 is the segment s
+        final int[] sourceGroup = new int[plan.getSourceNumber()];
+        final int[] neuronOrder = plan.getNeuronOrder();
+        final int[] segmentOffset = plan.getSegmentOffset();
+        for (int s = 0; s < segmentNumber; s++) {
+            for (int r = segmentOffset[s]; r < segmentOffset[s + 1]; r++) {
+                sourceGroup[neuronOrder[r]] = s + 1;
+            }
+        }
+        final ActivationFunction[] segmentActivation = new ActivationFunction[segmentNumber];
+        for (int s = 0; s < segmentNumber; s++) {
+            segmentActivation[s] = afa.getActivationFunction(plan, s);
+        }
+
+        // calibration
+        final double[] groupMinValue = new double[segmentNumber + 1];
+        final double[] groupMaxValue = new double[segmentNumber + 1];
+        final NeuralNetworkState live = new InferenceContext(plan.getSourceNumber()).attach(state);
+        final double[] result = live.getResult();
+        for (double[] input : calibrationInputs) {
+            if (input.length != state.getInputVectorSize()) {
+                throw new NeuralNetworkRuntimeException(String.format(
+                        "Calibration vector has cardinality of %d, network accepts only %d",
+                        input.length, state.getInputVectorSize()));
+            }
+            System.arraycopy(input, 0, result, 0, input.length);
+            afa.process(live, null);
+            for (int i = state.getInputVectorSize(); i < result.length; i++) {
+                groupMinValue[sourceGroup[i]] = Math.min(groupMinValue[sourceGroup[i]], result[i]);
+                groupMaxValue[sourceGroup[i]] = Math.max(groupMaxValue[sourceGroup[i]], result[i]);
+            }
+        }
+        final double[] groupScale = new double[segmentNumber + 1];
+        final int[] groupMin = new int[segmentNumber + 1];
+        final int[] groupMax = new int[segmentNumber + 1];
+        groupScale[0] = state.getInputVectorAmplitude() / QuantizedNetwork.UNSIGNED_MAX;
+        groupMax[0] = QuantizedNetwork.UNSIGNED_MAX;
+        for (int g = 1; g <= segmentNumber; g++) {
+            final double range;
+            if (groupMinValue[g] < 0.) {
+                groupMin[g] = -QuantizedNetwork.SIGNED_MAX;
+                groupMax[g] = QuantizedNetwork.SIGNED_MAX;
+                range = Math.max(-groupMinValue[g], groupMaxValue[g]);
+            }
+            else {
+                groupMax[g] = QuantizedNetwork.UNSIGNED_MAX;
+                range = groupMaxValue[g];
+            }
+            groupScale[g] = range > 0. ? range / groupMax[g] : 1.;
+        }
+
+        // weights, scale per row
+        final float[] weight = state.getWeight();
+        final int[] rowOffset = plan.getRowOffset();
+        final byte[] quantizedWeight = new byte[weight.length];
+        final float[] rowScale = new float[plan.getRowNumber()];
+        for (int r = 0; r < plan.getRowNumber(); r++) {
+            float max = 0f;
+            for (int e = rowOffset[r]; e < rowOffset[r + 1]; e++) {
+                max = Math.max(max, Math.abs(weight[e]));
+            }
+            rowScale[r] = max > 0f ? max / QuantizedNetwork.SIGNED_MAX : 1f;
+            final float inverseScale = 1f / rowScale[r];
+            for (int e = rowOffset[r]; e < rowOffset[r + 1]; e++) {
+                quantizedWeight[e] = (byte) Math.round(weight[e] * inverseScale);
+            }
+        }
+        return new QuantizedNetwork(state.getInputVectorSize(), state.getResultVectorSize(),
+                state.getInputVectorAmplitude(), plan, quantizedWeight, rowScale, state.getBias().clone(),
+                sourceGroup, groupScale, groupMin, groupMax, segmentActivation, afa.isSoftmaxSurface());
+    }
+
+    /**
+     * Compares quantized network with the original one on held-out samples.
+     * Sample is classified by the largest coordinate of the result vector,
+     * its class is the largest coordinate of its reference vector.
+     * @param network original network
+     * @param quantized quantized network
+     * @param inputVectors held-out input vectors
+     * @param references reference vectors of held-out samples
+     * @return report of accuracy deltas
+     * @throws NeuralNetworkRuntimeException on bad format of samples
+     */
+    public static QuantizationReport evaluate(NeuralNetwork network, QuantizedNetwork quantized,
+            double[][] inputVectors, double[][] references) throws NeuralNetworkRuntimeException {
+        if (references.length != inputVectors.length) {
+            throw new NeuralNetworkRuntimeException(String.format(
+                    "There are %d input vectors and %d reference vectors", inputVectors.length, references.length));
+        }
+        int originalCorrect = 0;
+        int quantizedCorrect = 0;
+        int agreement = 0;
+        double maxError = 0.;
+        double errorSum = 0.;
+        final double[] original = new double[network.getResultVectorSize()];
+        final double[] approximate = new double[quantized.getResultVectorSize()];
+        for (int s = 0; s < inputVectors.length; s++) {
+            network.mapInto(inputVectors[s], original);
+            quantized.mapInto(inputVectors[s], approximate);
+            final int expectedClass = indexOfMax(references[s]);
+            final int originalClass = indexOfMax(original);
+            final int quantizedClass = indexOfMax(approximate);
+            if (originalClass == expectedClass) {
+                originalCorrect++;
+            }
+            if (quantizedClass == expectedClass) {
+                quantizedCorrect++;
+            }
+            if (originalClass == quantizedClass) {
+                agreement++;
+            }
+            for (int i = 0; i < original.length; i++) {
+                final double error = Math.abs(original[i] - approximate[i]);
+                maxError = Math.max(maxError, error);
+                errorSum += error;
+            }
+        }
+        final NeuralNetworkState state = network.getNetworkStateCopy();
+        final long originalBytes = (long) Float.BYTES * (state.getWeight().length + state.getBias().length)
+                + state.getPlan().getIndexBytes();
+        return new QuantizationReport(inputVectors.length, originalCorrect, quantizedCorrect, agreement, maxError,
+                inputVectors.length == 0 ? 0. : errorSum / (inputVectors.length * original.length),
+                originalBytes, quantized.getModelBytes());
+    }
+
+    private static int indexOfMax(double[] vector) {
+        int index = 0;
+        for (int i = 1; i < vector.length; i++) {
+            if (vector[i] > vector[index]) {
+                index = i;
+            }
+        }
+        return index;
+    }
+}
@@ -0,0 +1,121 @@
+package attatrol.neural.quantization;
+
+/**
+ * Accuracy of a quantized network against its original network on held-out samples,
+ * see {@link NetworkQuantizer#evaluate}.
+ * @author attatrol
+ *
+ */
+public final class QuantizationReport {
+
+    private final int sampleNumber;
+
+    /**
+     * Number of samples classified correctly by the original network
+     */
+    private final int originalCorrectNumber;
+
+    /**
+     * Number of samples classified correctly by the quantized network
+     */
+    private final int quantizedCorrectNumber;
+
+    /**
+     * Number of samples classified the same way by both networks
+     */
+    private final int agreementNumber;
+
+    /**
+     * Maximal absolute difference of result coordinates
+     */
+    private final double maxAbsoluteError;
+
+    /**
+     * Average absolute difference of result coordinates
+     */
+    private final double meanAbsoluteError;
+
+    private final long originalBytes;
+
+    private final long quantizedBytes;
+
+    QuantizationReport(int sampleNumber, int originalCorrectNumber, int quantizedCorrectNumber,
+            int agreementNumber, double maxAbsoluteError, double meanAbsoluteError, long originalBytes,
+            long quantizedBytes) {
+        this.sampleNumber = sampleNumber;
+        this.originalCorrectNumber = originalCorrectNumber;
+        this.quantizedCorrectNumber = quantizedCorrectNumber;
+        this.agreementNumber = agreementNumber;
+        this.maxAbsoluteError = maxAbsoluteError;
+        this.meanAbsoluteError = meanAbsoluteError;
+        this.originalBytes = originalBytes;
+        this.quantizedBytes = quantizedBytes;
+    }
+
+    public int getSampleNumber() {
+        return sampleNumber;
+    }
+
+    /**
+     * @return share of samples classified correctly by the original network
+     */
+    public double getOriginalAccuracy() {
+        return share(originalCorrectNumber);
+    }
+
+    /**
+     * @return share of samples classified correctly by the quantized network
+     */
+    public double getQuantizedAccuracy() {
+        return share(quantizedCorrectNumber);
+    }
+
+    /**
+     * @return accuracy of the quantized network minus accuracy of the original one
+     */
+    public double getAccuracyDelta() {
+        return getQuantizedAccuracy() - getOriginalAccuracy();
+    }
+
+    /**
+     * @return share of samples classified the same way by both networks
+     */
+    public double getAgreement() {
+        return share(agreementNumber);
+    }
+
+    public double getMaxAbsoluteError() {
+        return maxAbsoluteError;
+    }
+
+    public double getMeanAbsoluteError() {
+        return meanAbsoluteError;
+    }
+
+    /**
+     * @return size of float weights and biases of the original network together with its execution plan in bytes
+     */
+    public long getOriginalBytes() {
+        return originalBytes;
+    }
+
+    /**
+     * @return size of parameters and indexes of the quantized network in bytes, see {@link QuantizedNetwork#getModelBytes()}
+     */
+    public long getQuantizedBytes() {
+        return quantizedBytes;
+    }
+
+    private double share(int number) {
+        return sampleNumber == 0 ? 0. : (double) number / sampleNumber;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("QuantizationReport [samples=%d, originalAccuracy=%.4f, quantizedAccuracy=%.4f,"
+                + " accuracyDelta=%+.4f, agreement=%.4f, maxAbsoluteError=%.3g, meanAbsoluteError=%.3g,"
+                + " originalBytes=%d, quantizedBytes=%d]", sampleNumber, getOriginalAccuracy(),
+                getQuantizedAccuracy(), getAccuracyDelta(), getAgreement(), maxAbsoluteError, meanAbsoluteError,
+                originalBytes, quantizedBytes);
+    }
+}
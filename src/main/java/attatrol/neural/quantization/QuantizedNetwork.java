@@ -0,0 +1,492 @@
+package attatrol.neural.quantization;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+import attatrol.neural.NeuralNetworkRuntimeException;
+import attatrol.neural.activationfunction.ActivationFunction;
+import attatrol.neural.analysis.ActivationFunctionAnalyzer;
+import attatrol.neural.network.ExecutionPlan;
+
+/**
+ * Frozen network for inference with 8-bit weights and results, see {@link NetworkQuantizer}.
+ * <p>
+ * Weights of each neuron are scaled by their own factor into [-127, 127].
+ * Results of sources are grouped: coordinates of incoming vector form the group 0,
+ * neurons of the segment s of the execution plan form the group s + 1. Results of a group
+ * are scaled by a common factor into [0, 255] if they are never negative, into [-127, 127] otherwise.
+ * So a linear combination is S[i] = b[i] + ws[i] * SUM(rs[g] * SUM(qw[i][j] * qr[j])), where inner sums
+ * run over parents of the same group and are accumulated in int32. Activation functions
+ * are applied in double precision.
+ * <p>
+ * Network keeps only the part of the execution plan its forward pass reads: rows and segments
+ * of neurons and runs of rows of sparse segments. Dense segments which parents belong to a single group
+ * need no index of parents. Runs of a sparse segment are ranges of consecutive parents if it takes
+ * less memory, otherwise the segment keeps parent of each weight. Transposed index of the plan is dropped.
+ * <p>
+ * Network is immutable, it may be used by any number of threads at once.
+ * @author attatrol
+ *
+ */
+public final class QuantizedNetwork implements Serializable {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = 6120935457314981637L;
+
+    /**
+     * Maximal absolute value of a signed quantized value
+     */
+    static final int SIGNED_MAX = 127;
+
+    /**
+     * Maximal value of an unsigned quantized value
+     */
+    static final int UNSIGNED_MAX = 255;
+
+    private final int inputVectorSize;
+
+    private final int resultVectorSize;
+
+    private final double inputVectorAmplitude;
+
+    private final int sourceNumber;
+
+    /**
+     * Quantized weights laid out as the weight array of the plan
+     */
+    private final byte[] weight;
+
+    /**
+     * Scale of weights of each row
+     */
+    private final float[] rowScale;
+
+    /**
+     * Bias of each source
+     */
+    private final float[] bias;
+
+    /**
+     * Group of each source
+     */
+    private final int[] sourceGroup;
+
+    /**
+     * Scale of results of each group
+     */
+    private final double[] groupScale;
+
+    /**
+     * Minimal quantized value of each group, 0 or -127
+     */
+    private final int[] groupMin;
+
+    /**
+     * Maximal quantized value of each group, 255 or 127
+     */
+    private final int[] groupMax;
+
+    /**
+     * Neuron of each row, see {@link ExecutionPlan#getNeuronOrder()}
+     */
+    private final int[] neuronOrder;
+
+    /**
+     * Index of the first weight of each row, see {@link ExecutionPlan#getRowOffset()}
+     */
+    private final int[] rowOffset;
+
+    /**
+     * Index of the first row of each segment, last element is the number of rows
+     */
+    private final int[] segmentOffset;
+
+    /**
+     * First parent of each dense segment which parents belong to a single group, -1 for other segments
+     */
+    private final int[] segmentParentFrom;
+
+    /**
+     * Number of parents of each neuron of a dense segment
+     */
+    private final int[] segmentParentNumber;
+
+    /**
+     * Parent of each weight of indexed sparse segments, weight e of the segment s has parent
+     * {@code parentIndex[e - parentShift[s]]}
+     */
+    private final int[] parentIndex;
+
+    /**
+     * Shift of indexes of weights of each indexed sparse segment in {@link #parentIndex}
+     */
+    private final int[] parentShift;
+
+    /**
+     * Index of the first run of each row, a run is a range of weights of parents of the same group,
+     * last element is the total number of runs. Rows of dense segments have no runs.
+     * Runs of contiguous sparse segments also have consecutive parents.
+     */
+    private final int[] rowRunOffset;
+
+    /**
+     * Index of the weight after the last one of each run
+     */
+    private final int[] runEnd;
+
+    /**
+     * Group of parents of each run
+     */
+    private final int[] runGroup;
+
+    /**
+     * First parent of each run of a contiguous sparse segment, -1 for runs of indexed sparse segments
+     */
+    private final int[] runParentFrom;
+
+    /**
+     * Activation function of each segment
+     */
+    private final ActivationFunction[] segmentActivation;
+
+    private final boolean isSoftmaxSurface;
+
+    /**
+     * Scratch of forward passes, one per thread
+     */
+    private transient ThreadLocal<Scratch> scratch;
+
+    QuantizedNetwork(int inputVectorSize, int resultVectorSize, double inputVectorAmplitude, ExecutionPlan plan,
+            byte[] weight, float[] rowScale, float[] bias, int[] sourceGroup, double[] groupScale, int[] groupMin,
+            int[] groupMax, ActivationFunction[] segmentActivation, boolean isSoftmaxSurface) {
+        this.inputVectorSize = inputVectorSize;
+        this.resultVectorSize = resultVectorSize;
+        this.inputVectorAmplitude = inputVectorAmplitude;
+        this.weight = weight;
+        this.rowScale = rowScale;
+        this.bias = bias;
+        this.sourceGroup = sourceGroup;
+        this.groupScale = groupScale;
+        this.groupMin = groupMin;
+        this.groupMax = groupMax;
+        this.segmentActivation = segmentActivation;
+        this.isSoftmaxSurface = isSoftmaxSurface;
+        sourceNumber = plan.getSourceNumber();
+        neuronOrder = plan.getNeuronOrder();
+        rowOffset = plan.getRowOffset();
+        segmentOffset = plan.getSegmentOffset();
+
+        final int segmentNumber = plan.getSegmentNumber();
+        segmentParentFrom = new int[segmentNumber];
+        segmentParentNumber = new int[segmentNumber];
+        parentShift = new int[segmentNumber];
+        final int[] planParentIndex = plan.getParentIndex();
+        // sparse segment lists parents of its weights only if it is cheaper than runs of consecutive parents
+        final boolean[] isContiguous = new boolean[segmentNumber];
+        int sparseEdgeNumber = 0;
+        int runNumber = 0;
+        for (int segment = 0; segment < segmentNumber; segment++) {
+            segmentParentFrom[segment] = -1;
+            if (plan.isDense(segment) && isSingleGroup(plan.getSegmentParentFrom(segment),
+                    plan.getSegmentParentNumber(segment))) {
+                segmentParentFrom[segment] = plan.getSegmentParentFrom(segment);
+                segmentParentNumber[segment] = plan.getSegmentParentNumber(segment);
+                continue;
+            }
+            final int edgeFrom = rowOffset[segmentOffset[segment]];
+            final int edgeNumber = rowOffset[segmentOffset[segment + 1]] - edgeFrom;
+            final int groupRuns = countRuns(planParentIndex, segment, false);
+            final int contiguousRuns = countRuns(planParentIndex, segment, true);
+            isContiguous[segment] = 3 * contiguousRuns <= edgeNumber + 3 * groupRuns;
+            if (isContiguous[segment]) {
+                runNumber += contiguousRuns;
+            }
+            else {
+                parentShift[segment] = edgeFrom - sparseEdgeNumber;
+                sparseEdgeNumber += edgeNumber;
+                runNumber += groupRuns;
+            }
+        }
+
+        parentIndex = new int[sparseEdgeNumber];
+        rowRunOffset = new int[plan.getRowNumber() + 1];
+        runEnd = new int[runNumber];
+        runGroup = new int[runNumber];
+        runParentFrom = new int[runNumber];
+        int run = -1;
+        for (int segment = 0; segment < segmentNumber; segment++) {
+            for (int r = segmentOffset[segment]; r < segmentOffset[segment + 1]; r++) {
+                if (segmentParentFrom[segment] < 0) {
+                    for (int e = rowOffset[r]; e < rowOffset[r + 1]; e++) {
+                        final int parent = planParentIndex[e];
+                        if (isContiguous[segment]) {
+                            if (isRunStart(planParentIndex, rowOffset[r], e, true)) {
+                                run++;
+                                runGroup[run] = sourceGroup[parent];
+                                runParentFrom[run] = parent;
+                            }
+                        }
+                        else {
+                            parentIndex[e - parentShift[segment]] = parent;
+                            if (isRunStart(planParentIndex, rowOffset[r], e, false)) {
+                                run++;
+                                runGroup[run] = sourceGroup[parent];
+                                runParentFrom[run] = -1;
+                            }
+                        }
+                        runEnd[run] = e + 1;
+                    }
+                }
+                rowRunOffset[r + 1] = run + 1;
+            }
+        }
+        scratch = createScratch();
+    }
+
+    public int getInputVectorSize() {
+        return inputVectorSize;
+    }
+
+    public int getResultVectorSize() {
+        return resultVectorSize;
+    }
+
+    /**
+     * @return size of weights, biases and scales in bytes
+     */
+    public long getParameterBytes() {
+        return weight.length + (long) Float.BYTES * (rowScale.length + bias.length);
+    }
+
+    /**
+     * @return size of parameters together with indexes of rows, segments, parents and groups in bytes
+     */
+    public long getModelBytes() {
+        final long intNumber = (long) sourceGroup.length + groupMin.length + groupMax.length + neuronOrder.length
+                + rowOffset.length + segmentOffset.length + segmentParentFrom.length + segmentParentNumber.length
+                + parentIndex.length + parentShift.length + rowRunOffset.length + runEnd.length + runGroup.length
+                + runParentFrom.length;
+        return getParameterBytes() + Integer.BYTES * intNumber + (long) Double.BYTES * groupScale.length;
+    }
+
+    /**
+     * Maps input vector into result vector.
+     * @param inputVector argument, its coordinates are in [0, amplitude of the network]
+     * @return result vector
+     * @throws NeuralNetworkRuntimeException on bad format of input vector
+     */
+    public double[] map(double[] inputVector) throws NeuralNetworkRuntimeException {
+        final double[] resultVector = new double[resultVectorSize];
+        mapInto(inputVector, resultVector);
+        return resultVector;
+    }
+
+    /**
+     * Same as {@link #map(double[])}, but writes result vector into preallocated array.
+     * @param inputVector argument
+     * @param resultVector array for the result vector
+     * @throws NeuralNetworkRuntimeException on bad format of input vector or result array
+     */
+    public void mapInto(double[] inputVector, double[] resultVector) throws NeuralNetworkRuntimeException {
+        if (inputVector.length != inputVectorSize) {
+            throw new NeuralNetworkRuntimeException(String.format(
+                    "Incoming vector has cardinality of %d, network accepts only %d",
+                    inputVector.length, inputVectorSize));
+        }
+        if (resultVector.length != resultVectorSize) {
+            throw new NeuralNetworkRuntimeException(String.format(
+                    "Result array has length of %d, network yields %d values", resultVector.length, resultVectorSize));
+        }
+        final Scratch s = scratch.get();
+        final int[] quantized = s.quantized;
+        final double inverseInputScale = 1. / groupScale[0];
+        for (int i = 0; i < inputVectorSize; i++) {
+            final int value = (int) Math.round(inputVector[i] * inverseInputScale);
+            quantized[i] = value < 0 ? 0 : value > UNSIGNED_MAX ? UNSIGNED_MAX : value;
+        }
+        for (int segment = 0; segment < segmentParentFrom.length; segment++) {
+            if (segmentParentFrom[segment] >= 0) {
+                processDenseSegment(s, segment);
+            }
+            else {
+                processSparseRows(s, segment, segmentOffset[segment], segmentOffset[segment + 1]);
+            }
+        }
+        final int surfaceFrom = sourceNumber - resultVectorSize;
+        if (isSoftmaxSurface) {
+            ActivationFunctionAnalyzer.applySoftmax(s.linearCombination, s.result, surfaceFrom, resultVectorSize, 1);
+        }
+        System.arraycopy(s.result, surfaceFrom, resultVector, 0, resultVectorSize);
+    }
+
+    /**
+     * Dense segment reads a contiguous range of parents of a single group.
+     * @param s scratch
+     * @param segment index of the segment
+     */
+    private void processDenseSegment(Scratch s, int segment) {
+        final int rowFrom = segmentOffset[segment];
+        final int rowTo = segmentOffset[segment + 1];
+        final int neuronFrom = neuronOrder[rowFrom];
+        final int parentFrom = segmentParentFrom[segment];
+        final int columns = segmentParentNumber[segment];
+        final double parentScale = groupScale[sourceGroup[parentFrom]];
+        final int[] quantized = s.quantized;
+        final double[] linearCombination = s.linearCombination;
+        for (int r = rowFrom; r < rowTo; r++) {
+            final int m = rowOffset[r];
+            int accumulator = 0;
+            for (int c = 0; c < columns; c++) {
+                accumulator += weight[m + c] * quantized[parentFrom + c];
+            }
+            final int i = neuronFrom + r - rowFrom;
+            linearCombination[i] = bias[i] + rowScale[r] * parentScale * accumulator;
+        }
+        final int neuronTo = neuronFrom + rowTo - rowFrom;
+        segmentActivation[segment].apply(linearCombination, s.result, neuronFrom, neuronTo);
+        quantize(s, segment + 1, neuronFrom, neuronTo);
+    }
+
+    /**
+     * Rows of a sparse segment may belong to different levels, so each row is activated at once.
+     * @param s scratch
+     * @param segment index of the segment
+     * @param rowFrom first row
+     * @param rowTo row after the last one
+     */
+    private void processSparseRows(Scratch s, int segment, int rowFrom, int rowTo) {
+        final int shift = parentShift[segment];
+        final int[] quantized = s.quantized;
+        final double[] linearCombination = s.linearCombination;
+        final ActivationFunction function = segmentActivation[segment];
+        for (int r = rowFrom; r < rowTo; r++) {
+            final int i = neuronOrder[r];
+            double sum = 0.;
+            int e = rowOffset[r];
+            int accumulator = 0;
+            final int runTo = rowRunOffset[r + 1];
+            for (int run = rowRunOffset[r]; run < runTo; run++) {
+                final int end = runEnd[run];
+                final int parentShiftOfRun = runParentFrom[run] - e;
+                if (runParentFrom[run] >= 0) {
+                    for (; e < end; e++) {
+                        accumulator += weight[e] * quantized[parentShiftOfRun + e];
+                    }
+                }
+                else {
+                    for (; e < end; e++) {
+                        accumulator += weight[e] * quantized[parentIndex[e - shift]];
+                    }
+                }
+                // consecutive runs of the same group share a scale
+                if (run + 1 == runTo || runGroup[run + 1] != runGroup[run]) {
+                    sum += groupScale[runGroup[run]] * accumulator;
+                    accumulator = 0;
+                }
+            }
+            linearCombination[i] = bias[i] + rowScale[r] * sum;
+            function.apply(linearCombination, s.result, i, i + 1);
+            quantize(s, segment + 1, i, i + 1);
+        }
+    }
+
+    /**
+     * Quantizes results of a range of sources of the same group.
+     * @param s scratch
+     * @param group group of sources
+     * @param from first source
+     * @param to source after the last one
+     */
+    private void quantize(Scratch s, int group, int from, int to) {
+        final double inverseScale = 1. / groupScale[group];
+        final int min = groupMin[group];
+        final int max = groupMax[group];
+        for (int i = from; i < to; i++) {
+            final long value = Math.round(s.result[i] * inverseScale);
+            s.quantized[i] = value < min ? min : value > max ? max : (int) value;
+        }
+    }
+
+    /**
+     * @param planParentIndex parents of weights of the plan
+     * @param segment index of a sparse segment
+     * @param isContiguous true if parents of a run must be consecutive
+     * @return number of runs of rows of the segment
+     */
+    private int countRuns(int[] planParentIndex, int segment, boolean isContiguous) {
+        int runNumber = 0;
+        for (int r = segmentOffset[segment]; r < segmentOffset[segment + 1]; r++) {
+            for (int e = rowOffset[r]; e < rowOffset[r + 1]; e++) {
+                if (isRunStart(planParentIndex, rowOffset[r], e, isContiguous)) {
+                    runNumber++;
+                }
+            }
+        }
+        return runNumber;
+    }
+
+    /**
+     * @param planParentIndex parents of weights of the plan
+     * @param rowStart first weight of the row
+     * @param e index of a weight of the row
+     * @param isContiguous true if parents of a run must be consecutive
+     * @return true if the weight starts a new run
+     */
+    private boolean isRunStart(int[] planParentIndex, int rowStart, int e, boolean isContiguous) {
+        return e == rowStart || sourceGroup[planParentIndex[e]] != sourceGroup[planParentIndex[e - 1]]
+                || isContiguous && planParentIndex[e] != planParentIndex[e - 1] + 1;
+    }
+
+    /**
+     * @param from first source
+     * @param number number of sources
+     * @return true if all sources of the range belong to the same group
+     */
+    private boolean isSingleGroup(int from, int number) {
+        for (int i = from + 1; i < from + number; i++) {
+            if (sourceGroup[i] != sourceGroup[from]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private ThreadLocal<Scratch> createScratch() {
+        final int sourceNumber = this.sourceNumber;
+        return ThreadLocal.withInitial(() -> new Scratch(sourceNumber));
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        scratch = createScratch();
+    }
+
+    @Override
+    public String toString() {
+        return "QuantizedNetwork [inputVectorSize=" + inputVectorSize + ", resultVectorSize=" + resultVectorSize
+                + ", inputVectorAmplitude=" + inputVectorAmplitude + ", parameterBytes=" + getParameterBytes() + ", modelBytes=" + getModelBytes()
+                + ", groupScale=" + Arrays.toString(groupScale) + ", isSoftmaxSurface=" + isSoftmaxSurface + "]";
+    }
+
+    /**
+     * Scratch of a forward pass.
+     */
+    private static final class Scratch {
+
+        private final int[] quantized;
+
+        private final double[] linearCombination;
+
+        private final double[] result;
+
+        Scratch(int sourceNumber) {
+            quantized = new int[sourceNumber];
+            linearCombination = new double[sourceNumber];
+            result = new double[sourceNumber];
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package attatrol.neural.topology;
 
+import attatrol.neural.activationfunction.ActivationFunction;
+
 /**
  * Contains abstract description of some network layer to be generated.
  * @author attatrol
@@ -29,6 +31,12 @@ public class Layer {
      */
     private final LayerType type;
 
+    /**
+     * Activation function of neurons of the layer,
+     * null if they use the function of the analytical processor.
+     */
+    private final ActivationFunction activationFunction;
+
     /**
      * Default ctor.
      * @param neuronNumber number of neurons in layer
@@ -38,10 +46,26 @@ public class Layer {
      */
     public Layer(int neuronNumber, int childPerNeuronNumber,
             LayerInterconnectionDistribution distribution, LayerType type) {
+        this(neuronNumber, childPerNeuronNumber, distribution, type, null);
+    }
+
+    /**
+     * Ctor of a layer with its own activation function.
+     * @param neuronNumber number of neurons in layer
+     * @param childPerNeuronNumber number of child neurons in the nex layer per each neuron
+     * @param distribution describes how child-parent connections between layers are distributed
+     * @param type type of the layer
+     * @param activationFunction activation function of neurons of the layer,
+     * null to use the function of the analytical processor
+     */
+    public Layer(int neuronNumber, int childPerNeuronNumber,
+            LayerInterconnectionDistribution distribution, LayerType type,
+            ActivationFunction activationFunction) {
         this.neuronNumber = neuronNumber;
         this.childPerNeuronNumber = childPerNeuronNumber;
         this.distribution = distribution;
         this.type = type;
+        this.activationFunction = activationFunction;
     }
 
     /**
@@ -72,10 +96,19 @@ public class Layer {
         return type;
     }
 
+    /**
+     * @return activation function of neurons of the layer,
+     * null if they use the function of the analytical processor
+     */
+    public ActivationFunction getActivationFunction() {
+        return activationFunction;
+    }
+
     @Override
     public String toString() {
         return "Layer = [neuronNumber=" + neuronNumber + ", childPerNeuronNumber="
-                + childPerNeuronNumber + ", distribution=" + distribution + ", type=" + type + "]";
+                + childPerNeuronNumber + ", distribution=" + distribution + ", type=" + type
+                + (activationFunction == null ? "" : ", activationFunction=" + activationFunction) + "]";
     }
 
 }
@@ -1,5 +1,7 @@
 package attatrol.neural.topology;
 
+import attatrol.neural.activationfunction.ActivationFunction;
+
 /**
  * Topology that also holds information
  * about layers of neural network
@@ -14,18 +16,80 @@ public class LayeredTopology extends Topology {
      */
     private final int[] firstIndexOfLayer;
 
+    /**
+     * Activation function of every layer, null if the layer uses
+     * the function of the analytical processor
+     */
+    private final ActivationFunction[] layerActivation;
+
     public LayeredTopology(int sourceTotalNumber, int neuronFirstIndex, int surfaceNeuronFirstIndex,
             int[][] sourceChildren, int[][] sourceParents, int[] forwardTraverseNeuronsOrder,
             int[] firstIndexOfLayer) {
+        this(sourceTotalNumber, neuronFirstIndex, surfaceNeuronFirstIndex, sourceChildren, sourceParents,
+                forwardTraverseNeuronsOrder, firstIndexOfLayer, new ActivationFunction[firstIndexOfLayer.length]);
+    }
+
+    public LayeredTopology(int sourceTotalNumber, int neuronFirstIndex, int surfaceNeuronFirstIndex,
+            int[][] sourceChildren, int[][] sourceParents, int[] forwardTraverseNeuronsOrder,
+            int[] firstIndexOfLayer, ActivationFunction[] layerActivation) {
         super(sourceTotalNumber, neuronFirstIndex, surfaceNeuronFirstIndex, sourceChildren,
                 sourceParents, forwardTraverseNeuronsOrder);
         this.firstIndexOfLayer = firstIndexOfLayer;
+        this.layerActivation = layerActivation;
     }
 
     public int[] getFirstIndexOfLayer() {
         return firstIndexOfLayer;
     }
 
+    /**
+     * @param layerIndex index of the layer, layer of incoming vector has index 0
+     * @return activation function of the layer, null if the layer uses
+     * the function of the analytical processor
+     */
+    public ActivationFunction getLayerActivation(int layerIndex) {
+        return layerActivation[layerIndex];
+    }
+
+    /**
+     * @return true if some layer has its own activation function
+     */
+    public boolean hasLayerActivation() {
+        for (ActivationFunction function : layerActivation) {
+            if (function != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if every neuron of the layer is connected to every source of the previous layer.
+     * @param layerIndex index of the layer, layer of incoming vector has index 0
+     * @return true if the layer and the previous one are fully interconnected
+     */
+    public boolean isFullyConnected(int layerIndex) {
+        if (layerIndex < 1 || layerIndex >= firstIndexOfLayer.length) {
+            return false;
+        }
+        final int parentLayerStart = firstIndexOfLayer[layerIndex - 1];
+        final int layerStart = firstIndexOfLayer[layerIndex];
+        final int layerEnd = layerIndex + 1 < firstIndexOfLayer.length
+                ? firstIndexOfLayer[layerIndex + 1] : sourceTotalNumber;
+        for (int i = layerStart; i < layerEnd; i++) {
+            final int[] parents = sourceParents[i];
+            if (parents.length != layerStart - parentLayerStart) {
+                return false;
+            }
+            for (int j = 0; j < parents.length; j++) {
+                if (parents[j] != parentLayerStart + j) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     /**
      * Specifies type of current source.
      * @param currentIndex index of the source
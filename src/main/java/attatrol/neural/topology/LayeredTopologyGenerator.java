@@ -4,6 +4,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.activationfunction.ActivationFunction;
 
 /**
  * Utility class, contains methods of processing layered topology description into layered topology.
@@ -31,8 +32,10 @@ public final class LayeredTopologyGenerator {
         final int incomingTotalNumber = layers.get(0).getNeuronNumber();
         final int outcomingTotalNumber = layers.get(layers.size() - 1).getNeuronNumber();
         int[] firstIndexOfLayer = new int[layers.size()];
+        final ActivationFunction[] layerActivation = new ActivationFunction[layers.size()];
         for (int i = 0; i < layers.size(); i++) {
             firstIndexOfLayer[i] = sourceTotalNumber;
+            layerActivation[i] = layers.get(i).getActivationFunction();
             sourceTotalNumber += layers.get(i).getNeuronNumber();
         }
         final int neuronFirstIndex = incomingTotalNumber;
@@ -68,7 +71,7 @@ public final class LayeredTopologyGenerator {
 
         return new LayeredTopology(sourceTotalNumber, neuronFirstIndex,
                 surfaceNeuronFirstIndex, sourceChildren, sourceParents, forwardTraverseNeuronsOrder,
-                firstIndexOfLayer);
+                firstIndexOfLayer, layerActivation);
     }
 
     /**
@@ -53,6 +53,13 @@ public class Topology {
      */
     protected final int[] forwardTraverseNeuronsOrder;
 
+    /**
+     * Topological level of each source: sources without parents have level 0,
+     * level of any other source is greater by one than the maximal level of its parents.
+     * Neurons of the same level do not depend on each other.
+     */
+    protected final int[] sourceLevel;
+
     public Topology(int sourceTotalNumber, int neuronFirstIndex, int surfaceNeuronFirstIndex,
             int[][] sourceChildren, int[][] sourceParents, int[] forwardTraverseNeuronsOrder) {
         super();
@@ -62,6 +69,27 @@ public class Topology {
         this.sourceChildren = sourceChildren;
         this.sourceParents = sourceParents;
         this.forwardTraverseNeuronsOrder = forwardTraverseNeuronsOrder;
+        this.sourceLevel = calculateSourceLevels(sourceParents, forwardTraverseNeuronsOrder);
+    }
+
+    /**
+     * Calculates topological level of each source.
+     * @param sourceParents parents of each source
+     * @param forwardTraverseNeuronsOrder order of traverse for neurons
+     * @return level of each source
+     */
+    public static int[] calculateSourceLevels(int[][] sourceParents, int[] forwardTraverseNeuronsOrder) {
+        final int[] level = new int[sourceParents.length];
+        for (int neuron : forwardTraverseNeuronsOrder) {
+            int maxParentLevel = -1;
+            for (int parent : sourceParents[neuron]) {
+                if (level[parent] > maxParentLevel) {
+                    maxParentLevel = level[parent];
+                }
+            }
+            level[neuron] = maxParentLevel + 1;
+        }
+        return level;
     }
 
     public int getSourceTotalNumber() {
@@ -96,6 +124,10 @@ public class Topology {
         return forwardTraverseNeuronsOrder;
     }
 
+    public int[] getSourceLevel() {
+        return sourceLevel;
+    }
+
     /**
      * Sources are printed in order of forward traverse.
      * Incoming vector is printed first, followed by neurons,
@@ -11,9 +11,14 @@ import attatrol.neural.network.TopologySetting;
 import attatrol.neural.topology.Layer;
 import attatrol.neural.topology.LayeredTopologyDescription;
 import attatrol.neural.ui.javafx.analysis.activation.ActivationFunctionAnalyzerFactory;
+import attatrol.neural.ui.javafx.analysis.activation.Float32ActivationFunctionAnalyzerFactory;
+import attatrol.neural.ui.javafx.analysis.activation.SoftmaxActivationFunctionAnalyzerFactory;
 import attatrol.neural.ui.javafx.analysis.activation.StochasticActivationFunctionAnalyzerFactory;
 import attatrol.neural.ui.javafx.i18n.NeuralI18nProvider;
 import attatrol.neural.ui.javafx.learning.supervised.errorminimizer.BackpropagationLearnerFactory;
+import attatrol.neural.ui.javafx.learning.supervised.errorminimizer.LbfgsLearnerFactory;
+import attatrol.neural.ui.javafx.learning.supervised.errorminimizer.MiniBatchBackpropagationLearnerFactory;
+import attatrol.neural.ui.javafx.learning.supervised.errorminimizer.RpropLearnerFactory;
 import attatrol.neural.ui.javafx.misc.FactoryComboBox;
 import attatrol.neural.ui.javafx.misc.GenericValueReturnDialog;
 import attatrol.neural.ui.javafx.topology.LayeredTopologyDescriptionReturnDialog;
@@ -86,7 +91,9 @@ public class NeuralNetworkFactoryDialog extends GenericValueReturnDialog<NeuralN
         // XXX here to populate combo box with any analytical processor
         // factories
         analyticalProcessorComboBox.getItems().addAll(new ActivationFunctionAnalyzerFactory(),
-                new StochasticActivationFunctionAnalyzerFactory());
+                new StochasticActivationFunctionAnalyzerFactory(),
+                new SoftmaxActivationFunctionAnalyzerFactory(),
+                new Float32ActivationFunctionAnalyzerFactory());
     }
 
     private FactoryComboBox<LearningProcessor> learningProcessorComboBox = new FactoryComboBox<>();
@@ -107,7 +114,9 @@ public class NeuralNetworkFactoryDialog extends GenericValueReturnDialog<NeuralN
         });
         // XXX here to populate combo box with any analytical processor
         // factories
-        learningProcessorComboBox.getItems().addAll(new BackpropagationLearnerFactory());
+        learningProcessorComboBox.getItems().addAll(new BackpropagationLearnerFactory(),
+                new MiniBatchBackpropagationLearnerFactory(), new RpropLearnerFactory(),
+                new LbfgsLearnerFactory());
     }
 
     private LayeredTopologyDescription ltd;
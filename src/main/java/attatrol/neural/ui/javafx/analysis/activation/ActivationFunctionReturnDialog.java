@@ -15,8 +15,7 @@ public class ActivationFunctionReturnDialog
 
     private FactoryComboBox<ActivationFunction> comboBox = new FactoryComboBox<>();
     {
-        //XXX here we fill checklist with new functions
-        comboBox.getItems().addAll(new SigmoidFunctionFactory());
+        fillFactories(comboBox);
     }
 
     public ActivationFunctionReturnDialog() {
@@ -33,6 +32,20 @@ public class ActivationFunctionReturnDialog
         //final Button btOk = (Button) getDialogPane().lookupButton(OK_BUTTON_TYPE);
     }
 
+    /**
+     * Fills combo box with factories of all activation functions.
+     * @param comboBox combo box
+     */
+    public static void fillFactories(FactoryComboBox<ActivationFunction> comboBox) {
+        //XXX here we fill checklist with new functions
+        comboBox.getItems().addAll(new SigmoidFunctionFactory(),
+                new LookupSigmoidFunctionFactory(),
+                new PolynomialSigmoidFunctionFactory(),
+                new HardSigmoidFunctionFactory(),
+                new ReluFunctionFactory(),
+                new LeakyReluFunctionFactory());
+    }
+
     @Override
     protected ActivationFunction createResult() {
         return comboBox.getResult();
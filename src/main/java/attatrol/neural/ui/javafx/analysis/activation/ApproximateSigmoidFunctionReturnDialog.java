@@ -0,0 +1,90 @@
+package attatrol.neural.ui.javafx.analysis.activation;
+
+import attatrol.neural.activationfunction.ActivationFunction;
+import attatrol.neural.ui.javafx.i18n.NeuralI18nProvider;
+import attatrol.neural.ui.javafx.misc.GenericValueReturnDialog;
+import attatrol.neural.ui.javafx.misc.PositiveDoubleTextField;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.GridPane;
+
+/**
+ * Dialog which asks flatness ratio and maximal error of an approximated sigmoid function.
+ * @author attatrol
+ *
+ */
+public abstract class ApproximateSigmoidFunctionReturnDialog extends GenericValueReturnDialog<ActivationFunction> {
+
+    private TextField flatnessField = new PositiveDoubleTextField();
+    {
+        flatnessField.setText("1");
+    }
+
+    private TextField maxErrorField = new PositiveDoubleTextField();
+    {
+        maxErrorField.setText("0.0001");
+    }
+
+    private final double minMaxError;
+
+    private final double maxMaxError;
+
+    /**
+     * Default ctor.
+     * @param title title of the dialog
+     * @param minMaxError least allowed maximal error
+     * @param maxMaxError greatest allowed maximal error
+     */
+    public ApproximateSigmoidFunctionReturnDialog(String title, double minMaxError, double maxMaxError) {
+        super();
+        this.minMaxError = minMaxError;
+        this.maxMaxError = maxMaxError;
+        GridPane grid = new GridPane();
+        grid.setAlignment(Pos.CENTER);
+        grid.setHgap(10);
+        grid.setVgap(10);
+        grid.setPadding(new Insets(25, 25, 25, 25));
+        grid.add(new Label(NeuralI18nProvider.getText("sigmoidfunctionfactory.flatnesslabel")), 0, 0);
+        grid.add(flatnessField, 0, 1);
+        grid.add(new Label(NeuralI18nProvider.getText("approximatesigmoidfunction.maxerrorlabel")), 0, 2);
+        grid.add(maxErrorField, 0, 3);
+        this.getDialogPane().setContent(grid);
+        this.setTitle(title);
+    }
+
+    /**
+     * Creates the function.
+     * @param a flatness ratio
+     * @param maxError maximal error
+     * @return approximated sigmoid function
+     */
+    protected abstract ActivationFunction createFunction(float a, double maxError);
+
+    @Override
+    protected ActivationFunction createResult() {
+        return createFunction((float) Double.parseDouble(flatnessField.getText()),
+                Double.parseDouble(maxErrorField.getText()));
+    }
+
+    @Override
+    protected void validate() throws Exception {
+        try {
+            if (Double.parseDouble(flatnessField.getText()) <= 0.) {
+                throw new IllegalStateException(NeuralI18nProvider
+                        .getText("sigmoidfunctionfactory.nonpositiveflatnesserror"));
+            }
+            final double maxError = Double.parseDouble(maxErrorField.getText());
+            if (maxError < minMaxError || maxError > maxMaxError) {
+                throw new IllegalStateException(String.format(NeuralI18nProvider
+                        .getText("approximatesigmoidfunction.maxerrorrangeerror"), minMaxError, maxMaxError));
+            }
+        }
+        catch (NumberFormatException ex) {
+            throw new IllegalStateException(
+                    NeuralI18nProvider.getText("sigmoidfunctionfactory.parseerror")
+                    + ex.getLocalizedMessage());
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package attatrol.neural.ui.javafx.analysis.activation;
+
+import attatrol.neural.activationfunction.ActivationFunction;
+import attatrol.neural.activationfunction.HardSigmoidFunction;
+import attatrol.neural.ui.javafx.i18n.NeuralI18nProvider;
+import attatrol.neural.ui.javafx.misc.AbstractUiFactory;
+
+public class HardSigmoidFunctionFactory implements AbstractUiFactory<ActivationFunction> {
+
+    @Override
+    public ActivationFunction generate(Object... parameters) {
+        return new HardSigmoidFunction();
+    }
+
+    @Override
+    public String toString() {
+        return NeuralI18nProvider.getText("hardsigmoidfunctionfactory.name");
+    }
+}
@@ -0,0 +1,37 @@
+package attatrol.neural.ui.javafx.analysis.activation;
+
+import java.util.Optional;
+
+import attatrol.neural.activationfunction.ActivationFunction;
+import attatrol.neural.activationfunction.PolynomialSigmoidFunction;
+import attatrol.neural.ui.javafx.i18n.NeuralI18nProvider;
+import attatrol.neural.ui.javafx.misc.AbstractUiFactory;
+import javafx.scene.control.Dialog;
+
+public class PolynomialSigmoidFunctionFactory implements AbstractUiFactory<ActivationFunction> {
+
+    @Override
+    public ActivationFunction generate(Object... parameters) {
+        Dialog<ActivationFunction> dialog = new ApproximateSigmoidFunctionReturnDialog(
+                NeuralI18nProvider.getText("polynomialsigmoidfunctionfactory.title"),
+                PolynomialSigmoidFunction.MIN_MAX_ERROR, PolynomialSigmoidFunction.MAX_MAX_ERROR) {
+
+            @Override
+            protected ActivationFunction createFunction(float a, double maxError) {
+                return new PolynomialSigmoidFunction(a, maxError);
+            }
+        };
+        Optional<ActivationFunction> function = dialog.showAndWait();
+        if (function.isPresent()) {
+            return function.get();
+        }
+        else {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return NeuralI18nProvider.getText("polynomialsigmoidfunctionfactory.name");
+    }
+}
@@ -0,0 +1,19 @@
+package attatrol.neural.ui.javafx.analysis.activation;
+
+import attatrol.neural.activationfunction.ActivationFunction;
+import attatrol.neural.activationfunction.ReluFunction;
+import attatrol.neural.ui.javafx.i18n.NeuralI18nProvider;
+import attatrol.neural.ui.javafx.misc.AbstractUiFactory;
+
+public class ReluFunctionFactory implements AbstractUiFactory<ActivationFunction> {
+
+    @Override
+    public ActivationFunction generate(Object... parameters) {
+        return new ReluFunction();
+    }
+
+    @Override
+    public String toString() {
+        return NeuralI18nProvider.getText("relufunctionfactory.name");
+    }
+}
@@ -5,10 +5,14 @@ import java.util.Optional;
 import attatrol.neural.NeuralNetworkGenerationException;
 import attatrol.neural.errorfunction.ErrorFunction;
 import attatrol.neural.learning.LearningProcessor;
+import attatrol.neural.learning.supervised.AdamLearner;
 import attatrol.neural.learning.supervised.BackpropagationLearner;
+import attatrol.neural.learning.supervised.MomentumLearner;
 import attatrol.neural.ui.javafx.i18n.NeuralI18nProvider;
+import attatrol.neural.ui.javafx.learning.supervised.errorminimizer.OptimizerReturnDialog.Optimizer;
 import attatrol.neural.ui.javafx.misc.AbstractUiFactory;
 import attatrol.neural.ui.javafx.misc.PositiveDoubleReturnDialog;
+import attatrol.neural.ui.javafx.misc.UiUtils;
 import javafx.scene.control.Dialog;
 
 public class BackpropagationLearnerFactory implements AbstractUiFactory<LearningProcessor> {
@@ -17,18 +21,50 @@ public class BackpropagationLearnerFactory implements AbstractUiFactory<Learning
     public LearningProcessor generate(Object... parameters) {
         Dialog<ErrorFunction> errorFunctionDialog = new ErrorFunctionReturnDialog();
         Optional<ErrorFunction> errorFunction = errorFunctionDialog.showAndWait();
+        Dialog<Optimizer> optimizerDialog = new OptimizerReturnDialog();
+        Optional<Optimizer> optimizer = optimizerDialog.showAndWait();
         Dialog<Double> changeFactorDialog = new PositiveDoubleReturnDialog(NeuralI18nProvider
                 .getText("backpropagationlearnerfactory.dialog.title"),
                 NeuralI18nProvider.getText("backpropagationlearnerfactory.dialog.label"));
         Optional<Double> changeFactor = changeFactorDialog.showAndWait();
-        if (errorFunction.isPresent() && changeFactor.isPresent()) {
-            try {
-                return BackpropagationLearner.getBackpropagationLearner(errorFunction.get(), changeFactor.get().floatValue());
-            } catch (NeuralNetworkGenerationException e) {
-                return null; // will never happen
-            }
+        if (!errorFunction.isPresent() || !optimizer.isPresent() || !changeFactor.isPresent()) {
+            return null;
         }
-        else {
+        try {
+            if (optimizer.get() == Optimizer.PLAIN) {
+                return BackpropagationLearner.getBackpropagationLearner(errorFunction.get(),
+                        changeFactor.get().floatValue());
+            }
+            Optional<Double> momentum = Optional.empty();
+            if (optimizer.get() != Optimizer.ADAM) {
+                Dialog<Double> momentumDialog = new PositiveDoubleReturnDialog(NeuralI18nProvider
+                        .getText("backpropagationlearnerfactory.momentum.title"),
+                        NeuralI18nProvider.getText("backpropagationlearnerfactory.momentum.label"));
+                momentum = momentumDialog.showAndWait();
+                if (!momentum.isPresent()) {
+                    return null;
+                }
+            }
+            Dialog<Double> batchSizeDialog = new PositiveDoubleReturnDialog(NeuralI18nProvider
+                    .getText("minibatchbackpropagationlearnerfactory.batchsize.title"),
+                    NeuralI18nProvider.getText("minibatchbackpropagationlearnerfactory.batchsize.label"));
+            Optional<Double> batchSize = batchSizeDialog.showAndWait();
+            Dialog<Double> threadNumberDialog = new PositiveDoubleReturnDialog(NeuralI18nProvider
+                    .getText("minibatchbackpropagationlearnerfactory.threadnumber.title"),
+                    NeuralI18nProvider.getText("minibatchbackpropagationlearnerfactory.threadnumber.label"));
+            Optional<Double> threadNumber = threadNumberDialog.showAndWait();
+            if (!batchSize.isPresent() || !threadNumber.isPresent()) {
+                return null;
+            }
+            if (optimizer.get() == Optimizer.ADAM) {
+                return AdamLearner.getAdamLearner(errorFunction.get(), changeFactor.get().floatValue(),
+                        batchSize.get().intValue(), threadNumber.get().intValue());
+            }
+            return MomentumLearner.getMomentumLearner(errorFunction.get(), changeFactor.get().floatValue(),
+                    momentum.get().floatValue(), optimizer.get() == Optimizer.NESTEROV,
+                    batchSize.get().intValue(), threadNumber.get().intValue());
+        } catch (NeuralNetworkGenerationException e) {
+            UiUtils.showTestMessage(e.getLocalizedMessage());
             return null;
         }
     }
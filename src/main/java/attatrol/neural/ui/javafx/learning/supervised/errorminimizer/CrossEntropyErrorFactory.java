@@ -0,0 +1,20 @@
+package attatrol.neural.ui.javafx.learning.supervised.errorminimizer;
+
+import attatrol.neural.errorfunction.CrossEntropyError;
+import attatrol.neural.errorfunction.ErrorFunction;
+import attatrol.neural.ui.javafx.i18n.NeuralI18nProvider;
+import attatrol.neural.ui.javafx.misc.AbstractUiFactory;
+
+public class CrossEntropyErrorFactory implements AbstractUiFactory<ErrorFunction> {
+
+    @Override
+    public ErrorFunction generate(Object... parameters) {
+        return new CrossEntropyError();
+    }
+
+    @Override
+    public String toString() {
+        return NeuralI18nProvider.getText("crossentropyerrorfactory.name");
+    }
+
+}
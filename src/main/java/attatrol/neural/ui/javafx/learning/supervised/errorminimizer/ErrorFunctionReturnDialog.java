@@ -17,7 +17,8 @@ public class ErrorFunctionReturnDialog extends GenericValueReturnDialog<ErrorFun
         //XXX here we fill checklist with new functions
         comboBox.getItems().addAll(
                 new PNormFactory(),
-                new QuadraticErrorFactory());
+                new QuadraticErrorFactory(),
+                new CrossEntropyErrorFactory());
     }
 
     public ErrorFunctionReturnDialog() {
@@ -0,0 +1,47 @@
+package attatrol.neural.ui.javafx.learning.supervised.errorminimizer;
+
+import java.util.Optional;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.errorfunction.ErrorFunction;
+import attatrol.neural.learning.LearningProcessor;
+import attatrol.neural.learning.supervised.LbfgsLearner;
+import attatrol.neural.ui.javafx.i18n.NeuralI18nProvider;
+import attatrol.neural.ui.javafx.misc.AbstractUiFactory;
+import attatrol.neural.ui.javafx.misc.PositiveDoubleReturnDialog;
+import attatrol.neural.ui.javafx.misc.UiUtils;
+import javafx.scene.control.Dialog;
+
+public class LbfgsLearnerFactory implements AbstractUiFactory<LearningProcessor> {
+
+    @Override
+    public LearningProcessor generate(Object... parameters) {
+        Dialog<ErrorFunction> errorFunctionDialog = new ErrorFunctionReturnDialog();
+        Optional<ErrorFunction> errorFunction = errorFunctionDialog.showAndWait();
+        Dialog<Double> historySizeDialog = new PositiveDoubleReturnDialog(NeuralI18nProvider
+                .getText("lbfgslearnerfactory.historysize.title"),
+                NeuralI18nProvider.getText("lbfgslearnerfactory.historysize.label"));
+        Optional<Double> historySize = historySizeDialog.showAndWait();
+        Dialog<Double> threadNumberDialog = new PositiveDoubleReturnDialog(NeuralI18nProvider
+                .getText("minibatchbackpropagationlearnerfactory.threadnumber.title"),
+                NeuralI18nProvider.getText("minibatchbackpropagationlearnerfactory.threadnumber.label"));
+        Optional<Double> threadNumber = threadNumberDialog.showAndWait();
+        if (errorFunction.isPresent() && historySize.isPresent() && threadNumber.isPresent()) {
+            try {
+                return LbfgsLearner.getLbfgsLearner(errorFunction.get(), historySize.get().intValue(),
+                        threadNumber.get().intValue());
+            } catch (NeuralNetworkGenerationException e) {
+                UiUtils.showTestMessage(e.getLocalizedMessage());
+                return null;
+            }
+        }
+        else {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return NeuralI18nProvider.getText("lbfgslearnerfactory.name");
+    }
+}
@@ -0,0 +1,53 @@
+package attatrol.neural.ui.javafx.learning.supervised.errorminimizer;
+
+import java.util.Optional;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.errorfunction.ErrorFunction;
+import attatrol.neural.learning.LearningProcessor;
+import attatrol.neural.learning.supervised.MiniBatchBackpropagationLearner;
+import attatrol.neural.ui.javafx.i18n.NeuralI18nProvider;
+import attatrol.neural.ui.javafx.misc.AbstractUiFactory;
+import attatrol.neural.ui.javafx.misc.PositiveDoubleReturnDialog;
+import attatrol.neural.ui.javafx.misc.UiUtils;
+import javafx.scene.control.Dialog;
+
+public class MiniBatchBackpropagationLearnerFactory implements AbstractUiFactory<LearningProcessor> {
+
+    @Override
+    public LearningProcessor generate(Object... parameters) {
+        Dialog<ErrorFunction> errorFunctionDialog = new ErrorFunctionReturnDialog();
+        Optional<ErrorFunction> errorFunction = errorFunctionDialog.showAndWait();
+        Dialog<Double> changeFactorDialog = new PositiveDoubleReturnDialog(NeuralI18nProvider
+                .getText("backpropagationlearnerfactory.dialog.title"),
+                NeuralI18nProvider.getText("backpropagationlearnerfactory.dialog.label"));
+        Optional<Double> changeFactor = changeFactorDialog.showAndWait();
+        Dialog<Double> batchSizeDialog = new PositiveDoubleReturnDialog(NeuralI18nProvider
+                .getText("minibatchbackpropagationlearnerfactory.batchsize.title"),
+                NeuralI18nProvider.getText("minibatchbackpropagationlearnerfactory.batchsize.label"));
+        Optional<Double> batchSize = batchSizeDialog.showAndWait();
+        Dialog<Double> threadNumberDialog = new PositiveDoubleReturnDialog(NeuralI18nProvider
+                .getText("minibatchbackpropagationlearnerfactory.threadnumber.title"),
+                NeuralI18nProvider.getText("minibatchbackpropagationlearnerfactory.threadnumber.label"));
+        Optional<Double> threadNumber = threadNumberDialog.showAndWait();
+        if (errorFunction.isPresent() && changeFactor.isPresent() && batchSize.isPresent()
+                && threadNumber.isPresent()) {
+            try {
+                return MiniBatchBackpropagationLearner.getMiniBatchBackpropagationLearner(errorFunction.get(),
+                        changeFactor.get().floatValue(), batchSize.get().intValue(),
+                        threadNumber.get().intValue());
+            } catch (NeuralNetworkGenerationException e) {
+                UiUtils.showTestMessage(e.getLocalizedMessage());
+                return null;
+            }
+        }
+        else {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return NeuralI18nProvider.getText("minibatchbackpropagationlearnerfactory.name");
+    }
+}
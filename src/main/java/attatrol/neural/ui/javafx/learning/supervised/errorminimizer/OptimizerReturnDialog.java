@@ -0,0 +1,70 @@
+package attatrol.neural.ui.javafx.learning.supervised.errorminimizer;
+
+import attatrol.neural.ui.javafx.i18n.NeuralI18nProvider;
+import attatrol.neural.ui.javafx.misc.GenericValueReturnDialog;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Label;
+import javafx.scene.layout.GridPane;
+
+/**
+ * Dialog which returns the rule of weight change used by backpropagation learner.
+ * @author attatrol
+ *
+ */
+public class OptimizerReturnDialog extends GenericValueReturnDialog<OptimizerReturnDialog.Optimizer> {
+
+    /**
+     * Rules of weight change
+     */
+    public enum Optimizer {
+        PLAIN("optimizerreturndialog.plain"),
+        MOMENTUM("optimizerreturndialog.momentum"),
+        NESTEROV("optimizerreturndialog.nesterov"),
+        ADAM("optimizerreturndialog.adam");
+
+        private final String key;
+
+        Optimizer(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public String toString() {
+            return NeuralI18nProvider.getText(key);
+        }
+    }
+
+    private ComboBox<Optimizer> comboBox = new ComboBox<>();
+    {
+        comboBox.getItems().addAll(Optimizer.values());
+        comboBox.getSelectionModel().select(Optimizer.PLAIN);
+    }
+
+    public OptimizerReturnDialog() {
+        GridPane grid = new GridPane();
+        grid.setAlignment(Pos.CENTER);
+        grid.setHgap(10);
+        grid.setVgap(10);
+        grid.setPadding(new Insets(25, 25, 25, 25));
+        grid.add(new Label(NeuralI18nProvider.getText("optimizerreturndialog.chooseoptimizerlabel")), 0, 0);
+        grid.add(comboBox, 0, 1);
+        this.getDialogPane().setContent(grid);
+        this.setTitle(NeuralI18nProvider.getText("optimizerreturndialog.title"));
+    }
+
+    @Override
+    protected Optimizer createResult() {
+        return comboBox.getValue();
+    }
+
+    @Override
+    protected void validate() throws Exception {
+        if (comboBox.getValue() == null) {
+            throw new IllegalStateException(NeuralI18nProvider
+                    .getText("optimizerreturndialog.nulloptimizererror"));
+        }
+    }
+
+}
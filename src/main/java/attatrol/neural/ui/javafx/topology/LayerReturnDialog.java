@@ -1,9 +1,12 @@
 package attatrol.neural.ui.javafx.topology;
 
+import attatrol.neural.activationfunction.ActivationFunction;
 import attatrol.neural.topology.Layer;
 import attatrol.neural.topology.LayerInterconnectionDistribution;
 import attatrol.neural.topology.LayerType;
+import attatrol.neural.ui.javafx.analysis.activation.ActivationFunctionReturnDialog;
 import attatrol.neural.ui.javafx.i18n.NeuralI18nProvider;
+import attatrol.neural.ui.javafx.misc.FactoryComboBox;
 import attatrol.neural.ui.javafx.misc.GenericValueReturnDialog;
 import attatrol.neural.ui.javafx.misc.PositiveNumericTextField;
 import javafx.event.ActionEvent;
@@ -42,6 +45,14 @@ public class LayerReturnDialog extends GenericValueReturnDialog<Layer> {
         lidInfo.setMaxHeight(100);
     }
 
+    /**
+     * Activation function of the layer, nothing chosen stands for the function of the analyzer
+     */
+    private FactoryComboBox<ActivationFunction> activationComboBox = new FactoryComboBox<>();
+    {
+        ActivationFunctionReturnDialog.fillFactories(activationComboBox);
+    }
+
     private final LayerType layerType;
 
     public LayerReturnDialog(boolean firstLayer, int firstLayerSize) {
@@ -66,6 +77,10 @@ public class LayerReturnDialog extends GenericValueReturnDialog<Layer> {
         grid.add(new Label(NeuralI18nProvider.getText("layerreturndialog.distributionlabel")), 0, 4);
         grid.add(lidComboBox, 0, 5);
         grid.add(lidInfo, 0, 6);
+        if (layerType != LayerType.INPUT_VECTOR) {
+            grid.add(new Label(NeuralI18nProvider.getText("layerreturndialog.activationlabel")), 0, 7);
+            grid.add(activationComboBox, 0, 8);
+        }
         this.getDialogPane().setContent(grid);
         this.setTitle(NeuralI18nProvider.getText("layerreturndialog.title"));
     }
@@ -74,7 +89,7 @@ public class LayerReturnDialog extends GenericValueReturnDialog<Layer> {
     protected Layer createResult() {
         return new Layer(Integer.parseInt(layerSizeTextField.getText()),
                 Integer.parseInt(numberOfChildNeuronsTextField.getText()),
-                lidComboBox.getValue(), layerType);
+                lidComboBox.getValue(), layerType, activationComboBox.getResult());
     }
 
     @Override
@@ -3,10 +3,12 @@ package attatrol.neural.ui.javafx.topology;
 import java.util.Optional;
 
 import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.activationfunction.ActivationFunction;
 import attatrol.neural.topology.Layer;
 import attatrol.neural.topology.LayerInterconnectionDistribution;
 import attatrol.neural.topology.LayerType;
 import attatrol.neural.topology.LayeredTopologyDescription;
+import attatrol.neural.ui.javafx.analysis.activation.ActivationFunctionReturnDialog;
 import attatrol.neural.ui.javafx.i18n.NeuralI18nProvider;
 import attatrol.neural.ui.javafx.misc.GenericValueReturnDialog;
 import attatrol.neural.ui.javafx.misc.UiUtils;
@@ -27,7 +29,6 @@ public class LayeredTopologyDescriptionReturnDialog extends GenericValueReturnDi
 
     private final int inputVectorSize;
 
-    @SuppressWarnings("unused")
     private final int resultVectorSize;
 
     private Layer finalLayer;
@@ -45,6 +46,10 @@ public class LayeredTopologyDescriptionReturnDialog extends GenericValueReturnDi
 
     private Button removeLayerButton = new RemoveLayerButton();
 
+    private Button surfaceActivationButton = new SurfaceActivationButton();
+
+    private Label surfaceLayerLabel = new Label();
+
     public LayeredTopologyDescriptionReturnDialog(int inputVectorSize, int resultVectorSize) {
         super();
         this.inputVectorSize = inputVectorSize;
@@ -71,11 +76,12 @@ public class LayeredTopologyDescriptionReturnDialog extends GenericValueReturnDi
         grid.setPadding(new Insets(25, 25, 25, 25));
         grid.add(addLayerButton, 0, 0);
         grid.add(removeLayerButton, 0, 1);
+        grid.add(surfaceActivationButton, 0, 2);
         grid.add(listView, 1, 0, 1, 7);
         GridPane.setHgrow(listView, Priority.ALWAYS);
         GridPane.setVgrow(listView, Priority.ALWAYS);
         listView.setMinWidth(1000);
-        Label surfaceLayerLabel = new Label(finalLayer.toString());
+        surfaceLayerLabel.setText(finalLayer.toString());
         surfaceLayerLabel.setStyle("-fx-border-color:grey; -fx-background-color: white;");
         grid.add(surfaceLayerLabel, 1, 8);
         surfaceLayerLabel.setMinWidth(1000);
@@ -124,6 +130,25 @@ public class LayeredTopologyDescriptionReturnDialog extends GenericValueReturnDi
         }
     }
 
+    private class SurfaceActivationButton extends Button {
+
+        public SurfaceActivationButton() {
+            setText(NeuralI18nProvider.getText("ltdreturndialog.surfaceactivationbuttonname"));
+            setOnAction(new EventHandler<ActionEvent>() {
+                @Override
+                public void handle(ActionEvent event) {
+                    Dialog<ActivationFunction> dialog = new ActivationFunctionReturnDialog();
+                    Optional<ActivationFunction> function = dialog.showAndWait();
+                    if (function.isPresent()) {
+                        finalLayer = new Layer(resultVectorSize, 1, LayerInterconnectionDistribution.LOCALIZED,
+                                LayerType.SURFACE, function.get());
+                        surfaceLayerLabel.setText(finalLayer.toString());
+                    }
+                }
+            });
+        }
+    }
+
     private class RemoveLayerButton extends Button {
 
         public RemoveLayerButton() {
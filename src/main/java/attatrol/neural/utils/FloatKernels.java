@@ -0,0 +1,35 @@
+package attatrol.neural.utils;
+
+/**
+ * Float32 kernels used by {@link MatrixUtils}.
+ * This is the scalar version of the class, the jar also holds a version for Java 17 and later
+ * (META-INF/versions/17) which uses SIMD instructions of the Vector API when
+ * module jdk.incubator.vector is added to the JVM.
+ * @author attatrol
+ *
+ */
+final class FloatKernels {
+
+    private FloatKernels() { }
+
+    /**
+     * @return true if kernels use the Vector API
+     */
+    static boolean isVectorized() {
+        return false;
+    }
+
+    /**
+     * @see ScalarFloatKernels#dot(float[], int, float[], int, int)
+     */
+    static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return ScalarFloatKernels.dot(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * @see ScalarFloatKernels#axpy(float, float[], int, float[], int, int)
+     */
+    static void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length) {
+        ScalarFloatKernels.axpy(alpha, x, xOffset, y, yOffset, length);
+    }
+}
@@ -0,0 +1,169 @@
+package attatrol.neural.utils;
+
+/**
+ * Kernels of linear algebra used within dense segments of an execution plan.
+ * Matrices are stored in flat row-major arrays.
+ * <p>
+ * Float32 kernels do not mix types, so a SIMD register holds twice as many coordinates.
+ * They are built upon {@link FloatKernels}, which is vectorized on Java 17 and later.
+ * @author attatrol
+ *
+ */
+public final class MatrixUtils {
+
+    /**
+     * Number of matrix rows processed together, each loaded vector coordinate
+     * is reused this number of times.
+     */
+    private static final int ROW_BLOCK = 4;
+
+    private MatrixUtils() { }
+
+    /**
+     * Adds product of a matrix and a vector to the product array:
+     * product[productOffset + r] += SUM(matrix[matrixOffset + r * columns + c] * vector[vectorOffset + c]).
+     * @param matrix flat row-major matrix
+     * @param matrixOffset index of the first matrix element
+     * @param rows number of rows
+     * @param columns number of columns
+     * @param vector vector
+     * @param vectorOffset index of the first vector coordinate
+     * @param product accumulator of the product
+     * @param productOffset index of the first product coordinate
+     */
+    public static void multiplyAdd(float[] matrix, int matrixOffset, int rows, int columns,
+            double[] vector, int vectorOffset, double[] product, int productOffset) {
+        int r = 0;
+        for (; r + ROW_BLOCK <= rows; r += ROW_BLOCK) {
+            final int m0 = matrixOffset + r * columns;
+            final int m1 = m0 + columns;
+            final int m2 = m1 + columns;
+            final int m3 = m2 + columns;
+            double s0 = 0.;
+            double s1 = 0.;
+            double s2 = 0.;
+            double s3 = 0.;
+            for (int c = 0; c < columns; c++) {
+                final double x = vector[vectorOffset + c];
+                s0 += matrix[m0 + c] * x;
+                s1 += matrix[m1 + c] * x;
+                s2 += matrix[m2 + c] * x;
+                s3 += matrix[m3 + c] * x;
+            }
+            product[productOffset + r] += s0;
+            product[productOffset + r + 1] += s1;
+            product[productOffset + r + 2] += s2;
+            product[productOffset + r + 3] += s3;
+        }
+        for (; r < rows; r++) {
+            final int m = matrixOffset + r * columns;
+            double s = 0.;
+            for (int c = 0; c < columns; c++) {
+                s += matrix[m + c] * vector[vectorOffset + c];
+            }
+            product[productOffset + r] += s;
+        }
+    }
+
+    /**
+     * Adds product of a matrix and a batch of vectors to the batch of products.
+     * Batches are laid out by coordinates: coordinate i of the vector b has index i * batchSize + b,
+     * so every loaded matrix element is reused for the whole batch.
+     * @param matrix flat row-major matrix
+     * @param matrixOffset index of the first matrix element
+     * @param rows number of rows
+     * @param columns number of columns
+     * @param vectors batch of vectors
+     * @param vectorOffset first coordinate of vectors to be multiplied
+     * @param batchSize number of vectors in the batch
+     * @param products batch of product accumulators
+     * @param productOffset first coordinate of products
+     */
+    public static void multiplyAddBatch(float[] matrix, int matrixOffset, int rows, int columns,
+            double[] vectors, int vectorOffset, int batchSize, double[] products, int productOffset) {
+        for (int r = 0; r < rows; r++) {
+            final int m = matrixOffset + r * columns;
+            final int p = (productOffset + r) * batchSize;
+            for (int c = 0; c < columns; c++) {
+                final double w = matrix[m + c];
+                final int v = (vectorOffset + c) * batchSize;
+                for (int b = 0; b < batchSize; b++) {
+                    products[p + b] += w * vectors[v + b];
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if float32 kernels use SIMD instructions of the Vector API
+     */
+    public static boolean isVectorized() {
+        return FloatKernels.isVectorized();
+    }
+
+    /**
+     * Float32 version of {@link #multiplyAdd(float[], int, int, int, double[], int, double[], int)}.
+     * @param matrix flat row-major matrix
+     * @param matrixOffset index of the first matrix element
+     * @param rows number of rows
+     * @param columns number of columns
+     * @param vector vector
+     * @param vectorOffset index of the first vector coordinate
+     * @param product accumulator of the product
+     * @param productOffset index of the first product coordinate
+     */
+    public static void multiplyAdd(float[] matrix, int matrixOffset, int rows, int columns,
+            float[] vector, int vectorOffset, float[] product, int productOffset) {
+        for (int r = 0; r < rows; r++) {
+            product[productOffset + r] += FloatKernels.dot(matrix, matrixOffset + r * columns,
+                    vector, vectorOffset, columns);
+        }
+    }
+
+    /**
+     * Float32 version of {@link #multiplyAddBatch(float[], int, int, int, double[], int, int, double[], int)}.
+     * @param matrix flat row-major matrix
+     * @param matrixOffset index of the first matrix element
+     * @param rows number of rows
+     * @param columns number of columns
+     * @param vectors batch of vectors
+     * @param vectorOffset first coordinate of vectors to be multiplied
+     * @param batchSize number of vectors in the batch
+     * @param products batch of product accumulators
+     * @param productOffset first coordinate of products
+     */
+    public static void multiplyAddBatch(float[] matrix, int matrixOffset, int rows, int columns,
+            float[] vectors, int vectorOffset, int batchSize, float[] products, int productOffset) {
+        for (int r = 0; r < rows; r++) {
+            final int m = matrixOffset + r * columns;
+            final int p = (productOffset + r) * batchSize;
+            for (int c = 0; c < columns; c++) {
+                FloatKernels.axpy(matrix[m + c], vectors, (vectorOffset + c) * batchSize, products, p, batchSize);
+            }
+        }
+    }
+
+    /**
+     * Adds product of a transposed matrix and a vector to the product array:
+     * product[productOffset + c] += SUM(matrix[matrixOffset + r * columns + c] * vector[vectorOffset + r]).
+     * Rows of the matrix are added to the product one by one, so the matrix is read in its order.
+     * @param matrix flat row-major matrix
+     * @param matrixOffset index of the first matrix element
+     * @param rows number of rows
+     * @param columns number of columns
+     * @param vector vector, it has a coordinate per row
+     * @param vectorOffset index of the first vector coordinate
+     * @param product accumulator of the product, it has a coordinate per column
+     * @param productOffset index of the first product coordinate
+     */
+    public static void multiplyTransposedAdd(float[] matrix, int matrixOffset, int rows, int columns,
+            float[] vector, int vectorOffset, float[] product, int productOffset) {
+        for (int r = 0; r < rows; r++) {
+            final float x = vector[vectorOffset + r];
+            if (x != 0f) {
+                FloatKernels.axpy(x, matrix, matrixOffset + r * columns, product, productOffset, columns);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+package attatrol.neural.utils;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Utilities for parallel processing of rows of an execution plan on the common fork/join pool.
+ * Amount of work of a row range is estimated by the number of weights within it.
+ * @author attatrol
+ *
+ */
+public final class ParallelUtils {
+
+    /**
+     * Default minimal number of weights processed by a single fork/join task.
+     */
+    public static final int DEFAULT_PARALLELISM_THRESHOLD = 1 << 15;
+
+    private ParallelUtils() { }
+
+    /**
+     * Processor of independent rows.
+     */
+    @FunctionalInterface
+    public interface RowRangeProcessor {
+
+        /**
+         * Processes rows.
+         * @param rowFrom first row to process
+         * @param rowTo row after the last one to process
+         */
+        void process(int rowFrom, int rowTo);
+    }
+
+    /**
+     * Checks if a range of rows is large enough to be split between threads.
+     * @param rowOffset index of the first weight of each row
+     * @param rowFrom first row of the range
+     * @param rowTo row after the last one of the range
+     * @param threshold minimal number of weights processed by a single task
+     * @return true if parallel processing of the range is worth it
+     */
+    public static boolean isWorthParallel(int[] rowOffset, int rowFrom, int rowTo, int threshold) {
+        return rowTo - rowFrom > 1 && rowOffset[rowTo] - rowOffset[rowFrom] > threshold
+                && ForkJoinPool.getCommonPoolParallelism() > 1;
+    }
+
+    /**
+     * Processes a range of independent rows on the common fork/join pool.
+     * Range is split in halves until a part holds no more than threshold weights.
+     * @param rowOffset index of the first weight of each row
+     * @param rowFrom first row of the range
+     * @param rowTo row after the last one of the range
+     * @param threshold minimal number of weights processed by a single task
+     * @param processor processor of rows
+     */
+    public static void processRows(int[] rowOffset, int rowFrom, int rowTo, int threshold,
+            RowRangeProcessor processor) {
+        ForkJoinPool.commonPool().invoke(new RowRangeTask(rowOffset, rowFrom, rowTo, threshold, processor));
+    }
+
+    /**
+     * Recursive task which splits range of rows.
+     */
+    private static final class RowRangeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 6394468016946153474L;
+
+        private final int[] rowOffset;
+
+        private final int rowFrom;
+
+        private final int rowTo;
+
+        private final int threshold;
+
+        private final RowRangeProcessor processor;
+
+        RowRangeTask(int[] rowOffset, int rowFrom, int rowTo, int threshold, RowRangeProcessor processor) {
+            this.rowOffset = rowOffset;
+            this.rowFrom = rowFrom;
+            this.rowTo = rowTo;
+            this.threshold = threshold;
+            this.processor = processor;
+        }
+
+        @Override
+        protected void compute() {
+            if (rowTo - rowFrom > 1 && rowOffset[rowTo] - rowOffset[rowFrom] > threshold) {
+                final int middle = (rowFrom + rowTo) >>> 1;
+                invokeAll(new RowRangeTask(rowOffset, rowFrom, middle, threshold, processor),
+                        new RowRangeTask(rowOffset, middle, rowTo, threshold, processor));
+            }
+            else {
+                processor.process(rowFrom, rowTo);
+            }
+        }
+    }
+}
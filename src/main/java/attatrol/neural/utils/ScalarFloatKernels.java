@@ -0,0 +1,53 @@
+package attatrol.neural.utils;
+
+/**
+ * Scalar float32 kernels, they run on any JVM.
+ * Loops are unrolled into independent accumulators, so additions do not wait for each other.
+ * @author attatrol
+ *
+ */
+final class ScalarFloatKernels {
+
+    private ScalarFloatKernels() { }
+
+    /**
+     * @param a first vector
+     * @param aOffset index of the first coordinate of the first vector
+     * @param b second vector
+     * @param bOffset index of the first coordinate of the second vector
+     * @param length number of coordinates
+     * @return dot product of vectors
+     */
+    static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float s0 = 0f;
+        float s1 = 0f;
+        float s2 = 0f;
+        float s3 = 0f;
+        int k = 0;
+        for (; k + 4 <= length; k += 4) {
+            s0 += a[aOffset + k] * b[bOffset + k];
+            s1 += a[aOffset + k + 1] * b[bOffset + k + 1];
+            s2 += a[aOffset + k + 2] * b[bOffset + k + 2];
+            s3 += a[aOffset + k + 3] * b[bOffset + k + 3];
+        }
+        for (; k < length; k++) {
+            s0 += a[aOffset + k] * b[bOffset + k];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Adds scaled vector to another one: y[k] += alpha * x[k].
+     * @param alpha scale
+     * @param x added vector
+     * @param xOffset index of the first coordinate of the added vector
+     * @param y accumulator vector
+     * @param yOffset index of the first coordinate of the accumulator
+     * @param length number of coordinates
+     */
+    static void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length) {
+        for (int k = 0; k < length; k++) {
+            y[yOffset + k] += alpha * x[xOffset + k];
+        }
+    }
+}
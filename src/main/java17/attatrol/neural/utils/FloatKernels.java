@@ -0,0 +1,46 @@
+package attatrol.neural.utils;
+
+/**
+ * Float32 kernels used by {@link MatrixUtils}, version for Java 17 and later.
+ * SIMD kernels of {@link VectorFloatKernels} are used if module jdk.incubator.vector
+ * is added to the JVM (--add-modules jdk.incubator.vector), scalar ones otherwise.
+ * @author attatrol
+ *
+ */
+final class FloatKernels {
+
+    /**
+     * Classes of the incubator module are never loaded when it is absent.
+     */
+    private static final boolean IS_VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            && !Boolean.getBoolean("attatrol.neural.scalarKernels");
+
+    private FloatKernels() { }
+
+    /**
+     * @return true if kernels use the Vector API
+     */
+    static boolean isVectorized() {
+        return IS_VECTORIZED;
+    }
+
+    /**
+     * @see ScalarFloatKernels#dot(float[], int, float[], int, int)
+     */
+    static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        return IS_VECTORIZED ? VectorFloatKernels.dot(a, aOffset, b, bOffset, length)
+                : ScalarFloatKernels.dot(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * @see ScalarFloatKernels#axpy(float, float[], int, float[], int, int)
+     */
+    static void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length) {
+        if (IS_VECTORIZED) {
+            VectorFloatKernels.axpy(alpha, x, xOffset, y, yOffset, length);
+        }
+        else {
+            ScalarFloatKernels.axpy(alpha, x, xOffset, y, yOffset, length);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package attatrol.neural.utils;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Float32 kernels on the Vector API, a vector holds as many floats as the widest SIMD register
+ * (8 on AVX2, 16 on AVX-512). Tails shorter than a vector are processed by scalar loops.
+ * @author attatrol
+ *
+ */
+final class VectorFloatKernels {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private VectorFloatKernels() { }
+
+    /**
+     * @see ScalarFloatKernels#dot(float[], int, float[], int, int)
+     */
+    static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        final int bound = SPECIES.loopBound(length);
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int k = 0;
+        for (; k < bound; k += SPECIES.length()) {
+            final FloatVector x = FloatVector.fromArray(SPECIES, a, aOffset + k);
+            final FloatVector y = FloatVector.fromArray(SPECIES, b, bOffset + k);
+            sum = x.fma(y, sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; k < length; k++) {
+            result += a[aOffset + k] * b[bOffset + k];
+        }
+        return result;
+    }
+
+    /**
+     * @see ScalarFloatKernels#axpy(float, float[], int, float[], int, int)
+     */
+    static void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length) {
+        final int bound = SPECIES.loopBound(length);
+        final FloatVector scale = FloatVector.broadcast(SPECIES, alpha);
+        int k = 0;
+        for (; k < bound; k += SPECIES.length()) {
+            final FloatVector v = FloatVector.fromArray(SPECIES, x, xOffset + k);
+            v.fma(scale, FloatVector.fromArray(SPECIES, y, yOffset + k)).intoArray(y, yOffset + k);
+        }
+        for (; k < length; k++) {
+            y[yOffset + k] += alpha * x[xOffset + k];
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package attatrol.imageclassifier.imagehash;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Compares hashes of images of different raster types with averages of {@link BufferedImage#getRGB}.
+ * @author attatrol
+ *
+ */
+public class DefaultImageHashFunctionTest extends TestCase {
+
+    private static final int WIDTH = 7;
+
+    private static final int HEIGHT = 5;
+
+    private static final double TOLERANCE = 1e-12;
+
+    public void testRasterTypes() throws Exception {
+        final int[] types = {BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_INT_RGB,
+            BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_BGR, BufferedImage.TYPE_USHORT_565_RGB,
+            BufferedImage.TYPE_USHORT_555_RGB, BufferedImage.TYPE_BYTE_INDEXED, BufferedImage.TYPE_BYTE_BINARY};
+        final DefaultImageHashFunction hashFunction = new DefaultImageHashFunction(WIDTH, HEIGHT);
+        final Random random = new Random(4);
+        for (int type : types) {
+            final BufferedImage image = createImage(type, random);
+            final double[] expected = average(image);
+            final double[] actual = hashFunction.hash(image);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals("type " + type + ", coordinate " + i, expected[i], actual[i], TOLERANCE);
+            }
+        }
+    }
+
+    /**
+     * Gray levels are taken as they are, without conversion to sRGB.
+     */
+    public void testGray() throws Exception {
+        final BufferedImage image = new BufferedImage(30, 20, BufferedImage.TYPE_BYTE_GRAY);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.getRaster().setSample(x, y, 0, 51);
+            }
+        }
+        for (double value : new DefaultImageHashFunction(WIDTH, HEIGHT).hash(image)) {
+            assertEquals(0.2, value, TOLERANCE);
+        }
+    }
+
+    /**
+     * Large JPEG file read into memory is decoded from DC coefficients as its stream is.
+     */
+    public void testJpegArray() throws Exception {
+        final BufferedImage image = createImage(BufferedImage.TYPE_3BYTE_BGR, new Random(5));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(ImageIO.write(image, "jpeg", out));
+        final byte[] data = Arrays.copyOf(out.toByteArray(), out.size() + 10);
+        final DefaultImageHashFunction hashFunction = new DefaultImageHashFunction(1, 1);
+        final BufferedImage fromArray = hashFunction.readImage(data, out.size());
+        final BufferedImage fromStream = hashFunction.readImage(
+                new MemoryCacheImageInputStream(new ByteArrayInputStream(out.toByteArray())));
+        assertEquals(image.getWidth() / 8, fromArray.getWidth());
+        assertEquals(image.getHeight() / 8, fromArray.getHeight());
+        final double[] expected = hashFunction.hash(fromStream);
+        final double[] actual = hashFunction.hash(fromArray);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("coordinate " + i, expected[i], actual[i], 0.);
+        }
+    }
+
+    private static BufferedImage createImage(int type, Random random) {
+        final BufferedImage image = new BufferedImage(123, 77, type);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt() | 0xff000000);
+            }
+        }
+        return image;
+    }
+
+    private static double[] average(BufferedImage image) {
+        final double[] result = new double[WIDTH * HEIGHT * 4];
+        final int[] count = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                final int cellIndex = x * WIDTH / image.getWidth() + WIDTH * (y * HEIGHT / image.getHeight());
+                final int pixel = image.getRGB(x, y);
+                final int blue = pixel & 0xff;
+                final int green = (pixel >>> 8) & 0xff;
+                final int red = (pixel >>> 16) & 0xff;
+                result[4 * cellIndex] += blue;
+                result[4 * cellIndex + 1] += green;
+                result[4 * cellIndex + 2] += red;
+                result[4 * cellIndex + 3] += (blue + green + red) / 3.;
+                count[cellIndex]++;
+            }
+        }
+        for (int i = 0; i < result.length; i++) {
+            result[i] /= count[i / 4] * 255.;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,163 @@
+package attatrol.imageclassifier.imagehash;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that {@link FeatureCache} returns vectors of the hash function across reopening,
+ * hashes only new or changed images and reclaims slots of replaced vectors.
+ * @author attatrol
+ *
+ */
+public class FeatureCacheTest extends TestCase {
+
+    private static final int IMAGE_NUMBER = 3;
+
+    /**
+     * Vectors are cached as float32.
+     */
+    private static final double TOLERANCE = 1e-6;
+
+    public void testReopen() throws Exception {
+        final File directory = Files.createTempDirectory("features").toFile();
+        final File[] images = new File[IMAGE_NUMBER];
+        final Random random = new Random(1);
+        for (int i = 0; i < IMAGE_NUMBER; i++) {
+            images[i] = new File(directory, "image" + i + ".png");
+            writeImage(images[i], random);
+        }
+        final ImageHashFunction hashFunction = new DefaultImageHashFunction(4, 3);
+
+        try (FeatureCache cache = FeatureCache.open(directory, hashFunction)) {
+            for (File image : images) {
+                assertClose(hashFunction.hash(image), cache.getVector(image));
+            }
+            assertEquals(IMAGE_NUMBER, cache.getMissNumber());
+            assertEquals(IMAGE_NUMBER, cache.getSize());
+        }
+
+        writeImage(images[0], random);
+        assertTrue(images[0].setLastModified(images[0].lastModified() + 2000));
+        try (FeatureCache cache = FeatureCache.open(directory, hashFunction)) {
+            for (File image : images) {
+                assertClose(hashFunction.hash(image), cache.getVector(image));
+            }
+            assertEquals(1, cache.getMissNumber());
+            assertEquals(IMAGE_NUMBER - 1, cache.getHitNumber());
+        }
+
+        try (FeatureCache cache = FeatureCache.open(directory, new DefaultImageHashFunction(3, 4))) {
+            assertNull(cache.get(images[1]));
+            assertEquals(0, cache.getSize());
+        }
+    }
+
+    /**
+     * Vector is bound to the file state taken before the image was read,
+     * an image changed while it was hashed is hashed again.
+     */
+    public void testFileState() throws Exception {
+        final File directory = Files.createTempDirectory("features").toFile();
+        final File image = new File(directory, "image.png");
+        final Random random = new Random(3);
+        writeImage(image, random);
+        final ImageHashFunction hashFunction = new DefaultImageHashFunction(4, 3);
+        final long length = image.length();
+        final long modified = image.lastModified();
+        final double[] vector = hashFunction.hash(image);
+        writeImage(image, random);
+        assertTrue(image.setLastModified(modified + 2000));
+        try (FeatureCache cache = FeatureCache.open(directory, hashFunction)) {
+            cache.put(image, length, modified, vector);
+            assertClose(vector, cache.get(image, length, modified));
+            assertNull(cache.get(image));
+            assertClose(hashFunction.hash(image), cache.getVector(image));
+        }
+    }
+
+    /**
+     * Vectors of images stored again and again leave dead slots, they are compacted on flush.
+     */
+    public void testCompaction() throws Exception {
+        final File directory = Files.createTempDirectory("features").toFile();
+        final File[] images = new File[IMAGE_NUMBER];
+        final Random random = new Random(2);
+        for (int i = 0; i < IMAGE_NUMBER; i++) {
+            images[i] = new File(directory, "image" + i + ".png");
+            writeImage(images[i], random);
+        }
+        final ImageHashFunction hashFunction = new DefaultImageHashFunction(4, 3);
+        final double[][] vectors = new double[IMAGE_NUMBER][hashFunction.getResultSize()];
+        long maxLength = 0;
+        try (FeatureCache cache = FeatureCache.open(directory, hashFunction)) {
+            for (int round = 0; round < 20; round++) {
+                for (int put = 0; put < 1000; put++) {
+                    final int i = put % IMAGE_NUMBER;
+                    for (int k = 0; k < vectors[i].length; k++) {
+                        vectors[i][k] = random.nextFloat();
+                    }
+                    cache.put(images[i], vectors[i]);
+                }
+                cache.flush();
+                assertEquals(IMAGE_NUMBER, cache.getSlotNumber());
+                final long length = getDataLength(directory);
+                maxLength = round == 0 ? length : maxLength;
+                assertTrue("data file grows: " + length + " > " + maxLength, length <= maxLength);
+                for (int i = 0; i < IMAGE_NUMBER; i++) {
+                    assertClose(vectors[i], cache.get(images[i]));
+                }
+            }
+        }
+        // data file of an older generation left undeleted
+        final String dataName = getDataFiles(directory)[0].getName();
+        final File staleFile = new File(directory, dataName.replaceAll("-\\d+\\.dat$", "-0.dat"));
+        assertTrue(staleFile.createNewFile());
+        try (FeatureCache cache = FeatureCache.open(directory, hashFunction)) {
+            assertFalse(staleFile.exists());
+            assertEquals(1, getDataFiles(directory).length);
+            for (int i = 0; i < IMAGE_NUMBER; i++) {
+                assertClose(vectors[i], cache.get(images[i]));
+            }
+        }
+    }
+
+    private static File[] getDataFiles(File directory) {
+        return directory.listFiles((dir, name) -> name.endsWith(".dat"));
+    }
+
+    /**
+     * @return total length of data files in the directory
+     */
+    private static long getDataLength(File directory) {
+        long length = 0;
+        for (File file : directory.listFiles()) {
+            if (file.getName().endsWith(".dat")) {
+                length += file.length();
+            }
+        }
+        return length;
+    }
+
+    private static void writeImage(File file, Random random) throws Exception {
+        final BufferedImage image = new BufferedImage(17, 11, BufferedImage.TYPE_3BYTE_BGR);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+        assertTrue(ImageIO.write(image, "png", file));
+    }
+
+    private static void assertClose(double[] expected, double[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("coordinate " + i, expected[i], actual[i], TOLERANCE);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package attatrol.imageclassifier.imagehash;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import attatrol.imageclassifier.ImageClassifierException;
+import junit.framework.TestCase;
+
+/**
+ * Checks that {@link IngestionPipeline} keeps the order of files and reports broken files and failures.
+ * @author attatrol
+ *
+ */
+public class IngestionPipelineTest extends TestCase {
+
+    private static final int IMAGE_NUMBER = 12;
+
+    public void testOrder() throws Exception {
+        final File[] images = writeImages();
+        final ImageHashFunction hashFunction = new DefaultImageHashFunction(5, 5);
+        // queue shorter than the number of images makes stages wait for each other
+        final double[][] vectors = new IngestionPipeline(hashFunction, 2, 3, 2, 2).hash(images, null);
+        assertEquals(IMAGE_NUMBER, vectors.length);
+        for (int i = 0; i < IMAGE_NUMBER; i++) {
+            final double[] expected = hashFunction.hash(images[i]);
+            for (int k = 0; k < expected.length; k++) {
+                assertEquals("image " + i, expected[k], vectors[i][k], 0.);
+            }
+        }
+    }
+
+    public void testBrokenFile() throws Exception {
+        final File[] images = writeImages();
+        Files.write(images[IMAGE_NUMBER / 2].toPath(), new byte[] {1, 2, 3});
+        try {
+            new IngestionPipeline(new DefaultImageHashFunction(5, 5), 1, 2, 1, 1).hash(images, null);
+            fail("Broken file is hashed");
+        }
+        catch (ImageClassifierException ex) {
+            assertTrue(ex.getMessage().contains(images[IMAGE_NUMBER / 2].toString()));
+        }
+    }
+
+    /**
+     * Unchecked exception of a decoder is reported and does not stop the pipeline from ending.
+     */
+    public void testUncheckedException() throws Exception {
+        final File[] images = writeImages();
+        final ImageHashFunction hashFunction = new DefaultImageHashFunction(5, 5) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public BufferedImage readImage(byte[] data, int length) {
+                throw new IllegalStateException("Decoder failure");
+            }
+        };
+        final IngestionPipeline pipeline = new IngestionPipeline(hashFunction, 2, 2, 1, 1);
+        for (int run = 0; run < 2; run++) {
+            try {
+                pipeline.hash(images, null);
+                fail("Image is hashed despite failure of decoder");
+            }
+            catch (ImageClassifierException ex) {
+                assertTrue(ex.getMessage().contains("Decoder failure"));
+            }
+        }
+    }
+
+    private static File[] writeImages() throws Exception {
+        final File directory = Files.createTempDirectory("ingestion").toFile();
+        final Random random = new Random(2);
+        final File[] images = new File[IMAGE_NUMBER];
+        for (int i = 0; i < IMAGE_NUMBER; i++) {
+            final BufferedImage image = new BufferedImage(10 + i, 9, BufferedImage.TYPE_3BYTE_BGR);
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    image.setRGB(x, y, random.nextInt(0x1000000));
+                }
+            }
+            images[i] = new File(directory, "image" + i + ".png");
+            assertTrue(ImageIO.write(image, "png", images[i]));
+        }
+        return images;
+    }
+}
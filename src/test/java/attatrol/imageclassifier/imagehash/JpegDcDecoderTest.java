@@ -0,0 +1,118 @@
+package attatrol.imageclassifier.imagehash;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Compares thumbnails decoded from DC coefficients with block averages of images decoded by ImageIO.
+ * @author attatrol
+ *
+ */
+public class JpegDcDecoderTest extends TestCase {
+
+    private static final int WIDTH = 123;
+
+    private static final int HEIGHT = 77;
+
+    /**
+     * Tolerance of averages in levels, decoders round differently
+     */
+    private static final double TOLERANCE = 2;
+
+    public void testGray() throws Exception {
+        checkBlockAverages(BufferedImage.TYPE_BYTE_GRAY, 1);
+    }
+
+    /**
+     * Chroma blocks of 4:2:0 images cover 2x2 blocks of luma, so colors are compared in such squares.
+     */
+    public void testColor() throws Exception {
+        checkBlockAverages(BufferedImage.TYPE_3BYTE_BGR, 2);
+    }
+
+    public void testProgressive() throws Exception {
+        final byte[] data = write(createImage(BufferedImage.TYPE_3BYTE_BGR), true);
+        assertNull(JpegDcDecoder.decode(data, data.length, 1, 1));
+    }
+
+    public void testSmall() throws Exception {
+        final byte[] data = write(createImage(BufferedImage.TYPE_3BYTE_BGR), false);
+        assertNull(JpegDcDecoder.decode(data, data.length, WIDTH / 8 + 1, 1));
+        assertNotNull(JpegDcDecoder.decode(data, data.length, WIDTH / 8, HEIGHT / 8));
+    }
+
+    /**
+     * @param type type of the image
+     * @param squareSize side of compared squares in blocks
+     */
+    private static void checkBlockAverages(int type, int squareSize) throws Exception {
+        final byte[] data = write(createImage(type), false);
+        final BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(data));
+        final BufferedImage thumbnail = JpegDcDecoder.decode(data, data.length, 1, 1);
+        assertEquals(WIDTH / 8, thumbnail.getWidth());
+        assertEquals(HEIGHT / 8, thumbnail.getHeight());
+        final int bands = decoded.getRaster().getNumBands();
+        final int side = 8 * squareSize;
+        for (int y = 0; y + squareSize <= thumbnail.getHeight(); y += squareSize) {
+            for (int x = 0; x + squareSize <= thumbnail.getWidth(); x += squareSize) {
+                for (int b = 0; b < bands; b++) {
+                    double expected = 0;
+                    for (int dy = 0; dy < side; dy++) {
+                        for (int dx = 0; dx < side; dx++) {
+                            expected += decoded.getRaster().getSample(8 * x + dx, 8 * y + dy, b);
+                        }
+                    }
+                    double actual = 0;
+                    for (int dy = 0; dy < squareSize; dy++) {
+                        for (int dx = 0; dx < squareSize; dx++) {
+                            actual += thumbnail.getRaster().getSample(x + dx, y + dy, b);
+                        }
+                    }
+                    assertEquals("block " + x + ", " + y + ", band " + b, expected / (side * side),
+                            actual / (squareSize * squareSize), TOLERANCE);
+                }
+            }
+        }
+    }
+
+    private static BufferedImage createImage(int type) {
+        final BufferedImage image = new BufferedImage(WIDTH, HEIGHT, type);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                final int red = 128 + (int) (100 * Math.sin(x / 15.));
+                final int green = 128 + (int) (100 * Math.cos(y / 11.));
+                final int blue = (x + y) * 255 / (WIDTH + HEIGHT);
+                image.setRGB(x, y, red << 16 | green << 8 | blue);
+            }
+        }
+        return image;
+    }
+
+    private static byte[] write(BufferedImage image, boolean isProgressive) throws Exception {
+        final ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        final ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(0.9f);
+        if (isProgressive) {
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream stream = new MemoryCacheImageOutputStream(out)) {
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        }
+        finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,109 @@
+package attatrol.neural.activationfunction;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks approximated sigmoid functions against {@link SigmoidFunction} within their maximal error
+ * and derivatives of piecewise linear functions against finite differences.
+ * @author attatrol
+ *
+ */
+public class ActivationFunctionTest extends TestCase {
+
+    private static final float[] FLATNESS_RATIOS = {0.25f, 1.f, 3.f};
+
+    private static final double[] MAX_ERRORS = {0.1, 1e-2, 1e-4, 1e-6, 1e-9};
+
+    private static final double RANGE = 60.;
+
+    /**
+     * Step of the sweep, it is not commensurable with the table step or ln2.
+     */
+    private static final double STEP = 1.3e-3;
+
+    private static final double DIFFERENCE_STEP = 1e-6;
+
+    private static final double DERIVATIVE_TOLERANCE = 1e-8;
+
+    public void testLookupSigmoid() throws Exception {
+        for (float a : FLATNESS_RATIOS) {
+            for (double maxError : MAX_ERRORS) {
+                final LookupSigmoidFunction function = new LookupSigmoidFunction(a, maxError);
+                function.checkValidity();
+                checkApproximation(function, new SigmoidFunction(a), maxError);
+            }
+        }
+    }
+
+    public void testPolynomialSigmoid() throws Exception {
+        for (float a : FLATNESS_RATIOS) {
+            for (double maxError : MAX_ERRORS) {
+                final PolynomialSigmoidFunction function = new PolynomialSigmoidFunction(a, maxError);
+                function.checkValidity();
+                checkApproximation(function, new SigmoidFunction(a), maxError);
+            }
+            final PolynomialSigmoidFunction function =
+                    new PolynomialSigmoidFunction(a, PolynomialSigmoidFunction.MIN_MAX_ERROR);
+            checkApproximation(function, new SigmoidFunction(a), PolynomialSigmoidFunction.MIN_MAX_ERROR);
+        }
+    }
+
+    public void testPiecewiseLinearDerivatives() throws Exception {
+        checkDerivative(new ReluFunction(), 0.);
+        checkDerivative(new LeakyReluFunction(), 0.);
+        checkDerivative(new LeakyReluFunction(0.3f), 0.);
+        for (float a : FLATNESS_RATIOS) {
+            checkDerivative(new HardSigmoidFunction(a), -2. / a, 2. / a);
+        }
+    }
+
+    /**
+     * Sweeps the range, compares values of both single and array methods with the exact function.
+     */
+    private static void checkApproximation(ActivationFunction function, SigmoidFunction exact, double maxError) {
+        final int number = (int) (2 * RANGE / STEP) + 1;
+        final double[] in = new double[number];
+        for (int i = 0; i < number; i++) {
+            in[i] = -RANGE + i * STEP;
+        }
+        final double[] out = new double[number];
+        function.apply(in, out, 0, number);
+        double worst = 0.;
+        for (int i = 0; i < number; i++) {
+            final double value = function.getValue(in[i]);
+            assertEquals(value, out[i], 0.);
+            worst = Math.max(worst, Math.abs(value - exact.getValue(in[i])));
+        }
+        assertTrue(function + ": error " + worst + " exceeds " + maxError, worst <= maxError);
+    }
+
+    /**
+     * Compares derivatives with central differences away from the kinks.
+     */
+    private static void checkDerivative(ActivationFunction function, double... kinks) {
+        final int number = (int) (2 * RANGE / STEP) + 1;
+        final double[] in = new double[number];
+        final double[] values = new double[number];
+        final double[] derivatives = new double[number];
+        for (int i = 0; i < number; i++) {
+            in[i] = (-RANGE + i * STEP) / 10.;
+        }
+        function.apply(in, values, 0, number);
+        function.applyDerivative(in, values, derivatives, 0, number);
+        for (int i = 0; i < number; i++) {
+            final double x = in[i];
+            boolean isNearKink = false;
+            for (double kink : kinks) {
+                isNearKink |= Math.abs(x - kink) <= 2 * DIFFERENCE_STEP;
+            }
+            if (isNearKink) {
+                continue;
+            }
+            final double difference = (function.getValue(x + DIFFERENCE_STEP)
+                    - function.getValue(x - DIFFERENCE_STEP)) / (2 * DIFFERENCE_STEP);
+            assertEquals(function + " at " + x, difference, function.getDerivative(x, values[i]),
+                    DERIVATIVE_TOLERANCE);
+            assertEquals(function + " at " + x, difference, derivatives[i], DERIVATIVE_TOLERANCE);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package attatrol.neural.analysis;
+
+import java.util.Random;
+
+import attatrol.neural.activationfunction.SigmoidFunction;
+import attatrol.neural.errorfunction.QuadraticError;
+import attatrol.neural.learning.supervised.MiniBatchBackpropagationLearner;
+import attatrol.neural.network.NeuralNetwork;
+import attatrol.neural.network.NeuralNetworkFactory;
+import attatrol.neural.network.NeuralNetworkSettings;
+import attatrol.neural.network.TopologySetting;
+import junit.framework.TestCase;
+
+/**
+ * Compares firing frequencies of {@link BinaryStochasticEngine} with those of the stochastic analyzer.
+ * @author attatrol
+ *
+ */
+public class BinaryStochasticEngineTest extends TestCase {
+
+    private static final int INPUT_SIZE = 20;
+
+    private static final int RESULT_SIZE = 5;
+
+    private static final int SAMPLE_NUMBER = 4000;
+
+    /**
+     * Standard deviation of a frequency is at most 0.008, difference of two frequencies 0.011.
+     */
+    private static final double TOLERANCE = 0.06;
+
+    public void testFrequencies() throws Exception {
+        final StochasticActivationFunctionAnalyzer analyzer = new StochasticActivationFunctionAnalyzer(
+                new SigmoidFunction(), 11L);
+        final NeuralNetwork network = NeuralNetworkFactory.getNetwork(new NeuralNetworkSettings(INPUT_SIZE,
+                RESULT_SIZE, 1., TopologySetting.THREE_LAYER_PERCEPTRON, analyzer,
+                new MiniBatchBackpropagationLearner(new QuadraticError())));
+        final BinaryStochasticEngine engine = new BinaryStochasticEngine(network.getNetworkStateCopy(), analyzer);
+        assertEquals(RESULT_SIZE, engine.getResultVectorSize());
+
+        final Random random = new Random(3);
+        final double[] input = new double[INPUT_SIZE];
+        for (int i = 0; i < INPUT_SIZE; i++) {
+            input[i] = random.nextDouble();
+        }
+        final double[] expected = new double[RESULT_SIZE];
+        for (int s = 0; s < SAMPLE_NUMBER; s++) {
+            final double[] result = network.map(input);
+            final double[] sample = engine.map(input);
+            for (int i = 0; i < RESULT_SIZE; i++) {
+                expected[i] += result[i];
+                assertTrue("sample is not binary", sample[i] == 0. || sample[i] == 1.);
+            }
+        }
+        final double[] actual = engine.estimate(input, SAMPLE_NUMBER);
+        for (int i = 0; i < RESULT_SIZE; i++) {
+            assertEquals("frequency " + i, expected[i] / SAMPLE_NUMBER, actual[i], TOLERANCE);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package attatrol.neural.analysis;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import attatrol.neural.activationfunction.SigmoidFunction;
+import attatrol.neural.errorfunction.QuadraticError;
+import attatrol.neural.learning.supervised.ErrorGradient;
+import attatrol.neural.learning.supervised.MiniBatchBackpropagationLearner;
+import attatrol.neural.network.InferenceContext;
+import attatrol.neural.network.NeuralNetwork;
+import attatrol.neural.network.NeuralNetworkFactory;
+import attatrol.neural.network.NeuralNetworkSettings;
+import attatrol.neural.network.NeuralNetworkState;
+import attatrol.neural.network.TopologySetting;
+import attatrol.neural.utils.MatrixUtils;
+import junit.framework.TestCase;
+
+/**
+ * Compares float32 mode of {@link ActivationFunctionAnalyzer} and its kernels with the double path.
+ * Float32 kernels are vectorized if the test runs on Java 17 with module jdk.incubator.vector.
+ * @author attatrol
+ *
+ */
+public class Float32ModeTest extends TestCase {
+
+    private static final int INPUT_SIZE = 100;
+
+    private static final int RESULT_SIZE = 7;
+
+    private static final int SAMPLE_NUMBER = 30;
+
+    private static final double TOLERANCE = 1e-4;
+
+    /**
+     * Odd sizes leave tails after SIMD loops.
+     */
+    public void testKernels() {
+        final Random random = new Random(5);
+        final int rows = 13;
+        final int columns = 37;
+        final float[] matrix = new float[rows * columns];
+        for (int k = 0; k < matrix.length; k++) {
+            matrix[k] = (float) random.nextGaussian();
+        }
+        final double[] vector = new double[columns];
+        final float[] floatVector = new float[columns];
+        for (int c = 0; c < columns; c++) {
+            vector[c] = random.nextDouble();
+            floatVector[c] = (float) vector[c];
+        }
+        final double[] product = new double[rows];
+        final float[] floatProduct = new float[rows];
+        MatrixUtils.multiplyAdd(matrix, 0, rows, columns, vector, 0, product, 0);
+        MatrixUtils.multiplyAdd(matrix, 0, rows, columns, floatVector, 0, floatProduct, 0);
+        for (int r = 0; r < rows; r++) {
+            assertEquals("row " + r, product[r], floatProduct[r], TOLERANCE);
+        }
+
+        final float[] transposedProduct = new float[columns];
+        MatrixUtils.multiplyTransposedAdd(matrix, 0, rows, columns, floatProduct, 0, transposedProduct, 0);
+        for (int c = 0; c < columns; c++) {
+            double expected = 0.;
+            for (int r = 0; r < rows; r++) {
+                expected += matrix[r * columns + c] * product[r];
+            }
+            assertEquals("column " + c, expected, transposedProduct[c], TOLERANCE * Math.abs(expected) + TOLERANCE);
+        }
+
+        final int batchSize = 5;
+        final double[] vectors = new double[columns * batchSize];
+        final float[] floatVectors = new float[columns * batchSize];
+        for (int k = 0; k < vectors.length; k++) {
+            vectors[k] = random.nextDouble();
+            floatVectors[k] = (float) vectors[k];
+        }
+        final double[] products = new double[rows * batchSize];
+        final float[] floatProducts = new float[rows * batchSize];
+        MatrixUtils.multiplyAddBatch(matrix, 0, rows, columns, vectors, 0, batchSize, products, 0);
+        MatrixUtils.multiplyAddBatch(matrix, 0, rows, columns, floatVectors, 0, batchSize, floatProducts, 0);
+        for (int k = 0; k < products.length; k++) {
+            assertEquals("batch product " + k, products[k], floatProducts[k], TOLERANCE);
+        }
+    }
+
+    public void testForwardAndGradient() throws Exception {
+        final ActivationFunctionAnalyzer doubleAnalyzer = new ActivationFunctionAnalyzer(new SigmoidFunction(),
+                Integer.MAX_VALUE);
+        final ActivationFunctionAnalyzer floatAnalyzer = new ActivationFunctionAnalyzer(new SigmoidFunction(),
+                Integer.MAX_VALUE, false, true);
+        final MiniBatchBackpropagationLearner learner = MiniBatchBackpropagationLearner
+                .getMiniBatchBackpropagationLearner(new QuadraticError(), 0.1f, 10, 1);
+        final NeuralNetwork doubleNetwork = NeuralNetworkFactory.getNetwork(new NeuralNetworkSettings(INPUT_SIZE,
+                RESULT_SIZE, 1., TopologySetting.THREE_LAYER_PERCEPTRON, doubleAnalyzer, learner));
+        final NeuralNetworkState parameters = doubleNetwork.getNetworkStateCopy();
+        final NeuralNetwork floatNetwork = new NeuralNetwork(doubleNetwork.getNetworkStateCopy(), floatAnalyzer,
+                learner);
+
+        final Random random = new Random(7);
+        final double[][] inputs = new double[SAMPLE_NUMBER][INPUT_SIZE];
+        final double[][] references = new double[SAMPLE_NUMBER][RESULT_SIZE];
+        for (int s = 0; s < SAMPLE_NUMBER; s++) {
+            for (int i = 0; i < INPUT_SIZE; i++) {
+                inputs[s][i] = random.nextDouble();
+            }
+            references[s][s % RESULT_SIZE] = 1.;
+        }
+
+        final double[][] floatBatch = floatNetwork.mapBatch(inputs);
+        final double[][] doubleBatch = doubleNetwork.mapBatch(inputs);
+        // shorter batch reuses the scratch of the previous one
+        final double[][] shortBatch = doubleNetwork.mapBatch(Arrays.copyOfRange(inputs, 1, 4));
+        for (int s = 0; s < SAMPLE_NUMBER; s++) {
+            final double[] expected = doubleNetwork.map(inputs[s]);
+            final double[] actual = floatNetwork.map(inputs[s]);
+            for (int i = 0; i < RESULT_SIZE; i++) {
+                assertEquals("result " + i + " of sample " + s, expected[i], actual[i], TOLERANCE);
+                assertEquals("batch result " + i + " of sample " + s, expected[i], floatBatch[s][i], TOLERANCE);
+                assertEquals("double batch result " + i + " of sample " + s, expected[i], doubleBatch[s][i],
+                        TOLERANCE);
+                if (s >= 1 && s < 4) {
+                    assertEquals("short batch result " + i + " of sample " + s, expected[i],
+                            shortBatch[s - 1][i], TOLERANCE);
+                }
+            }
+        }
+
+        final ErrorGradient doubleGradient = accumulate(parameters, doubleAnalyzer, inputs, references);
+        final ErrorGradient floatGradient = accumulate(parameters, floatAnalyzer, inputs, references);
+        assertEquals(doubleGradient.getError(), floatGradient.getError(), TOLERANCE * SAMPLE_NUMBER);
+        assertClose("weight gradient", doubleGradient.getWeightGradient(), floatGradient.getWeightGradient());
+        assertClose("bias gradient", doubleGradient.getBiasGradient(), floatGradient.getBiasGradient());
+    }
+
+    private static ErrorGradient accumulate(NeuralNetworkState parameters, ActivationFunctionAnalyzer analyzer,
+            double[][] inputs, double[][] references) {
+        final NeuralNetworkState state = new InferenceContext(parameters.getPlan().getSourceNumber())
+                .attach(parameters);
+        final ErrorGradient gradient = new ErrorGradient(parameters.getPlan());
+        for (int s = 0; s < inputs.length; s++) {
+            System.arraycopy(inputs[s], 0, state.getResult(), 0, INPUT_SIZE);
+            analyzer.process(state, null);
+            gradient.accumulate(state, references[s], new QuadraticError(), analyzer);
+        }
+        return gradient;
+    }
+
+    /**
+     * Gradients are compared relative to the largest of them.
+     */
+    private static void assertClose(String message, double[] expected, double[] actual) {
+        double scale = 0.;
+        for (double value : expected) {
+            scale = Math.max(scale, Math.abs(value));
+        }
+        for (int k = 0; k < expected.length; k++) {
+            assertEquals(message + " " + k, expected[k], actual[k], TOLERANCE * scale);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package attatrol.neural.learning;
+
+import attatrol.neural.NeuralNetworkRuntimeException;
+import attatrol.neural.activationfunction.SigmoidFunction;
+import attatrol.neural.analysis.ActivationFunctionAnalyzer;
+import attatrol.neural.errorfunction.QuadraticError;
+import attatrol.neural.learning.supervised.BackpropagationLearner;
+import attatrol.neural.network.NeuralNetwork;
+import attatrol.neural.network.NeuralNetworkFactory;
+import attatrol.neural.network.NeuralNetworkSettings;
+import attatrol.neural.network.NeuralNetworkState;
+import attatrol.neural.network.TopologySetting;
+import junit.framework.TestCase;
+
+/**
+ * Compares convergence of {@link HogwildTrainer} with single-threaded learning
+ * on a {@link SyntheticDataset}.
+ * @author attatrol
+ *
+ */
+public class HogwildTrainerTest extends TestCase {
+
+    private static final int INPUT_SIZE = 48;
+
+    private static final int CLASS_NUMBER = 4;
+
+    private static final int SAMPLE_NUMBER = 256;
+
+    private static final int EPOCH_NUMBER = 60;
+
+    private static final int THREAD_NUMBER = 4;
+
+    private static final float CHANGE_FACTOR = 0.3f;
+
+    public void testConvergence() throws Exception {
+        final SyntheticDataset dataset = new SyntheticDataset(SAMPLE_NUMBER, INPUT_SIZE, CLASS_NUMBER, 7);
+        final double[][] inputVectors = dataset.getInputVectors();
+        final double[][] references = dataset.getReferences();
+
+        final NeuralNetworkSettings settings = new NeuralNetworkSettings(INPUT_SIZE, CLASS_NUMBER, 1.,
+                TopologySetting.PYRAMIDAL_LOCALIZED, new ActivationFunctionAnalyzer(new SigmoidFunction()),
+                BackpropagationLearner.getBackpropagationLearner(new QuadraticError(), CHANGE_FACTOR));
+        final NeuralNetwork origin = NeuralNetworkFactory.getNetwork(settings);
+        final NeuralNetwork single = copy(origin);
+        final NeuralNetwork concurrent = copy(origin);
+        final HogwildTrainer trainer = new HogwildTrainer(concurrent, THREAD_NUMBER);
+
+        final double initialError = dataset.getError(origin);
+        for (int e = 0; e < EPOCH_NUMBER; e++) {
+            single.learnBatch(inputVectors, references);
+            trainer.train(inputVectors, references);
+        }
+        final double singleError = dataset.getError(single);
+        final double concurrentError = dataset.getError(concurrent);
+
+        assertTrue("single-threaded learning does not converge: " + initialError + " -> " + singleError,
+                singleError < initialError / 2);
+        assertTrue("concurrent learning does not converge: " + initialError + " -> " + concurrentError,
+                concurrentError < initialError / 2);
+        assertTrue("concurrent error " + concurrentError + " is much worse than single-threaded error "
+                + singleError, concurrentError < 2 * singleError + 0.01);
+        assertTrue(dataset.getAccuracy(single) > 0.9);
+        assertTrue(dataset.getAccuracy(concurrent) > 0.9);
+    }
+
+    /**
+     * Unchecked exception of a thread is thrown by the trainer.
+     */
+    public void testFailure() throws Exception {
+        final NeuralNetwork network = NeuralNetworkFactory.getNetwork(new NeuralNetworkSettings(INPUT_SIZE,
+                CLASS_NUMBER, 1., TopologySetting.THREE_LAYER_PERCEPTRON,
+                new ActivationFunctionAnalyzer(new SigmoidFunction()),
+                BackpropagationLearner.getBackpropagationLearner(new QuadraticError(), CHANGE_FACTOR)));
+        final double[][] inputVectors = new double[SAMPLE_NUMBER][INPUT_SIZE];
+        final double[][] references = new double[SAMPLE_NUMBER][CLASS_NUMBER];
+        references[SAMPLE_NUMBER - 1] = null;
+        try {
+            new HogwildTrainer(network, THREAD_NUMBER).train(inputVectors, references);
+            fail("Failure of a thread is not reported");
+        }
+        catch (NeuralNetworkRuntimeException ex) {
+            assertNotNull(ex.getCause());
+        }
+    }
+
+    private static NeuralNetwork copy(NeuralNetwork network) {
+        final NeuralNetworkState state = network.getNetworkStateCopy();
+        return new NeuralNetwork(state, new ActivationFunctionAnalyzer(new SigmoidFunction()),
+                network.getLearningProcessor());
+    }
+}
@@ -0,0 +1,80 @@
+package attatrol.neural.learning;
+
+import java.util.Random;
+
+import attatrol.neural.errorfunction.QuadraticError;
+import attatrol.neural.network.NeuralNetwork;
+import attatrol.neural.utils.Utils;
+
+/**
+ * Synthetic learning set of tests: each class lights its own range of input coordinates over noise.
+ * @author attatrol
+ *
+ */
+public final class SyntheticDataset {
+
+    private final double[][] inputVectors;
+
+    private final double[][] references;
+
+    /**
+     * Default constructor.
+     * @param sampleNumber number of samples, classes follow each other
+     * @param inputSize size of an input vector
+     * @param classNumber number of classes
+     * @param seed seed of the noise
+     */
+    public SyntheticDataset(int sampleNumber, int inputSize, int classNumber, long seed) {
+        inputVectors = new double[sampleNumber][inputSize];
+        references = new double[sampleNumber][classNumber];
+        final Random random = new Random(seed);
+        final int classWidth = inputSize / classNumber;
+        for (int s = 0; s < sampleNumber; s++) {
+            final int c = s % classNumber;
+            for (int i = 0; i < inputSize; i++) {
+                inputVectors[s][i] = 0.5 * random.nextDouble();
+            }
+            for (int i = c * classWidth; i < (c + 1) * classWidth; i++) {
+                inputVectors[s][i] += 0.5;
+            }
+            references[s][c] = 1.;
+        }
+    }
+
+    public double[][] getInputVectors() {
+        return inputVectors;
+    }
+
+    public double[][] getReferences() {
+        return references;
+    }
+
+    /**
+     * @param network network of the input and output size of the set
+     * @return mean quadratic error of the network on the set
+     * @throws Exception on failure of mapping
+     */
+    public double getError(NeuralNetwork network) throws Exception {
+        final QuadraticError error = new QuadraticError();
+        double sum = 0.;
+        for (int s = 0; s < inputVectors.length; s++) {
+            sum += error.getValue(network.map(inputVectors[s]), references[s]);
+        }
+        return sum / inputVectors.length;
+    }
+
+    /**
+     * @param network network of the input and output size of the set
+     * @return share of samples whose class has the greatest output
+     * @throws Exception on failure of mapping
+     */
+    public double getAccuracy(NeuralNetwork network) throws Exception {
+        int hits = 0;
+        for (int s = 0; s < inputVectors.length; s++) {
+            if (references[s][Utils.getIndexOfMaxElement(network.map(inputVectors[s]))] == 1.) {
+                hits++;
+            }
+        }
+        return (double) hits / inputVectors.length;
+    }
+}
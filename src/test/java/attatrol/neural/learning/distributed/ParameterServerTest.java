@@ -0,0 +1,128 @@
+package attatrol.neural.learning.distributed;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+
+import attatrol.neural.activationfunction.SigmoidFunction;
+import attatrol.neural.analysis.ActivationFunctionAnalyzer;
+import attatrol.neural.errorfunction.QuadraticError;
+import attatrol.neural.learning.SyntheticDataset;
+import attatrol.neural.learning.supervised.BackpropagationLearner;
+import attatrol.neural.network.NeuralNetwork;
+import attatrol.neural.network.NeuralNetworkFactory;
+import attatrol.neural.network.NeuralNetworkSettings;
+import attatrol.neural.network.TopologySetting;
+import junit.framework.TestCase;
+
+/**
+ * Runs {@link ParameterServer} and several {@link DistributedWorker}s on localhost.
+ * @author attatrol
+ *
+ */
+public class ParameterServerTest extends TestCase {
+
+    private static final int INPUT_SIZE = 48;
+
+    private static final int CLASS_NUMBER = 4;
+
+    private static final int SAMPLE_NUMBER = 240;
+
+    private static final int WORKER_NUMBER = 3;
+
+    private static final int EPOCH_NUMBER = 60;
+
+    private static final int PUSH_SIZE = 20;
+
+    private SyntheticDataset dataset;
+
+    private double[][] inputVectors;
+
+    private double[][] references;
+
+    private NeuralNetwork origin;
+
+    @Override
+    protected void setUp() throws Exception {
+        dataset = new SyntheticDataset(SAMPLE_NUMBER, INPUT_SIZE, CLASS_NUMBER, 3);
+        inputVectors = dataset.getInputVectors();
+        references = dataset.getReferences();
+        final NeuralNetworkSettings settings = new NeuralNetworkSettings(INPUT_SIZE, CLASS_NUMBER, 1.,
+                TopologySetting.PYRAMIDAL_LOCALIZED, new ActivationFunctionAnalyzer(new SigmoidFunction()),
+                BackpropagationLearner.getBackpropagationLearner(new QuadraticError(), 0.3f));
+        origin = NeuralNetworkFactory.getNetwork(settings);
+    }
+
+    public void testWorkersConverge() throws Exception {
+        try (ParameterServer server = new ParameterServer(origin.getNetworkStateCopy(),
+                origin.getAnalythicalProcessor(), origin.getLearningProcessor(),
+                ParameterServer.UNBOUNDED_STALENESS)) {
+            server.start(0, InetAddress.getLoopbackAddress());
+            final Thread[] threads = new Thread[WORKER_NUMBER];
+            final Exception[] failures = new Exception[WORKER_NUMBER];
+            for (int w = 0; w < WORKER_NUMBER; w++) {
+                final int shardFrom = SAMPLE_NUMBER * w / WORKER_NUMBER;
+                final int shardTo = SAMPLE_NUMBER * (w + 1) / WORKER_NUMBER;
+                final int index = w;
+                threads[w] = new Thread(() -> {
+                    try (DistributedWorker worker = new DistributedWorker(
+                            InetAddress.getLoopbackAddress().getHostAddress(), server.getPort())) {
+                        for (int e = 0; e < EPOCH_NUMBER; e++) {
+                            for (int from = shardFrom; from < shardTo; from += PUSH_SIZE) {
+                                final int to = Math.min(shardTo, from + PUSH_SIZE);
+                                worker.train(Arrays.copyOfRange(inputVectors, from, to),
+                                        Arrays.copyOfRange(references, from, to));
+                            }
+                        }
+                    }
+                    catch (Exception ex) {
+                        failures[index] = ex;
+                    }
+                });
+                threads[w].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            for (Exception failure : failures) {
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+            assertEquals(WORKER_NUMBER * EPOCH_NUMBER * ((SAMPLE_NUMBER / WORKER_NUMBER + PUSH_SIZE - 1) / PUSH_SIZE),
+                    server.getVersion());
+
+            final NeuralNetwork learnt = new NeuralNetwork(server.getNetworkStateCopy(),
+                    origin.getAnalythicalProcessor(), origin.getLearningProcessor());
+            final double initialError = dataset.getError(origin);
+            final double learntError = dataset.getError(learnt);
+            assertTrue("distributed learning does not converge: " + initialError + " -> " + learntError,
+                    learntError < initialError / 2);
+            assertTrue(dataset.getAccuracy(learnt) > 0.9);
+        }
+    }
+
+    public void testStalePushIsRejected() throws Exception {
+        try (ParameterServer server = new ParameterServer(origin.getNetworkStateCopy(),
+                origin.getAnalythicalProcessor(), origin.getLearningProcessor(), 0)) {
+            server.start(0, InetAddress.getLoopbackAddress());
+            final String host = InetAddress.getLoopbackAddress().getHostAddress();
+            try (DistributedWorker first = new DistributedWorker(host, server.getPort());
+                    DistributedWorker second = new DistributedWorker(host, server.getPort())) {
+                final double[][] inputs = Arrays.copyOfRange(inputVectors, 0, PUSH_SIZE);
+                final double[][] refs = Arrays.copyOfRange(references, 0, PUSH_SIZE);
+                assertTrue(first.train(inputs, refs));
+                assertFalse(second.train(inputs, refs));
+                assertEquals(1, server.getVersion());
+                assertEquals(1, server.getRejectedNumber());
+                // rejected worker has received fresh parameters
+                assertTrue(Arrays.equals(server.getNetworkStateCopy().getWeight(),
+                        second.getNetwork().getNetworkStateCopy().getWeight()));
+                assertTrue(second.train(inputs, refs));
+                first.pull();
+                assertEquals(2, first.getVersion());
+                assertTrue(Arrays.equals(server.getNetworkStateCopy().getWeight(),
+                        first.getNetwork().getNetworkStateCopy().getWeight()));
+            }
+        }
+    }
+}
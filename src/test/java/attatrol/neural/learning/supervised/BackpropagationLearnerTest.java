@@ -0,0 +1,183 @@
+package attatrol.neural.learning.supervised;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import attatrol.neural.activationfunction.ActivationFunction;
+import attatrol.neural.activationfunction.SigmoidFunction;
+import attatrol.neural.analysis.ActivationFunctionAnalyzer;
+import attatrol.neural.errorfunction.ErrorFunction;
+import attatrol.neural.errorfunction.QuadraticError;
+import attatrol.neural.network.ExecutionPlan;
+import attatrol.neural.network.NeuralNetwork;
+import attatrol.neural.network.NeuralNetworkFactory;
+import attatrol.neural.network.NeuralNetworkSettings;
+import attatrol.neural.network.NeuralNetworkState;
+import attatrol.neural.network.TopologySetting;
+import junit.framework.TestCase;
+
+/**
+ * Compares {@link BackpropagationLearner} with the straightforward implementation
+ * which keeps weights in jagged arrays and finds activation derivative for each weight,
+ * also checks common behavior of batch learners of the package.
+ * @author attatrol
+ *
+ */
+public class BackpropagationLearnerTest extends TestCase {
+
+    private static final int INPUT_SIZE = 24;
+
+    private static final int RESULT_SIZE = 5;
+
+    private static final int SAMPLE_NUMBER = 40;
+
+    private static final float CHANGE_FACTOR = 0.1f;
+
+    private static final double TOLERANCE = 1e-5;
+
+    public void testThreeLayerPerceptron() throws Exception {
+        checkTopology(TopologySetting.THREE_LAYER_PERCEPTRON, Integer.MAX_VALUE);
+    }
+
+    public void testPyramidalLocalized() throws Exception {
+        checkTopology(TopologySetting.PYRAMIDAL_LOCALIZED, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Level by level pass, it is taken only if the common pool has several threads.
+     */
+    public void testThreeLayerPerceptronByLevels() throws Exception {
+        checkTopology(TopologySetting.THREE_LAYER_PERCEPTRON, 1);
+    }
+
+    /**
+     * Empty batch leaves weights and biases intact in every batch learner.
+     */
+    public void testEmptyBatch() throws Exception {
+        final ErrorFunction errorFunction = new QuadraticError();
+        final AbstractGradientLearner[] learners = {
+            MiniBatchBackpropagationLearner.getMiniBatchBackpropagationLearner(errorFunction, CHANGE_FACTOR, 4, 2),
+            MomentumLearner.getMomentumLearner(errorFunction, CHANGE_FACTOR, 0.9f, true, 4, 2),
+            AdamLearner.getAdamLearner(errorFunction, CHANGE_FACTOR, 4, 2),
+            LbfgsLearner.getLbfgsLearner(errorFunction, LbfgsLearner.DEFAULT_HISTORY_SIZE, 2)};
+        final double[][] inputs = {new double[INPUT_SIZE]};
+        final double[][] references = {new double[RESULT_SIZE]};
+        for (AbstractGradientLearner learner : learners) {
+            final NeuralNetwork network = NeuralNetworkFactory.getNetwork(new NeuralNetworkSettings(INPUT_SIZE,
+                    RESULT_SIZE, 1., TopologySetting.THREE_LAYER_PERCEPTRON,
+                    new ActivationFunctionAnalyzer(new SigmoidFunction()), learner));
+            final NeuralNetworkState state = network.getNetworkStateCopy();
+            final float[] weight = state.getWeight().clone();
+            final float[] bias = state.getBias().clone();
+            learner.processBatch(state, inputs, references, 1, 1, network.getAnalythicalProcessor());
+            assertTrue(learner.toString(), Arrays.equals(weight, state.getWeight()));
+            assertTrue(learner.toString(), Arrays.equals(bias, state.getBias()));
+        }
+    }
+
+    /**
+     * L-BFGS epochs which reuse the gradient of the last accepted point give the same weights
+     * as epochs which find it again for a copy of the learning set.
+     */
+    public void testLbfgsGradientReuse() throws Exception {
+        final Random random = new Random(7);
+        final double[][] inputs = new double[SAMPLE_NUMBER][INPUT_SIZE];
+        final double[][] references = new double[SAMPLE_NUMBER][RESULT_SIZE];
+        for (int s = 0; s < SAMPLE_NUMBER; s++) {
+            for (int i = 0; i < INPUT_SIZE; i++) {
+                inputs[s][i] = random.nextDouble();
+            }
+            references[s][s % RESULT_SIZE] = 1.;
+        }
+        final LbfgsLearner reusing = LbfgsLearner.getLbfgsLearner(new QuadraticError(),
+                LbfgsLearner.DEFAULT_HISTORY_SIZE, 2);
+        final LbfgsLearner recomputing = LbfgsLearner.getLbfgsLearner(new QuadraticError(),
+                LbfgsLearner.DEFAULT_HISTORY_SIZE, 2);
+        final NeuralNetwork network = NeuralNetworkFactory.getNetwork(new NeuralNetworkSettings(INPUT_SIZE,
+                RESULT_SIZE, 1., TopologySetting.THREE_LAYER_PERCEPTRON,
+                new ActivationFunctionAnalyzer(new SigmoidFunction()), reusing));
+        final NeuralNetworkState reusingState = network.getNetworkStateCopy();
+        final NeuralNetworkState recomputingState = network.getNetworkStateCopy();
+        for (int epoch = 0; epoch < 10; epoch++) {
+            reusing.processBatch(reusingState, inputs, references, 0, SAMPLE_NUMBER,
+                    network.getAnalythicalProcessor());
+            recomputing.processBatch(recomputingState, inputs.clone(), references, 0, SAMPLE_NUMBER,
+                    network.getAnalythicalProcessor());
+        }
+        assertTrue(Arrays.equals(recomputingState.getWeight(), reusingState.getWeight()));
+        assertTrue(Arrays.equals(recomputingState.getBias(), reusingState.getBias()));
+    }
+
+    private static void checkTopology(TopologySetting topologySetting, int parallelismThreshold)
+            throws Exception {
+        final ErrorFunction errorFunction = new QuadraticError();
+        final ActivationFunction f = new SigmoidFunction();
+        final NeuralNetworkSettings settings = new NeuralNetworkSettings(INPUT_SIZE, RESULT_SIZE, 1.,
+                topologySetting, new ActivationFunctionAnalyzer(f, parallelismThreshold),
+                BackpropagationLearner.getBackpropagationLearner(errorFunction, CHANGE_FACTOR));
+        final NeuralNetwork network = NeuralNetworkFactory.getNetwork(settings);
+
+        final NeuralNetworkState initial = network.getNetworkStateCopy();
+        final ExecutionPlan plan = initial.getPlan();
+        final int[] neuronOrder = plan.getNeuronOrder();
+        final int[] rowOffset = plan.getRowOffset();
+        final float[][] weight = new float[initial.getParents().length][];
+        for (int r = 0; r < neuronOrder.length; r++) {
+            weight[neuronOrder[r]] = Arrays.copyOfRange(initial.getWeight(), rowOffset[r], rowOffset[r + 1]);
+        }
+        final float[] bias = initial.getBias();
+
+        final Random random = new Random(11);
+        for (int s = 0; s < SAMPLE_NUMBER; s++) {
+            final double[] input = new double[INPUT_SIZE];
+            for (int i = 0; i < INPUT_SIZE; i++) {
+                input[i] = random.nextDouble();
+            }
+            final double[] reference = new double[RESULT_SIZE];
+            reference[s % RESULT_SIZE] = 1.;
+
+            network.map(input);
+            final NeuralNetworkState forward = network.getNetworkStateCopy();
+            learn(forward.getTraverseOrder(), forward.getParents(), weight, bias,
+                    forward.getLinearCombination(), forward.getResult(), reference, errorFunction, f);
+            network.learn(input, reference);
+        }
+
+        final NeuralNetworkState learnt = network.getNetworkStateCopy();
+        for (int r = 0; r < neuronOrder.length; r++) {
+            final int i = neuronOrder[r];
+            for (int k = 0; k < weight[i].length; k++) {
+                assertEquals("weight " + k + " of neuron " + i, weight[i][k],
+                        learnt.getWeight()[rowOffset[r] + k], TOLERANCE);
+            }
+            assertEquals("bias of neuron " + i, bias[i], learnt.getBias()[i], TOLERANCE);
+        }
+    }
+
+    /**
+     * Backpropagation as it was implemented before the execution plan.
+     */
+    private static void learn(int[] traverseOrder, int[][] parents, float[][] weight, float[] bias,
+            double[] linearCombination, double[] result, double[] reference,
+            ErrorFunction errorFunction, ActivationFunction f) {
+        double[] errorFunctionDerivative = new double[result.length];
+        int surfaceLayerFirstNeuronIndex = result.length - reference.length;
+        double[] resultVector = Arrays.copyOfRange(result, surfaceLayerFirstNeuronIndex, result.length);
+        for (int i = 0; i < reference.length; i++) {
+            errorFunctionDerivative[i + surfaceLayerFirstNeuronIndex] =
+                    errorFunction.getDerivative(resultVector, reference, i)
+                    * f.getDerivative(linearCombination[i + surfaceLayerFirstNeuronIndex], resultVector[i]);
+        }
+        for (int j = traverseOrder.length - 1; j >= 0; j--) {
+            double efd = errorFunctionDerivative[traverseOrder[j]];
+            final int i = traverseOrder[j];
+            for (int k = 0; k < weight[i].length; k++) {
+                final int parentIndex = parents[i][k];
+                errorFunctionDerivative[parentIndex] += efd * weight[i][k]
+                        * f.getDerivative(linearCombination[parentIndex], result[parentIndex]);
+                weight[i][k] -= CHANGE_FACTOR * efd * result[parentIndex];
+            }
+            bias[i] -= CHANGE_FACTOR * efd;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package attatrol.neural.learning.supervised;
+
+import java.util.Random;
+
+import attatrol.neural.activationfunction.ActivationFunction;
+import attatrol.neural.activationfunction.HardSigmoidFunction;
+import attatrol.neural.activationfunction.LeakyReluFunction;
+import attatrol.neural.activationfunction.ReluFunction;
+import attatrol.neural.activationfunction.SigmoidFunction;
+import attatrol.neural.analysis.ActivationFunctionAnalyzer;
+import attatrol.neural.errorfunction.ErrorFunction;
+import attatrol.neural.errorfunction.QuadraticError;
+import attatrol.neural.network.ExecutionPlan;
+import attatrol.neural.network.InferenceContext;
+import attatrol.neural.network.NeuralNetwork;
+import attatrol.neural.network.NeuralNetworkFactory;
+import attatrol.neural.network.NeuralNetworkSettings;
+import attatrol.neural.network.NeuralNetworkState;
+import attatrol.neural.topology.Layer;
+import attatrol.neural.topology.LayerInterconnectionDistribution;
+import attatrol.neural.topology.LayerType;
+import attatrol.neural.topology.LayeredTopology;
+import attatrol.neural.topology.LayeredTopologyDescription;
+import junit.framework.TestCase;
+
+/**
+ * Compares results and {@link ErrorGradient} of a layered network whose layers mix activation functions
+ * with a reference pass which activates every neuron by the function of its layer one by one.
+ * @author attatrol
+ *
+ */
+public class ErrorGradientTest extends TestCase {
+
+    private static final int INPUT_SIZE = 16;
+
+    private static final int RESULT_SIZE = 4;
+
+    private static final int SAMPLE_NUMBER = 20;
+
+    private static final double TOLERANCE = 1e-9;
+
+    public void testMixedActivations() throws Exception {
+        final LayeredTopologyDescription description = new LayeredTopologyDescription();
+        description.addLayer(new Layer(INPUT_SIZE, 12, LayerInterconnectionDistribution.LOCALIZED,
+                LayerType.INPUT_VECTOR));
+        description.addLayer(new Layer(12, 3, LayerInterconnectionDistribution.LOCALIZED,
+                LayerType.ORDINARY, new ReluFunction()));
+        description.addLayer(new Layer(9, 9, LayerInterconnectionDistribution.LOCALIZED,
+                LayerType.ORDINARY, new HardSigmoidFunction(0.5f)));
+        // this layer takes the function of the analyzer
+        description.addLayer(new Layer(9, RESULT_SIZE, LayerInterconnectionDistribution.LOCALIZED,
+                LayerType.ORDINARY));
+        description.addLayer(new Layer(RESULT_SIZE, 1, LayerInterconnectionDistribution.LOCALIZED,
+                LayerType.SURFACE, new LeakyReluFunction(0.1f)));
+        final ErrorFunction errorFunction = new QuadraticError();
+        final ActivationFunctionAnalyzer analyzer = new ActivationFunctionAnalyzer(new SigmoidFunction(),
+                Integer.MAX_VALUE);
+        final NeuralNetwork network = NeuralNetworkFactory.getNetwork(new NeuralNetworkSettings(1., description,
+                analyzer, BackpropagationLearner.getBackpropagationLearner(errorFunction, 0.1f)));
+
+        final NeuralNetworkState parameters = network.getNetworkStateCopy();
+        final ExecutionPlan plan = parameters.getPlan();
+        final int sourceNumber = plan.getSourceNumber();
+        final LayeredTopology topology = (LayeredTopology) network.getTopology();
+        final int[] firstIndexOfLayer = topology.getFirstIndexOfLayer();
+        final ActivationFunction[] function = new ActivationFunction[sourceNumber];
+        for (int layer = 1; layer < firstIndexOfLayer.length; layer++) {
+            final int to = layer + 1 < firstIndexOfLayer.length ? firstIndexOfLayer[layer + 1] : sourceNumber;
+            final ActivationFunction layerFunction = topology.getLayerActivation(layer);
+            for (int i = firstIndexOfLayer[layer]; i < to; i++) {
+                function[i] = layerFunction != null ? layerFunction : analyzer.getActivationFunction();
+            }
+        }
+
+        final NeuralNetworkState state = new InferenceContext(sourceNumber).attach(parameters);
+        final ErrorGradient gradient = new ErrorGradient(plan);
+        final double[] weightGradient = new double[plan.getEdgeNumber()];
+        final double[] biasGradient = new double[sourceNumber];
+        final Random random = new Random(5);
+        for (int s = 0; s < SAMPLE_NUMBER; s++) {
+            final double[] input = new double[INPUT_SIZE];
+            for (int i = 0; i < INPUT_SIZE; i++) {
+                input[i] = random.nextDouble();
+            }
+            final double[] reference = new double[RESULT_SIZE];
+            reference[s % RESULT_SIZE] = 1.;
+
+            final double[] linearCombination = new double[sourceNumber];
+            final double[] result = new double[sourceNumber];
+            System.arraycopy(input, 0, result, 0, INPUT_SIZE);
+            forward(plan, parameters, function, linearCombination, result);
+            final double[] mapped = network.map(input);
+            for (int i = 0; i < RESULT_SIZE; i++) {
+                assertEquals("result " + i + " of sample " + s, result[sourceNumber - RESULT_SIZE + i], mapped[i],
+                        TOLERANCE);
+            }
+
+            backward(plan, parameters, function, linearCombination, result, reference, errorFunction,
+                    weightGradient, biasGradient);
+            System.arraycopy(input, 0, state.getResult(), 0, INPUT_SIZE);
+            analyzer.process(state, null);
+            gradient.accumulate(state, reference, errorFunction, analyzer);
+        }
+        for (int k = 0; k < weightGradient.length; k++) {
+            assertEquals("weight gradient " + k, weightGradient[k], gradient.getWeightGradient()[k], TOLERANCE);
+        }
+        for (int i = INPUT_SIZE; i < sourceNumber; i++) {
+            assertEquals("bias gradient " + i, biasGradient[i], gradient.getBiasGradient()[i], TOLERANCE);
+        }
+    }
+
+    /**
+     * Activates neurons one by one in the order of rows.
+     */
+    private static void forward(ExecutionPlan plan, NeuralNetworkState parameters, ActivationFunction[] function,
+            double[] linearCombination, double[] result) {
+        final int[] neuronOrder = plan.getNeuronOrder();
+        final int[] rowOffset = plan.getRowOffset();
+        final int[] parentIndex = plan.getParentIndex();
+        for (int r = 0; r < plan.getRowNumber(); r++) {
+            final int i = neuronOrder[r];
+            double sum = parameters.getBias()[i];
+            for (int k = rowOffset[r]; k < rowOffset[r + 1]; k++) {
+                sum += parameters.getWeight()[k] * result[parentIndex[k]];
+            }
+            linearCombination[i] = sum;
+            result[i] = function[i].getValue(sum);
+        }
+    }
+
+    /**
+     * Adds gradient of the sample, derivative of each neuron is taken from the function of its layer.
+     */
+    private static void backward(ExecutionPlan plan, NeuralNetworkState parameters, ActivationFunction[] function,
+            double[] linearCombination, double[] result, double[] reference, ErrorFunction errorFunction,
+            double[] weightGradient, double[] biasGradient) {
+        final int[] neuronOrder = plan.getNeuronOrder();
+        final int[] rowOffset = plan.getRowOffset();
+        final int[] parentIndex = plan.getParentIndex();
+        final int surfaceFrom = result.length - reference.length;
+        final double[] surfaceResult = new double[reference.length];
+        System.arraycopy(result, surfaceFrom, surfaceResult, 0, reference.length);
+        final double[] resultDerivative = new double[result.length];
+        for (int i = 0; i < reference.length; i++) {
+            resultDerivative[surfaceFrom + i] = errorFunction.getDerivative(surfaceResult, reference, i);
+        }
+        for (int r = plan.getRowNumber() - 1; r >= 0; r--) {
+            final int i = neuronOrder[r];
+            final double efd = resultDerivative[i] * function[i].getDerivative(linearCombination[i], result[i]);
+            for (int k = rowOffset[r]; k < rowOffset[r + 1]; k++) {
+                resultDerivative[parentIndex[k]] += efd * parameters.getWeight()[k];
+                weightGradient[k] += efd * result[parentIndex[k]];
+            }
+            biasGradient[i] += efd;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package attatrol.neural.quantization;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import attatrol.neural.activationfunction.SigmoidFunction;
+import attatrol.neural.analysis.ActivationFunctionAnalyzer;
+import attatrol.neural.errorfunction.QuadraticError;
+import attatrol.neural.learning.supervised.MiniBatchBackpropagationLearner;
+import attatrol.neural.network.NeuralNetwork;
+import attatrol.neural.network.NeuralNetworkFactory;
+import attatrol.neural.network.NeuralNetworkSettings;
+import attatrol.neural.network.TopologySetting;
+import junit.framework.TestCase;
+
+/**
+ * Quantizes a trained network and compares it with the original one on held-out samples.
+ * @author attatrol
+ *
+ */
+public class QuantizedNetworkTest extends TestCase {
+
+    private static final int INPUT_SIZE = 64;
+
+    private static final int RESULT_SIZE = 4;
+
+    private static final int SAMPLE_NUMBER = 200;
+
+    private static final int EPOCH_NUMBER = 60;
+
+    public void testHeldOutAccuracy() throws Exception {
+        final NeuralNetwork network = NeuralNetworkFactory.getNetwork(new NeuralNetworkSettings(INPUT_SIZE,
+                RESULT_SIZE, 1., TopologySetting.THREE_LAYER_PERCEPTRON,
+                new ActivationFunctionAnalyzer(new SigmoidFunction()), MiniBatchBackpropagationLearner
+                        .getMiniBatchBackpropagationLearner(new QuadraticError(), 0.5f, 10, 1)));
+        final Random random = new Random(17);
+        final double[][] inputs = new double[SAMPLE_NUMBER][];
+        final double[][] references = new double[SAMPLE_NUMBER][];
+        for (int s = 0; s < SAMPLE_NUMBER; s++) {
+            inputs[s] = sample(random, s % RESULT_SIZE);
+            references[s] = new double[RESULT_SIZE];
+            references[s][s % RESULT_SIZE] = 1.;
+        }
+        final int learntNumber = SAMPLE_NUMBER / 2;
+        final double[][] learntInputs = Arrays.copyOf(inputs, learntNumber);
+        final double[][] learntReferences = Arrays.copyOf(references, learntNumber);
+        for (int epoch = 0; epoch < EPOCH_NUMBER; epoch++) {
+            network.learnBatch(learntInputs, learntReferences);
+        }
+
+        final QuantizedNetwork quantized = NetworkQuantizer.quantize(network, learntInputs);
+        final double[][] heldOutInputs = Arrays.copyOfRange(inputs, learntNumber, SAMPLE_NUMBER);
+        final double[][] heldOutReferences = Arrays.copyOfRange(references, learntNumber, SAMPLE_NUMBER);
+        final QuantizationReport report = NetworkQuantizer.evaluate(network, quantized, heldOutInputs,
+                heldOutReferences);
+        assertTrue(report.toString(), report.getOriginalAccuracy() > 0.9);
+        assertTrue(report.toString(), Math.abs(report.getAccuracyDelta()) <= 0.02);
+        assertTrue(report.toString(), report.getAgreement() >= 0.98);
+        assertTrue(report.toString(), report.getMaxAbsoluteError() < 0.05);
+        assertTrue(report.toString(), report.getQuantizedBytes() * 4 <= report.getOriginalBytes());
+        assertTrue(quantized.toString(), quantized.getModelBytes() > quantized.getParameterBytes());
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(quantized);
+        }
+        final QuantizedNetwork copy = (QuantizedNetwork) new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        for (double[] input : heldOutInputs) {
+            final double[] expected = quantized.map(input);
+            final double[] actual = copy.map(input);
+            for (int i = 0; i < RESULT_SIZE; i++) {
+                assertEquals(expected[i], actual[i], 0.);
+            }
+        }
+    }
+
+    /**
+     * Noise with a brighter block of coordinates per class, values come in 8-bit steps as image hashes do.
+     */
+    private static double[] sample(Random random, int sampleClass) {
+        final double[] input = new double[INPUT_SIZE];
+        final int blockSize = INPUT_SIZE / RESULT_SIZE;
+        for (int i = 0; i < INPUT_SIZE; i++) {
+            final double value = random.nextDouble() * 0.6
+                    + (i / blockSize == sampleClass ? 0.3 : 0.);
+            input[i] = Math.round(value * 255) / 255.;
+        }
+        return input;
+    }
+}